@@ -35,6 +35,7 @@
 
 package imagej.data;
 
+import net.imglib2.Interval;
 import net.imglib2.img.ImgPlus;
 import net.imglib2.meta.AxisType;
 import net.imglib2.meta.Metadata;
@@ -158,6 +159,32 @@ public interface Dataset extends Data, Metadata {
 	// TODO - move into Imglib
 	void setAxes(AxisType[] axes);
 
+	/**
+	 * Informs interested parties that the sample values within the given
+	 * interval have changed. Unlike {@link #update()}, views only need to
+	 * refresh the part of their display overlapping the interval.
+	 * 
+	 * @see imagej.data.event.DatasetUpdatedEvent#getRegion()
+	 */
+	void update(Interval interval);
+
+	/**
+	 * Informs interested parties that the sample values within the given region
+	 * have changed.
+	 * 
+	 * @see imagej.data.event.DatasetUpdatedEvent#getRegion()
+	 */
+	void update(DirtyRegion region);
+
+	/**
+	 * Gets a counter which increases whenever the sample data of the Dataset may
+	 * have been modified (i.e., marked dirty, or given a new plane). Updates of
+	 * the metadata only, such as the name or calibration, do not count. Caches
+	 * of values derived from the sample data can compare it to detect stale
+	 * results.
+	 */
+	long getModificationCount();
+
 	// -- Data methods --
 
 	/**
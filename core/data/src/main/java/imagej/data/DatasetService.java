@@ -35,6 +35,8 @@
 
 package imagej.data;
 
+import imagej.data.cache.PlaneCache;
+import imagej.data.cow.CopyOnWriteStats;
 import imagej.data.display.ImageDisplay;
 
 import java.util.List;
@@ -86,7 +88,11 @@ Dataset create(long[] dims, String name, AxisType[] axes, int bitsPerPixel,
 		boolean signed, boolean floating);
 
 	/**
-	 * Creates a new dataset.
+	 * Creates a new dataset. If the dataset would take up too large a share of
+	 * the available memory (see {@link #isDiskCacheRecommended}), a disk cached
+	 * dataset is created instead. The choice does not depend on the memory held
+	 * by other datasets: if the new one exceeds the memory budget, caches are
+	 * asked to shrink and a warning is logged.
 	 * 
 	 * @param <T> The type of the dataset.
 	 * @param type The type of the dataset.
@@ -98,6 +104,55 @@ Dataset create(long[] dims, String name, AxisType[] axes, int bitsPerPixel,
 	<T extends RealType<T> & NativeType<T>> Dataset create(T type, long[] dims,
 		String name, AxisType[] axes);
 
+	/**
+	 * Creates a new dataset whose planes are paged to and from a swap file
+	 * through the shared {@link PlaneCache}, so that it may be larger than the
+	 * available memory.
+	 * 
+	 * @param <T> The type of the dataset.
+	 * @param type The type of the dataset.
+	 * @param dims The dataset's dimensional extents.
+	 * @param name The dataset's name.
+	 * @param axes The dataset's dimensional axis labels.
+	 * @return The newly created dataset.
+	 */
+	<T extends RealType<T> & NativeType<T>> Dataset createDiskCached(T type,
+		long[] dims, String name, AxisType[] axes);
+
+	/**
+	 * Creates a new dataset whose planes are stored outside the Java heap, so
+	 * that they add nothing to garbage collection times. The planes remain
+	 * reachable via {@link Dataset#getPlane(int)}, which returns them as NIO
+	 * buffers (e.g., {@link java.nio.ShortBuffer}) rather than arrays.
+	 * 
+	 * @param <T> The type of the dataset.
+	 * @param type The type of the dataset.
+	 * @param dims The dataset's dimensional extents.
+	 * @param name The dataset's name.
+	 * @param axes The dataset's dimensional axis labels.
+	 * @param mapped If true, planes are memory-mapped from a temporary file;
+	 *          otherwise they are held in direct buffers (which count against
+	 *          the JVM's maximum direct memory size).
+	 * @return The newly created dataset.
+	 */
+	<T extends RealType<T> & NativeType<T>> Dataset createOffHeap(T type,
+		long[] dims, String name, AxisType[] axes, boolean mapped);
+
+	/**
+	 * Gets whether a dataset of the given type and dimensions is big enough that
+	 * it should be disk cached rather than held entirely in memory.
+	 */
+	boolean isDiskCacheRecommended(RealType<?> type, long[] dims);
+
+	/** Gets the cache holding the in-memory planes of disk cached datasets. */
+	PlaneCache getPlaneCache();
+
+	/**
+	 * Gets the counters tracking plane data shared between datasets created by
+	 * {@link Dataset#duplicate()} and {@link Dataset#duplicateBlank()}.
+	 */
+	CopyOnWriteStats getCopyOnWriteStats();
+
 	/**
 	 * Creates a new dataset using the provided {@link ImgFactory}.
 	 * 
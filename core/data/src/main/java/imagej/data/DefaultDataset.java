@@ -35,23 +35,28 @@
 
 package imagej.data;
 
+import imagej.data.cache.PlaneBuffers;
+import imagej.data.cow.CopyOnWriteAccess;
+import imagej.data.cow.CopyOnWriteStats;
+import imagej.data.cow.PlaneSharer;
 import imagej.data.event.DatasetCreatedEvent;
 import imagej.data.event.DatasetDeletedEvent;
 import imagej.data.event.DatasetRGBChangedEvent;
 import imagej.data.event.DatasetRestructuredEvent;
 import imagej.data.event.DatasetTypeChangedEvent;
 import imagej.data.event.DatasetUpdatedEvent;
-import net.imglib2.Cursor;
+
+import java.nio.Buffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.Positionable;
-import net.imglib2.RandomAccess;
 import net.imglib2.RealPositionable;
 import net.imglib2.display.ColorTable;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.ImgPlus;
-import net.imglib2.img.NativeImgFactory;
-import net.imglib2.img.array.ArrayImg;
-import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.img.basictypeaccess.PlanarAccess;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
 import net.imglib2.img.basictypeaccess.array.ByteArray;
@@ -60,10 +65,9 @@
 import net.imglib2.img.basictypeaccess.array.IntArray;
 import net.imglib2.img.basictypeaccess.array.LongArray;
 import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.planar.PlanarImg;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
-import net.imglib2.type.NativeType;
-import net.imglib2.type.Type;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.RealType;
 
@@ -83,6 +87,7 @@ public class DefaultDataset extends AbstractData implements Dataset {
 	private ImgPlus<? extends RealType<?>> imgPlus;
 	private boolean rgbMerged;
 	private boolean isDirty;
+	private final AtomicLong modificationCount = new AtomicLong();
 
 	public DefaultDataset(final Context context,
 		final ImgPlus<? extends RealType<?>> imgPlus)
@@ -116,6 +121,7 @@ public boolean isDirty() {
 	@Override
 	public void setDirty(final boolean value) {
 		isDirty = value;
+		if (value) modificationCount.incrementAndGet();
 	}
 
 	@Override
@@ -200,19 +206,39 @@ public boolean setPlaneSilently(final int planeNum, final Object newPlane) {
 		// TODO - copy the plane if it cannot be set by reference
 		@SuppressWarnings("rawtypes")
 		final PlanarAccess planarAccess = (PlanarAccess) img;
-		final ArrayDataAccess<?> arrayAccess =
-			(ArrayDataAccess<?>) planarAccess.getPlane(planeNum);
-		final Object currPlane = arrayAccess.getCurrentStorageArray();
+		final Object access = planarAccess.getPlane(planeNum);
+		// NB - peek at shared or cached planes rather than unsharing them or
+		// marking them modified just to compare
+		final Object currPlane =
+			access instanceof CopyOnWriteAccess ? ((CopyOnWriteAccess) access)
+				.peekStorageArray() : PlaneBuffers
+				.storage((ArrayDataAccess<?>) access);
+		// NB - only arrays which were handed out can be passed back in here, and
+		// those are never shared, so the same array really is the same plane
 		if (newPlane == currPlane) return false;
+		if (currPlane instanceof Buffer) {
+			// off-heap planes cannot be replaced by reference; copy the values
+			if (!PlaneBuffers.isCompatible(newPlane, currPlane)) {
+				log.error("Incompatible plane for off-heap image");
+				return false;
+			}
+			PlaneBuffers.copy(newPlane, currPlane);
+			modificationCount.incrementAndGet();
+			return true;
+		}
 		final ArrayDataAccess<?> array = createArrayDataAccess(newPlane);
 		planarAccess.setPlane(planeNum, array);
+		modificationCount.incrementAndGet();
 		return true;
 	}
 
 	@Override
 	public boolean setPlane(final int planeNum, final Object newPlane) {
 		if (setPlaneSilently(planeNum, newPlane)) {
-			update(false);
+			// NB - setPlaneSilently already counted the modification
+			isDirty = true;
+			final DirtyRegion region = new DirtyRegion(planeInterval(planeNum));
+			publish(new DatasetUpdatedEvent(this, region));
 			return true;
 		}
 		return false;
@@ -252,22 +278,45 @@ public String getTypeLabelLong() {
 	}
 
 	@Override
+	@SuppressWarnings("rawtypes")
 	public Dataset duplicate() {
-		ImgPlus<? extends RealType<?>> newImgPlus = imgPlus.copy();
+		final ImgPlus untypedImg = imgPlus;
+		final PlaneSharer sharer = createPlaneSharer();
+		if (sharer.isSupported(imgPlus.getImg())) {
+			// share the planes; they are copied when first written
+			final PlanarImg planarImg = (PlanarImg) imgPlus.getImg();
+			@SuppressWarnings("unchecked")
+			final ImgPlus<? extends RealType<?>> newImgPlus =
+				new ImgPlus(sharer.duplicate(planarImg), imgPlus);
+			return new DefaultDataset(getContext(), newImgPlus);
+		}
+		@SuppressWarnings("unchecked")
+		final ImgPlus<? extends RealType<?>> newImgPlus =
+			createBlankCopy(untypedImg);
+		copyDataValues(imgPlus, newImgPlus);
 		return new DefaultDataset(getContext(), newImgPlus);
-		// OLD WAY
-		//final Dataset d = duplicateBlank();
-		//copyInto(d);
-		//return d;
 	}
 
 	@Override
+	@SuppressWarnings("rawtypes")
 	public Dataset duplicateBlank() {
-		@SuppressWarnings("rawtypes")
 		final ImgPlus untypedImg = imgPlus;
-		@SuppressWarnings("unchecked")
-		final Dataset d =
-			new DefaultDataset(getContext(), createBlankCopy(untypedImg));
+		final PlaneSharer sharer = createPlaneSharer();
+		final Dataset d;
+		if (sharer.isSupported(imgPlus.getImg())) {
+			// planes are allocated when first written
+			final PlanarImg planarImg = (PlanarImg) imgPlus.getImg();
+			@SuppressWarnings("unchecked")
+			final ImgPlus<? extends RealType<?>> newImgPlus =
+				new ImgPlus(sharer.createBlank(planarImg), imgPlus);
+			d = new DefaultDataset(getContext(), newImgPlus);
+		}
+		else {
+			@SuppressWarnings("unchecked")
+			final ImgPlus<? extends RealType<?>> newImgPlus =
+				createBlankCopy(untypedImg);
+			d = new DefaultDataset(getContext(), newImgPlus);
+		}
 		d.setRGBMerged(isRGBMerged());
 		return d;
 	}
@@ -329,6 +378,22 @@ public void copyDataFrom(final Dataset other) {
 		setImgPlus(newImgPlus);
 	}
 
+	@Override
+	public void update(final Interval interval) {
+		update(new DirtyRegion(interval));
+	}
+
+	@Override
+	public void update(final DirtyRegion region) {
+		setDirty(true);
+		publish(new DatasetUpdatedEvent(this, region));
+	}
+
+	@Override
+	public long getModificationCount() {
+		return modificationCount.get();
+	}
+
 	// -- Data methods --
 
 	@Override
@@ -640,81 +705,19 @@ else if (newPlane instanceof double[]) {
 	private void copyDataValues(final Img<? extends RealType<?>> input,
 		final Img<? extends RealType<?>> output)
 	{
-		final long[] position = new long[output.numDimensions()];
-		final Cursor<? extends RealType<?>> outputCursor =
-			output.localizingCursor();
-		final RandomAccess<? extends RealType<?>> inputAccessor =
-			input.randomAccess();
-		while (outputCursor.hasNext()) {
-			outputCursor.next();
-			outputCursor.localize(position);
-			inputAccessor.setPosition(position);
-			final double value = inputAccessor.get().getRealDouble();
-			outputCursor.get().setReal(value);
-		}
+		new ImgCopier(getContext()).copy(input, output);
+	}
+
+	/** Creates a sharer reporting to the {@link DatasetService}'s statistics. */
+	private PlaneSharer createPlaneSharer() {
+		final DatasetService datasetService =
+			getContext().getService(DatasetService.class);
+		if (datasetService == null) return new PlaneSharer(new CopyOnWriteStats());
+		return new PlaneSharer(datasetService.getCopyOnWriteStats());
 	}
 
 	private Object copyOfPlane(final int planeNum) {
-		final long[] dimensions = new long[imgPlus.numDimensions()];
-		imgPlus.dimensions(dimensions);
-		final long w = dimensions[0];
-		final long h = dimensions[1];
-		if (w * h > Integer.MAX_VALUE) {
-			throw new IllegalArgumentException(
-				"Can't create an in memory plane of " + (w * h) +
-					" entities (MAX = " + Integer.MAX_VALUE + ")");
-		}
-		final Type<?> type = getType();
-		// might not be able to get a copy of native data
-		if (!(type instanceof NativeType<?>)) return null;
-		final NativeType<?> nativeType = (NativeType<?>) type;
-		@SuppressWarnings("rawtypes")
-		final NativeImgFactory storageFactory = new ArrayImgFactory();
-		@SuppressWarnings("unchecked")
-		final ArrayImg<?, ?> container =
-			(ArrayImg<?, ?>) nativeType.createSuitableNativeImg(storageFactory,
-				new long[] { w, h });
-		final RandomAccess<? extends RealType<?>> input = imgPlus.randomAccess();
-		@SuppressWarnings("unchecked")
-		final RandomAccess<? extends RealType<?>> output =
-			(RandomAccess<? extends RealType<?>>) container.randomAccess();
-		final long[] planeIndexSpans = new long[dimensions.length - 2];
-		for (int i = 0; i < planeIndexSpans.length; i++)
-			planeIndexSpans[i] = dimensions[i + 2];
-		final Extents planeExtents = new Extents(planeIndexSpans);
-		final long[] planePos = new long[planeExtents.numDimensions()];
-		final Position pos = planeExtents.createPosition();
-		pos.setIndex(planeNum);
-		pos.localize(planePos);
-		final long[] inputPos = new long[dimensions.length];
-		for (int i = 2; i < dimensions.length; i++)
-			inputPos[i] = planePos[i - 2];
-		final long[] outputPos = new long[2];
-		input.setPosition(inputPos);
-		output.setPosition(outputPos);
-		final RealType<?> inputRef = input.get();
-		final RealType<?> outputRef = output.get();
-		final int maxX = (int) (w - 1);
-		final int maxY = (int) (h - 1);
-		for (int y = 0; y <= maxY; y++) {
-			for (int x = 0; x <= maxX; x++) {
-				final double value = inputRef.getRealDouble();
-				outputRef.setReal(value);
-				if (x != maxX) {
-					input.move(1, 0);
-					output.move(1, 0);
-				}
-			}
-			if (y != maxY) {
-				input.move(-maxX, 0);
-				output.move(-maxX, 0);
-				input.move(1, 1);
-				output.move(1, 1);
-			}
-		}
-		final ArrayDataAccess<?> store =
-			(ArrayDataAccess<?>) container.update(null);
-		return store.getCurrentStorageArray();
+		return new ImgCopier(getContext()).copyPlane(imgPlus, planeNum);
 	}
 
 	/** Makes an image that has same type, container, and dimensions as refImage. */
@@ -734,8 +737,31 @@ private <T extends RealType<?>> ImgPlus<T> wrapAsImgPlus(
 		return new ImgPlus<T>(newImg, getName(), axes, calib);
 	}
 
+	/** Returns the interval spanned by the given plane. */
+	private Interval planeInterval(final int planeNum) {
+		final long[] min = new long[numDimensions()];
+		final long[] max = new long[numDimensions()];
+		if (min.length > 2) {
+			final long[] planeDims = new long[min.length - 2];
+			for (int i = 0; i < planeDims.length; i++) {
+				planeDims[i] = dimension(i + 2);
+			}
+			final Position pos = new Extents(planeDims).createPosition();
+			pos.setIndex(planeNum);
+			for (int i = 2; i < min.length; i++) {
+				min[i] = max[i] = pos.getLongPosition(i - 2);
+			}
+		}
+		for (int i = 0; i < min.length && i < 2; i++) {
+			max[i] = dimension(i) - 1;
+		}
+		return new FinalInterval(min, max);
+	}
+
 	private void update(boolean metadataOnly) {
-		setDirty(true);
+		// NB - the modification count only tracks changes of the sample data
+		if (metadataOnly) isDirty = true;
+		else setDirty(true);
 		publish(new DatasetUpdatedEvent(this, metadataOnly));
 	}
 
@@ -35,8 +35,19 @@
 
 package imagej.data;
 
+import imagej.data.cache.CachedPlanarImg;
+import imagej.data.cache.CachedPlanarImgFactory;
+import imagej.data.cache.PlaneCache;
+import imagej.data.cow.CopyOnWriteStats;
+import imagej.data.cow.PlaneSharer;
 import imagej.data.display.DataView;
 import imagej.data.display.ImageDisplay;
+import imagej.data.event.DatasetDeletedEvent;
+import imagej.data.memory.MemoryService;
+import imagej.data.nio.BufferPlanarImg;
+import imagej.data.nio.BufferPlanarImgFactory;
+import imagej.data.options.OptionsCaching;
+import imagej.options.OptionsService;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -44,6 +55,7 @@
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.ImgPlus;
+import net.imglib2.img.planar.PlanarImg;
 import net.imglib2.img.planar.PlanarImgFactory;
 import net.imglib2.meta.AxisType;
 import net.imglib2.type.NativeType;
@@ -60,6 +72,8 @@
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
 
+import org.scijava.event.EventHandler;
+import org.scijava.log.LogService;
 import org.scijava.object.ObjectService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
@@ -76,9 +90,19 @@ public final class DefaultDatasetService extends AbstractService implements
 	DatasetService
 {
 
+	private static final int DEFAULT_DISK_CACHE_THRESHOLD = 50;
+	private static final int DEFAULT_PLANE_CACHE_SIZE = 25;
+
 	@Parameter
 	private ObjectService objectService;
 
+	@Parameter
+	private LogService log;
+
+	private PlaneCache planeCache;
+
+	private final CopyOnWriteStats copyOnWriteStats = new CopyOnWriteStats();
+
 	// -- DatasetService methods --
 
 	@Override
@@ -149,18 +173,82 @@ public Dataset create(final long[] dims, final String name,
 	public <T extends RealType<T> & NativeType<T>> Dataset create(
 		final T type, final long[] dims, final String name, final AxisType[] axes)
 	{
+		if (isDiskCacheRecommended(type, dims)) {
+			return createDiskCached(type, dims, name, axes);
+		}
+		// NB: the storage only depends on the size of the dataset itself; a
+		// budget miss reclaims caches and is logged, but stays on the heap
 		final PlanarImgFactory<T> imgFactory = new PlanarImgFactory<T>();
 		return create(imgFactory, type, dims, name, axes);
 	}
 
+	@Override
+	public <T extends RealType<T> & NativeType<T>> Dataset createDiskCached(
+		final T type, final long[] dims, final String name, final AxisType[] axes)
+	{
+		final CachedPlanarImgFactory<T> imgFactory =
+			new CachedPlanarImgFactory<T>(getPlaneCache());
+		return create(imgFactory, type, dims, name, axes);
+	}
+
+	@Override
+	public <T extends RealType<T> & NativeType<T>> Dataset createOffHeap(
+		final T type, final long[] dims, final String name,
+		final AxisType[] axes, final boolean mapped)
+	{
+		final BufferPlanarImgFactory<T> imgFactory =
+			new BufferPlanarImgFactory<T>(mapped);
+		return create(imgFactory, type, dims, name, axes);
+	}
+
+	@Override
+	public boolean isDiskCacheRecommended(final RealType<?> type,
+		final long[] dims)
+	{
+		// NB: same estimate as Dataset.getBytesOfInfo()
+		double bytes = type.getBitsPerPixel() / 8.0;
+		for (final long dim : dims)
+			bytes *= dim;
+		final OptionsCaching options = getOptions();
+		final int threshold =
+			options == null ? DEFAULT_DISK_CACHE_THRESHOLD : options
+				.getDiskCacheThreshold();
+		return bytes > Runtime.getRuntime().maxMemory() * threshold / 100.0;
+	}
+
+	@Override
+	public synchronized PlaneCache getPlaneCache() {
+		final OptionsCaching options = getOptions();
+		final int percent =
+			options == null ? DEFAULT_PLANE_CACHE_SIZE : options
+				.getPlaneCacheSize();
+		final long maxBytes = Runtime.getRuntime().maxMemory() / 100 * percent;
+		if (planeCache == null) {
+			planeCache = new PlaneCache(maxBytes);
+			final MemoryService memoryService = getMemoryService();
+			if (memoryService != null) memoryService.addEvictable(planeCache);
+		}
+		else if (planeCache.getMaximumBytes() != maxBytes) {
+			planeCache.setMaximumBytes(maxBytes);
+		}
+		return planeCache;
+	}
+
+	@Override
+	public CopyOnWriteStats getCopyOnWriteStats() {
+		return copyOnWriteStats;
+	}
+
 	@Override
 	public <T extends RealType<T>> Dataset create(
 		final ImgFactory<T> factory, final T type, final long[] dims,
 		final String name, final AxisType[] axes)
 	{
-		final Img<T> img = factory.create(dims, type);
-		final ImgPlus<T> imgPlus = new ImgPlus<T>(img, name, axes, null);
-		return create(imgPlus);
+		if (isOnHeap(factory) && !reserve(type, dims)) {
+			log.warn("Creating " + name + " exceeds the memory budget, " +
+				"even after reclaiming caches");
+		}
+		return createDataset(factory, type, dims, name, axes);
 	}
 
 	@Override
@@ -169,8 +257,74 @@ public <T extends RealType<T>> Dataset create(final ImgPlus<T> imgPlus)
 		return new DefaultDataset(getContext(), imgPlus);
 	}
 
+	// -- Event handlers --
+
+	/**
+	 * Releases the backing files and shared planes of datasets which are
+	 * deleted.
+	 */
+	@EventHandler
+	protected void onEvent(final DatasetDeletedEvent event) {
+		final Img<?> img = event.getObject().getImgPlus().getImg();
+		new PlaneSharer(copyOnWriteStats).detach(img);
+		if (img instanceof CachedPlanarImg) {
+			((CachedPlanarImg<?, ?>) img).dispose();
+		}
+		else if (img instanceof BufferPlanarImg) {
+			((BufferPlanarImg<?, ?>) img).dispose();
+		}
+	}
+
 	// -- Helper methods --
 
+	private <T extends RealType<T>> Dataset createDataset(
+		final ImgFactory<T> factory, final T type, final long[] dims,
+		final String name, final AxisType[] axes)
+	{
+		final Img<T> img = factory.create(dims, type);
+		// nothing has seen the new planes yet, so they can be shared later on
+		final PlaneSharer sharer = new PlaneSharer(copyOnWriteStats);
+		if (sharer.isSupported(img)) sharer.adopt((PlanarImg<?, ?>) img);
+		final ImgPlus<T> imgPlus = new ImgPlus<T>(img, name, axes, null);
+		return create(imgPlus);
+	}
+
+	/**
+	 * Returns true if images of the given factory are held on the heap. Disk
+	 * cached planes go through the plane cache, and off-heap planes do not count
+	 * against the heap at all.
+	 */
+	private boolean isOnHeap(final ImgFactory<?> factory) {
+		return !(factory instanceof CachedPlanarImgFactory) &&
+			!(factory instanceof BufferPlanarImgFactory);
+	}
+
+	/**
+	 * Asks the memory service to make room for a new heap image.
+	 * 
+	 * @return false if the image does not fit within the memory budget.
+	 */
+	private boolean reserve(final RealType<?> type, final long[] dims) {
+		final MemoryService memoryService = getMemoryService();
+		if (memoryService == null) return true;
+		// NB: same estimate as Dataset.getBytesOfInfo()
+		double bytes = type.getBitsPerPixel() / 8.0;
+		for (final long dim : dims)
+			bytes *= dim;
+		return memoryService.reserve((long) bytes);
+	}
+
+	private MemoryService getMemoryService() {
+		return getContext().getService(MemoryService.class);
+	}
+
+	private OptionsCaching getOptions() {
+		final OptionsService optionsService =
+			getContext().getService(OptionsService.class);
+		if (optionsService == null) return null;
+		return optionsService.getOptions(OptionsCaching.class);
+	}
+
 	private void invalidParams(final int bitsPerPixel,
 		final boolean signed, final boolean floating)
 	{
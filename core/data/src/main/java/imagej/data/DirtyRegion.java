@@ -0,0 +1,198 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+
+/**
+ * Records which parts of a {@link Dataset} have changed. A region is a small
+ * list of {@link Interval}s: intervals which span the same non-XY range (i.e.,
+ * touch the same planes) are merged into their XY bounding box, so a region
+ * stays compact even when it is built up one pixel at a time. Once too many
+ * distinct plane ranges accumulate, everything is merged into a single bounding
+ * interval.
+ */
+public class DirtyRegion {
+
+	/** Maximum number of intervals kept before they are merged together. */
+	private static final int MAX_INTERVALS = 32;
+
+	private final List<long[]> mins = new ArrayList<long[]>();
+	private final List<long[]> maxes = new ArrayList<long[]>();
+
+	/** Creates an empty region. */
+	public DirtyRegion() {
+		// nothing to do
+	}
+
+	/** Creates a region covering the given interval. */
+	public DirtyRegion(final Interval interval) {
+		add(interval);
+	}
+
+	// -- DirtyRegion methods --
+
+	/** Adds the given interval to the region. */
+	public void add(final Interval interval) {
+		final long[] min = new long[interval.numDimensions()];
+		final long[] max = new long[interval.numDimensions()];
+		interval.min(min);
+		interval.max(max);
+		add(min, max);
+	}
+
+	/** Adds the given (inclusive) bounds to the region. */
+	public void add(final long[] min, final long[] max) {
+		if (min.length != max.length) {
+			throw new IllegalArgumentException("Dimensionality mismatch");
+		}
+		for (int i = 0; i < mins.size(); i++) {
+			final long[] mn = mins.get(i);
+			final long[] mx = maxes.get(i);
+			if (mn.length != min.length) {
+				throw new IllegalArgumentException("Dimensionality mismatch");
+			}
+			if (samePlanes(mn, mx, min, max)) {
+				union(mn, mx, min, max);
+				return;
+			}
+		}
+		mins.add(min.clone());
+		maxes.add(max.clone());
+		if (mins.size() > MAX_INTERVALS) collapse();
+	}
+
+	/** Adds all intervals of the given region to this one. */
+	public void add(final DirtyRegion region) {
+		for (int i = 0; i < region.mins.size(); i++) {
+			add(region.mins.get(i), region.maxes.get(i));
+		}
+	}
+
+	/** Removes all intervals from the region. */
+	public void clear() {
+		mins.clear();
+		maxes.clear();
+	}
+
+	/** Returns true if the region contains no intervals. */
+	public boolean isEmpty() {
+		return mins.isEmpty();
+	}
+
+	/** Returns the intervals making up the region. */
+	public List<Interval> getIntervals() {
+		final List<Interval> intervals = new ArrayList<Interval>(mins.size());
+		for (int i = 0; i < mins.size(); i++) {
+			intervals.add(new FinalInterval(mins.get(i), maxes.get(i)));
+		}
+		return Collections.unmodifiableList(intervals);
+	}
+
+	/**
+	 * Returns the XY bounding box of the changes lying in the plane at the given
+	 * position, or null if none of the region touches that plane.
+	 * 
+	 * @param position The plane position. Only dimensions 2 and up are used.
+	 * @param ignoredDim A dimension whose position should not be considered
+	 *          (e.g., the channel dimension when channels are composited), or
+	 *          -1 to consider all of them.
+	 */
+	public Interval getPlaneBounds(final long[] position, final int ignoredDim)
+	{
+		long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE;
+		long maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+		for (int i = 0; i < mins.size(); i++) {
+			final long[] mn = mins.get(i);
+			final long[] mx = maxes.get(i);
+			if (!containsPlane(mn, mx, position, ignoredDim)) continue;
+			if (mn[0] < minX) minX = mn[0];
+			if (mn[1] < minY) minY = mn[1];
+			if (mx[0] > maxX) maxX = mx[0];
+			if (mx[1] > maxY) maxY = mx[1];
+		}
+		if (minX > maxX || minY > maxY) return null;
+		return new FinalInterval(new long[] { minX, minY },
+			new long[] { maxX, maxY });
+	}
+
+	// -- Helper methods --
+
+	private boolean samePlanes(final long[] mn1, final long[] mx1,
+		final long[] mn2, final long[] mx2)
+	{
+		for (int d = 2; d < mn1.length; d++) {
+			if (mn1[d] != mn2[d] || mx1[d] != mx2[d]) return false;
+		}
+		return true;
+	}
+
+	private boolean containsPlane(final long[] mn, final long[] mx,
+		final long[] position, final int ignoredDim)
+	{
+		for (int d = 2; d < mn.length && d < position.length; d++) {
+			if (d == ignoredDim) continue;
+			if (position[d] < mn[d] || position[d] > mx[d]) return false;
+		}
+		return true;
+	}
+
+	private void union(final long[] mn, final long[] mx, final long[] min,
+		final long[] max)
+	{
+		for (int d = 0; d < mn.length; d++) {
+			if (min[d] < mn[d]) mn[d] = min[d];
+			if (max[d] > mx[d]) mx[d] = max[d];
+		}
+	}
+
+	private void collapse() {
+		final long[] mn = mins.get(0);
+		final long[] mx = maxes.get(0);
+		for (int i = 1; i < mins.size(); i++) {
+			union(mn, mx, mins.get(i), maxes.get(i));
+		}
+		clear();
+		mins.add(mn);
+		maxes.add(mx);
+	}
+
+}
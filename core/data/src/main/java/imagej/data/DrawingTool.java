@@ -76,6 +76,9 @@ public class DrawingTool {
 
 	private TextRenderer textRenderer;
 
+	private final DirtyRegion dirtyRegion = new DirtyRegion();
+	private long dirtyMinU, dirtyMinV, dirtyMaxU, dirtyMaxV;
+
 	// -- constructor --
 
 	/**
@@ -96,6 +99,7 @@ public DrawingTool(final Dataset ds, RenderingService service) {
 		this.v0 = 0;
 		this.preferredChannel = -1;
 		initAxisVariables();
+		resetDirtyBounds();
 	}
 
 	// -- public interface --
@@ -111,6 +115,7 @@ public DrawingTool(final Dataset ds, RenderingService service) {
 	 * @param channelNumber
 	 */
 	public void setPreferredChannel(long channelNumber) {
+		flushDirtyBounds();
 		if (channelNumber > 0) {
 			boolean invalid = channelAxis < 0;
 			if (!invalid)
@@ -130,6 +135,7 @@ public Dataset getDataset() {
 	/** Sets the U axis index this DrawingTool will work in. */
 	public void setUAxis(final int axisNum) {
 		checkAxisValid(axisNum);
+		flushDirtyBounds();
 		uAxis = axisNum;
 		maxU = dataset.dimension(uAxis) - 1;
 	}
@@ -142,6 +148,7 @@ public int getUAxis() {
 	/** Sets the V axis index this DrawingTool will work in. */
 	public void setVAxis(final int axisNum) {
 		checkAxisValid(axisNum);
+		flushDirtyBounds();
 		vAxis = axisNum;
 		maxV = dataset.dimension(vAxis) - 1;
 	}
@@ -157,6 +164,7 @@ public int getVAxis() {
 	 * drawing plane position quickly. Also useful when changing U or V axes.
 	 */
 	public void setPosition(final long[] position) {
+		flushDirtyBounds();
 		accessor.setPosition(position);
 	}
 
@@ -174,6 +182,26 @@ public void setChannels(ChannelCollection chans) {
 		channels = chans;
 	}
 
+	/**
+	 * Gets the region of the {@link Dataset} drawn into since this DrawingTool
+	 * was created or since the last call to {@link #resetDirtyRegion()}. Pass it
+	 * to {@link Dataset#update(DirtyRegion)} so displays only refresh what was
+	 * actually drawn. Drawing itself does not mark the dataset as modified; that
+	 * update counts as the single modification of the whole stroke.
+	 */
+	public DirtyRegion getDirtyRegion() {
+		flushDirtyBounds();
+		final DirtyRegion region = new DirtyRegion();
+		region.add(dirtyRegion);
+		return region;
+	}
+
+	/** Forgets the region drawn into so far. */
+	public void resetDirtyRegion() {
+		resetDirtyBounds();
+		dirtyRegion.clear();
+	}
+
 	/**
 	 * Sets the current drawing line width. This affects how other methods draw
 	 * such as lines, circles, dots, etc.
@@ -288,7 +316,10 @@ public void drawPixel(final long u, final long v) {
 				accessor.get().setReal(value);
 			}
 		}
-		dataset.setDirty(true);
+		if (u < dirtyMinU) dirtyMinU = u;
+		if (u > dirtyMaxU) dirtyMaxU = u;
+		if (v < dirtyMinV) dirtyMinV = v;
+		if (v > dirtyMaxV) dirtyMaxV = v;
 	}
 
 	/**
@@ -493,6 +524,38 @@ private void initAxisVariables() {
 		maxV = dataset.dimension(vAxis) - 1;
 	}
 
+	private void resetDirtyBounds() {
+		dirtyMinU = dirtyMinV = Long.MAX_VALUE;
+		dirtyMaxU = dirtyMaxV = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Adds the UV bounds drawn into at the current position to the dirty region.
+	 * Called before anything changes the meaning of those bounds.
+	 */
+	private void flushDirtyBounds() {
+		if (dirtyMinU > dirtyMaxU) return;
+		final long[] min = new long[accessor.numDimensions()];
+		final long[] max = new long[accessor.numDimensions()];
+		accessor.localize(min);
+		accessor.localize(max);
+		min[uAxis] = dirtyMinU;
+		max[uAxis] = dirtyMaxU;
+		min[vAxis] = dirtyMinV;
+		max[vAxis] = dirtyMaxV;
+		if (channelAxis != -1) {
+			if (preferredChannel >= 0) {
+				min[channelAxis] = max[channelAxis] = preferredChannel;
+			}
+			else {
+				min[channelAxis] = 0;
+				max[channelAxis] = dataset.dimension(channelAxis) - 1;
+			}
+		}
+		dirtyRegion.add(min, max);
+		resetDirtyBounds();
+	}
+
 	private void checkAxisValid(final int axisNum) {
 		if (axisNum == channelAxis) {
 			throw new IllegalArgumentException("DrawingTool misconfiguration. "
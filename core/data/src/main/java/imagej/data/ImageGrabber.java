@@ -36,21 +36,30 @@
 package imagej.data;
 
 import imagej.data.display.DatasetView;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.display.ARGBScreenImage;
-import net.imglib2.img.ImgPlus;
 import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 
 /**
  * An {@link ImageGrabber} creates a merged color {@link Dataset} from a
  * {@link DatasetView}. Note that it does not include overlay graphics.
+ * <p>
+ * ARGB pixels are unpacked row by row, straight into the red, green and blue
+ * plane arrays when the {@link Dataset} is planar, with bands of rows
+ * processed in parallel. The pixels can also be unpacked into a plane of an
+ * existing {@link Dataset}, e.g. one frame of a movie being exported.
+ * </p>
  * 
  * @author Barry DeZonia
  */
 public class ImageGrabber {
 	private final DatasetService service;
+	private ParallelLoop loop;
 
 	/**
 	 * Constructs an {@link ImageGrabber} for a given (@link DatasetService}. The
@@ -65,35 +74,173 @@ public ImageGrabber(DatasetService service) {
 	 * method uses the provided String name for the output {@link Dataset}.
 	 */
 	public Dataset grab(DatasetView view, String outputName) {
-		ARGBScreenImage screenImage = view.getScreenImage();
-		long[] dims = new long[3];
-		screenImage.dimensions(dims);  // fill X count & Y count
-		dims[2] = 3;  // fill CHANNEL count
+		// NB: fetch the screen image only once it is projected
+		view.ensureProjected(getPlaneBounds(view));
+		ARGBScreenImage screenImage;
+		int[] argbPixels;
+		// NB: copy the frame, so that it is not held while the dataset is created
+		synchronized (view.getFrameLock()) {
+			screenImage = view.getScreenImage();
+			argbPixels = screenImage.getData().clone();
+		}
+		return grab(argbPixels, (int) screenImage.dimension(0),
+			(int) screenImage.dimension(1), outputName);
+	}
+
+	/**
+	 * Creates a merged color {@link Dataset} from packed ARGB pixels, stored row
+	 * by row. The alpha channel is ignored.
+	 */
+	public Dataset grab(int[] argbPixels, int width, int height,
+		String outputName)
+	{
+		long[] dims = new long[] { width, height, 3 };
 		if (dims[0] * dims[1] > Integer.MAX_VALUE)
 			throw new IllegalArgumentException("image is too big to fit into memory");
-		int xSize = (int) dims[0];
-		int ySize = (int) dims[1];
-		int[] argbPixels = view.getScreenImage().getData();
 		Dataset dataset = 
 				service.create(new UnsignedByteType(), dims, outputName,
-												new Axes[]{Axes.X, Axes.Y, Axes.CHANNEL});
-		ImgPlus<? extends RealType<?>> imgPlus = dataset.getImgPlus();
-		RandomAccess<? extends RealType<?>> accessor = imgPlus.randomAccess();
-		for (int x = 0; x < xSize; x++) {
-			accessor.setPosition(x, 0);
-			for (int y = 0; y < ySize; y++) {
+												new AxisType[]{Axes.X, Axes.Y, Axes.CHANNEL});
+		unpack(argbPixels, width, height, dataset);
+		dataset.setRGBMerged(true);
+		return dataset;
+	}
+
+	/**
+	 * Copies the current view of a {@link DatasetView} into a plane of an
+	 * existing {@link Dataset}; see
+	 * {@link #unpack(int[], int, int, Dataset, long...)}.
+	 */
+	public void grab(DatasetView view, Dataset target, long... position) {
+		// NB: fetch the screen image only once it is projected
+		view.ensureProjected(getPlaneBounds(view));
+		synchronized (view.getFrameLock()) {
+			ARGBScreenImage screenImage = view.getScreenImage();
+			unpack(screenImage.getData(), (int) screenImage.dimension(0),
+				(int) screenImage.dimension(1), target, position);
+		}
+	}
+
+	/**
+	 * Unpacks ARGB pixels, stored row by row, into the red, green and blue
+	 * channels of an existing {@link Dataset}. The target must have the same X
+	 * and Y dimensions as the pixels and at least 3 channels. No update event
+	 * is published; callers should call {@link Dataset#update()} when done.
+	 * 
+	 * @param position The position of the plane along the target's dimensions
+	 *          other than X, Y and CHANNEL, in order. May be omitted when there
+	 *          are no such dimensions.
+	 * @throws IllegalArgumentException if the target does not fit the pixels,
+	 *           or the position does not name one of its planes.
+	 */
+	public void unpack(final int[] argbPixels, final int width,
+		final int height, final Dataset target, final long... position)
+	{
+		final int xIndex = target.getAxisIndex(Axes.X);
+		final int yIndex = target.getAxisIndex(Axes.Y);
+		final int cIndex = target.getAxisIndex(Axes.CHANNEL);
+		if (xIndex != 0 || yIndex != 1 || cIndex < 2) {
+			throw new IllegalArgumentException(
+				"target must have X, Y and CHANNEL axes, in that order");
+		}
+		if (target.dimension(0) != width || target.dimension(1) != height ||
+			target.dimension(cIndex) < 3)
+		{
+			throw new IllegalArgumentException("target dimensions do not match");
+		}
+		if (position.length != target.numDimensions() - 3) {
+			throw new IllegalArgumentException("expected " +
+				(target.numDimensions() - 3) + " position values but got " +
+				position.length);
+		}
+
+		// compute the full position of each channel plane
+		final long[][] planePos = new long[3][target.numDimensions()];
+		final int[] planeNumbers = new int[3];
+		for (int c = 0; c < 3; c++) {
+			int p = 0;
+			long planeNumber = 0, stride = 1;
+			for (int d = 2; d < planePos[c].length; d++) {
+				planePos[c][d] = d == cIndex ? c : position[p++];
+				if (planePos[c][d] < 0 || planePos[c][d] >= target.dimension(d)) {
+					throw new IllegalArgumentException("position out of bounds");
+				}
+				planeNumber += planePos[c][d] * stride;
+				stride *= target.dimension(d);
+			}
+			planeNumbers[c] = (int) planeNumber;
+		}
+
+		final byte[][] planes = new byte[3][];
+		for (int c = 0; c < 3; c++) {
+			final Object plane = target.getPlane(planeNumbers[c], false);
+			if (plane instanceof byte[]) planes[c] = (byte[]) plane;
+		}
+		final boolean direct =
+			planes[0] != null && planes[1] != null && planes[2] != null;
+
+		getLoop().run(height, new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				if (direct) {
+					unpackRows(argbPixels, width, planes, (int) start, (int) end);
+				}
+				else {
+					unpackRows(argbPixels, width, target, planePos, (int) start,
+						(int) end);
+				}
+			}
+		});
+	}
+
+	// -- Helper methods --
+
+	/** Gets the XY bounds of the whole plane shown by the given view. */
+	private static Interval getPlaneBounds(DatasetView view) {
+		return new FinalInterval(new long[] { 0, 0 }, new long[] {
+			view.getPreferredWidth() - 1, view.getPreferredHeight() - 1 });
+	}
+
+	private ParallelLoop getLoop() {
+		if (loop == null) loop = new ParallelLoop(service.getContext());
+		return loop;
+	}
+
+	/** Unpacks the given rows straight into 8-bit plane arrays. */
+	private void unpackRows(final int[] argbPixels, final int width,
+		final byte[][] planes, final int startRow, final int endRow)
+	{
+		final byte[] r = planes[0], g = planes[1], b = planes[2];
+		for (int i = startRow * width; i < endRow * width; i++) {
+			final int pixel = argbPixels[i];
+			r[i] = (byte) (pixel >> 16);
+			g[i] = (byte) (pixel >> 8);
+			b[i] = (byte) pixel;
+		}
+	}
+
+	/**
+	 * Unpacks the given rows through a {@link RandomAccess}, for targets whose
+	 * planes are not 8-bit arrays.
+	 */
+	private void unpackRows(final int[] argbPixels, final int width,
+		final Dataset target, final long[][] planePos, final int startRow,
+		final int endRow)
+	{
+		final RandomAccess<? extends RealType<?>> accessor =
+			target.getImgPlus().randomAccess();
+		for (int c = 0; c < 3; c++) {
+			final int shift = 8 * (2 - c);
+			accessor.setPosition(planePos[c]);
+			for (int y = startRow; y < endRow; y++) {
+				accessor.setPosition(0, 0);
 				accessor.setPosition(y, 1);
-				int index = y*xSize + x; 
-				int pixel = argbPixels[index];
-				accessor.setPosition(0, 2);
-				accessor.get().setReal((pixel >> 16) & 0xff);
-				accessor.setPosition(1, 2);
-				accessor.get().setReal((pixel >>  8) & 0xff);
-				accessor.setPosition(2, 2);
-				accessor.get().setReal((pixel >>  0) & 0xff);
+				int index = y * width;
+				for (int x = 0; x < width; x++) {
+					accessor.get().setReal((argbPixels[index++] >> shift) & 0xff);
+					accessor.fwd(0);
+				}
 			}
 		}
-		dataset.setRGBMerged(true);
-		return dataset;
 	}
 }
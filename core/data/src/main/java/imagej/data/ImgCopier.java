@@ -0,0 +1,372 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data;
+
+import imagej.data.cache.CachedPlanarImg;
+import imagej.data.cache.PlaneBuffers;
+import imagej.data.cache.TrackedAccess;
+import imagej.data.cow.CopyOnWriteAccess;
+
+import java.lang.reflect.Array;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.NativeImgFactory;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.PlanarAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+import org.scijava.Context;
+
+/**
+ * Copies sample values between {@link Img}s. When both images are backed by
+ * {@link PlanarAccess} (or are both {@link ArrayImg}s) and share the same pixel
+ * type and dimensions, the underlying primitive arrays are copied directly with
+ * {@link System#arraycopy}, spreading the planes across several threads. Other
+ * containers fall back to copying the values one pixel at a time.
+ */
+public class ImgCopier {
+
+	private final ParallelLoop loop;
+
+	public ImgCopier(final Context context) {
+		this(new ParallelLoop(context));
+	}
+
+	public ImgCopier(final ParallelLoop loop) {
+		this.loop = loop;
+	}
+
+	// -- ImgCopier methods --
+
+	/**
+	 * Copies all sample values of the input image into the output image. NB -
+	 * assumes the two images are of the exact same dimensions.
+	 */
+	public void copy(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output)
+	{
+		final Img<?> in = unwrap(input);
+		final Img<?> out = unwrap(output);
+		if (isSameLayout(in, out)) {
+			if (in instanceof PlanarAccess && out instanceof PlanarAccess) {
+				copyPlanes(input, output);
+				return;
+			}
+			if (in instanceof ArrayImg && out instanceof ArrayImg &&
+				copyArray((ArrayImg<?, ?>) in, (ArrayImg<?, ?>) out))
+			{
+				return;
+			}
+		}
+		copyPixels(input, output);
+	}
+
+	/**
+	 * Copies all sample values of the input image into the output image one
+	 * pixel at a time, regardless of how the images are stored. NB - assumes the
+	 * two images are of the exact same dimensions.
+	 */
+	public void copyPixels(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output)
+	{
+		if (input.equalIterationOrder(output)) {
+			final Cursor<? extends RealType<?>> inputCursor = input.cursor();
+			final Cursor<? extends RealType<?>> outputCursor = output.cursor();
+			while (outputCursor.hasNext()) {
+				final double value = inputCursor.next().getRealDouble();
+				outputCursor.next().setReal(value);
+			}
+			return;
+		}
+		final long[] position = new long[output.numDimensions()];
+		final Cursor<? extends RealType<?>> outputCursor =
+			output.localizingCursor();
+		final RandomAccess<? extends RealType<?>> inputAccessor =
+			input.randomAccess();
+		while (outputCursor.hasNext()) {
+			outputCursor.next();
+			outputCursor.localize(position);
+			inputAccessor.setPosition(position);
+			final double value = inputAccessor.get().getRealDouble();
+			outputCursor.get().setReal(value);
+		}
+	}
+
+	/**
+	 * Creates a copy of the given plane of an image. The representation of the
+	 * plane is a primitive array as determined by the native ImgLib container
+	 * (even if the container holds its planes in off-heap buffers).
+	 * Returns null if the image's type is not a native type.
+	 */
+	public Object copyPlane(final Img<? extends RealType<?>> img,
+		final int planeNum)
+	{
+		final long w = img.dimension(0);
+		final long h = img.numDimensions() > 1 ? img.dimension(1) : 1;
+		if (w * h > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+				"Can't create an in memory plane of " + (w * h) +
+					" entities (MAX = " + Integer.MAX_VALUE + ")");
+		}
+		final Img<?> raw = unwrap(img);
+		if (raw instanceof PlanarAccess) {
+			final Object plane = ((PlanarAccess<?>) raw).getPlane(planeNum);
+			if (plane instanceof ArrayDataAccess) {
+				return PlaneBuffers.toArray(readStorage(plane));
+			}
+		}
+		if (raw instanceof ArrayImg) {
+			final Object storage = storage((ArrayImg<?, ?>) raw);
+			// NB - only possible when each pixel occupies exactly one element
+			if (storage != null && Array.getLength(storage) == raw.size()) {
+				final int planeSize = (int) (w * h);
+				return copyOfArray(storage, planeNum * planeSize, planeSize);
+			}
+		}
+		return copyPlanePixels(img, planeNum, w, h);
+	}
+
+	// -- Helper methods --
+
+	/** Copies the planes of two planar images across multiple threads. */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void copyPlanes(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output)
+	{
+		final PlanarAccess<?> in = (PlanarAccess<?>) unwrap(input);
+		final PlanarAccess<?> out = (PlanarAccess<?>) unwrap(output);
+		final long planeCount = planeCount(output);
+		loop.run(planeCount, new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				for (int p = (int) start; p < end; p++) {
+					final Object outPlane = out.getPlane(p);
+					if (!copyStorage(in.getPlane(p), outPlane)) {
+						copyPlaneValues(input, output, p);
+					}
+					else if (out instanceof CachedPlanarImg) {
+						// NB: hand the plane back so the cache knows it is dirty, even
+						// if it was evicted while being copied
+						((CachedPlanarImg) out).setPlane(p, (ArrayDataAccess) outPlane);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Copies the single storage array of one {@link ArrayImg} into another.
+	 * Returns false if the storage arrays are incompatible.
+	 */
+	private boolean copyArray(final ArrayImg<?, ?> input,
+		final ArrayImg<?, ?> output)
+	{
+		final Object src = storage(input);
+		final Object dest = storage(output);
+		if (!isSameArray(src, dest)) return false;
+		loop.run(Array.getLength(src), new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				System.arraycopy(src, (int) start, dest, (int) start,
+					(int) (end - start));
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Copies the primitive storage of one plane into another. The storage may be
+	 * primitive arrays or off-heap buffers. Returns false if the planes are not
+	 * array backed or their storage is incompatible.
+	 */
+	private boolean copyStorage(final Object inPlane, final Object outPlane) {
+		if (!(inPlane instanceof ArrayDataAccess)) return false;
+		if (!(outPlane instanceof ArrayDataAccess)) return false;
+		final Object src = readStorage(inPlane);
+		final Object dest =
+			PlaneBuffers.storage((ArrayDataAccess<?>) outPlane);
+		if (!PlaneBuffers.isCompatible(src, dest)) return false;
+		PlaneBuffers.copy(src, dest);
+		if (outPlane instanceof TrackedAccess) {
+			((TrackedAccess) outPlane).getWriteFlag().set();
+		}
+		return true;
+	}
+
+	/** Copies the values of a single plane pixel by pixel. */
+	private void copyPlaneValues(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output, final int planeNum)
+	{
+		final long[] position = planePosition(output, planeNum);
+		final RandomAccess<? extends RealType<?>> in = input.randomAccess();
+		final RandomAccess<? extends RealType<?>> out = output.randomAccess();
+		final long w = output.dimension(0);
+		final long h = output.numDimensions() > 1 ? output.dimension(1) : 1;
+		for (long y = 0; y < h; y++) {
+			if (position.length > 1) position[1] = y;
+			for (long x = 0; x < w; x++) {
+				position[0] = x;
+				in.setPosition(position);
+				out.setPosition(position);
+				out.get().setReal(in.get().getRealDouble());
+			}
+		}
+	}
+
+	/** Creates a copy of a plane pixel by pixel via an {@link ArrayImg}. */
+	private Object copyPlanePixels(final Img<? extends RealType<?>> img,
+		final int planeNum, final long w, final long h)
+	{
+		final RealType<?> type = img.firstElement();
+		// might not be able to get a copy of native data
+		if (!(type instanceof NativeType<?>)) return null;
+		final NativeType<?> nativeType = (NativeType<?>) type;
+		@SuppressWarnings("rawtypes")
+		final NativeImgFactory storageFactory = new ArrayImgFactory();
+		@SuppressWarnings("unchecked")
+		final ArrayImg<?, ?> container =
+			(ArrayImg<?, ?>) nativeType.createSuitableNativeImg(storageFactory,
+				new long[] { w, h });
+		final RandomAccess<? extends RealType<?>> input = img.randomAccess();
+		@SuppressWarnings("unchecked")
+		final RandomAccess<? extends RealType<?>> output =
+			(RandomAccess<? extends RealType<?>>) container.randomAccess();
+		final long[] inputPos = planePosition(img, planeNum);
+		input.setPosition(inputPos);
+		output.setPosition(new long[2]);
+		final RealType<?> inputRef = input.get();
+		final RealType<?> outputRef = output.get();
+		final int maxX = (int) (w - 1);
+		final int maxY = (int) (h - 1);
+		for (int y = 0; y <= maxY; y++) {
+			for (int x = 0; x <= maxX; x++) {
+				final double value = inputRef.getRealDouble();
+				outputRef.setReal(value);
+				if (x != maxX) {
+					input.move(1, 0);
+					output.move(1, 0);
+				}
+			}
+			if (y != maxY) {
+				input.move(-maxX, 0);
+				output.move(-maxX, 0);
+				input.move(1, 1);
+				output.move(1, 1);
+			}
+		}
+		return storage(container);
+	}
+
+	/** Gets the position of the origin of the given plane of an image. */
+	private long[] planePosition(final Img<?> img, final int planeNum) {
+		final long[] position = new long[img.numDimensions()];
+		if (position.length <= 2) return position;
+		final long[] planeIndexSpans = new long[position.length - 2];
+		for (int i = 0; i < planeIndexSpans.length; i++)
+			planeIndexSpans[i] = img.dimension(i + 2);
+		final Extents planeExtents = new Extents(planeIndexSpans);
+		final long[] planePos = new long[planeExtents.numDimensions()];
+		final Position pos = planeExtents.createPosition();
+		pos.setIndex(planeNum);
+		pos.localize(planePos);
+		for (int i = 2; i < position.length; i++)
+			position[i] = planePos[i - 2];
+		return position;
+	}
+
+	private long planeCount(final Img<?> img) {
+		long count = 1;
+		for (int d = 2; d < img.numDimensions(); d++)
+			count *= img.dimension(d);
+		return count;
+	}
+
+	private boolean isSameLayout(final Img<?> in, final Img<?> out) {
+		if (in.numDimensions() != out.numDimensions()) return false;
+		for (int d = 0; d < in.numDimensions(); d++) {
+			if (in.dimension(d) != out.dimension(d)) return false;
+		}
+		return in.firstElement().getClass() == out.firstElement().getClass();
+	}
+
+	private boolean isSameArray(final Object src, final Object dest) {
+		if (src == null || dest == null) return false;
+		if (src.getClass() != dest.getClass()) return false;
+		return Array.getLength(src) == Array.getLength(dest);
+	}
+
+	/**
+	 * Gets the storage array of a plane which is only going to be read, without
+	 * unsharing it if it is a {@link CopyOnWriteAccess} or marking it modified
+	 * if it is a {@link TrackedAccess}.
+	 */
+	private Object readStorage(final Object plane) {
+		if (plane instanceof CopyOnWriteAccess) {
+			return ((CopyOnWriteAccess) plane).peekStorageArray();
+		}
+		return PlaneBuffers.storage((ArrayDataAccess<?>) plane);
+	}
+
+	private Object storage(final ArrayImg<?, ?> img) {
+		final Object access = img.update(null);
+		if (!(access instanceof ArrayDataAccess)) return null;
+		return ((ArrayDataAccess<?>) access).getCurrentStorageArray();
+	}
+
+	private Object copyOfArray(final Object src, final int offset,
+		final int length)
+	{
+		final Object dest =
+			Array.newInstance(src.getClass().getComponentType(), length);
+		System.arraycopy(src, offset, dest, 0, length);
+		return dest;
+	}
+
+	private Img<?> unwrap(final Img<?> img) {
+		if (img instanceof ImgPlus) return ((ImgPlus<?>) img).getImg();
+		return img;
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data;
+
+import imagej.command.CommandService;
+import imagej.options.OptionsService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.scijava.Context;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Splits a range of independent work items (such as the planes of an image)
+ * into contiguous chunks and processes the chunks concurrently via the
+ * {@link ThreadService}. The calling thread processes one chunk itself and
+ * then waits for the others to complete.
+ */
+public class ParallelLoop {
+
+	/** A unit of work operating on a contiguous range of items. */
+	public interface Chunk {
+
+		/** Processes the items from start (inclusive) to end (exclusive). */
+		void process(long start, long end);
+	}
+
+	private static final String MEMORY_AND_THREADS =
+		"imagej.core.options.OptionsMemoryAndThreads";
+
+	private final ThreadService threadService;
+	private final int threadCount;
+
+	/**
+	 * Creates a loop that uses the given context's {@link ThreadService} and the
+	 * default number of threads.
+	 */
+	public ParallelLoop(final Context context) {
+		this(context == null ? null : context.getService(ThreadService.class),
+			defaultThreadCount(context));
+	}
+
+	/**
+	 * Creates a loop that uses the given {@link ThreadService} and number of
+	 * threads. If the service is null all work is done on the calling thread.
+	 */
+	public ParallelLoop(final ThreadService threadService, final int threadCount)
+	{
+		this.threadService = threadService;
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	// -- ParallelLoop methods --
+
+	/** Gets the maximum number of chunks processed at the same time. */
+	public int getThreadCount() {
+		return threadService == null ? 1 : threadCount;
+	}
+
+	/**
+	 * Processes the items from 0 (inclusive) to count (exclusive), blocking until
+	 * all of them are done. Any exception thrown by a chunk is rethrown here.
+	 */
+	public void run(final long count, final Chunk chunk) {
+		if (count <= 0) return;
+		final int chunks = (int) Math.min(getThreadCount(), count);
+		if (chunks == 1) {
+			chunk.process(0, count);
+			return;
+		}
+		final long size = count / chunks;
+		final long remainder = count % chunks;
+		final List<Future<?>> futures = new ArrayList<Future<?>>();
+		long start = 0;
+		for (int i = 0; i < chunks - 1; i++) {
+			final long s = start;
+			final long e = s + size + (i < remainder ? 1 : 0);
+			futures.add(threadService.run(new Runnable() {
+
+				@Override
+				public void run() {
+					chunk.process(s, e);
+				}
+			}));
+			start = e;
+		}
+		chunk.process(start, count);
+		for (final Future<?> future : futures) {
+			await(future);
+		}
+	}
+
+	/**
+	 * Gets the number of threads to use when none is specified: the "Parallel
+	 * threads for stacks" setting of the Memory &amp; Threads options, if
+	 * available, or else the number of processors.
+	 */
+	public static int defaultThreadCount(final Context context) {
+		final int stackThreads = getStackThreads(context);
+		if (stackThreads > 0) return stackThreads;
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Reads the stack thread count from the options. NB: the options class
+	 * lives in a module ImageJ's data model does not depend on, so it is looked
+	 * up by name.
+	 */
+	private static int getStackThreads(final Context context) {
+		if (context == null) return 0;
+		final CommandService commandService =
+			context.getService(CommandService.class);
+		final OptionsService optionsService =
+			context.getService(OptionsService.class);
+		if (commandService == null || optionsService == null) return 0;
+		if (commandService.getCommand(MEMORY_AND_THREADS) == null) return 0;
+		final Object value =
+			optionsService.getOption(MEMORY_AND_THREADS, "stackThreads");
+		return value instanceof Integer ? (Integer) value : 0;
+	}
+
+	private void await(final Future<?> future) {
+		try {
+			future.get();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+}
@@ -35,27 +35,41 @@
 
 package imagej.data.animation;
 
+import imagej.data.display.DatasetView;
 import imagej.data.display.ImageDisplay;
+import imagej.data.display.ImageDisplayService;
+import imagej.data.display.ProjectedFrame;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
 
+import org.scijava.Context;
 import org.scijava.log.LogService;
+import org.scijava.thread.ThreadService;
 
 /**
  * The Animation class takes care of running an animation along an axis.
- * Multiple animations can be running concurrently. Each animation runs in its
- * own thread.
+ * Multiple animations can be running concurrently. Frames are shown by a
+ * {@link FrameScheduler}, which may be shared among many animations.
+ * <p>
+ * While running, the animation projects the next few frames ahead of time on
+ * worker threads (see {@link FramePrefetcher}), so that each step only has to
+ * show a ready-made frame.
+ * </p>
  * 
  * @author Barry DeZonia
  * @author Curtis Rueden
  */
-public class Animation implements Runnable {
+public class Animation {
 
 	private final ImageDisplay display;
 	private final LogService log;
 
-	private boolean active;
-	private Thread thread;
+	private FrameScheduler scheduler;
+	private final boolean ownScheduler;
+	private final FrameTiming timing = new FrameTiming();
+
+	private volatile boolean active;
+	private boolean running;
 
 	private AxisType axis;
 	private long first;
@@ -64,12 +78,33 @@ public class Animation implements Runnable {
 	private boolean backAndForth;
 
 	private long increment = 1;
-	private long delta = 1;
-	private boolean isRelative = true;
 
-	/** Creates an animation for the given {@link ImageDisplay}. */
+	/** Number of frames to project ahead of time; 0 disables prefetching. */
+	private int prefetchCount = 4;
+	private FramePrefetcher prefetcher;
+	private DatasetView view;
+
+	private long frameCount;
+	private long startTime, stopTime;
+	private long prefetchHits, prefetchMisses;
+
+	/**
+	 * Creates an animation for the given {@link ImageDisplay}, driven by a
+	 * scheduler of its own.
+	 */
 	public Animation(final ImageDisplay display) {
+		this(display, null);
+	}
+
+	/**
+	 * Creates an animation for the given {@link ImageDisplay}, driven by the
+	 * given {@link FrameScheduler}.
+	 */
+	public Animation(final ImageDisplay display, final FrameScheduler scheduler)
+	{
 		this.display = display;
+		this.scheduler = scheduler;
+		ownScheduler = scheduler == null;
 		log = display.getContext().getService(LogService.class);
 
 		// assign default animation options
@@ -97,23 +132,42 @@ else if (display.getAxisIndex(Axes.Z) >= 0) {
 	public void start() {
 		if (axis == null) return; // no axis over which to animate
 		active = true;
-		if (thread == null) {
-			thread = new Thread(this);
-			thread.start();
+		if (!running) {
+			running = true;
+			createPrefetcher();
+			frameCount = 0;
+			prefetchHits = prefetchMisses = 0;
+			timing.reset();
+			startTime = System.nanoTime();
+			stopTime = 0;
+			if (scheduler == null) scheduler = new FrameScheduler(log);
+			scheduler.add(this);
 		}
 	}
 
 	/** Stops the animation. */
 	public void stop() {
 		active = false;
-		if (thread != null) {
-			try {
-				thread.join();
+		if (running) {
+			running = false;
+			scheduler.remove(this);
+			if (ownScheduler) {
+				scheduler.dispose();
+				scheduler = null;
+			}
+			// NB: wait for a frame which is already being shown
+			synchronized (this) {
+				stopTime = System.nanoTime();
 			}
-			catch (final InterruptedException exc) {
-				log.error("Error stopping animation", exc);
+			if (prefetcher != null) {
+				prefetcher.clear();
+				prefetchHits = prefetcher.getHits();
+				prefetchMisses = prefetcher.getMisses();
+				prefetcher = null;
 			}
-			thread = null;
+			log.debug(String.format("Animation achieved %.1f fps (%.1f requested), "
+				+ "prefetch hit rate %.0f%%, %s", getAchievedFPS(), fps,
+				100 * getPrefetchHitRate(), timing));
 		}
 	}
 
@@ -171,69 +225,127 @@ public void setBackAndForth(final boolean backAndForth) {
 		this.backAndForth = backAndForth;
 	}
 
-	// -- Runnable methods --
+	public int getPrefetchCount() {
+		return prefetchCount;
+	}
 
-	@Override
-	public void run() {
-		while (active) {
-			updatePosition();
-			try {
-				Thread.sleep((long) (1000 / fps));
-			}
-			catch (final InterruptedException e) {
-				// do nothing
+	/**
+	 * Sets how many upcoming frames are projected ahead of time. Takes effect
+	 * the next time the animation is started.
+	 */
+	public void setPrefetchCount(final int prefetchCount) {
+		this.prefetchCount = prefetchCount;
+	}
+
+	/**
+	 * Gets the frame rate actually achieved by the current (or last) run of the
+	 * animation.
+	 */
+	public double getAchievedFPS() {
+		final long end = stopTime == 0 ? System.nanoTime() : stopTime;
+		final double seconds = (end - startTime) / 1e9;
+		return seconds <= 0 ? 0 : frameCount / seconds;
+	}
+
+	/**
+	 * Gets the frame timing statistics of the current (or last) run of the
+	 * animation: how late its frames were shown, and how many were skipped.
+	 */
+	public FrameTiming getTiming() {
+		return timing;
+	}
+
+	/**
+	 * Gets the fraction of frames of the current (or last) run which had been
+	 * projected ahead of time, from 0 to 1.
+	 */
+	public double getPrefetchHitRate() {
+		final FramePrefetcher p = prefetcher;
+		if (p != null) return p.getHitRate();
+		final long total = prefetchHits + prefetchMisses;
+		return total == 0 ? 0 : (double) prefetchHits / total;
+	}
+
+	// -- Internal methods --
+
+	/**
+	 * Shows the next frame of the animation. Called by the {@link FrameScheduler}
+	 * when the frame is due.
+	 * 
+	 * @param steps How many positions to advance; more than one when frames are
+	 *          skipped to catch up.
+	 */
+	synchronized void frame(final long steps) {
+		if (!active) return;
+		long pos = display.getLongPosition(axis);
+		for (long i = 0; i < steps; i++) {
+			final long[] next = step(pos, increment);
+			pos = next[0];
+			increment = next[1];
+		}
+
+		final FramePrefetcher p = prefetcher;
+		if (p != null) {
+			final ProjectedFrame frame = p.take(pos);
+			if (frame != null) {
+				view.present(frame);
+				p.release(frame);
 			}
 		}
+		display.setPosition(pos, axis);
+		if (p != null) p.prefetch(upcoming(pos, increment));
+		frameCount++;
 	}
 
 	// -- Helper methods --
 
-	private synchronized void updatePosition() {
-		long currPos = display.getLongPosition(axis);
-
+	/**
+	 * Computes the position following the given one, honoring the first/last
+	 * range and the back-and-forth mode.
+	 * 
+	 * @return The next position, and the increment to apply after it.
+	 */
+	private long[] step(final long pos, final long inc) {
+		if (first >= last) return new long[] { first, inc };
 		// reached right end
-		if (increment > 0 && currPos == last) {
-			if (!backAndForth) {
-				isRelative = false;
-				delta = first;
-				currPos = first;
-			}
-			else {
-				increment = -increment;
-				isRelative = true;
-				delta = -1;
-				currPos--;
-			}
+		if (inc > 0 && pos >= last) {
+			if (!backAndForth) return new long[] { first, inc };
+			return new long[] { last - 1, -inc };
 		}
 		// reached left end
-		else if (increment < 0 && currPos == first) {
-			if (!backAndForth) {
-				isRelative = false;
-				delta = last;
-				currPos = last;
-			}
-			else {
-				increment = -increment;
-				isRelative = true;
-				delta = +1;
-				currPos++;
-			}
+		if (inc < 0 && pos <= first) {
+			if (!backAndForth) return new long[] { last, inc };
+			return new long[] { first + 1, -inc };
 		}
-		else { // somewhere in the middle
-			isRelative = true;
-			if (increment > 0) {
-				delta = +1;
-				currPos++;
-			}
-			else { // increment < 0
-				delta = -1;
-				currPos--;
-			}
+		// somewhere in the middle
+		return new long[] { inc > 0 ? pos + 1 : pos - 1, inc };
+	}
+
+	/** Gets the positions of the frames following the given one, in order. */
+	private long[] upcoming(final long pos, final long inc) {
+		final long[] positions = new long[prefetchCount];
+		long[] state = { pos, inc };
+		for (int i = 0; i < positions.length; i++) {
+			state = step(state[0], state[1]);
+			positions[i] = state[0];
 		}
+		return positions;
+	}
 
-		final long pos =
-			isRelative ? display.getLongPosition(axis) + delta : delta;
-		display.setPosition(pos, axis);
+	private void createPrefetcher() {
+		prefetcher = null;
+		view = null;
+		if (prefetchCount <= 0) return;
+		final Context context = display.getContext();
+		final ImageDisplayService imageDisplayService =
+			context.getService(ImageDisplayService.class);
+		final ThreadService threadService =
+			context.getService(ThreadService.class);
+		if (imageDisplayService == null || threadService == null) return;
+		view = imageDisplayService.getActiveDatasetView(display);
+		if (view == null || view.getData().getAxisIndex(axis) < 0) return;
+		prefetcher =
+			new FramePrefetcher(view, axis, prefetchCount, threadService);
 	}
 
 	/** Ensures the position of the relevant axis is within the legal range. */
@@ -49,6 +49,7 @@
 import org.scijava.event.EventHandler;
 import org.scijava.event.EventService;
 import org.scijava.input.KeyCode;
+import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.service.AbstractService;
@@ -67,7 +68,8 @@ public class DefaultAnimationService extends AbstractService implements
 	private static final String STARTED_STATUS =
 		"Animation started. Press '\\' or ESC to stop.";
 	private static final String STOPPED_STATUS =
-		"Animation stopped. Press '\\' to resume.";
+		"Animation stopped (%.1f fps, %.0f%% prefetched, %.1f ms jitter). "
+			+ "Press '\\' to resume.";
 	private static final String ALL_STOPPED_STATUS = "All animations stopped.";
 
 	@Parameter
@@ -76,8 +78,14 @@ public class DefaultAnimationService extends AbstractService implements
 	@Parameter
 	private StatusService statusService;
 
+	@Parameter
+	private LogService log;
+
 	private Map<ImageDisplay, Animation> animations;
 
+	/** Drives all animations from a single thread. */
+	private FrameScheduler scheduler;
+
 	// -- AnimationService methods --
 
 	@Override
@@ -102,7 +110,9 @@ public void stop(final ImageDisplay display) {
 		final Animation animation = animations.get(display);
 		if (animation != null) {
 			animation.stop();
-			statusService.showStatus(STOPPED_STATUS);
+			statusService.showStatus(String.format(STOPPED_STATUS, animation
+				.getAchievedFPS(), 100 * animation.getPrefetchHitRate(), animation
+				.getTiming().getJitter()));
 		}
 	}
 
@@ -119,7 +129,7 @@ public Animation getAnimation(final ImageDisplay display) {
 		Animation animation = animations.get(display);
 		if (animation == null) {
 			// animation did not already exist; create it
-			animation = new Animation(display);
+			animation = new Animation(display, scheduler);
 			animations.put(display, animation);
 		}
 		return animation;
@@ -130,6 +140,7 @@ public Animation getAnimation(final ImageDisplay display) {
 	@Override
 	public void initialize() {
 		animations = new ConcurrentHashMap<ImageDisplay, Animation>();
+		scheduler = new FrameScheduler(log);
 	}
 
 	// -- Disposable methods --
@@ -137,6 +148,7 @@ public void initialize() {
 	@Override
 	public void dispose() {
 		stopAll();
+		scheduler.dispose();
 	}
 
 	// -- Event handlers --
@@ -0,0 +1,246 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.animation;
+
+import imagej.data.Dataset;
+import imagej.data.display.DatasetView;
+import imagej.data.display.ProjectedFrame;
+import net.imglib2.meta.AxisType;
+
+import org.scijava.thread.ThreadService;
+
+/**
+ * A bounded ring of frames projected ahead of time on worker threads, so that
+ * an {@link Animation} only needs to show ready-made frames rather than
+ * projecting each plane when it is due.
+ */
+public class FramePrefetcher {
+
+	private final DatasetView view;
+	private final int axisIndex;
+	private final ThreadService threadService;
+
+	private final Slot[] ring;
+
+	private long hits, misses;
+
+	/**
+	 * Creates a prefetcher.
+	 * 
+	 * @param view The view whose planes are projected.
+	 * @param axis The axis along which the animation moves.
+	 * @param capacity The maximum number of frames held at once.
+	 * @param threadService The service on whose threads frames are projected.
+	 */
+	public FramePrefetcher(final DatasetView view, final AxisType axis,
+		final int capacity, final ThreadService threadService)
+	{
+		this.view = view;
+		axisIndex = view.getData().getAxisIndex(axis);
+		this.threadService = threadService;
+		ring = new Slot[capacity];
+		for (int i = 0; i < capacity; i++) {
+			ring[i] = new Slot();
+		}
+	}
+
+	// -- FramePrefetcher methods --
+
+	/**
+	 * Makes sure the frames for the given positions along the animation axis are
+	 * ready or being projected. Positions are given in order of priority; frames
+	 * held for other positions are dropped to make room.
+	 */
+	public synchronized void prefetch(final long[] positions) {
+		if (axisIndex < 0) return;
+		for (final Slot slot : ring) {
+			if (slot.state == State.READY && !contains(positions, slot.position)) {
+				slot.state = State.FREE;
+			}
+		}
+		final long[] base = getViewPosition();
+		for (final long position : positions) {
+			if (find(position) != null) continue;
+			final Slot slot = findFree();
+			if (slot == null) break;
+			final long[] pos = base.clone();
+			pos[axisIndex] = position;
+			slot.state = State.PROJECTING;
+			slot.position = position;
+			final long generation = ++slot.generation;
+			threadService.run(new Runnable() {
+
+				@Override
+				public void run() {
+					project(slot, generation, pos);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Takes the ready frame for the given position along the animation axis, or
+	 * returns null if there is none. A frame taken must be given back through
+	 * {@link #release(ProjectedFrame)} once shown.
+	 */
+	public synchronized ProjectedFrame take(final long position) {
+		final Slot slot = find(position);
+		if (slot == null || slot.state != State.READY ||
+			!matchesView(slot.frame))
+		{
+			if (slot != null && slot.state == State.READY) slot.state = State.FREE;
+			misses++;
+			return null;
+		}
+		hits++;
+		slot.state = State.IN_USE;
+		return slot.frame;
+	}
+
+	/** Gives back a frame obtained from {@link #take(long)}. */
+	public synchronized void release(final ProjectedFrame frame) {
+		for (final Slot slot : ring) {
+			if (slot.state == State.IN_USE && slot.frame == frame) {
+				slot.state = State.FREE;
+			}
+		}
+	}
+
+	/** Drops all frames, including those currently being projected. */
+	public synchronized void clear() {
+		for (final Slot slot : ring) {
+			if (slot.state == State.PROJECTING) slot.generation++;
+			else if (slot.state == State.READY) slot.state = State.FREE;
+		}
+	}
+
+	/** Gets the number of frames which were ready when requested. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Gets the number of frames which were not ready when requested. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Gets the fraction of requested frames which were ready, from 0 to 1. */
+	public synchronized double getHitRate() {
+		final long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	// -- Helper methods --
+
+	private void project(final Slot slot, final long generation,
+		final long[] position)
+	{
+		final ProjectedFrame reuse;
+		synchronized (this) {
+			reuse = slot.frame;
+		}
+		final ProjectedFrame frame = view.project(position, reuse);
+		synchronized (this) {
+			if (slot.generation != generation || frame == null) {
+				// dropped while projecting
+				slot.state = State.FREE;
+				return;
+			}
+			slot.frame = frame;
+			slot.state = State.READY;
+		}
+	}
+
+	/** Gets the current position of the view, for all dimensions. */
+	private long[] getViewPosition() {
+		final Dataset data = view.getData();
+		final long[] pos = new long[data.numDimensions()];
+		for (int d = 2; d < pos.length; d++) {
+			pos[d] = view.getLongPosition(data.axis(d));
+		}
+		return pos;
+	}
+
+	/**
+	 * Checks that the frame was projected at the view's position along all axes
+	 * but the animation axis.
+	 */
+	private boolean matchesView(final ProjectedFrame frame) {
+		final long[] pos = getViewPosition();
+		final long[] framePos = frame.getPosition();
+		if (framePos.length != pos.length) return false;
+		for (int d = 2; d < pos.length; d++) {
+			if (d != axisIndex && framePos[d] != pos[d]) return false;
+		}
+		return true;
+	}
+
+	private Slot find(final long position) {
+		for (final Slot slot : ring) {
+			if (slot.state != State.FREE && slot.position == position) return slot;
+		}
+		return null;
+	}
+
+	private Slot findFree() {
+		for (final Slot slot : ring) {
+			if (slot.state == State.FREE) return slot;
+		}
+		return null;
+	}
+
+	private static boolean contains(final long[] values, final long value) {
+		for (final long v : values) {
+			if (v == value) return true;
+		}
+		return false;
+	}
+
+	// -- Helper classes --
+
+	private enum State {
+		FREE, PROJECTING, READY, IN_USE
+	}
+
+	private static class Slot {
+
+		private State state = State.FREE;
+		private long position;
+		private long generation;
+		private ProjectedFrame frame;
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.animation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.scijava.log.LogService;
+
+/**
+ * Drives any number of {@link Animation}s from a single scheduler thread.
+ * <p>
+ * Each animation has a deadline for its next frame, derived from its frame
+ * rate using the monotonic {@link System#nanoTime()} clock. Deadlines advance
+ * by whole frame periods, so an animation does not drift when a frame takes a
+ * while to show. When an animation falls behind by one or more periods, the
+ * frames it missed are skipped rather than shown late.
+ * </p>
+ */
+public class FrameScheduler {
+
+	private final LogService log;
+
+	private final Map<Animation, Entry> entries =
+		new ConcurrentHashMap<Animation, Entry>();
+
+	private ScheduledExecutorService executor;
+
+	/** Creates a scheduler, logging frame errors to the given log (if any). */
+	public FrameScheduler(final LogService log) {
+		this.log = log;
+	}
+
+	// -- FrameScheduler methods --
+
+	/** Starts driving the given animation, its first frame due one period on. */
+	public synchronized void add(final Animation animation) {
+		if (entries.containsKey(animation)) return;
+		final Entry entry = new Entry(animation);
+		entry.deadline = System.nanoTime() + period(animation);
+		entries.put(animation, entry);
+		schedule(entry, period(animation));
+	}
+
+	/**
+	 * Stops driving the given animation. A frame already being shown is allowed
+	 * to complete.
+	 */
+	public synchronized void remove(final Animation animation) {
+		final Entry entry = entries.remove(animation);
+		if (entry == null) return;
+		entry.cancelled = true;
+		if (entry.future != null) entry.future.cancel(false);
+	}
+
+	/** Gets whether the given animation is being driven. */
+	public boolean contains(final Animation animation) {
+		return entries.containsKey(animation);
+	}
+
+	/** Stops driving all animations and shuts down the scheduler thread. */
+	public synchronized void dispose() {
+		for (final Animation animation : entries.keySet()) {
+			remove(animation);
+		}
+		if (executor != null) executor.shutdown();
+		executor = null;
+	}
+
+	// -- Helper methods --
+
+	private static long period(final Animation animation) {
+		final double fps = animation.getFPS();
+		return fps > 0 ? (long) (1e9 / fps) : 1000000000L;
+	}
+
+	private synchronized void schedule(final Entry entry, final long delay) {
+		if (entry.cancelled) return;
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "Animation scheduler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		entry.future = executor.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				tick(entry);
+			}
+		}, Math.max(delay, 0), TimeUnit.NANOSECONDS);
+	}
+
+	/** Shows the frame due for the given animation, then schedules the next. */
+	private void tick(final Entry entry) {
+		if (entry.cancelled) return;
+		final Animation animation = entry.animation;
+		final long period = period(animation);
+		final long lateness = Math.max(System.nanoTime() - entry.deadline, 0);
+		// NB: skip any frames whose deadline has passed as well
+		final long skipped = lateness / period;
+		try {
+			animation.frame(skipped + 1);
+			// NB: lateness is relative to the deadline of the frame actually shown
+			animation.getTiming().record(lateness % period, skipped);
+		}
+		catch (final RuntimeException exc) {
+			if (log != null) log.error("Error showing animation frame", exc);
+		}
+		entry.deadline += (skipped + 1) * period;
+		schedule(entry, entry.deadline - System.nanoTime());
+	}
+
+	// -- Helper classes --
+
+	private static class Entry {
+
+		private final Animation animation;
+		private long deadline;
+		private volatile boolean cancelled;
+		private ScheduledFuture<?> future;
+
+		public Entry(final Animation animation) {
+			this.animation = animation;
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.animation;
+
+/**
+ * Frame timing statistics of an {@link Animation}: how late each frame was
+ * shown relative to its deadline, and how many frames were skipped to catch
+ * up. Times are measured with {@link System#nanoTime()} and reported in
+ * milliseconds.
+ */
+public class FrameTiming {
+
+	private long frames, skipped;
+	private double mean, m2, max;
+
+	// -- FrameTiming methods --
+
+	/**
+	 * Records a frame.
+	 * 
+	 * @param lateness How long after its deadline the frame was shown, in
+	 *          nanoseconds.
+	 * @param skippedFrames How many frames were skipped before it.
+	 */
+	public synchronized void record(final long lateness, final long skippedFrames)
+	{
+		final double ms = lateness / 1e6;
+		frames++;
+		// NB: Welford's online algorithm, for a numerically stable variance.
+		final double delta = ms - mean;
+		mean += delta / frames;
+		m2 += delta * (ms - mean);
+		if (ms > max) max = ms;
+		skipped += skippedFrames;
+	}
+
+	/** Forgets all recorded frames. */
+	public synchronized void reset() {
+		frames = skipped = 0;
+		mean = m2 = max = 0;
+	}
+
+	/** Gets the number of frames shown. */
+	public synchronized long getFrameCount() {
+		return frames;
+	}
+
+	/** Gets the number of frames skipped because the animation fell behind. */
+	public synchronized long getSkippedFrameCount() {
+		return skipped;
+	}
+
+	/** Gets the mean lateness of the frames shown. */
+	public synchronized double getMeanLateness() {
+		return mean;
+	}
+
+	/** Gets the largest lateness of the frames shown. */
+	public synchronized double getMaxLateness() {
+		return max;
+	}
+
+	/** Gets the jitter: the standard deviation of the frames' lateness. */
+	public synchronized double getJitter() {
+		return frames < 2 ? 0 : Math.sqrt(m2 / (frames - 1));
+	}
+
+	// -- Object methods --
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d frames (%d skipped), lateness %.2f ms mean, "
+			+ "%.2f ms max, jitter %.2f ms", frames, skipped, mean, max,
+			getJitter());
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.cache;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarLocation;
+import net.imglib2.type.NativeType;
+
+/**
+ * A {@link PlanarImg} whose planes are not all held in memory. Planes are
+ * paged in from a {@link PlaneStore} through a shared {@link PlaneCache} when
+ * a cursor, random access or {@link #getPlane(int)} call touches them, and
+ * modified planes are written back when the cache evicts them. This allows
+ * images much larger than the Java heap to be used wherever a regular
+ * {@link PlanarImg} is expected.
+ * 
+ * @param <T> The pixel type of the image.
+ * @param <A> The type of array access used for each plane.
+ */
+public class CachedPlanarImg<T extends NativeType<T>, A extends ArrayDataAccess<A>>
+	extends PlanarImg<T, A>
+{
+
+	private final PlaneStore<A> store;
+	private final PlaneCache cache;
+
+	public CachedPlanarImg(final long[] dim, final int entitiesPerPixel,
+		final PlaneStore<A> store, final PlaneCache cache)
+	{
+		super(dim, entitiesPerPixel);
+		this.store = store;
+		this.cache = cache;
+	}
+
+	// -- CachedPlanarImg methods --
+
+	/** Gets the store holding the planes which are not in memory. */
+	public PlaneStore<A> getStore() {
+		return store;
+	}
+
+	/** Gets the cache through which planes are paged. */
+	public PlaneCache getCache() {
+		return cache;
+	}
+
+	/** Writes all modified planes currently in memory back to the store. */
+	public void flush() {
+		cache.flush(store);
+	}
+
+	/** Discards all cached planes and releases the backing store. */
+	public void dispose() {
+		cache.remove(store);
+		store.dispose();
+	}
+
+	// -- PlanarAccess methods --
+
+	@Override
+	public A getPlane(final int no) {
+		return cache.get(store, no);
+	}
+
+	@Override
+	public void setPlane(final int no, final A plane) {
+		cache.put(store, no, plane);
+	}
+
+	// -- NativeImg methods --
+
+	@Override
+	public A update(final Object c) {
+		return getPlane(((PlanarLocation) c).getCurrentPlane());
+	}
+
+	// -- Img methods --
+
+	@Override
+	public CachedPlanarImgFactory<T> factory() {
+		return new CachedPlanarImgFactory<T>(cache);
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.cache;
+
+import java.io.IOException;
+
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.BitArray;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.CharArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+
+/**
+ * Factory for {@link CachedPlanarImg}s. Each created image gets its own
+ * {@link FilePlaneStore}; all of them share the factory's {@link PlaneCache}.
+ * Planes are {@link TrackedAccess}es, so that the cache knows which of them
+ * were modified.
+ * 
+ * @param <T> The pixel type of the created images.
+ */
+public class CachedPlanarImgFactory<T extends NativeType<T>> extends
+	PlanarImgFactory<T>
+{
+
+	private final PlaneCache cache;
+
+	public CachedPlanarImgFactory(final PlaneCache cache) {
+		this.cache = cache;
+	}
+
+	// -- CachedPlanarImgFactory methods --
+
+	public PlaneCache getCache() {
+		return cache;
+	}
+
+	// -- NativeImgFactory methods --
+
+	@Override
+	public PlanarImg<T, BitArray> createBitInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return this.<BitArray> create(new TrackedBitArray(1), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, ByteArray> createByteInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return this.<ByteArray> create(new TrackedByteArray(1), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, CharArray> createCharInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return this.<CharArray> create(new TrackedCharArray(1), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, ShortArray> createShortInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return this.<ShortArray> create(new TrackedShortArray(1), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, IntArray> createIntInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return this.<IntArray> create(new TrackedIntArray(1), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, LongArray> createLongInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return this.<LongArray> create(new TrackedLongArray(1), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, FloatArray> createFloatInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return this.<FloatArray> create(new TrackedFloatArray(1), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, DoubleArray> createDoubleInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return this.<DoubleArray> create(new TrackedDoubleArray(1), dimensions,
+			entitiesPerPixel);
+	}
+
+	// -- ImgFactory methods --
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public <S> ImgFactory<S> imgFactory(final S type)
+		throws IncompatibleTypeException
+	{
+		if (NativeType.class.isInstance(type)) {
+			return new CachedPlanarImgFactory(cache);
+		}
+		throw new IncompatibleTypeException(this, type.getClass()
+			.getCanonicalName() +
+			" does not implement NativeType.");
+	}
+
+	// -- Internal methods --
+
+	/**
+	 * Creates the store backing a new image. Subclasses may override this to page
+	 * planes in from somewhere other than a swap file.
+	 */
+	protected <A extends ArrayDataAccess<A>> PlaneStore<A> createStore(
+		final A creator, final int planeSize, final int planeCount)
+		throws IOException
+	{
+		return new FilePlaneStore<A>(creator, planeSize, planeCount);
+	}
+
+	// -- Helper methods --
+
+	private <A extends ArrayDataAccess<A>> CachedPlanarImg<T, A> create(
+		final A creator, final long[] dimensions, final int entitiesPerPixel)
+	{
+		final long planeSize =
+			entitiesPerPixel * dimensions[0] *
+				(dimensions.length > 1 ? dimensions[1] : 1);
+		if (planeSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+				"Can't create a plane of " + planeSize + " entities (MAX = " +
+					Integer.MAX_VALUE + ")");
+		}
+		long planeCount = 1;
+		for (int d = 2; d < dimensions.length; d++)
+			planeCount *= dimensions[d];
+		try {
+			final PlaneStore<A> store =
+				createStore(creator, (int) planeSize, (int) planeCount);
+			return new CachedPlanarImg<T, A>(dimensions, entitiesPerPixel, store,
+				cache);
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Cannot create plane store", e);
+		}
+	}
+
+}
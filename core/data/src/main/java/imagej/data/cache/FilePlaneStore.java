@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * A {@link PlaneStore} which keeps its planes in a temporary swap file. Each
+ * plane occupies a fixed slot of the file; slots are only written once the
+ * corresponding plane is saved, so untouched planes cost no disk space on
+ * file systems supporting sparse files.
+ * 
+ * @param <A> The type of array access used for each plane.
+ */
+public class FilePlaneStore<A extends ArrayDataAccess<A>> implements
+	PlaneStore<A>
+{
+
+	private final A creator;
+	private final int planeSize;
+	private final int planeCount;
+	private final long planeBytes;
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+
+	/** Which planes have been written to the file. */
+	private final BitSet saved = new BitSet();
+
+	/**
+	 * Creates a store backed by a new temporary file.
+	 * 
+	 * @param creator Access used to create new plane arrays.
+	 * @param planeSize The number of entities in each plane.
+	 * @param planeCount The number of planes.
+	 * @throws IOException If the swap file cannot be created.
+	 */
+	public FilePlaneStore(final A creator, final int planeSize,
+		final int planeCount) throws IOException
+	{
+		this.creator = creator;
+		this.planeSize = planeSize;
+		this.planeCount = planeCount;
+		planeBytes =
+			PlaneBuffers.sizeOf(creator.createArray(planeSize)
+				.getCurrentStorageArray());
+		file = File.createTempFile("imagej-planes-", ".swap");
+		file.deleteOnExit();
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+	}
+
+	// -- FilePlaneStore methods --
+
+	/** Gets the swap file backing this store. */
+	public File getFile() {
+		return file;
+	}
+
+	/** Gets whether the given plane has been written to the swap file. */
+	public boolean isSaved(final int no) {
+		synchronized (saved) {
+			return saved.get(no);
+		}
+	}
+
+	// -- PlaneStore methods --
+
+	@Override
+	public int getPlaneCount() {
+		return planeCount;
+	}
+
+	@Override
+	public A load(final int no) {
+		final A plane = creator.createArray(planeSize);
+		if (!isSaved(no)) return plane;
+		final ByteBuffer buffer = allocate();
+		try {
+			long offset = no * planeBytes;
+			while (buffer.hasRemaining()) {
+				final int count = channel.read(buffer, offset);
+				if (count < 0) break;
+				offset += count;
+			}
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Cannot read plane " + no + " from " +
+				file, e);
+		}
+		buffer.rewind();
+		PlaneBuffers.get(buffer, PlaneBuffers.storage(plane));
+		return plane;
+	}
+
+	@Override
+	public void save(final int no, final A plane) {
+		final ByteBuffer buffer = allocate();
+		PlaneBuffers.put(buffer, PlaneBuffers.storage(plane));
+		try {
+			long offset = no * planeBytes;
+			while (buffer.hasRemaining()) {
+				offset += channel.write(buffer, offset);
+			}
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Cannot write plane " + no + " to " +
+				file, e);
+		}
+		synchronized (saved) {
+			saved.set(no);
+		}
+	}
+
+	@Override
+	public void dispose() {
+		try {
+			channel.close();
+			raf.close();
+		}
+		catch (final IOException e) {
+			// NB: nothing more can be done; the file is removed regardless
+		}
+		file.delete();
+	}
+
+	// -- Helper methods --
+
+	private ByteBuffer allocate() {
+		final ByteBuffer buffer = ByteBuffer.allocate((int) planeBytes);
+		buffer.order(ByteOrder.nativeOrder());
+		return buffer;
+	}
+
+}
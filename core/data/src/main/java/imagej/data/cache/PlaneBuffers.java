@@ -0,0 +1,255 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.cache;
+
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * Utility methods for moving the primitive arrays that back image planes into
+ * and out of {@link ByteBuffer}s, and for copying plane storage which may be
+ * either primitive arrays or NIO buffers.
+ */
+public final class PlaneBuffers {
+
+	private PlaneBuffers() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Gets the number of bytes occupied by the elements of a primitive array or
+	 * NIO buffer.
+	 */
+	public static long sizeOf(final Object array) {
+		if (array instanceof Buffer) {
+			final Class<?> type = elementType(array);
+			final int bytes =
+				type == byte.class ? 1 : type == short.class || type == char.class
+					? 2 : type == int.class || type == float.class ? 4 : 8;
+			return (long) bytes * ((Buffer) array).capacity();
+		}
+		if (array instanceof byte[]) return ((byte[]) array).length;
+		if (array instanceof short[]) return 2L * ((short[]) array).length;
+		if (array instanceof char[]) return 2L * ((char[]) array).length;
+		if (array instanceof int[]) return 4L * ((int[]) array).length;
+		if (array instanceof float[]) return 4L * ((float[]) array).length;
+		if (array instanceof long[]) return 8L * ((long[]) array).length;
+		if (array instanceof double[]) return 8L * ((double[]) array).length;
+		throw new IllegalArgumentException("Unsupported array: " + array);
+	}
+
+	/**
+	 * Writes the elements of a primitive array into the buffer, starting at the
+	 * buffer's current position. The buffer's position is not changed.
+	 */
+	public static void put(final ByteBuffer buffer, final Object array) {
+		if (array instanceof byte[]) buffer.duplicate().put((byte[]) array);
+		else if (array instanceof short[]) {
+			buffer.asShortBuffer().put((short[]) array);
+		}
+		else if (array instanceof char[]) buffer.asCharBuffer().put((char[]) array);
+		else if (array instanceof int[]) buffer.asIntBuffer().put((int[]) array);
+		else if (array instanceof float[]) {
+			buffer.asFloatBuffer().put((float[]) array);
+		}
+		else if (array instanceof long[]) buffer.asLongBuffer().put((long[]) array);
+		else if (array instanceof double[]) {
+			buffer.asDoubleBuffer().put((double[]) array);
+		}
+		else throw new IllegalArgumentException("Unsupported array: " + array);
+	}
+
+	/**
+	 * Fills a primitive array with elements read from the buffer, starting at
+	 * the buffer's current position. The buffer's position is not changed.
+	 */
+	public static void get(final ByteBuffer buffer, final Object array) {
+		if (array instanceof byte[]) buffer.duplicate().get((byte[]) array);
+		else if (array instanceof short[]) {
+			buffer.asShortBuffer().get((short[]) array);
+		}
+		else if (array instanceof char[]) buffer.asCharBuffer().get((char[]) array);
+		else if (array instanceof int[]) buffer.asIntBuffer().get((int[]) array);
+		else if (array instanceof float[]) {
+			buffer.asFloatBuffer().get((float[]) array);
+		}
+		else if (array instanceof long[]) buffer.asLongBuffer().get((long[]) array);
+		else if (array instanceof double[]) {
+			buffer.asDoubleBuffer().get((double[]) array);
+		}
+		else throw new IllegalArgumentException("Unsupported array: " + array);
+	}
+
+	/**
+	 * Gets the storage of a plane which is only going to be read or saved,
+	 * without marking a {@link TrackedAccess} as modified.
+	 */
+	public static Object storage(final ArrayDataAccess<?> plane) {
+		if (plane instanceof TrackedAccess) {
+			return ((TrackedAccess) plane).peekStorageArray();
+		}
+		return plane.getCurrentStorageArray();
+	}
+
+	/**
+	 * Gets the element type (e.g., {@code short.class}) of a plane's storage,
+	 * which may be a primitive array or a typed NIO buffer. Returns null for
+	 * anything else.
+	 */
+	public static Class<?> elementType(final Object storage) {
+		if (storage == null) return null;
+		if (storage.getClass().isArray()) {
+			return storage.getClass().getComponentType();
+		}
+		if (storage instanceof ByteBuffer) return byte.class;
+		if (storage instanceof ShortBuffer) return short.class;
+		if (storage instanceof CharBuffer) return char.class;
+		if (storage instanceof IntBuffer) return int.class;
+		if (storage instanceof FloatBuffer) return float.class;
+		if (storage instanceof LongBuffer) return long.class;
+		if (storage instanceof DoubleBuffer) return double.class;
+		return null;
+	}
+
+	/** Gets the number of elements of a primitive array or NIO buffer. */
+	public static int length(final Object storage) {
+		if (storage instanceof Buffer) return ((Buffer) storage).capacity();
+		return Array.getLength(storage);
+	}
+
+	/**
+	 * Returns true if the given plane storages (primitive arrays or NIO buffers)
+	 * have the same element type and length, so that {@link #copy} can be used.
+	 */
+	public static boolean isCompatible(final Object src, final Object dest) {
+		final Class<?> type = elementType(src);
+		if (type == null || type != elementType(dest)) return false;
+		return length(src) == length(dest);
+	}
+
+	/**
+	 * Copies all elements of one plane storage into another. Each may be a
+	 * primitive array or a typed NIO buffer; see {@link #isCompatible}. The
+	 * positions of buffers are not changed.
+	 */
+	public static void copy(final Object src, final Object dest) {
+		if (src.getClass().isArray() && dest.getClass().isArray()) {
+			System.arraycopy(src, 0, dest, 0, Array.getLength(src));
+			return;
+		}
+		final Buffer in = view(src);
+		final Buffer out = view(dest);
+		if (in instanceof ByteBuffer) ((ByteBuffer) out).put((ByteBuffer) in);
+		else if (in instanceof ShortBuffer) {
+			((ShortBuffer) out).put((ShortBuffer) in);
+		}
+		else if (in instanceof CharBuffer) ((CharBuffer) out).put((CharBuffer) in);
+		else if (in instanceof IntBuffer) ((IntBuffer) out).put((IntBuffer) in);
+		else if (in instanceof FloatBuffer) {
+			((FloatBuffer) out).put((FloatBuffer) in);
+		}
+		else if (in instanceof LongBuffer) ((LongBuffer) out).put((LongBuffer) in);
+		else if (in instanceof DoubleBuffer) {
+			((DoubleBuffer) out).put((DoubleBuffer) in);
+		}
+	}
+
+	/** Copies a plane storage (primitive array or NIO buffer) into a new array. */
+	public static Object toArray(final Object storage) {
+		final Object array =
+			Array.newInstance(elementType(storage), length(storage));
+		copy(storage, array);
+		return array;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets a buffer spanning all of the given storage, with its own position so
+	 * bulk operations leave the original untouched.
+	 */
+	private static Buffer view(final Object storage) {
+		final Buffer b;
+		if (storage instanceof byte[]) b = ByteBuffer.wrap((byte[]) storage);
+		else if (storage instanceof short[]) {
+			b = ShortBuffer.wrap((short[]) storage);
+		}
+		else if (storage instanceof char[]) b = CharBuffer.wrap((char[]) storage);
+		else if (storage instanceof int[]) b = IntBuffer.wrap((int[]) storage);
+		else if (storage instanceof float[]) {
+			b = FloatBuffer.wrap((float[]) storage);
+		}
+		else if (storage instanceof long[]) b = LongBuffer.wrap((long[]) storage);
+		else if (storage instanceof double[]) {
+			b = DoubleBuffer.wrap((double[]) storage);
+		}
+		else if (storage instanceof ByteBuffer) {
+			b = ((ByteBuffer) storage).duplicate();
+		}
+		else if (storage instanceof ShortBuffer) {
+			b = ((ShortBuffer) storage).duplicate();
+		}
+		else if (storage instanceof CharBuffer) {
+			b = ((CharBuffer) storage).duplicate();
+		}
+		else if (storage instanceof IntBuffer) {
+			b = ((IntBuffer) storage).duplicate();
+		}
+		else if (storage instanceof FloatBuffer) {
+			b = ((FloatBuffer) storage).duplicate();
+		}
+		else if (storage instanceof LongBuffer) {
+			b = ((LongBuffer) storage).duplicate();
+		}
+		else if (storage instanceof DoubleBuffer) {
+			b = ((DoubleBuffer) storage).duplicate();
+		}
+		else throw new IllegalArgumentException("Unsupported storage: " + storage);
+		b.clear();
+		return b;
+	}
+
+}
@@ -0,0 +1,400 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.cache;
+
+import imagej.data.memory.Evictable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.BitArray;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.CharArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+
+/**
+ * A memory-bounded, least-recently-used cache of image planes loaded from
+ * {@link PlaneStore}s. A single cache is typically shared by all
+ * {@link CachedPlanarImg}s so that the total amount of pixel data they keep in
+ * memory stays within one budget.
+ * <p>
+ * Planes are handed out by reference, so callers may modify them freely. Only
+ * modified ("dirty") planes are written back to their store when evicted:
+ * planes which are {@link TrackedAccess}es know whether they were written
+ * (see {@link WriteFlag}), while any other plane is always written back.
+ * </p>
+ * <p>
+ * An evicted plane may still be held by a cursor or random access. Such a
+ * plane stays pinned: its storage is kept until the access object handed out
+ * for it has been garbage collected, at which point the plane is written back
+ * once more if it was modified after its eviction. A request for a pinned
+ * plane returns the same storage again. Pinned planes still take up memory,
+ * so they count against the budget of the cache until they are released.
+ * </p>
+ * <p>
+ * NB: pinning tracks the {@link ArrayDataAccess} objects returned by
+ * {@link #get}. Code which keeps only the primitive array of a plane (see
+ * {@link ArrayDataAccess#getCurrentStorageArray()}) must also keep the access
+ * object, or hand the plane back via {@link #put}, for its modifications to
+ * survive eviction.
+ * </p>
+ */
+public class PlaneCache implements Evictable {
+
+	private final LinkedHashMap<Key, Entry> entries =
+		new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+	private final Map<Key, Pinned> pinned = new HashMap<Key, Pinned>();
+
+	private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+
+	private long maxBytes;
+
+	/** The bytes of cached and pinned planes. */
+	private long bytes;
+
+	private long hits, misses, evictions, writes;
+
+	/** Creates a cache holding at most the given number of bytes of planes. */
+	public PlaneCache(final long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	// -- PlaneCache methods --
+
+	/** Gets the plane with the given index, loading it from its store if needed. */
+	public synchronized <A extends ArrayDataAccess<A>> A get(
+		final PlaneStore<A> store, final int no)
+	{
+		releaseCollected();
+		final Key key = new Key(store, no);
+		final Entry entry = entries.get(key);
+		if (entry != null) {
+			hits++;
+			@SuppressWarnings("unchecked")
+			final A plane = (A) entry.plane;
+			return plane;
+		}
+		final Pinned old = pinned.remove(key);
+		if (old != null) {
+			// NB: the storage of a pinned plane is still current; keep using it,
+			// through the very same access object if that is still around
+			hits++;
+			bytes -= old.bytes;
+			final Object alive = old.get();
+			final Object reused = alive != null ? alive : old.twin;
+			insert(new Entry(key, reused));
+			@SuppressWarnings("unchecked")
+			final A plane = (A) reused;
+			return plane;
+		}
+		misses++;
+		final A plane = store.load(no);
+		insert(new Entry(key, plane));
+		return plane;
+	}
+
+	/**
+	 * Replaces the plane with the given index. The plane is written back when
+	 * evicted, unless it is a {@link TrackedAccess} which was not modified.
+	 */
+	public synchronized <A extends ArrayDataAccess<A>> void put(
+		final PlaneStore<A> store, final int no, final A plane)
+	{
+		releaseCollected();
+		final Key key = new Key(store, no);
+		final Pinned old = pinned.remove(key);
+		if (old != null) bytes -= old.bytes;
+		final Entry entry = entries.remove(key);
+		if (entry != null) bytes -= entry.bytes;
+		// NB: the new plane differs from what the store holds
+		if (plane instanceof TrackedAccess) {
+			((TrackedAccess) plane).getWriteFlag().set();
+		}
+		insert(new Entry(key, plane));
+	}
+
+	/**
+	 * Writes all modified planes of the given store back to the store, including
+	 * pinned ones.
+	 */
+	public synchronized void flush(final PlaneStore<?> store) {
+		releaseCollected();
+		for (final Entry entry : entries.values()) {
+			if (entry.key.store == store) save(entry.key, entry.plane);
+		}
+		for (final Pinned plane : pinned.values()) {
+			if (plane.key.store == store) save(plane.key, plane.twin);
+		}
+	}
+
+	/** Discards all planes of the given store, without writing them back. */
+	public synchronized void remove(final PlaneStore<?> store) {
+		final Iterator<Entry> iter = entries.values().iterator();
+		while (iter.hasNext()) {
+			final Entry entry = iter.next();
+			if (entry.key.store != store) continue;
+			bytes -= entry.bytes;
+			iter.remove();
+		}
+		final Iterator<Pinned> planes = pinned.values().iterator();
+		while (planes.hasNext()) {
+			final Pinned plane = planes.next();
+			if (plane.key.store != store) continue;
+			bytes -= plane.bytes;
+			planes.remove();
+		}
+	}
+
+	/**
+	 * Evicts least recently used planes until at most the given number of bytes
+	 * remain cached. Evicted planes are written back if dirty, and stay pinned
+	 * until they are no longer referenced. Returns the number of bytes released,
+	 * which only includes pinned planes released in the meantime.
+	 */
+	public synchronized long trim(final long targetBytes) {
+		return trim(targetBytes, 0);
+	}
+
+	public synchronized long getMaximumBytes() {
+		return maxBytes;
+	}
+
+	public synchronized void setMaximumBytes(final long maxBytes) {
+		this.maxBytes = maxBytes;
+		trim(maxBytes);
+	}
+
+	/** Gets the number of planes currently held by the cache. */
+	public synchronized int getPlaneCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the number of evicted planes which may still be referenced and are
+	 * therefore pinned in memory.
+	 */
+	public synchronized int getPinnedPlaneCount() {
+		releaseCollected();
+		return pinned.size();
+	}
+
+	/** Gets the number of requests served without reading from a store. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Gets the number of requests which had to read from a store. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Gets the number of planes evicted so far. */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/** Gets the number of dirty planes written back to their stores so far. */
+	public synchronized long getWrites() {
+		return writes;
+	}
+
+	// -- Evictable methods --
+
+	/**
+	 * Gets the number of bytes of plane data currently held by the cache,
+	 * including pinned planes.
+	 */
+	@Override
+	public synchronized long getBytes() {
+		releaseCollected();
+		return bytes;
+	}
+
+	/**
+	 * Evicts least recently used planes, writing back those which are dirty,
+	 * until the given number of bytes has been released or the cache is empty.
+	 */
+	@Override
+	public synchronized long evict(final long count) {
+		return trim(Math.max(0, bytes - count));
+	}
+
+	// -- Helper methods --
+
+	private void insert(final Entry entry) {
+		entries.put(entry.key, entry);
+		bytes += entry.bytes;
+		// NB: always keep the most recently requested plane
+		trim(maxBytes, 1);
+	}
+
+	/**
+	 * Evicts least recently used planes, but never the given number of most
+	 * recently used ones, until at most the given number of bytes remain.
+	 */
+	private long trim(final long targetBytes, final int keep) {
+		releaseCollected();
+		final long before = bytes;
+		final Iterator<Entry> iter = entries.values().iterator();
+		while (bytes > targetBytes && entries.size() > keep && iter.hasNext()) {
+			final Entry entry = iter.next();
+			save(entry.key, entry.plane);
+			iter.remove();
+			evictions++;
+			// NB: the bytes stay counted until the plane is no longer referenced
+			pinned.put(entry.key, new Pinned(entry, collected));
+		}
+		releaseCollected();
+		return before - bytes;
+	}
+
+	/** Saves a plane to its store if it may have been modified. */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void save(final Key key, final Object plane) {
+		if (plane instanceof TrackedAccess) {
+			final WriteFlag flag = ((TrackedAccess) plane).getWriteFlag();
+			if (!flag.isSet()) return;
+			flag.clear();
+		}
+		final PlaneStore store = key.store;
+		store.save(key.no, (ArrayDataAccess) plane);
+		writes++;
+	}
+
+	/**
+	 * Unpins the evicted planes whose access objects have since been garbage
+	 * collected, writing back those which were modified after their eviction.
+	 */
+	private void releaseCollected() {
+		while (true) {
+			final Pinned ref = (Pinned) collected.poll();
+			if (ref == null) break;
+			if (pinned.get(ref.key) != ref) continue;
+			pinned.remove(ref.key);
+			bytes -= ref.bytes;
+			save(ref.key, ref.twin);
+		}
+	}
+
+	/**
+	 * Creates a second access object for the storage of the given plane, so that
+	 * the storage can be saved once the original object is gone. The twin of a
+	 * {@link TrackedAccess} shares its {@link WriteFlag}.
+	 */
+	private static Object twin(final Object plane) {
+		if (plane instanceof TrackedAccess) return ((TrackedAccess) plane).twin();
+		final Object array = ((ArrayDataAccess<?>) plane).getCurrentStorageArray();
+		if (plane instanceof BitArray) return new BitArray((int[]) array);
+		if (plane instanceof ByteArray) return new ByteArray((byte[]) array);
+		if (plane instanceof CharArray) return new CharArray((char[]) array);
+		if (plane instanceof ShortArray) return new ShortArray((short[]) array);
+		if (plane instanceof IntArray) return new IntArray((int[]) array);
+		if (plane instanceof LongArray) return new LongArray((long[]) array);
+		if (plane instanceof FloatArray) return new FloatArray((float[]) array);
+		if (plane instanceof DoubleArray) return new DoubleArray((double[]) array);
+		throw new IllegalArgumentException("Unsupported plane: " + plane);
+	}
+
+	// -- Helper classes --
+
+	private static class Key {
+
+		private final PlaneStore<?> store;
+		private final int no;
+
+		public Key(final PlaneStore<?> store, final int no) {
+			this.store = store;
+			this.no = no;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) return false;
+			final Key other = (Key) o;
+			return store == other.store && no == other.no;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(store) + no;
+		}
+	}
+
+	private static class Entry {
+
+		private final Key key;
+		private final Object plane;
+		private final long bytes;
+
+		public Entry(final Key key, final Object plane) {
+			this.key = key;
+			this.plane = plane;
+			bytes =
+				PlaneBuffers.sizeOf(PlaneBuffers.storage((ArrayDataAccess<?>) plane));
+		}
+	}
+
+	/**
+	 * An evicted plane which may still be in use. It refers weakly to the access
+	 * object handed out for the plane and strongly to a twin of that object,
+	 * which shares its storage.
+	 */
+	private static class Pinned extends WeakReference<Object> {
+
+		private final Key key;
+		private final Object twin;
+		private final long bytes;
+
+		public Pinned(final Entry entry, final ReferenceQueue<Object> queue) {
+			super(entry.plane, queue);
+			key = entry.key;
+			twin = twin(entry.plane);
+			bytes = entry.bytes;
+		}
+	}
+
+}
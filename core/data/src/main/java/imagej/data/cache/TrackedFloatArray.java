@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.cache;
+
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+
+/**
+ * A {@link FloatArray} which records writes in a {@link WriteFlag}.
+ */
+public class TrackedFloatArray extends FloatArray implements TrackedAccess {
+
+	private final WriteFlag flag;
+
+	public TrackedFloatArray(final int numEntities) {
+		super(numEntities);
+		flag = new WriteFlag();
+	}
+
+	private TrackedFloatArray(final float[] data, final WriteFlag flag) {
+		super(data);
+		this.flag = flag;
+	}
+
+	// -- TrackedAccess methods --
+
+	@Override
+	public WriteFlag getWriteFlag() {
+		return flag;
+	}
+
+	@Override
+	public float[] peekStorageArray() {
+		return data;
+	}
+
+	@Override
+	public TrackedFloatArray twin() {
+		return new TrackedFloatArray(data, flag);
+	}
+
+	// -- FloatAccess methods --
+
+	@Override
+	public void setValue(final int index, final float value) {
+		super.setValue(index, value);
+		flag.set();
+	}
+
+	// -- ArrayDataAccess methods --
+
+	@Override
+	public TrackedFloatArray createArray(final int numEntities) {
+		return new TrackedFloatArray(numEntities);
+	}
+
+	@Override
+	public float[] getCurrentStorageArray() {
+		flag.expose();
+		return data;
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.cache;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * Records whether the storage of a {@link TrackedAccess} may have been modified
+ * since it was last saved. Values written through the access set the flag.
+ * Once the array itself has been handed out via
+ * {@link ArrayDataAccess#getCurrentStorageArray()}, it may be written at any
+ * time, so it always counts as modified.
+ */
+public class WriteFlag {
+
+	private volatile boolean written;
+	private volatile boolean exposed;
+
+	/** Notes a write through the access. */
+	public void set() {
+		// NB: avoid a volatile write for every value once the flag is set
+		if (!written) written = true;
+	}
+
+	/** Notes that the array was handed out and may be written directly. */
+	public void expose() {
+		exposed = true;
+	}
+
+	/** Returns true if the storage may have been modified since cleared. */
+	public boolean isSet() {
+		return written || exposed;
+	}
+
+	/** Returns true if the array has been handed out. */
+	public boolean isExposed() {
+		return exposed;
+	}
+
+	/**
+	 * Clears the flag before the storage is saved. Writes racing with the save
+	 * set it again, so they are saved next time.
+	 */
+	public void clear() {
+		written = false;
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.cow;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * An {@link ArrayDataAccess} whose primitive array may be shared with other
+ * accesses. The array is copied the first time a value is written through the
+ * access, or the first time the array itself is requested via
+ * {@link ArrayDataAccess#getCurrentStorageArray()} (since the caller may then
+ * write to it directly).
+ */
+public interface CopyOnWriteAccess {
+
+	/**
+	 * Creates another access sharing this access's array. Neither access will
+	 * see values written by the other. If the array has already been handed out
+	 * (see {@link #isExposed()}), the new access gets its own copy instead.
+	 */
+	CopyOnWriteAccess share(CopyOnWriteStats stats);
+
+	/** Returns true if the array may currently be shared with other accesses. */
+	boolean isShared();
+
+	/**
+	 * Returns true if the array has been handed out via
+	 * {@link ArrayDataAccess#getCurrentStorageArray()}, in which case it may be
+	 * written behind this access's back and can no longer be shared.
+	 */
+	boolean isExposed();
+
+	/**
+	 * Gets the current array without unsharing it. The caller must not modify
+	 * the returned array.
+	 */
+	Object peekStorageArray();
+
+	/**
+	 * Gives up this access's share of the array without copying it, as when a
+	 * copy is discarded. The access must not be used afterwards.
+	 */
+	void detach();
+
+}
@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.cow;
+
+import net.imglib2.img.basictypeaccess.array.IntArray;
+
+/**
+ * A copy-on-write {@link IntArray}.
+ */
+public class CopyOnWriteIntArray extends IntArray implements
+	CopyOnWriteAccess
+{
+
+	private final CopyOnWriteState<int[]> state;
+
+	public CopyOnWriteIntArray(final int[] data) {
+		this(new CopyOnWriteState<int[]>(data));
+	}
+
+	private CopyOnWriteIntArray(final CopyOnWriteState<int[]> state) {
+		super(state.peek());
+		this.state = state;
+	}
+
+	// -- CopyOnWriteAccess methods --
+
+	@Override
+	public CopyOnWriteIntArray share(final CopyOnWriteStats stats) {
+		return new CopyOnWriteIntArray(state.share(stats));
+	}
+
+	@Override
+	public boolean isShared() {
+		return state.isShared();
+	}
+
+	@Override
+	public boolean isExposed() {
+		return state.isExposed();
+	}
+
+	@Override
+	public int[] peekStorageArray() {
+		return state.peek();
+	}
+
+	@Override
+	public void detach() {
+		state.detach();
+	}
+
+	// -- IntAccess methods --
+
+	@Override
+	public void setValue(final int index, final int value) {
+		if (!state.isCurrent(data)) data = state.unshare();
+		super.setValue(index, value);
+	}
+
+	// -- ArrayDataAccess methods --
+
+	@Override
+	public int[] getCurrentStorageArray() {
+		data = state.expose();
+		return data;
+	}
+
+}
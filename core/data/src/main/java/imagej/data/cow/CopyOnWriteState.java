@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.cow;
+
+import imagej.data.cache.PlaneBuffers;
+
+/**
+ * The sharing state behind a {@link CopyOnWriteAccess}: the primitive array the
+ * access currently uses, the {@link SharedPlane} through which it may share
+ * that array, and whether the array has been handed out. Each access keeps a
+ * mirror of the array in its own storage field and refreshes it from the
+ * state before writing.
+ * <p>
+ * The state, rather than the access, is the owner registered with the
+ * {@link SharedPlane}; it is only referenced by its access, so both are
+ * collected together.
+ * </p>
+ * 
+ * @param <T> The type of the primitive array (e.g., {@code byte[]}).
+ */
+public class CopyOnWriteState<T> {
+
+	private volatile T data;
+
+	private volatile SharedPlane shared;
+
+	private volatile boolean exposed;
+
+	public CopyOnWriteState(final T data) {
+		this.data = data;
+	}
+
+	private CopyOnWriteState(final T data, final SharedPlane shared) {
+		this.data = data;
+		this.shared = shared;
+	}
+
+	// -- CopyOnWriteState methods --
+
+	/**
+	 * Creates the state of another access sharing this state's array. If the
+	 * array has already been handed out, the new state gets its own copy
+	 * instead.
+	 */
+	public synchronized CopyOnWriteState<T> share(final CopyOnWriteStats stats)
+	{
+		// NB - whoever holds the raw array may still write to it
+		if (exposed) return new CopyOnWriteState<T>(copy(data));
+		if (shared == null) {
+			shared = new SharedPlane(PlaneBuffers.sizeOf(data), stats, this);
+		}
+		final CopyOnWriteState<T> copy = new CopyOnWriteState<T>(data, shared);
+		shared.addOwner(copy);
+		return copy;
+	}
+
+	/** Returns true if the array may currently be shared with other accesses. */
+	public boolean isShared() {
+		return shared != null;
+	}
+
+	/** Returns true if the array has been handed out. */
+	public boolean isExposed() {
+		return exposed;
+	}
+
+	/** Gets the current array, which the caller must not modify. */
+	public T peek() {
+		return data;
+	}
+
+	/**
+	 * Returns true if the given array, as mirrored by the access, is the current
+	 * array and is not shared, so the access may write to it right away.
+	 */
+	public boolean isCurrent(final T array) {
+		return shared == null && array == data;
+	}
+
+	/**
+	 * Gets an array the access may write to, copying the current one first if
+	 * it is still shared with someone else.
+	 */
+	public T unshare() {
+		if (shared != null) release();
+		return data;
+	}
+
+	/**
+	 * Gets an array to hand out to a caller who may write to it directly. The
+	 * array will not be shared anymore.
+	 */
+	public synchronized T expose() {
+		if (shared != null) release();
+		exposed = true;
+		return data;
+	}
+
+	/** Gives up the share of the array without copying it. */
+	public synchronized void detach() {
+		if (shared == null) return;
+		shared.detach(this);
+		shared = null;
+	}
+
+	// -- Helper methods --
+
+	private synchronized void release() {
+		if (shared == null) return;
+		if (shared.release(this)) data = copy(data);
+		shared = null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T copy(final T array) {
+		return (T) PlaneBuffers.toArray(array);
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.cow;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing how much plane data is being shared between copy-on-write
+ * duplicates, and how much has had to be copied since.
+ */
+public class CopyOnWriteStats {
+
+	private final AtomicLong sharedBytes = new AtomicLong();
+	private final AtomicLong sharedPlanes = new AtomicLong();
+	private final AtomicLong materializedBytes = new AtomicLong();
+	private final AtomicLong materializedPlanes = new AtomicLong();
+
+	// -- CopyOnWriteStats methods --
+
+	/**
+	 * Gets the number of bytes currently saved by sharing: the memory eager
+	 * copies of all still-shared planes would occupy.
+	 */
+	public long getSharedBytes() {
+		return sharedBytes.get();
+	}
+
+	/** Gets the number of plane copies which are currently shared. */
+	public long getSharedPlanes() {
+		return sharedPlanes.get();
+	}
+
+	/** Gets the total number of bytes copied on write from shared planes. */
+	public long getMaterializedBytes() {
+		return materializedBytes.get();
+	}
+
+	/** Gets the total number of shared planes which have been copied. */
+	public long getMaterializedPlanes() {
+		return materializedPlanes.get();
+	}
+
+	/** Resets the materialization counters. Sharing counters are unaffected. */
+	public void resetMaterialized() {
+		materializedBytes.set(0);
+		materializedPlanes.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "shared: " + getSharedPlanes() + " planes (" + getSharedBytes() +
+			" bytes), materialized: " + getMaterializedPlanes() + " planes (" +
+			getMaterializedBytes() + " bytes)";
+	}
+
+	// -- Internal methods --
+
+	void planeShared(final long bytes) {
+		sharedPlanes.incrementAndGet();
+		sharedBytes.addAndGet(bytes);
+	}
+
+	void planeUnshared(final long bytes) {
+		sharedPlanes.decrementAndGet();
+		sharedBytes.addAndGet(-bytes);
+	}
+
+	void planeMaterialized(final long bytes) {
+		sharedPlanes.decrementAndGet();
+		sharedBytes.addAndGet(-bytes);
+		materializedPlanes.incrementAndGet();
+		materializedBytes.addAndGet(bytes);
+	}
+
+}
@@ -0,0 +1,328 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.cow;
+
+import java.lang.reflect.Array;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+
+/**
+ * Creates {@link PlanarImg}s whose planes are shared copy-on-write with another
+ * image. Duplicating an image costs no plane memory up front: each plane is
+ * copied only when either image first writes to it. Likewise, blank copies
+ * share a single zero filled plane until their planes are written.
+ * <p>
+ * Only plain {@link PlanarImg}s with byte, short, int, long, float or double
+ * planes are supported; see {@link #isSupported(Img)}.
+ * </p>
+ * <p>
+ * Only arrays which have never been handed out can be shared: a plain plane
+ * (or a copy-on-write plane whose array was requested) may still be written
+ * through a raw array or a cursor bound to it, so it is copied eagerly
+ * instead. Images whose planes are wrapped by {@link #adopt(PlanarImg)} right
+ * after creation can therefore be duplicated without copying.
+ * </p>
+ */
+public class PlaneSharer {
+
+	private final CopyOnWriteStats stats;
+
+	public PlaneSharer(final CopyOnWriteStats stats) {
+		this.stats = stats;
+	}
+
+	// -- PlaneSharer methods --
+
+	/** Gets the statistics updated by shared planes created by this sharer. */
+	public CopyOnWriteStats getStats() {
+		return stats;
+	}
+
+	/** Returns true if the planes of the given image can be shared. */
+	public boolean isSupported(final Img<?> img) {
+		if (img == null || img.getClass() != PlanarImg.class) return false;
+		if (planeCount(img) == 0) return false;
+		final Object plane = ((PlanarImg<?, ?>) img).getPlane(0);
+		return plane instanceof CopyOnWriteAccess || isWrappable(plane);
+	}
+
+	/**
+	 * Replaces the planes of a newly created image with copy-on-write accesses to
+	 * the same arrays, so that later duplicates can share them. This must be
+	 * called before any plane, cursor or random access of the image is handed
+	 * out, since those would bypass the new accesses.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void adopt(final PlanarImg<?, ?> img) {
+		final PlanarImg planarImg = img;
+		for (int i = 0; i < planeCount(img); i++) {
+			final Object plane = planarImg.getPlane(i);
+			if (isWrappable(plane)) {
+				planarImg.setPlane(i, (ArrayDataAccess) wrap(plane));
+			}
+		}
+	}
+
+	/**
+	 * Gives up the shares held by the planes of an image which is discarded, so
+	 * the remaining owners need not copy them when they are written.
+	 */
+	public void detach(final Img<?> img) {
+		if (!(img instanceof PlanarImg)) return;
+		final PlanarImg<?, ?> planarImg = (PlanarImg<?, ?>) img;
+		for (int i = 0; i < planeCount(img); i++) {
+			final Object plane = planarImg.getPlane(i);
+			if (plane instanceof CopyOnWriteAccess) {
+				((CopyOnWriteAccess) plane).detach();
+			}
+		}
+	}
+
+	/**
+	 * Creates a copy of the given image which shares its planes copy-on-write.
+	 * Planes which are not copy-on-write accesses, or whose arrays have been
+	 * handed out, are copied right away; the source image is left untouched.
+	 */
+	public <T extends NativeType<T>> PlanarImg<T, ?> duplicate(
+		final PlanarImg<T, ?> img)
+	{
+		return create(img, false);
+	}
+
+	/**
+	 * Creates a zero filled image with the same type and dimensions as the given
+	 * one, whose planes are allocated when they are first written.
+	 */
+	public <T extends NativeType<T>> PlanarImg<T, ?> createBlank(
+		final PlanarImg<T, ?> img)
+	{
+		return create(img, true);
+	}
+
+	// -- Helper methods --
+
+	private <T extends NativeType<T>> PlanarImg<T, ?> create(
+		final PlanarImg<T, ?> img, final boolean blank)
+	{
+		if (!isSupported(img)) {
+			throw new IllegalArgumentException("Unsupported image: " + img);
+		}
+		final long[] dims = new long[img.numDimensions()];
+		img.dimensions(dims);
+		final Img<T> copy =
+			new SharingFactory<T>(img, blank).create(dims, img.firstElement());
+		@SuppressWarnings("unchecked")
+		final PlanarImg<T, ?> planarCopy = (PlanarImg<T, ?>) copy;
+		return planarCopy;
+	}
+
+	/** Gets the copy-on-write planes for a copy of the given image. */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private CopyOnWriteAccess[] sharePlanes(final PlanarImg img,
+		final boolean blank)
+	{
+		final CopyOnWriteAccess[] planes =
+			new CopyOnWriteAccess[(int) planeCount(img)];
+		if (blank) {
+			final ArrayDataAccess<?> first = (ArrayDataAccess<?>) img.getPlane(0);
+			final int length = Array.getLength(storage(first));
+			final CopyOnWriteAccess zeros = wrap(first.createArray(length));
+			planes[0] = zeros;
+			for (int i = 1; i < planes.length; i++) {
+				planes[i] = zeros.share(stats);
+			}
+			return planes;
+		}
+		for (int i = 0; i < planes.length; i++) {
+			final Object plane = img.getPlane(i);
+			if (plane instanceof CopyOnWriteAccess) {
+				planes[i] = ((CopyOnWriteAccess) plane).share(stats);
+			}
+			else {
+				// NB - the array may be aliased by a raw array or cursor holder
+				planes[i] = wrap(copy(plane));
+			}
+		}
+		return planes;
+	}
+
+	private static Object storage(final Object plane) {
+		if (plane instanceof CopyOnWriteAccess) {
+			return ((CopyOnWriteAccess) plane).peekStorageArray();
+		}
+		return ((ArrayDataAccess<?>) plane).getCurrentStorageArray();
+	}
+
+	/** Creates a plain access holding a copy of the given plane's array. */
+	private static Object copy(final Object plane) {
+		final ArrayDataAccess<?> access = (ArrayDataAccess<?>) plane;
+		final Object src = access.getCurrentStorageArray();
+		final int length = Array.getLength(src);
+		final ArrayDataAccess<?> copy = access.createArray(length);
+		System.arraycopy(src, 0, copy.getCurrentStorageArray(), 0, length);
+		return copy;
+	}
+
+	private static boolean isWrappable(final Object plane) {
+		if (plane == null) return false;
+		final Class<?> c = plane.getClass();
+		return c == ByteArray.class || c == ShortArray.class ||
+			c == IntArray.class || c == LongArray.class || c == FloatArray.class ||
+			c == DoubleArray.class;
+	}
+
+	private static CopyOnWriteAccess wrap(final Object plane) {
+		if (plane instanceof ByteArray) {
+			return new CopyOnWriteByteArray(((ByteArray) plane)
+				.getCurrentStorageArray());
+		}
+		if (plane instanceof ShortArray) {
+			return new CopyOnWriteShortArray(((ShortArray) plane)
+				.getCurrentStorageArray());
+		}
+		if (plane instanceof IntArray) {
+			return new CopyOnWriteIntArray(((IntArray) plane)
+				.getCurrentStorageArray());
+		}
+		if (plane instanceof LongArray) {
+			return new CopyOnWriteLongArray(((LongArray) plane)
+				.getCurrentStorageArray());
+		}
+		if (plane instanceof FloatArray) {
+			return new CopyOnWriteFloatArray(((FloatArray) plane)
+				.getCurrentStorageArray());
+		}
+		if (plane instanceof DoubleArray) {
+			return new CopyOnWriteDoubleArray(((DoubleArray) plane)
+				.getCurrentStorageArray());
+		}
+		throw new IllegalArgumentException("Unsupported plane: " + plane);
+	}
+
+	private static long planeCount(final Img<?> img) {
+		long count = 1;
+		for (int d = 2; d < img.numDimensions(); d++)
+			count *= img.dimension(d);
+		return count;
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * Factory which builds its images from shared planes rather than allocating
+	 * new ones. Going through a factory lets the pixel type link itself to the
+	 * new image as it normally would.
+	 */
+	private class SharingFactory<T extends NativeType<T>> extends
+		PlanarImgFactory<T>
+	{
+
+		private final PlanarImg<T, ?> source;
+		private final boolean blank;
+
+		public SharingFactory(final PlanarImg<T, ?> source, final boolean blank) {
+			this.source = source;
+			this.blank = blank;
+		}
+
+		@Override
+		public PlanarImg<T, ByteArray> createByteInstance(
+			final long[] dimensions, final int entitiesPerPixel)
+		{
+			return create(dimensions, entitiesPerPixel);
+		}
+
+		@Override
+		public PlanarImg<T, ShortArray> createShortInstance(
+			final long[] dimensions, final int entitiesPerPixel)
+		{
+			return create(dimensions, entitiesPerPixel);
+		}
+
+		@Override
+		public PlanarImg<T, IntArray> createIntInstance(
+			final long[] dimensions, final int entitiesPerPixel)
+		{
+			return create(dimensions, entitiesPerPixel);
+		}
+
+		@Override
+		public PlanarImg<T, LongArray> createLongInstance(
+			final long[] dimensions, final int entitiesPerPixel)
+		{
+			return create(dimensions, entitiesPerPixel);
+		}
+
+		@Override
+		public PlanarImg<T, FloatArray> createFloatInstance(
+			final long[] dimensions, final int entitiesPerPixel)
+		{
+			return create(dimensions, entitiesPerPixel);
+		}
+
+		@Override
+		public PlanarImg<T, DoubleArray> createDoubleInstance(
+			final long[] dimensions, final int entitiesPerPixel)
+		{
+			return create(dimensions, entitiesPerPixel);
+		}
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		private <A extends ArrayDataAccess<A>> PlanarImg<T, A> create(
+			final long[] dimensions, final int entitiesPerPixel)
+		{
+			final PlanarImg<T, A> img =
+				new PlanarImg<T, A>(dimensions, entitiesPerPixel);
+			final CopyOnWriteAccess[] planes = sharePlanes(source, blank);
+			for (int i = 0; i < planes.length; i++) {
+				img.setPlane(i, (A) (ArrayDataAccess) planes[i]);
+			}
+			return img;
+		}
+
+	}
+
+}
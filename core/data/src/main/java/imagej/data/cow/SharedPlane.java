@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.cow;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reference count for a primitive array shared by several
+ * {@link CopyOnWriteAccess}es. The first owners to write copy the array; the
+ * last remaining owner keeps the original.
+ * <p>
+ * Owners are held weakly, so an access which is garbage collected without
+ * being detached (as when a duplicate is simply dropped) stops counting as an
+ * owner once it has been collected.
+ * </p>
+ */
+public class SharedPlane {
+
+	private final long bytes;
+	private final CopyOnWriteStats stats;
+	private final List<WeakReference<Object>> owners =
+		new ArrayList<WeakReference<Object>>();
+
+	public SharedPlane(final long bytes, final CopyOnWriteStats stats,
+		final Object owner)
+	{
+		this.bytes = bytes;
+		this.stats = stats;
+		owners.add(new WeakReference<Object>(owner));
+	}
+
+	// -- SharedPlane methods --
+
+	/** Gets the size of the shared array, in bytes. */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/** Gets the number of live accesses currently sharing the array. */
+	public synchronized int getOwnerCount() {
+		final int before = shares();
+		removeCollected();
+		unshared(before - shares());
+		return owners.size();
+	}
+
+	/** Registers another access sharing the array. */
+	public synchronized void addOwner(final Object owner) {
+		final int before = shares();
+		removeCollected();
+		unshared(before - shares());
+		owners.add(new WeakReference<Object>(owner));
+		stats.planeShared(bytes);
+	}
+
+	/**
+	 * Unregisters an access which is about to write. Returns true if the array is
+	 * still shared with someone else, in which case the caller must copy it.
+	 */
+	public synchronized boolean release(final Object owner) {
+		final int before = shares();
+		remove(owner);
+		removeCollected();
+		if (owners.isEmpty()) {
+			unshared(before);
+			return false;
+		}
+		stats.planeMaterialized(bytes);
+		unshared(before - shares() - 1);
+		return true;
+	}
+
+	/** Unregisters an access which is discarded without writing. */
+	public synchronized void detach(final Object owner) {
+		final int before = shares();
+		remove(owner);
+		removeCollected();
+		unshared(before - shares());
+	}
+
+	// -- Helper methods --
+
+	/** Gets the number of copies the shared array currently stands in for. */
+	private int shares() {
+		return Math.max(0, owners.size() - 1);
+	}
+
+	private void unshared(final int count) {
+		for (int i = 0; i < count; i++) {
+			stats.planeUnshared(bytes);
+		}
+	}
+
+	private void remove(final Object owner) {
+		final Iterator<WeakReference<Object>> iter = owners.iterator();
+		while (iter.hasNext()) {
+			if (iter.next().get() == owner) {
+				iter.remove();
+				return;
+			}
+		}
+	}
+
+	/** Drops owners which were collected without being detached. */
+	private void removeCollected() {
+		final Iterator<WeakReference<Object>> iter = owners.iterator();
+		while (iter.hasNext()) {
+			if (iter.next().get() == null) iter.remove();
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import net.imglib2.converter.Converter;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+/**
+ * A precomputed table of the color a channel converter maps each possible
+ * value to. For integer types of up to {@link #MAX_BITS} bits, looking a value
+ * up in the table replaces the scaling and {@link net.imglib2.display.ColorTable}
+ * lookup the converter would otherwise do for every pixel.
+ * <p>
+ * Tables are immutable: when the channel range or color table changes, a new
+ * table must be built.
+ * </p>
+ */
+public class ARGBTable {
+
+	/** Largest number of bits per pixel for which tables are built. */
+	public static final int MAX_BITS = 16;
+
+	private final int offset;
+	private final int[] argb;
+
+	/**
+	 * Builds the table of the given converter, for all values of the given
+	 * type.
+	 * 
+	 * @throws IllegalArgumentException if the type is not supported.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public ARGBTable(final RealType<?> type, final Converter converter) {
+		if (!isSupported(type)) {
+			throw new IllegalArgumentException("Unsupported type: " +
+				type.getClass().getName());
+		}
+		offset = (int) type.getMinValue();
+		argb = new int[(int) (type.getMaxValue() - type.getMinValue()) + 1];
+		// NB: The converters only rely on getRealDouble() of their input.
+		final DoubleType value = new DoubleType();
+		final ARGBType color = new ARGBType();
+		for (int i = 0; i < argb.length; i++) {
+			value.set(offset + i);
+			converter.convert(value, color);
+			argb[i] = color.get();
+		}
+	}
+
+	// -- ARGBTable methods --
+
+	/** Gets whether tables can be built for the given type. */
+	public static boolean isSupported(final RealType<?> type) {
+		return type instanceof IntegerType &&
+			type.getBitsPerPixel() <= MAX_BITS;
+	}
+
+	/** Gets the color of the given value, which must be an integer. */
+	public int lookup(final double value) {
+		return argb[(int) value - offset];
+	}
+
+	/** Gets the number of entries in the table. */
+	public int size() {
+		return argb.length;
+	}
+
+}
@@ -0,0 +1,935 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import imagej.data.ParallelLoop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.ARGBScreenImage;
+import net.imglib2.display.CompositeXYProjector;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * A {@link CompositeXYProjector} which renders straight into the pixel array of
+ * an {@link ARGBScreenImage}, and which can re-render just a rectangular part
+ * of the current plane. This lets a {@link DatasetView} refresh only the pixels
+ * touched by a change rather than the whole plane.
+ * <p>
+ * The projector can also be restricted to a viewport, in which case only the
+ * tiles of the screen image overlapping the viewport (plus a margin) are
+ * rendered. The remaining tiles are rendered on demand, as the viewport moves
+ * or when {@link #ensureMapped(Interval)} is called. This keeps changing planes
+ * cheap when only a small window onto a very large plane is visible.
+ * </p>
+ * <p>
+ * When zoomed out, the projector can instead render a downsampled level of a
+ * {@link PlanePyramid} into a smaller {@link #getDisplayImage() display image}.
+ * The full-resolution screen image is then left stale, and rendered on demand
+ * only.
+ * </p>
+ * <p>
+ * If {@link #setDoubleBuffered(boolean) double-buffered}, pixels are rendered
+ * into a back buffer, which is swapped with the front buffer once the whole
+ * request has been rendered. Buffers are only swapped under the
+ * {@link #getFrameLock() frame lock}, so painting code holding that lock while
+ * it reads the front buffer never sees a partially rendered frame.
+ * </p>
+ * <p>
+ * Given a {@link #setParallelLoop(ParallelLoop) parallel loop}, composite
+ * images are rendered in bands of rows on several threads at once, each band
+ * blending all channels in a single pass.
+ * </p>
+ * <p>
+ * Channels may also be given an {@link ARGBTable}, in which case each pixel is
+ * converted by a single table lookup instead of by the channel's converter.
+ * </p>
+ * <p>
+ * The projector keeps track of which tiles have been rendered since they were
+ * last painted, so that painting code can {@link #takeDamage() repaint} just
+ * those.
+ * </p>
+ */
+public class DatasetProjector<A> extends CompositeXYProjector<A> {
+
+	/** Width and height of the tiles whose render state is tracked. */
+	public static final int TILE_SIZE = 256;
+
+	/** Extra pixels rendered around each side of the viewport. */
+	public static final int VIEWPORT_MARGIN = 128;
+
+	/**
+	 * Minimum number of pixels (times channels) a composite render must cover
+	 * before it is split into bands; smaller renders are not worth the overhead.
+	 */
+	public static final int MIN_PARALLEL_SIZE = 1 << 16;
+
+	private final RandomAccessibleInterval<A> source;
+	private final Buffers screen;
+	private final ArrayList<Converter<A, ARGBType>> converters;
+	private final int dimIndex;
+
+	private final int tilesX, tilesY;
+
+	/** Flags marking which tiles hold up-to-date pixels. */
+	private final boolean[] mapped;
+
+	/** Flags marking which tiles have changed since {@link #takeDamage()}. */
+	private final boolean[] damaged;
+
+	/** XY bounds of the viewport (inclusive), or null when unrestricted. */
+	private long[] viewport;
+
+	private PlanePyramid pyramid;
+	private int level;
+	private Buffers levelScreen;
+
+	private boolean doubleBuffered;
+
+	/** Lock under which the front buffers are swapped and read. */
+	private final Object frameLock = new Object();
+
+	private volatile ParallelLoop loop;
+
+	/** Precomputed color tables of the channels (null elements if none). */
+	private volatile ARGBTable[] tables;
+
+	public DatasetProjector(final RandomAccessibleInterval<A> source,
+		final ARGBScreenImage target,
+		final ArrayList<Converter<A, ARGBType>> converters, final int dimIndex)
+	{
+		super(source, target, converters, dimIndex);
+		this.source = source;
+		screen = new Buffers(target);
+		this.converters = converters;
+		this.dimIndex = dimIndex;
+		tilesX = (int) ((target.dimension(0) + TILE_SIZE - 1) / TILE_SIZE);
+		tilesY = (int) ((target.dimension(1) + TILE_SIZE - 1) / TILE_SIZE);
+		mapped = new boolean[tilesX * tilesY];
+		damaged = new boolean[tilesX * tilesY];
+		tables = new ARGBTable[converters.size()];
+	}
+
+	// -- Projector methods --
+
+	/**
+	 * Re-renders the current plane. If a viewport is set, only the tiles near it
+	 * are rendered immediately; the others are marked stale.
+	 */
+	@Override
+	public synchronized void map() {
+		Arrays.fill(mapped, false);
+		if (level > 0) {
+			renderLevel(0, 0, levelScreen.back.dimension(0) - 1,
+				levelScreen.back.dimension(1) - 1);
+		}
+		else mapTiles(getActiveBounds());
+		swap();
+	}
+
+	// -- Positionable methods --
+
+	/**
+	 * Moves the projector along the given dimension. The position is changed
+	 * under the projector's lock, so never in the middle of a render.
+	 */
+	@Override
+	public synchronized void setPosition(final long position, final int d) {
+		super.setPosition(position, d);
+	}
+
+	// -- Localizable methods --
+
+	@Override
+	public synchronized void localize(final long[] position) {
+		super.localize(position);
+	}
+
+	@Override
+	public synchronized long getLongPosition(final int d) {
+		return super.getLongPosition(d);
+	}
+
+	// -- DatasetProjector methods --
+
+	/**
+	 * Re-renders the XY bounds of the given interval. Parts of the interval
+	 * lying outside of the viewport are only marked stale.
+	 */
+	public void map(final Interval region) {
+		map(region.min(0), region.min(1), region.max(0), region.max(1));
+	}
+
+	/**
+	 * Re-renders the given (inclusive) XY bounds of the current plane. Bounds
+	 * falling outside the screen image are clipped, and parts lying outside of
+	 * the viewport are only marked stale. When rendering a pyramid level, the
+	 * pyramid must already have been invalidated for the changed bounds.
+	 */
+	public synchronized void map(final long minX, final long minY,
+		final long maxX, final long maxY)
+	{
+		final long[] active = getActiveBounds();
+		final long[] tiles = tileRange(minX, minY, maxX, maxY);
+		if (tiles == null) return;
+		for (int ty = (int) tiles[1]; ty <= tiles[3]; ty++) {
+			for (int tx = (int) tiles[0]; tx <= tiles[2]; tx++) {
+				final int t = ty * tilesX + tx;
+				if (!mapped[t]) continue; // will be rendered in full when needed
+				if (overlapsTile(active, tx, ty)) {
+					render(Math.max(minX, (long) tx * TILE_SIZE), Math.max(minY,
+						(long) ty * TILE_SIZE), Math.min(maxX, (tx + 1L) * TILE_SIZE - 1),
+						Math.min(maxY, (ty + 1L) * TILE_SIZE - 1));
+				}
+				else mapped[t] = false;
+			}
+		}
+		mapTiles(active);
+		if (level > 0) {
+			renderLevel(minX >> level, minY >> level, maxX >> level, maxY >> level);
+		}
+		swap();
+	}
+
+	/**
+	 * Restricts rendering to the given (inclusive) XY bounds, which are widened
+	 * by {@link #VIEWPORT_MARGIN}. Nothing is rendered until the next call to
+	 * {@link #map()} or {@link #mapStale()}.
+	 */
+	public synchronized void setViewport(final long minX, final long minY,
+		final long maxX, final long maxY)
+	{
+		viewport =
+			new long[] { minX - VIEWPORT_MARGIN, minY - VIEWPORT_MARGIN,
+				maxX + VIEWPORT_MARGIN, maxY + VIEWPORT_MARGIN };
+	}
+
+	/** Renders any stale tiles overlapping the viewport. */
+	public synchronized void mapStale() {
+		mapTiles(getActiveBounds());
+		swap();
+	}
+
+	/** Lifts any viewport restriction, rendering the whole plane. */
+	public synchronized void clearViewport() {
+		viewport = null;
+		mapTiles(getActiveBounds());
+		swap();
+	}
+
+	/** Gets whether rendering is restricted to a viewport. */
+	public synchronized boolean hasViewport() {
+		return viewport != null;
+	}
+
+	/** Renders any stale tiles of the screen image. */
+	public void ensureMapped() {
+		ensureMapped(screen.back);
+	}
+
+	/** Renders any stale tiles overlapping the XY bounds of the given interval. */
+	public synchronized void ensureMapped(final Interval region) {
+		mapTiles(new long[] { region.min(0), region.min(1), region.max(0),
+			region.max(1) });
+		swap();
+	}
+
+	/**
+	 * Sets the pyramid from which zoomed-out levels are rendered, or null to
+	 * always render at full resolution. Resets the level to 0.
+	 */
+	public synchronized void setPyramid(final PlanePyramid pyramid) {
+		this.pyramid = pyramid;
+		setLevel(0);
+	}
+
+	public synchronized PlanePyramid getPyramid() {
+		return pyramid;
+	}
+
+	/**
+	 * Sets the pyramid level to render, 0 being full resolution. Nothing is
+	 * rendered until the next call to {@link #map()}.
+	 */
+	public synchronized void setLevel(final int level) {
+		if (level == this.level) return;
+		if (level != 0 &&
+			(pyramid == null || level < 0 || level >= pyramid.getLevelCount()))
+		{
+			throw new IllegalArgumentException("Invalid level: " + level);
+		}
+		final Buffers buffers;
+		if (level == 0) buffers = null;
+		else {
+			buffers =
+				new Buffers(new ARGBScreenImage((int) pyramid.getWidth(level),
+					(int) pyramid.getHeight(level)));
+			buffers.setDoubleBuffered(doubleBuffered);
+		}
+		synchronized (frameLock) {
+			this.level = level;
+			levelScreen = buffers;
+		}
+		// NB: the whole plane is now shown at a different resolution
+		Arrays.fill(damaged, true);
+	}
+
+	public synchronized int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Gets the image which should be painted: the screen image, or a smaller
+	 * image of the current pyramid level covering the same part of the plane.
+	 * When double-buffered, hold the {@link #getFrameLock() frame lock} while
+	 * reading its pixels.
+	 */
+	public ARGBScreenImage getDisplayImage() {
+		synchronized (frameLock) {
+			return level > 0 ? levelScreen.front : screen.front;
+		}
+	}
+
+	/**
+	 * Gets the full-resolution screen image which should be read: the front
+	 * buffer, if double-buffered. When double-buffered, hold the
+	 * {@link #getFrameLock() frame lock} while reading its pixels.
+	 */
+	public ARGBScreenImage getScreenImage() {
+		synchronized (frameLock) {
+			return screen.front;
+		}
+	}
+
+	/**
+	 * Gets the lock under which the front buffers are swapped. Code holding it
+	 * may read the {@link #getScreenImage() screen image} or
+	 * {@link #getDisplayImage() display image} without seeing a torn frame;
+	 * rendering continues meanwhile, but the next swap waits. Do not call other
+	 * methods of the projector while holding it.
+	 */
+	public Object getFrameLock() {
+		return frameLock;
+	}
+
+	/**
+	 * Sets whether rendering goes to a separate back buffer, which is swapped in
+	 * once complete. This doubles the memory used by the screen image.
+	 */
+	public synchronized void setDoubleBuffered(final boolean doubleBuffered) {
+		this.doubleBuffered = doubleBuffered;
+		screen.setDoubleBuffered(doubleBuffered);
+		if (levelScreen != null) levelScreen.setDoubleBuffered(doubleBuffered);
+	}
+
+	public synchronized boolean isDoubleBuffered() {
+		return doubleBuffered;
+	}
+
+	/**
+	 * Sets the loop used to render composite images in parallel bands of rows,
+	 * or null to render on the calling thread only. The converters must then be
+	 * safe to call from several threads at once.
+	 */
+	public void setParallelLoop(final ParallelLoop loop) {
+		this.loop = loop;
+	}
+
+	public ParallelLoop getParallelLoop() {
+		return loop;
+	}
+
+	/**
+	 * Sets the table used instead of the converter of the given channel, or
+	 * null to use the converter. The table must match the converter, and must
+	 * be replaced whenever the converter changes. Nothing is rendered until the
+	 * next call to {@link #map()}.
+	 */
+	public synchronized void setTable(final int c, final ARGBTable table) {
+		// NB: Renders in progress keep using the tables they started with.
+		final ARGBTable[] newTables =
+			Arrays.copyOf(tables, Math.max(tables.length, c + 1));
+		newTables[c] = table;
+		tables = newTables;
+	}
+
+	public ARGBTable getTable(final int c) {
+		final ARGBTable[] t = tables;
+		return c < t.length ? t[c] : null;
+	}
+
+	/**
+	 * Renders the plane at the given position into a frame, without changing
+	 * the position of this projector. The frame covers what {@link #map()}
+	 * would render: the current pyramid level, or the tiles near the viewport.
+	 * This method may be called from any thread.
+	 * 
+	 * @param position The position of the plane; the X and Y coordinates are
+	 *          ignored.
+	 * @param reuse A frame whose image may be reused, or null.
+	 */
+	public ProjectedFrame project(final long[] position,
+		final ProjectedFrame reuse)
+	{
+		final int lvl;
+		final long[] bounds;
+		final long width, height;
+		synchronized (this) {
+			lvl = level;
+			bounds = getFrameBounds();
+			final ARGBScreenImage image = getDisplayImage();
+			width = image.dimension(0);
+			height = image.dimension(1);
+		}
+		final ProjectedFrame frame = reuse == null ? new ProjectedFrame() : reuse;
+		final ARGBScreenImage image = frame.getImage();
+		if (image == null || image.dimension(0) != width ||
+			image.dimension(1) != height)
+		{
+			frame.setImage(new ARGBScreenImage((int) width, (int) height));
+		}
+		frame.setPosition(position.clone());
+		frame.setLevel(lvl);
+		frame.setBounds(bounds);
+		if (bounds == null) return frame;
+		if (lvl > 0) {
+			renderLevel(frame.getImage(), position, lvl, bounds[0], bounds[1],
+				bounds[2], bounds[3]);
+		}
+		else {
+			render(frame.getImage(), position, bounds[0], bounds[1], bounds[2],
+				bounds[3]);
+		}
+		return frame;
+	}
+
+	/**
+	 * Shows a frame rendered by {@link #project(long[], ProjectedFrame)}, as
+	 * though {@link #map()} had been called. The projector must already be
+	 * positioned at the frame's position.
+	 * 
+	 * @return false if the frame no longer matches the level or viewport of the
+	 *         projector, in which case nothing is done.
+	 */
+	public synchronized boolean present(final ProjectedFrame frame) {
+		final long[] bounds = getFrameBounds();
+		if (frame.getLevel() != level || bounds == null ||
+			!Arrays.equals(bounds, frame.getBounds()))
+		{
+			return false;
+		}
+		final Buffers buffers = level > 0 ? levelScreen : screen;
+		final int width = (int) buffers.back.dimension(0);
+		final int x0 = (int) bounds[0];
+		final int length = (int) (bounds[2] - bounds[0] + 1);
+		final int[] src = frame.getImage().getData();
+		final int[] dest = buffers.back.getData();
+		for (int y = (int) bounds[1]; y <= bounds[3]; y++) {
+			final int offset = y * width + x0;
+			System.arraycopy(src, offset, dest, offset, length);
+		}
+		buffers.touch(bounds[0], bounds[1], bounds[2], bounds[3]);
+		damage(level, bounds[0], bounds[1], bounds[2], bounds[3]);
+		Arrays.fill(mapped, false);
+		if (level == 0) {
+			final long[] tiles =
+				tileRange(bounds[0], bounds[1], bounds[2], bounds[3]);
+			for (int ty = (int) tiles[1]; ty <= tiles[3]; ty++) {
+				for (int tx = (int) tiles[0]; tx <= tiles[2]; tx++) {
+					mapped[ty * tilesX + tx] = true;
+				}
+			}
+		}
+		swap();
+		return true;
+	}
+
+	/**
+	 * Gets the parts of the plane rendered since the last call, in tile-aligned
+	 * XY bounds, and forgets them. Adjacent tiles of a row are merged.
+	 */
+	public synchronized List<Interval> takeDamage() {
+		final List<Interval> damage = new ArrayList<Interval>();
+		final long width = screen.back.dimension(0);
+		final long height = screen.back.dimension(1);
+		for (int ty = 0; ty < tilesY; ty++) {
+			int tx = 0;
+			while (tx < tilesX) {
+				if (!damaged[ty * tilesX + tx]) {
+					tx++;
+					continue;
+				}
+				int end = tx;
+				while (end < tilesX && damaged[ty * tilesX + end]) {
+					damaged[ty * tilesX + end] = false;
+					end++;
+				}
+				damage.add(new FinalInterval(new long[] { (long) tx * TILE_SIZE,
+					(long) ty * TILE_SIZE }, new long[] {
+					Math.min((long) end * TILE_SIZE, width) - 1,
+					Math.min((ty + 1L) * TILE_SIZE, height) - 1 }));
+				tx = end;
+			}
+		}
+		return damage;
+	}
+
+	/** Gets the number of tiles holding up-to-date pixels. */
+	public synchronized int getMappedTileCount() {
+		int count = 0;
+		for (final boolean b : mapped) {
+			if (b) count++;
+		}
+		return count;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets the bounds of the screen image which should be kept up to date, or
+	 * null if a pyramid level is shown instead.
+	 */
+	private long[] getActiveBounds() {
+		if (level > 0) return null;
+		if (viewport != null) return viewport;
+		return new long[] { 0, 0, screen.back.dimension(0) - 1,
+			screen.back.dimension(1) - 1 };
+	}
+
+	/**
+	 * Gets the (inclusive) bounds rendered by {@link #map()}: the whole pyramid
+	 * level, or the tiles overlapping the viewport, clipped to the screen image.
+	 */
+	private long[] getFrameBounds() {
+		if (level > 0) {
+			return new long[] { 0, 0, levelScreen.back.dimension(0) - 1,
+				levelScreen.back.dimension(1) - 1 };
+		}
+		final long[] active = getActiveBounds();
+		final long[] tiles = tileRange(active[0], active[1], active[2], active[3]);
+		if (tiles == null) return null;
+		return new long[] { tiles[0] * TILE_SIZE, tiles[1] * TILE_SIZE,
+			Math.min((tiles[2] + 1) * TILE_SIZE, screen.back.dimension(0)) - 1,
+			Math.min((tiles[3] + 1) * TILE_SIZE, screen.back.dimension(1)) - 1 };
+	}
+
+	/**
+	 * Marks the tiles overlapping the given (inclusive) bounds of the given
+	 * pyramid level as damaged.
+	 */
+	private void damage(final int lvl, final long minX, final long minY,
+		final long maxX, final long maxY)
+	{
+		final long[] tiles =
+			tileRange(minX << lvl, minY << lvl, ((maxX + 1) << lvl) - 1,
+				((maxY + 1) << lvl) - 1);
+		if (tiles == null) return;
+		for (int ty = (int) tiles[1]; ty <= tiles[3]; ty++) {
+			for (int tx = (int) tiles[0]; tx <= tiles[2]; tx++) {
+				damaged[ty * tilesX + tx] = true;
+			}
+		}
+	}
+
+	/** Renders all stale tiles overlapping the given bounds. */
+	private void mapTiles(final long[] bounds) {
+		if (bounds == null) return;
+		final long[] tiles = tileRange(bounds[0], bounds[1], bounds[2], bounds[3]);
+		if (tiles == null) return;
+		for (int ty = (int) tiles[1]; ty <= tiles[3]; ty++) {
+			for (int tx = (int) tiles[0]; tx <= tiles[2]; tx++) {
+				final int t = ty * tilesX + tx;
+				if (mapped[t]) continue;
+				render((long) tx * TILE_SIZE, (long) ty * TILE_SIZE, (tx + 1L) *
+					TILE_SIZE - 1, (ty + 1L) * TILE_SIZE - 1);
+				mapped[t] = true;
+			}
+		}
+	}
+
+	/** Gets the range of tiles overlapping the given bounds, or null if none. */
+	private long[] tileRange(final long minX, final long minY, final long maxX,
+		final long maxY)
+	{
+		final long tx0 = Math.max(minX, 0) / TILE_SIZE;
+		final long ty0 = Math.max(minY, 0) / TILE_SIZE;
+		final long tx1 = Math.min(maxX / TILE_SIZE, tilesX - 1);
+		final long ty1 = Math.min(maxY / TILE_SIZE, tilesY - 1);
+		if (maxX < 0 || maxY < 0 || tx0 > tx1 || ty0 > ty1) return null;
+		return new long[] { tx0, ty0, tx1, ty1 };
+	}
+
+	private boolean overlapsTile(final long[] bounds, final int tx, final int ty)
+	{
+		return bounds != null && bounds[0] < (tx + 1L) * TILE_SIZE &&
+			bounds[2] >= (long) tx * TILE_SIZE && bounds[1] < (ty + 1L) * TILE_SIZE &&
+			bounds[3] >= (long) ty * TILE_SIZE;
+	}
+
+	/** Renders the given (inclusive) XY bounds, clipped to the screen image. */
+	private void render(final long minX, final long minY, final long maxX,
+		final long maxY)
+	{
+		final long[] pos = new long[numDimensions()];
+		localize(pos);
+		if (render(screen.back, pos, minX, minY, maxX, maxY)) {
+			screen.touch(Math.max(minX, 0), Math.max(minY, 0), Math.min(maxX,
+				screen.back.dimension(0) - 1), Math.min(maxY,
+				screen.back.dimension(1) - 1));
+			damage(0, minX, minY, maxX, maxY);
+		}
+	}
+
+	/**
+	 * Renders the given (inclusive) XY bounds of the plane at the given position
+	 * into the given image, clipped to the image. Returns false if the clipped
+	 * bounds are empty.
+	 */
+	private boolean render(final ARGBScreenImage image, final long[] pos,
+		final long minX, final long minY, final long maxX, final long maxY)
+	{
+		final int x0 = (int) Math.max(minX, 0);
+		final int y0 = (int) Math.max(minY, 0);
+		final int x1 = (int) Math.min(maxX, image.dimension(0) - 1);
+		final int y1 = (int) Math.min(maxY, image.dimension(1) - 1);
+		if (x0 > x1 || y0 > y1) return false;
+
+		final int width = (int) image.dimension(0);
+		final int[] pixels =
+			((IntArray) image.update(null)).getCurrentStorageArray();
+
+		final ARGBTable[] t = tables;
+		if (isComposite() && dimIndex >= 0) {
+			final int channels =
+				(int) Math.min(source.dimension(dimIndex), converters.size());
+			runBands(x1 - x0 + 1, y0, y1, channels, new Band() {
+
+				@Override
+				public void render(final int bandY0, final int bandY1) {
+					renderComposite(pixels, width, pos, channels, t, x0, bandY0, x1,
+						bandY1);
+				}
+			});
+		}
+		else {
+			final RandomAccess<A> access = source.randomAccess();
+			access.setPosition(pos);
+			final ARGBType argb = new ARGBType();
+			final int c = dimIndex < 0 ? 0 : (int) pos[dimIndex];
+			final Converter<A, ARGBType> converter = converters.get(c);
+			final ARGBTable table = c < t.length ? t[c] : null;
+			for (int y = y0; y <= y1; y++) {
+				access.setPosition(x0, 0);
+				access.setPosition(y, 1);
+				int index = y * width + x0;
+				if (table != null) {
+					for (int x = x0; x <= x1; x++) {
+						pixels[index++] =
+							table.lookup(((RealType<?>) access.get()).getRealDouble());
+						access.fwd(0);
+					}
+					continue;
+				}
+				for (int x = x0; x <= x1; x++) {
+					converter.convert(access.get(), argb);
+					pixels[index++] = argb.get();
+					access.fwd(0);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Renders the given (inclusive) bounds of the current pyramid level, clipped
+	 * to the level image.
+	 */
+	private void renderLevel(final long minX, final long minY, final long maxX,
+		final long maxY)
+	{
+		final long[] pos = new long[numDimensions()];
+		localize(pos);
+		final ARGBScreenImage levelImage = levelScreen.back;
+		if (renderLevel(levelImage, pos, level, minX, minY, maxX, maxY)) {
+			levelScreen.touch(Math.max(minX, 0), Math.max(minY, 0), Math.min(maxX,
+				levelImage.dimension(0) - 1), Math.min(maxY,
+				levelImage.dimension(1) - 1));
+			damage(level, minX, minY, maxX, maxY);
+		}
+	}
+
+	/**
+	 * Renders the given (inclusive) bounds of a pyramid level of the plane at
+	 * the given position into the given image, clipped to the image. Returns
+	 * false if the clipped bounds are empty.
+	 */
+	private boolean renderLevel(final ARGBScreenImage levelImage,
+		final long[] position, final int lvl, final long minX, final long minY,
+		final long maxX, final long maxY)
+	{
+		final int width = (int) levelImage.dimension(0);
+		final int x0 = (int) Math.max(minX, 0);
+		final int y0 = (int) Math.max(minY, 0);
+		final int x1 = (int) Math.min(maxX, width - 1);
+		final int y1 = (int) Math.min(maxY, levelImage.dimension(1) - 1);
+		if (x0 > x1 || y0 > y1) return false;
+
+		final int[] pixels =
+			((IntArray) levelImage.update(null)).getCurrentStorageArray();
+		final long[] pos = position.clone();
+
+		final boolean composite = isComposite() && dimIndex >= 0;
+		final int firstChannel =
+			dimIndex < 0 || composite ? 0 : (int) pos[dimIndex];
+		final int channelCount =
+			composite ? (int) Math.min(source.dimension(dimIndex), converters
+				.size()) : 1;
+		final float[][] planes = new float[channelCount][];
+		for (int c = 0; c < channelCount; c++) {
+			if (dimIndex >= 0) pos[dimIndex] = firstChannel + c;
+			planes[c] = pyramid.getPlane(pos, lvl);
+		}
+
+		runBands(x1 - x0 + 1, y0, y1, channelCount, new Band() {
+
+			@Override
+			public void render(final int bandY0, final int bandY1) {
+				renderLevelBand(pixels, width, planes, composite, firstChannel, x0,
+					bandY0, x1, bandY1);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Renders the given (inclusive) bounds of a composite plane at the given
+	 * position, blending all channels of each pixel in one pass.
+	 */
+	private void renderComposite(final int[] pixels, final int width,
+		final long[] pos, final int channels, final ARGBTable[] t, final int x0,
+		final int y0, final int x1, final int y1)
+	{
+		final RandomAccess<A> access = source.randomAccess();
+		access.setPosition(pos);
+		final ARGBType argb = new ARGBType();
+		final ARGBTable[] channelTables = new ARGBTable[channels];
+		for (int c = 0; c < channels && c < t.length; c++) {
+			channelTables[c] = t[c];
+		}
+		for (int y = y0; y <= y1; y++) {
+			access.setPosition(y, 1);
+			int index = y * width + x0;
+			for (int x = x0; x <= x1; x++) {
+				access.setPosition(x, 0);
+				int r = 0, g = 0, b = 0;
+				for (int c = 0; c < channels; c++) {
+					access.setPosition(c, dimIndex);
+					final int value;
+					if (channelTables[c] != null) {
+						value =
+							channelTables[c].lookup(((RealType<?>) access.get())
+								.getRealDouble());
+					}
+					else {
+						converters.get(c).convert(access.get(), argb);
+						value = argb.get();
+					}
+					r += ARGBType.red(value);
+					g += ARGBType.green(value);
+					b += ARGBType.blue(value);
+				}
+				if (r > 255) r = 255;
+				if (g > 255) g = 255;
+				if (b > 255) b = 255;
+				pixels[index++] = ARGBType.rgba(r, g, b, 255);
+			}
+		}
+	}
+
+	/**
+	 * Renders the given (inclusive) bounds of a pyramid level from its
+	 * downsampled channel planes.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void renderLevelBand(final int[] pixels, final int width,
+		final float[][] planes, final boolean composite, final int firstChannel,
+		final int x0, final int y0, final int x1, final int y1)
+	{
+		// NB: The converters only rely on getRealDouble() of their input.
+		final FloatType value = new FloatType();
+		final ARGBType argb = new ARGBType();
+		for (int y = y0; y <= y1; y++) {
+			int index = y * width + x0;
+			for (int x = x0; x <= x1; x++) {
+				if (!composite) {
+					value.set(planes[0][index]);
+					((Converter) converters.get(firstChannel)).convert(value, argb);
+					pixels[index++] = argb.get();
+					continue;
+				}
+				int r = 0, g = 0, b = 0;
+				for (int c = 0; c < planes.length; c++) {
+					value.set(planes[c][index]);
+					((Converter) converters.get(c)).convert(value, argb);
+					final int v = argb.get();
+					r += ARGBType.red(v);
+					g += ARGBType.green(v);
+					b += ARGBType.blue(v);
+				}
+				if (r > 255) r = 255;
+				if (g > 255) g = 255;
+				if (b > 255) b = 255;
+				pixels[index++] = ARGBType.rgba(r, g, b, 255);
+			}
+		}
+	}
+
+	/**
+	 * Renders rows y0 to y1 (inclusive), in parallel bands of rows if there is a
+	 * parallel loop and enough pixels to be worth it.
+	 */
+	private void runBands(final int width, final int y0, final int y1,
+		final int channels, final Band band)
+	{
+		final ParallelLoop l = loop;
+		final long size = (long) width * (y1 - y0 + 1) * channels;
+		if (l == null || channels < 2 || size < MIN_PARALLEL_SIZE) {
+			band.render(y0, y1);
+			return;
+		}
+		l.run(y1 - y0 + 1, new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				band.render((int) (y0 + start), (int) (y0 + end - 1));
+			}
+		});
+	}
+
+	/**
+	 * Swaps in whatever has been rendered into the back buffers, waiting for any
+	 * reader of the front buffers to finish.
+	 */
+	private void swap() {
+		synchronized (frameLock) {
+			screen.swap();
+			if (levelScreen != null) levelScreen.swap();
+		}
+	}
+
+	// -- Helper classes --
+
+	/** Renders a band of rows. */
+	private interface Band {
+
+		/** Renders rows y0 to y1 (inclusive). */
+		void render(int y0, int y1);
+	}
+
+	/**
+	 * A front and back screen image. When single-buffered, both are the same
+	 * image.
+	 */
+	private static class Buffers {
+
+		private ARGBScreenImage front, back;
+
+		/** Bounds (inclusive) rendered into the back buffer since the last swap. */
+		private long[] touched;
+
+		public Buffers(final ARGBScreenImage image) {
+			front = back = image;
+		}
+
+		public void setDoubleBuffered(final boolean doubleBuffered) {
+			if (doubleBuffered == (front != back)) return;
+			if (doubleBuffered) {
+				back =
+					new ARGBScreenImage((int) front.dimension(0), (int) front
+						.dimension(1));
+				System.arraycopy(front.getData(), 0, back.getData(), 0, front
+					.getData().length);
+			}
+			else back = front;
+			touched = null;
+		}
+
+		public void touch(final long minX, final long minY, final long maxX,
+			final long maxY)
+		{
+			if (front == back) return;
+			if (touched == null) {
+				touched = new long[] { minX, minY, maxX, maxY };
+				return;
+			}
+			touched[0] = Math.min(touched[0], minX);
+			touched[1] = Math.min(touched[1], minY);
+			touched[2] = Math.max(touched[2], maxX);
+			touched[3] = Math.max(touched[3], maxY);
+		}
+
+		/**
+		 * Makes the back buffer the front one, then brings the new back buffer up
+		 * to date by copying over the rendered bounds.
+		 */
+		public void swap() {
+			if (touched == null) return;
+			final ARGBScreenImage rendered = back;
+			back = front;
+			front = rendered;
+			final int width = (int) front.dimension(0);
+			final int x0 = (int) touched[0];
+			final int length = (int) (touched[2] - touched[0] + 1);
+			final int[] src = front.getData(), dest = back.getData();
+			for (int y = (int) touched[1]; y <= touched[3]; y++) {
+				final int offset = y * width + x0;
+				System.arraycopy(src, offset, dest, offset, length);
+			}
+			touched = null;
+		}
+	}
+
+}
@@ -42,6 +42,7 @@
 
 import java.util.List;
 
+import net.imglib2.Interval;
 import net.imglib2.algorithm.stats.ComputeMinMax;
 import net.imglib2.display.ARGBScreenImage;
 import net.imglib2.display.ColorTable;
@@ -60,10 +61,87 @@ public interface DatasetView extends DataView {
 
 	ARGBScreenImage getScreenImage();
 
+	/**
+	 * Gets the image which should be painted to show the current plane. This is
+	 * either the {@link #getScreenImage() screen image}, or, when zoomed out, a
+	 * smaller rendering of a downsampled {@link PlanePyramid} level covering the
+	 * whole plane.
+	 */
+	ARGBScreenImage getDisplayImage();
+
+	/**
+	 * Gets the lock to hold while reading the pixels of the
+	 * {@link #getScreenImage() screen image} or {@link #getDisplayImage()
+	 * display image}. A double-buffered view only swaps in new frames under
+	 * this lock, so readers holding it never see a torn frame.
+	 */
+	Object getFrameLock();
+
 	int getCompositeDimIndex();
 
 	CompositeXYProjector<? extends RealType<?>> getProjector();
 
+	/**
+	 * Gets the scheduler through which position and data changes are
+	 * re-projected, along with its frame statistics.
+	 */
+	RenderScheduler getRenderScheduler();
+
+	/**
+	 * Sets whether position and data changes are re-projected on a background
+	 * thread, as suits an interactive canvas. By default they are re-projected
+	 * before {@link #setPosition(long, net.imglib2.meta.AxisType)} or the
+	 * handling of the data change returns.
+	 * <p>
+	 * When asynchronous, the screen image is double-buffered and may be stale
+	 * until the background frame completes; call
+	 * {@link #ensureProjected(Interval)} before reading its pixels. The
+	 * {@link imagej.data.display.event.DataViewUpdatedEvent} announcing each
+	 * frame is then published later through the event service, rather than on
+	 * the rendering thread.
+	 * </p>
+	 */
+	void setAsyncRendering(boolean async);
+
+	/** Gets whether position and data changes are re-projected asynchronously. */
+	boolean isAsyncRendering();
+
+	/**
+	 * Renders the plane at the given position with the current display settings,
+	 * without changing the position of the view. This may be called from any
+	 * thread, e.g. to prefetch the upcoming frames of an animation.
+	 * 
+	 * @param position The position of the plane; the X and Y coordinates are
+	 *          ignored.
+	 * @param reuse A previously projected frame whose buffer may be reused, or
+	 *          null.
+	 */
+	ProjectedFrame project(long[] position, ProjectedFrame reuse);
+
+	/**
+	 * Moves the view to the position of the given frame and shows the frame's
+	 * pixels, without projecting the plane again. If the display settings have
+	 * changed since the frame was projected, the plane is projected as usual.
+	 * 
+	 * @return true if the frame was shown as is.
+	 */
+	boolean present(ProjectedFrame frame);
+
+	/**
+	 * Makes sure the XY bounds of the given region of the
+	 * {@link #getScreenImage() screen image} are up to date. While a display
+	 * shows only part of a plane, pixels away from its viewport are projected on
+	 * demand; call this before reading them.
+	 */
+	void ensureProjected(Interval region);
+
+	/**
+	 * Gets the parts of the plane, in tile-aligned XY bounds, whose projection
+	 * changed since the last call, and forgets them. Painting code can use this
+	 * to repaint only what changed.
+	 */
+	List<Interval> takeDamage();
+
 	/** Gets the number of channels in the displayed data. */
 	int getChannelCount();
 
@@ -38,19 +38,31 @@
 import imagej.data.ChannelCollection;
 import imagej.data.Data;
 import imagej.data.Dataset;
+import imagej.data.DirtyRegion;
+import imagej.data.ParallelLoop;
 import imagej.data.Position;
+import imagej.data.display.event.CanvasEvent;
 import imagej.data.display.event.DataViewUpdatedEvent;
 import imagej.data.display.event.LUTsChangedEvent;
+import imagej.data.display.event.PanZoomEvent;
+import imagej.data.display.event.ViewportResizeEvent;
 import imagej.data.event.DatasetRGBChangedEvent;
 import imagej.data.event.DatasetTypeChangedEvent;
 import imagej.data.event.DatasetUpdatedEvent;
+import imagej.data.memory.MemoryService;
+import imagej.data.stats.DatasetStatisticsService;
+import imagej.data.stats.PixelStatistics;
 import imagej.util.ColorRGB;
+import imagej.util.IntCoords;
+import imagej.util.RealCoords;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.imglib2.Binning;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.stats.ComputeMinMax;
 import net.imglib2.display.ARGBScreenImage;
@@ -67,6 +79,7 @@
 import org.scijava.event.EventHandler;
 import org.scijava.event.EventService;
 import org.scijava.plugin.Plugin;
+import org.scijava.thread.ThreadService;
 
 /**
  * A view into a {@link Dataset}, for use with a {@link ImageDisplay}.
@@ -90,11 +103,33 @@ public class DefaultDatasetView extends AbstractDataView implements DatasetView
 
 	private ARGBScreenImage screenImage;
 
-	private CompositeXYProjector<? extends RealType<?>> projector;
+	private DatasetProjector<? extends RealType<?>> projector;
+
+	/** Downsampled levels of the data, for rendering when zoomed out. */
+	private PlanePyramid pyramid;
+
+	/** The zoom factor last reported by the canvas. */
+	private double zoom = 1;
+
+	/** Merges and schedules the projection work of position and data changes. */
+	private RenderScheduler renderScheduler;
+
+	/**
+	 * Counter bumped whenever the rendering of a plane changes (display ranges,
+	 * LUTs, data), so that frames projected ahead of time can be recognized as
+	 * stale.
+	 */
+	private final AtomicLong renderStamp = new AtomicLong();
 
 	private final ArrayList<RealLUTConverter<? extends RealType<?>>> converters =
 		new ArrayList<RealLUTConverter<? extends RealType<?>>>();
 
+	/**
+	 * XY bounds (inclusive) of the visible part of the plane, as last reported
+	 * by the canvas, or null if the whole plane should be projected.
+	 */
+	private long[] viewport;
+
 	// -- DatasetView methods --
 
 	@Override
@@ -105,7 +140,20 @@ public int getChannelCount() {
 
 	@Override
 	public ARGBScreenImage getScreenImage() {
-		return screenImage;
+		if (!isInitialized()) return screenImage;
+		return projector.getScreenImage();
+	}
+
+	@Override
+	public ARGBScreenImage getDisplayImage() {
+		if (!isInitialized()) return screenImage;
+		return projector.getDisplayImage();
+	}
+
+	@Override
+	public Object getFrameLock() {
+		if (!isInitialized()) return screenImage;
+		return projector.getFrameLock();
 	}
 
 	@Override
@@ -138,6 +186,8 @@ public void setChannelRange(final int c, final double min, final double max) {
 
 		converters.get(c).setMin(min);
 		converters.get(c).setMax(max);
+		updateTable(c);
+		renderStamp.incrementAndGet();
 	}
 
 	@Override
@@ -156,13 +206,23 @@ public void autoscale(final int c) {
 		double max = imgPlus.getChannelMaximum(c);
 		if (Double.isNaN(min) || Double.isNaN(max)) {
 			// not provided in metadata, so calculate the min/max
-			final RandomAccessibleInterval<RealType> interval =
-				channelData(getData(), c);
-			final ComputeMinMax<? extends RealType<?>> cmm =
-				new ComputeMinMax(interval);
-			cmm.process();
-			min = cmm.getMin().getRealDouble();
-			max = cmm.getMax().getRealDouble();
+			final DatasetStatisticsService statisticsService =
+				getStatisticsService();
+			if (statisticsService != null) {
+				final PixelStatistics stats =
+					statisticsService.getStatistics(getData()).getChannelStatistics(c);
+				min = stats.getMin();
+				max = stats.getMax();
+			}
+			else {
+				final RandomAccessibleInterval<RealType> interval =
+					channelData(getData(), c);
+				final ComputeMinMax<? extends RealType<?>> cmm =
+					new ComputeMinMax(interval);
+				cmm.process();
+				min = cmm.getMin().getRealDouble();
+				max = cmm.getMax().getRealDouble();
+			}
 			// cache min/max in metadata for next time
 			imgPlus.setChannelMinimum(c, min);
 			imgPlus.setChannelMaximum(c, max);
@@ -170,11 +230,83 @@ public void autoscale(final int c) {
 		setChannelRange(c, min, max);
 	}
 
+	@Override
+	public void ensureProjected(final Interval region) {
+		if (!isInitialized()) return;
+
+		getRenderScheduler().flush();
+		projector.ensureMapped(region);
+	}
+
+	@Override
+	public List<Interval> takeDamage() {
+		if (!isInitialized()) return Collections.emptyList();
+
+		return projector.takeDamage();
+	}
+
+	@Override
+	public ProjectedFrame project(final long[] position,
+		final ProjectedFrame reuse)
+	{
+		if (!isInitialized()) return null;
+
+		final long stamp = renderStamp.get();
+		final ProjectedFrame frame = projector.project(position, reuse);
+		frame.setStamp(stamp);
+		return frame;
+	}
+
+	@Override
+	public boolean present(final ProjectedFrame frame) {
+		if (!isInitialized()) return false;
+
+		final long[] position = frame.getPosition();
+		final Dataset data = getData();
+		for (int d = 2; d < position.length && d < projector.numDimensions(); d++)
+		{
+			projector.setPosition(position[d], d);
+			super.setPosition(position[d], data.axis(d));
+		}
+		final boolean shown =
+			!updateLUTs() && frame.getStamp() == renderStamp.get() &&
+				projector.present(frame);
+		if (!shown) getRenderScheduler().request();
+		else update();
+		return shown;
+	}
+
+	@Override
+	public synchronized RenderScheduler getRenderScheduler() {
+		if (renderScheduler == null) {
+			final Context context = getContext();
+			final ThreadService threadService =
+				context == null ? null : context.getService(ThreadService.class);
+			renderScheduler = new RenderScheduler(new Renderer(), threadService);
+		}
+		return renderScheduler;
+	}
+
+	@Override
+	public void setAsyncRendering(final boolean async) {
+		getRenderScheduler().setAsynchronous(async);
+		if (!isInitialized()) return;
+		// NB: Frames rendered in the background are swapped in when complete.
+		projector.setDoubleBuffered(getRenderScheduler().isAsynchronous());
+		recordScreenUsage();
+	}
+
+	@Override
+	public boolean isAsyncRendering() {
+		return getRenderScheduler().isAsynchronous();
+	}
+
 	@Override
 	public void setComposite(final boolean composite) {
 		if (!isInitialized()) return;
 
 		projector.setComposite(composite);
+		renderStamp.incrementAndGet();
 	}
 
 	@Override
@@ -233,6 +365,7 @@ public void setColorMode(final ColorMode colorMode) {
 
 		resetColorTables(colorMode == ColorMode.GRAYSCALE);
 		projector.setComposite(colorMode == ColorMode.COMPOSITE);
+		renderStamp.incrementAndGet();
 		projector.map();
 	}
 
@@ -325,6 +458,7 @@ public void rebuild() {
 		// can get thrown. Basically if you add a channel to an image the converter
 		// size() can be out of sync.
 		uninitializeView();
+		renderStamp.incrementAndGet();
 
 		channelDimIndex = getChannelDimIndex();
 
@@ -341,10 +475,20 @@ public void rebuild() {
 
 		initializeView(isComposite());
 
+		recordScreenUsage();
+
 		updateLUTs();
 		projector.map();
 	}
 
+	@Override
+	public void dispose() {
+		if (pyramid != null) pyramid.clear();
+		final MemoryService memoryService = getMemoryService();
+		if (memoryService != null) memoryService.release(this);
+		super.dispose();
+	}
+
 	// -- PositionableByAxis methods --
 
 	@Override
@@ -378,7 +522,7 @@ public void setPosition(final long position, final AxisType axis) {
 			updateLUTs();
 		}
 
-		projector.map();
+		getRenderScheduler().request();
 
 		super.setPosition(position, axis);
 	}
@@ -399,6 +543,16 @@ protected void onEvent(final DatasetRGBChangedEvent event) {
 		}
 	}
 
+	@EventHandler
+	protected void onEvent(final PanZoomEvent event) {
+		updateViewport(event);
+	}
+
+	@EventHandler
+	protected void onEvent(final ViewportResizeEvent event) {
+		updateViewport(event);
+	}
+
 	@EventHandler
 	protected void onEvent(final DatasetUpdatedEvent event) {
 		// FIXME: eliminate hacky logic here
@@ -410,12 +564,45 @@ protected void onEvent(final DatasetUpdatedEvent event) {
 		}
 		if (getData() == event.getObject()) {
 			if (event.isMetaDataOnly()) return;
-			projector.map();
+			final DirtyRegion region = event.getRegion();
+			renderStamp.incrementAndGet();
+			if (pyramid != null) pyramid.invalidate(region);
+			if (region == null) {
+				getRenderScheduler().request();
+				return;
+			}
+			// re-project only the changed part of the displayed plane, if any
+			final long[] pos = new long[projector.numDimensions()];
+			projector.localize(pos);
+			final int ignoredDim = projector.isComposite() ? channelDimIndex : -1;
+			final Interval bounds = region.getPlaneBounds(pos, ignoredDim);
+			if (bounds != null) getRenderScheduler().request(bounds);
 		}
 	}
 
 	// -- Helper methods --
 
+	private MemoryService getMemoryService() {
+		final Context context = getContext();
+		if (context == null) return null;
+		return context.getService(MemoryService.class);
+	}
+
+	/** Records the memory held by the screen image and its back buffer. */
+	private void recordScreenUsage() {
+		final MemoryService memoryService = getMemoryService();
+		if (memoryService == null) return;
+		final int buffers = projector.isDoubleBuffered() ? 2 : 1;
+		memoryService.setUsage(this, MemoryService.SCREEN_IMAGES, 4L * buffers *
+			screenImage.dimension(0) * screenImage.dimension(1));
+	}
+
+	private DatasetStatisticsService getStatisticsService() {
+		final Context context = getContext();
+		if (context == null) return null;
+		return context.getService(DatasetStatisticsService.class);
+	}
+
 	private int getChannelDimIndex() {
 		return getData().getAxisIndex(Axes.CHANNEL);
 	}
@@ -438,6 +625,7 @@ private void uninitializeView() {
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	private void initializeView(final boolean composite) {
 		converters.clear();
+		computeChannelRanges();
 		final int channelCount = getChannelCount();
 		for (int c = 0; c < channelCount; c++) {
 			autoscale(c);
@@ -447,25 +635,136 @@ private void initializeView(final boolean composite) {
 			converters.add(converter);
 		}
 		projector =
-			new CompositeXYProjector(getData().getImgPlus(), screenImage, converters,
+			new DatasetProjector(getData().getImgPlus(), screenImage, converters,
 				channelDimIndex);
 		projector.setComposite(composite);
+		// NB: RealLUTConverter is stateless, so channels can be blended in
+		// parallel bands of rows.
+		projector.setParallelLoop(new ParallelLoop(getContext()));
+		// NB: Frames rendered in the background are swapped in when complete.
+		projector.setDoubleBuffered(getRenderScheduler().isAsynchronous());
+		if (pyramid != null) pyramid.clear();
+		pyramid = createPyramid();
+		if (pyramid != null) {
+			projector.setPyramid(pyramid);
+			projector.setLevel(pyramid.getLevel(zoom));
+		}
+		if (viewport != null) {
+			projector.setViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+		}
 	}
 
-	private void updateLUTs() {
+	/**
+	 * Restricts projection to the part of the plane visible on the canvas, so
+	 * that only pixels near the viewport are converted when the plane changes.
+	 * Newly exposed pixels are projected as the canvas is panned or zoomed.
+	 * When zoomed out far enough, a downsampled pyramid level is shown instead.
+	 */
+	private void updateViewport(final CanvasEvent event) {
+		final ImageDisplay display = event.getDisplay();
+		if (display == null || !display.contains(this)) return;
+		final ImageCanvas canvas = event.getCanvas();
+		final RealCoords topLeft = canvas.panelToDataCoords(new IntCoords(0, 0));
+		final RealCoords bottomRight =
+			canvas.panelToDataCoords(new IntCoords(canvas.getViewportWidth(),
+				canvas.getViewportHeight()));
+		viewport =
+			new long[] { (long) Math.floor(topLeft.x), (long) Math.floor(topLeft.y),
+				(long) Math.ceil(bottomRight.x), (long) Math.ceil(bottomRight.y) };
+		zoom = canvas.getZoomFactor();
 		if (!isInitialized()) return;
+		projector.setViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+		final int level = pyramid == null ? 0 : pyramid.getLevel(zoom);
+		if (level == projector.getLevel()) {
+			projector.mapStale();
+			return;
+		}
+		projector.setLevel(level);
+		projector.map();
+		update();
+	}
+
+	private PlanePyramid createPyramid() {
+		final Context context = getContext();
+		if (context == null) return null;
+		final ImageDisplayService imageDisplayService =
+			context.getService(ImageDisplayService.class);
+		if (imageDisplayService == null) return null;
+		final PlanePyramid planePyramid =
+			new PlanePyramid(getData().getImgPlus(), imageDisplayService
+				.getPyramidCache(), imageDisplayService.isPyramidMaximum());
+		return planePyramid.getLevelCount() > 1 ? planePyramid : null;
+	}
 
+	/**
+	 * Fills in the channel min/max metadata missing from the dataset. All
+	 * channels are computed together in one parallel pass over the planes, so
+	 * that autoscaling each channel afterwards is cheap.
+	 */
+	private void computeChannelRanges() {
+		final ImgPlus<? extends RealType<?>> imgPlus = getData().getImgPlus();
+		final int channelCount = getChannelCount();
+		boolean missing = false;
+		for (int c = 0; c < channelCount; c++) {
+			if (Double.isNaN(imgPlus.getChannelMinimum(c)) ||
+				Double.isNaN(imgPlus.getChannelMaximum(c)))
+			{
+				missing = true;
+			}
+		}
+		if (!missing) return;
+		final DatasetStatisticsService statisticsService = getStatisticsService();
+		if (statisticsService == null) return;
+		final PixelStatistics[] stats =
+			statisticsService.getStatistics(getData()).getChannelStatistics();
+		for (int c = 0; c < channelCount && c < stats.length; c++) {
+			if (Double.isNaN(imgPlus.getChannelMinimum(c)) ||
+				Double.isNaN(imgPlus.getChannelMaximum(c)))
+			{
+				imgPlus.setChannelMinimum(c, stats[c].getMin());
+				imgPlus.setChannelMaximum(c, stats[c].getMax());
+			}
+		}
+	}
+
+	/** Updates the converters' LUTs, returning true if any of them changed. */
+	private boolean updateLUTs() {
+		if (!isInitialized()) return false;
+
+		boolean changed = false;
 		final int channelCount = getChannelCount();
 		for (int c = 0; c < channelCount; c++) {
 			final ColorTable lut = getCurrentLUT(c);
+			if (converters.get(c).getLUT() == lut) continue;
 			converters.get(c).setLUT(lut);
+			updateTable(c);
+			changed = true;
 		}
+		if (changed) renderStamp.incrementAndGet();
 
 		final Context context = getContext();
-		if (context == null) return;
+		if (context == null) return changed;
 		final EventService evtSrv = context.getService(EventService.class);
-		if (evtSrv == null) return;
+		if (evtSrv == null) return changed;
 		evtSrv.publishLater(new LUTsChangedEvent(this));
+		return changed;
+	}
+
+	/**
+	 * Rebuilds the table the projector uses in place of the given channel's
+	 * converter. Tables are only used for integer types of up to
+	 * {@link ARGBTable#MAX_BITS} bits, where they save scaling and looking up
+	 * every pixel whenever the display range changes.
+	 */
+	private void updateTable(final int c) {
+		final RealLUTConverter<? extends RealType<?>> converter =
+			converters.get(c);
+		final RealType<?> type = getData().getType();
+		if (converter.getLUT() == null || !ARGBTable.isSupported(type)) {
+			projector.setTable(c, null);
+			return;
+		}
+		projector.setTable(c, new ARGBTable(type, converter));
 	}
 
 	private ColorTable getCurrentLUT(final int cPos) {
@@ -502,4 +801,32 @@ private RandomAccessibleInterval<RealType> channelData(final Dataset d,
 			mn, mx);
 	}
 
+	// -- Helper classes --
+
+	/** Renders the frames requested from the {@link RenderScheduler}. */
+	private class Renderer implements RenderScheduler.Renderer {
+
+		@Override
+		public void render(final long[] bounds) {
+			// NB: the view may have been rebuilt since the request was made
+			final DatasetProjector<? extends RealType<?>> p = projector;
+			if (p == null) return;
+			if (bounds == null) p.map();
+			else p.map(bounds[0], bounds[1], bounds[2], bounds[3]);
+		}
+
+		@Override
+		public void rendered() {
+			if (!getRenderScheduler().isAsynchronous()) {
+				update();
+				return;
+			}
+			// NB: Do not notify listeners on the rendering thread.
+			final EventService eventService = getEventService();
+			if (eventService == null) return;
+			eventService.publishLater(new DataViewUpdatedEvent(
+				DefaultDatasetView.this));
+		}
+	}
+
 }
@@ -89,6 +89,9 @@ public class DefaultImageDisplay extends AbstractDisplay<DataView>
 	// private final HashMap<AxisType, Long> pos =
 	// new HashMap<AxisType, Long>();
 
+	/** Number of times views were added or removed. */
+	private long modificationCount;
+
 	public DefaultImageDisplay() {
 		super(DataView.class);
 		canvas = new DefaultImageCanvas(this);
@@ -136,6 +139,12 @@ protected void rebuild() {
 		if (getActiveAxis() == null) initActiveAxis();
 	}
 
+	@Override
+	protected void noteStructureChange() {
+		super.noteStructureChange();
+		modificationCount++;
+	}
+
 	// -- ImageDisplay methods --
 
 	@Override
@@ -204,6 +213,11 @@ public RealRect getPlaneExtents() {
 		return new RealRect(xMin, yMin, width, height);
 	}
 
+	@Override
+	public long getModificationCount() {
+		return modificationCount;
+	}
+
 	// -- Display methods --
 
 	@Override
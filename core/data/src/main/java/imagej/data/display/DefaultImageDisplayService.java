@@ -37,7 +37,10 @@
 
 import imagej.data.Data;
 import imagej.data.Dataset;
+import imagej.data.memory.MemoryService;
+import imagej.data.options.OptionsCaching;
 import imagej.display.DisplayService;
+import imagej.options.OptionsService;
 
 import java.util.List;
 
@@ -60,6 +63,8 @@ public final class DefaultImageDisplayService extends AbstractService
 	implements ImageDisplayService
 {
 
+	private static final int DEFAULT_PYRAMID_MEMORY = 5;
+
 	@Parameter
 	private EventService eventService;
 
@@ -69,6 +74,8 @@ public final class DefaultImageDisplayService extends AbstractService
 	@Parameter
 	private DisplayService displayService;
 
+	private PyramidCache pyramidCache;
+
 	// -- ImageDisplayService methods --
 
 	@Override
@@ -138,4 +145,38 @@ public List<ImageDisplay> getImageDisplays() {
 		return displayService.getDisplaysOfType(ImageDisplay.class);
 	}
 
+	@Override
+	public synchronized PyramidCache getPyramidCache() {
+		final OptionsCaching options = getOptions();
+		final int percent =
+			options == null ? DEFAULT_PYRAMID_MEMORY : options.getPyramidMemory();
+		final long maxBytes = Runtime.getRuntime().maxMemory() / 100 * percent;
+		if (pyramidCache == null) {
+			pyramidCache = new PyramidCache(maxBytes);
+			final MemoryService memoryService =
+				getContext().getService(MemoryService.class);
+			if (memoryService != null) memoryService.addEvictable(pyramidCache);
+		}
+		else if (pyramidCache.getMaximumBytes() != maxBytes) {
+			pyramidCache.setMaximumBytes(maxBytes);
+		}
+		return pyramidCache;
+	}
+
+	@Override
+	public boolean isPyramidMaximum() {
+		final OptionsCaching options = getOptions();
+		if (options == null) return false;
+		return OptionsCaching.PYRAMID_MAX.equals(options.getPyramidMode());
+	}
+
+	// -- Helper methods --
+
+	private OptionsCaching getOptions() {
+		final OptionsService optionsService =
+			getContext().getService(OptionsService.class);
+		if (optionsService == null) return null;
+		return optionsService.getOptions(OptionsCaching.class);
+	}
+
 }
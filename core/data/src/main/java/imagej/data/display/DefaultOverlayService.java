@@ -41,18 +41,26 @@
 import imagej.data.DrawingTool;
 import imagej.data.Extents;
 import imagej.data.Position;
+import imagej.data.display.event.DataViewSelectedEvent;
+import imagej.data.display.event.DataViewSelectionEvent;
+import imagej.data.event.OverlayDeletedEvent;
+import imagej.data.event.OverlayRestructuredEvent;
+import imagej.data.event.OverlayUpdatedEvent;
 import imagej.data.options.OptionsOverlay;
 import imagej.data.overlay.CompositeOverlay;
 import imagej.data.overlay.Overlay;
 import imagej.data.overlay.OverlaySettings;
 import imagej.display.Display;
 import imagej.display.DisplayService;
+import imagej.display.event.DisplayDeletedEvent;
 import imagej.options.OptionsService;
 import imagej.render.RenderingService;
 import imagej.util.RealRect;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.imglib2.RealRandomAccess;
 import net.imglib2.ops.pointset.PointSet;
@@ -61,6 +69,7 @@
 import net.imglib2.roi.RegionOfInterest;
 import net.imglib2.type.logic.BitType;
 
+import org.scijava.event.EventHandler;
 import org.scijava.object.ObjectService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
@@ -96,6 +105,10 @@ public final class DefaultOverlayService extends AbstractService implements
 	private OverlaySettings defaultSettings;
 	private OverlayInfoList overlayInfo;
 
+	/** Spatial index of each display's overlays, built on first use. */
+	private final Map<ImageDisplay, OverlayIndex> indices =
+		new IdentityHashMap<ImageDisplay, OverlayIndex>();
+
 	// -- OverlayService methods --
 
 	@Override
@@ -119,6 +132,7 @@ public List<Overlay> getOverlays() {
 	 */
 	@Override
 	public List<Overlay> getOverlays(ImageDisplay display, boolean selectedOnly) {
+		if (selectedOnly) return getIndex(display).getSelectedOverlays();
 		ArrayList<Overlay> overlays = new ArrayList<Overlay>();
 		for (final DataView view : display) {
 			if (selectedOnly)
@@ -166,8 +180,10 @@ public void removeOverlay(final ImageDisplay display, final Overlay overlay)
 			final Data data = view.getData();
 			if (data == overlay) overlayViews.add(view);
 		}
+		final OverlayIndex index = getExistingIndex(display);
 		for (final DataView view : overlayViews) {
 			display.remove(view);
+			if (index != null) index.remove(view);
 			view.dispose();
 		}
 		display.update();
@@ -197,8 +213,7 @@ public RealRect getSelectionBounds(final ImageDisplay display) {
 		double xMax = Double.NEGATIVE_INFINITY;
 		double yMin = Double.POSITIVE_INFINITY;
 		double yMax = Double.NEGATIVE_INFINITY;
-		for (final DataView view : display) {
-			if (!view.isSelected()) continue;
+		for (final DataView view : getIndex(display).getSelectedViews()) {
 			final Data data = view.getData();
 			final Extents e = data.getExtents();
 			final double min0 = e.realMin(0);
@@ -288,11 +303,41 @@ public List<ImageDisplay> getDisplays(Overlay o) {
 	// TODO - assumes first selected overlay view is the only one. bad?
 	@Override
 	public Overlay getActiveOverlay(ImageDisplay disp) {
-		for (DataView view : disp) {
-			if (view.isSelected() && (view instanceof OverlayView))
-				return ((OverlayView) view).getData();
+		final List<Overlay> selected = getIndex(disp).getSelectedOverlays();
+		return selected.isEmpty() ? null : selected.get(0);
+	}
+
+	@Override
+	public OverlayIndex getIndex(final ImageDisplay display) {
+		synchronized (indices) {
+			OverlayIndex index = indices.get(display);
+			if (index == null) {
+				index = new OverlayIndex(display);
+				indices.put(display, index);
+			}
+			return index;
 		}
-		return null;
+	}
+
+	@Override
+	public List<Overlay> getOverlays(final ImageDisplay display,
+		final RealRect region)
+	{
+		return getIndex(display).getOverlays(region);
+	}
+
+	@Override
+	public List<Overlay> getOverlaysAt(final ImageDisplay display,
+		final double x, final double y)
+	{
+		return getIndex(display).getOverlays(x, y);
+	}
+
+	@Override
+	public Overlay getNearestOverlay(final ImageDisplay display,
+		final double x, final double y)
+	{
+		return getIndex(display).getNearestOverlay(x, y);
 	}
 	
 	@Override
@@ -335,8 +380,58 @@ public void initialize() {
 		overlayInfo = new OverlayInfoList();
 	}
 
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final OverlayUpdatedEvent event) {
+		for (final OverlayIndex index : getIndices()) {
+			index.update(event.getObject());
+		}
+	}
+
+	@EventHandler
+	protected void onEvent(final OverlayRestructuredEvent event) {
+		for (final OverlayIndex index : getIndices()) {
+			index.update(event.getObject());
+		}
+	}
+
+	@EventHandler
+	protected void onEvent(final OverlayDeletedEvent event) {
+		for (final OverlayIndex index : getIndices()) {
+			index.remove(event.getObject());
+		}
+	}
+
+	@EventHandler
+	protected void onEvent(final DataViewSelectionEvent event) {
+		final boolean selected = event instanceof DataViewSelectedEvent;
+		for (final OverlayIndex index : getIndices()) {
+			index.setSelected(event.getView(), selected);
+		}
+	}
+
+	@EventHandler
+	protected void onEvent(final DisplayDeletedEvent event) {
+		synchronized (indices) {
+			indices.remove(event.getObject());
+		}
+	}
+
 	// -- helpers --
 
+	private OverlayIndex getExistingIndex(final Display<?> display) {
+		synchronized (indices) {
+			return indices.get(display);
+		}
+	}
+
+	private List<OverlayIndex> getIndices() {
+		synchronized (indices) {
+			return new ArrayList<OverlayIndex>(indices.values());
+		}
+	}
+
 	private interface Drawer {
 		void draw(Overlay o, DrawingTool tool);
 	}
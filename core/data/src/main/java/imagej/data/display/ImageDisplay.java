@@ -79,4 +79,11 @@ public interface ImageDisplay extends Display<DataView>, CalibratedInterval,
 	 */
 	RealRect getPlaneExtents();
 
+	/**
+	 * Gets the number of times views have been added to or removed from the
+	 * display, so that anything derived from its views can tell when it is out
+	 * of date.
+	 */
+	long getModificationCount();
+
 }
@@ -99,4 +99,16 @@ public interface ImageDisplayService extends Service {
 	/** Gets a list of all available {@link ImageDisplay}s. */
 	List<ImageDisplay> getImageDisplays();
 
+	/**
+	 * Gets the cache shared by the {@link PlanePyramid}s of all dataset views,
+	 * sized according to the image caching options.
+	 */
+	PyramidCache getPyramidCache();
+
+	/**
+	 * Gets whether display pyramids should downsample by taking the maximum of
+	 * each block of pixels, rather than the mean.
+	 */
+	boolean isPyramidMaximum();
+
 }
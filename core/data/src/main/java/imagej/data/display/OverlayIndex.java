@@ -0,0 +1,571 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import imagej.data.Data;
+import imagej.data.Extents;
+import imagej.data.overlay.Overlay;
+import imagej.util.RealRect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A spatial index of the {@link OverlayView}s of an {@link ImageDisplay}: an
+ * R-tree over the XY bounds of their overlays. It answers region, point and
+ * nearest-neighbor queries without testing every overlay, which matters for
+ * displays with tens of thousands of overlays.
+ * <p>
+ * The index also keeps track of which views of the display are selected.
+ * It is kept up to date by the {@link OverlayService}.
+ * </p>
+ */
+public class OverlayIndex {
+
+	/** Maximum number of children of an R-tree node. */
+	private static final int MAX_ENTRIES = 16;
+
+	/** Minimum number of children of an R-tree node other than the root. */
+	private static final int MIN_ENTRIES = 6;
+
+	/** Sorts entries in display order. */
+	private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+
+		@Override
+		public int compare(final Entry e1, final Entry e2) {
+			return e1.order < e2.order ? -1 : e1.order > e2.order ? 1 : 0;
+		}
+	};
+
+	private final ImageDisplay display;
+
+	private Node root;
+
+	/** The R-tree leaf entries of each indexed overlay. */
+	private final Map<Overlay, List<Entry>> entries =
+		new HashMap<Overlay, List<Entry>>();
+
+	/** The views of the display which are currently selected. */
+	private final Set<DataView> selected = new LinkedHashSet<DataView>();
+
+	/** Modification count of the display when the index was last in sync. */
+	private long modificationCount;
+
+	/** Order given to the next entry, so that display order can be restored. */
+	private long nextOrder;
+
+	private boolean stale = true;
+
+	public OverlayIndex(final ImageDisplay display) {
+		this.display = display;
+	}
+
+	// -- OverlayIndex methods --
+
+	public ImageDisplay getDisplay() {
+		return display;
+	}
+
+	/** Gets the number of overlay views indexed. */
+	public synchronized int size() {
+		validate();
+		int size = 0;
+		for (final List<Entry> list : entries.values()) {
+			size += list.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the overlays whose XY bounds intersect the given region, in display
+	 * order.
+	 */
+	public synchronized List<Overlay> getOverlays(final RealRect region) {
+		validate();
+		final List<Entry> found = new ArrayList<Entry>();
+		search(root, region.x, region.y, region.x + region.width, region.y +
+			region.height, found);
+		return toOverlays(found);
+	}
+
+	/**
+	 * Gets the overlays whose XY bounds contain the given point, in display
+	 * order.
+	 */
+	public List<Overlay> getOverlays(final double x, final double y) {
+		return getOverlays(new RealRect(x, y, 0, 0));
+	}
+
+	/**
+	 * Gets the overlay whose XY bounds lie nearest to the given point, or null
+	 * if there are no overlays. An overlay whose bounds contain the point is at
+	 * distance zero; ties are broken by display order.
+	 */
+	public synchronized Overlay getNearestOverlay(final double x,
+		final double y)
+	{
+		validate();
+		final PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+		queue.add(new Candidate(root, 0));
+		while (!queue.isEmpty()) {
+			final Candidate candidate = queue.poll();
+			if (candidate.box instanceof Entry) {
+				return ((Entry) candidate.box).view.getData();
+			}
+			final Node node = (Node) candidate.box;
+			for (final Box child : node.children) {
+				queue.add(new Candidate(child, child.distance2(x, y)));
+			}
+		}
+		return null;
+	}
+
+	/** Gets the selected overlays, in display order. */
+	public synchronized List<Overlay> getSelectedOverlays() {
+		validate();
+		final List<Entry> found = new ArrayList<Entry>();
+		for (final DataView view : selected) {
+			final Entry entry = find(view);
+			if (entry != null) found.add(entry);
+		}
+		return toOverlays(found);
+	}
+
+	/** Gets the selected views of the display, in no particular order. */
+	public synchronized List<DataView> getSelectedViews() {
+		validate();
+		return new ArrayList<DataView>(selected);
+	}
+
+	/** Recomputes the bounds of the given overlay, e.g. after it moved. */
+	public synchronized void update(final Overlay overlay) {
+		final List<Entry> list = entries.get(overlay);
+		if (list == null) return;
+		for (final Entry entry : list) {
+			delete(entry);
+			entry.setBounds(overlay);
+			insert(entry, 0);
+		}
+	}
+
+	/**
+	 * Removes the given overlay from the index, e.g. once it has been deleted.
+	 * Its views may still belong to the display; the index is rebuilt once the
+	 * display drops them.
+	 */
+	public synchronized void remove(final Overlay overlay) {
+		final List<Entry> list = entries.remove(overlay);
+		if (list == null) return;
+		for (final Entry entry : list) {
+			delete(entry);
+			selected.remove(entry.view);
+		}
+	}
+
+	/**
+	 * Removes a view which was just removed from the display. If that was the
+	 * only change to the display since the index was last in sync, the index
+	 * stays in sync without being rebuilt.
+	 */
+	public synchronized void remove(final DataView view) {
+		if (stale) return;
+		final boolean inSync =
+			modificationCount + 1 == display.getModificationCount();
+		selected.remove(view);
+		final Entry entry = find(view);
+		if (entry != null) {
+			delete(entry);
+			final List<Entry> list = entries.get(view.getData());
+			list.remove(entry);
+			if (list.isEmpty()) entries.remove(view.getData());
+		}
+		if (inSync) modificationCount = display.getModificationCount();
+	}
+
+	/**
+	 * Records a change in the selection state of a view. Views not belonging to
+	 * the display are ignored.
+	 */
+	public synchronized void setSelected(final DataView view,
+		final boolean isSelected)
+	{
+		if (stale) return; // selection will be read from the views on rebuild
+		if (view instanceof OverlayView ? find(view) == null : !display
+			.contains(view))
+		{
+			return;
+		}
+		if (isSelected) selected.add(view);
+		else selected.remove(view);
+	}
+
+	/**
+	 * Marks the index as out of date, so that it is rebuilt from the views of the
+	 * display when next queried.
+	 */
+	public synchronized void invalidate() {
+		stale = true;
+	}
+
+	// -- Helper methods --
+
+	/** Rebuilds the index if views were added to or removed from the display. */
+	private void validate() {
+		if (!stale && modificationCount == display.getModificationCount()) return;
+		root = new Node(true);
+		entries.clear();
+		selected.clear();
+		nextOrder = 0;
+		for (final DataView view : display) {
+			if (view.isSelected()) selected.add(view);
+			if (!(view instanceof OverlayView)) continue;
+			final Entry entry = new Entry((OverlayView) view, nextOrder++);
+			final Overlay overlay = entry.view.getData();
+			List<Entry> list = entries.get(overlay);
+			if (list == null) {
+				list = new ArrayList<Entry>(1);
+				entries.put(overlay, list);
+			}
+			list.add(entry);
+			insert(entry, 0);
+		}
+		modificationCount = display.getModificationCount();
+		stale = false;
+	}
+
+	private Entry find(final DataView view) {
+		if (!(view instanceof OverlayView)) return null;
+		final List<Entry> list = entries.get(view.getData());
+		if (list == null) return null;
+		for (final Entry entry : list) {
+			if (entry.view == view) return entry;
+		}
+		return null;
+	}
+
+	private List<Overlay> toOverlays(final List<Entry> found) {
+		Collections.sort(found, ORDER);
+		final List<Overlay> overlays = new ArrayList<Overlay>(found.size());
+		for (final Entry entry : found) {
+			overlays.add(entry.view.getData());
+		}
+		return overlays;
+	}
+
+	private void search(final Node node, final double minX, final double minY,
+		final double maxX, final double maxY, final List<Entry> found)
+	{
+		for (final Box child : node.children) {
+			if (!child.intersects(minX, minY, maxX, maxY)) continue;
+			if (node.leaf) found.add((Entry) child);
+			else search((Node) child, minX, minY, maxX, maxY, found);
+		}
+	}
+
+	/**
+	 * Inserts a box of the given height (0 for leaf entries) into a node one
+	 * level above it.
+	 */
+	private void insert(final Box box, final int height) {
+		Node node = root;
+		while (node.height() > height + 1) {
+			node = chooseChild(node, box);
+		}
+		node.add(box);
+		while (node != null) {
+			if (node.children.size() > MAX_ENTRIES) {
+				final Node sibling = split(node);
+				if (node == root) {
+					root = new Node(false);
+					root.add(node);
+					root.add(sibling);
+					return;
+				}
+				node.parent.add(sibling);
+			}
+			node.recomputeBounds();
+			node = node.parent;
+		}
+	}
+
+	/** Chooses the child needing the least enlargement to include the box. */
+	private Node chooseChild(final Node node, final Box box) {
+		Node best = null;
+		double bestEnlargement = Double.POSITIVE_INFINITY;
+		double bestArea = Double.POSITIVE_INFINITY;
+		for (final Box child : node.children) {
+			final double area = child.area();
+			final double enlargement = child.unionArea(box) - area;
+			if (enlargement < bestEnlargement ||
+				(enlargement == bestEnlargement && area < bestArea))
+			{
+				best = (Node) child;
+				bestEnlargement = enlargement;
+				bestArea = area;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Splits an overfull node using Guttman's quadratic split, moving part of
+	 * its children into a new sibling, which is returned.
+	 */
+	private Node split(final Node node) {
+		final List<Box> boxes = new ArrayList<Box>(node.children);
+		node.children.clear();
+		final Node sibling = new Node(node.leaf);
+
+		// pick the two boxes which would waste the most area together
+		int seed1 = 0, seed2 = 1;
+		double worst = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < boxes.size(); i++) {
+			for (int j = i + 1; j < boxes.size(); j++) {
+				final Box a = boxes.get(i), b = boxes.get(j);
+				final double waste = a.unionArea(b) - a.area() - b.area();
+				if (waste > worst) {
+					worst = waste;
+					seed1 = i;
+					seed2 = j;
+				}
+			}
+		}
+		node.add(boxes.get(seed1));
+		sibling.add(boxes.get(seed2));
+		boxes.remove(seed2);
+		boxes.remove(seed1);
+		node.recomputeBounds();
+		sibling.recomputeBounds();
+
+		while (!boxes.isEmpty()) {
+			// make sure both groups end up with enough children
+			if (node.children.size() + boxes.size() == MIN_ENTRIES) {
+				for (final Box box : boxes) node.add(box);
+				break;
+			}
+			if (sibling.children.size() + boxes.size() == MIN_ENTRIES) {
+				for (final Box box : boxes) sibling.add(box);
+				break;
+			}
+			// assign the box with the strongest preference for one group
+			int next = 0;
+			double maxDiff = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < boxes.size(); i++) {
+				final Box box = boxes.get(i);
+				final double diff =
+					Math.abs((node.unionArea(box) - node.area()) -
+						(sibling.unionArea(box) - sibling.area()));
+				if (diff > maxDiff) {
+					maxDiff = diff;
+					next = i;
+				}
+			}
+			final Box box = boxes.remove(next);
+			final double d1 = node.unionArea(box) - node.area();
+			final double d2 = sibling.unionArea(box) - sibling.area();
+			final Node target =
+				d1 < d2 || (d1 == d2 && node.children.size() <= sibling.children
+					.size()) ? node : sibling;
+			target.add(box);
+			target.recomputeBounds();
+		}
+		node.recomputeBounds();
+		sibling.recomputeBounds();
+		return sibling;
+	}
+
+	/**
+	 * Deletes a leaf entry, dissolving nodes left with too few children and
+	 * reinserting the entries below them.
+	 */
+	private void delete(final Entry entry) {
+		Node node = entry.parent;
+		node.children.remove(entry);
+		final List<Entry> orphans = new ArrayList<Entry>();
+		while (node != root) {
+			final Node parent = node.parent;
+			if (node.children.size() < MIN_ENTRIES) {
+				parent.children.remove(node);
+				collectEntries(node, orphans);
+			}
+			else node.recomputeBounds();
+			node = parent;
+		}
+		root.recomputeBounds();
+		while (!root.leaf && root.children.size() == 1) {
+			root = (Node) root.children.get(0);
+			root.parent = null;
+		}
+		if (root.children.isEmpty()) root = new Node(true);
+		for (final Entry orphan : orphans) {
+			insert(orphan, 0);
+		}
+	}
+
+	private void collectEntries(final Node node, final List<Entry> list) {
+		for (final Box child : node.children) {
+			if (node.leaf) list.add((Entry) child);
+			else collectEntries((Node) child, list);
+		}
+	}
+
+	// -- Helper classes --
+
+	/** An XY bounding box in the R-tree. */
+	private abstract static class Box {
+
+		protected double minX, minY, maxX, maxY;
+		protected Node parent;
+
+		public double area() {
+			return (maxX - minX) * (maxY - minY);
+		}
+
+		public double unionArea(final Box b) {
+			return (Math.max(maxX, b.maxX) - Math.min(minX, b.minX)) *
+				(Math.max(maxY, b.maxY) - Math.min(minY, b.minY));
+		}
+
+		public boolean intersects(final double x0, final double y0,
+			final double x1, final double y1)
+		{
+			return minX <= x1 && maxX >= x0 && minY <= y1 && maxY >= y0;
+		}
+
+		/** Gets the squared distance from the given point to the box. */
+		public double distance2(final double x, final double y) {
+			final double dx = x < minX ? minX - x : x > maxX ? x - maxX : 0;
+			final double dy = y < minY ? minY - y : y > maxY ? y - maxY : 0;
+			return dx * dx + dy * dy;
+		}
+	}
+
+	/** A leaf entry: the bounds of an overlay view. */
+	private static class Entry extends Box {
+
+		private final OverlayView view;
+		private final long order;
+
+		public Entry(final OverlayView view, final long order) {
+			this.view = view;
+			this.order = order;
+			setBounds(view.getData());
+		}
+
+		public void setBounds(final Data data) {
+			final Extents e = data.getExtents();
+			minX = e.realMin(0);
+			maxX = e.realMax(0);
+			minY = e.realMin(1);
+			maxY = e.realMax(1);
+		}
+	}
+
+	/** An R-tree node. */
+	private static class Node extends Box {
+
+		private final boolean leaf;
+		private final List<Box> children = new ArrayList<Box>(MAX_ENTRIES + 1);
+
+		public Node(final boolean leaf) {
+			this.leaf = leaf;
+			minX = minY = Double.POSITIVE_INFINITY;
+			maxX = maxY = Double.NEGATIVE_INFINITY;
+		}
+
+		public void add(final Box box) {
+			children.add(box);
+			box.parent = this;
+			minX = Math.min(minX, box.minX);
+			minY = Math.min(minY, box.minY);
+			maxX = Math.max(maxX, box.maxX);
+			maxY = Math.max(maxY, box.maxY);
+		}
+
+		public void recomputeBounds() {
+			minX = minY = Double.POSITIVE_INFINITY;
+			maxX = maxY = Double.NEGATIVE_INFINITY;
+			for (final Box child : children) {
+				minX = Math.min(minX, child.minX);
+				minY = Math.min(minY, child.minY);
+				maxX = Math.max(maxX, child.maxX);
+				maxY = Math.max(maxY, child.maxY);
+			}
+		}
+
+		/** Gets the height of the node above the leaf entries (leaves: 1). */
+		public int height() {
+			int height = 1;
+			Node node = this;
+			while (!node.leaf) {
+				node = (Node) node.children.get(0);
+				height++;
+			}
+			return height;
+		}
+	}
+
+	/** A box to visit in a nearest-neighbor search. */
+	private static class Candidate implements Comparable<Candidate> {
+
+		private final Box box;
+		private final double distance;
+
+		public Candidate(final Box box, final double distance) {
+			this.box = box;
+			this.distance = distance;
+		}
+
+		@Override
+		public int compareTo(final Candidate c) {
+			if (distance != c.distance) return distance < c.distance ? -1 : 1;
+			// NB: visit nodes before entries, then entries in display order
+			final boolean entry = box instanceof Entry;
+			if (entry != c.box instanceof Entry) return entry ? 1 : -1;
+			if (!entry) return 0;
+			final long o1 = ((Entry) box).order, o2 = ((Entry) c.box).order;
+			return o1 < o2 ? -1 : o1 > o2 ? 1 : 0;
+		}
+	}
+
+}
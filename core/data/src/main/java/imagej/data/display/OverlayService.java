@@ -132,6 +132,30 @@ public interface OverlayService extends Service {
 	 */
 	Overlay getActiveOverlay(ImageDisplay disp);
 
+	/**
+	 * Gets the spatial index of the overlays of the given display, which is kept
+	 * up to date as overlays are added, moved and removed.
+	 */
+	OverlayIndex getIndex(ImageDisplay display);
+
+	/**
+	 * Gets the {@link Overlay}s of the given display whose XY bounds intersect
+	 * the given region, in display order.
+	 */
+	List<Overlay> getOverlays(ImageDisplay display, RealRect region);
+
+	/**
+	 * Gets the {@link Overlay}s of the given display whose XY bounds contain the
+	 * given point, in display order.
+	 */
+	List<Overlay> getOverlaysAt(ImageDisplay display, double x, double y);
+
+	/**
+	 * Gets the {@link Overlay} of the given display whose XY bounds lie nearest
+	 * to the given point, or null if the display has no overlays.
+	 */
+	Overlay getNearestOverlay(ImageDisplay display, double x, double y);
+
 	/**
 	 * Returns the overlay info list associated with this service. There is one
 	 * list per ImageJ context. It tracks overlay selection info and is used by
@@ -0,0 +1,279 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import imagej.data.DirtyRegion;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * A multi-resolution pyramid of the XY planes of an image, used to render
+ * zoomed-out views without converting every full-resolution pixel. Level
+ * <em>n</em> of a plane is downsampled by a factor of 2<sup>n</sup> in X and Y,
+ * each pixel holding the mean (or maximum) of the 2x2 block of the level
+ * below.
+ * <p>
+ * Levels are built on demand, one plane at a time, and kept in a shared
+ * {@link PyramidCache}. When the image changes, only the affected parts of the
+ * cached levels are marked stale; they are rebuilt the next time the level is
+ * requested.
+ * </p>
+ */
+public class PlanePyramid {
+
+	/** The smallest width or height worth building a level for. */
+	public static final int MIN_LEVEL_SIZE = 64;
+
+	private final RandomAccessibleInterval<? extends RealType<?>> source;
+	private final PyramidCache cache;
+	private final boolean useMax;
+
+	private final long width, height;
+	private final int levelCount;
+
+	/**
+	 * Creates a pyramid for the given image.
+	 * 
+	 * @param source The image whose XY planes are downsampled.
+	 * @param cache The cache holding the downsampled planes.
+	 * @param useMax Whether pixels are combined by taking their maximum rather
+	 *          than their mean. The maximum keeps sparse bright features, such
+	 *          as fluorescent spots, visible when zoomed out.
+	 */
+	public PlanePyramid(
+		final RandomAccessibleInterval<? extends RealType<?>> source,
+		final PyramidCache cache, final boolean useMax)
+	{
+		this.source = source;
+		this.cache = cache;
+		this.useMax = useMax;
+		width = source.dimension(0);
+		height = source.dimension(1);
+		final long size = Math.max(width, height);
+		int levels = 1;
+		while (levels < 31 && scale(size, levels) >= MIN_LEVEL_SIZE) {
+			levels++;
+		}
+		levelCount = levels;
+	}
+
+	// -- PlanePyramid methods --
+
+	/** Gets the number of levels, including the full-resolution level 0. */
+	public int getLevelCount() {
+		return levelCount;
+	}
+
+	/**
+	 * Gets the coarsest level which still has at least one pixel per screen
+	 * pixel at the given zoom factor.
+	 */
+	public int getLevel(final double zoom) {
+		int level = 0;
+		while (level + 1 < levelCount && zoom <= 1.0 / (1L << (level + 1))) {
+			level++;
+		}
+		return level;
+	}
+
+	/** Gets the width of the given level. */
+	public long getWidth(final int level) {
+		return scale(width, level);
+	}
+
+	/** Gets the height of the given level. */
+	public long getHeight(final int level) {
+		return scale(height, level);
+	}
+
+	/**
+	 * Gets the pixels of the given level of a plane, building or refreshing the
+	 * level as needed. The array holds {@link #getWidth(int)} x
+	 * {@link #getHeight(int)} values in row-major order and must not be
+	 * modified.
+	 * 
+	 * @param position Position of the plane; the X and Y coordinates are
+	 *          ignored.
+	 * @param level The level, from 1 to {@link #getLevelCount()} - 1.
+	 */
+	public synchronized float[] getPlane(final long[] position, final int level)
+	{
+		if (level < 1 || level >= levelCount) {
+			throw new IllegalArgumentException("Invalid level: " + level);
+		}
+		final long plane = getPlaneIndex(position);
+		Level entry = cache.get(this, plane, level);
+		if (entry == null) {
+			entry =
+				new Level(position, level, (int) getWidth(level),
+					(int) getHeight(level));
+			cache.put(this, plane, level, entry);
+		}
+		if (entry.dirty != null) {
+			build(entry, level);
+			entry.dirty = null;
+		}
+		return entry.data;
+	}
+
+	/**
+	 * Marks the parts of the cached levels covered by the given region as stale.
+	 * A null region marks everything stale.
+	 */
+	public synchronized void invalidate(final DirtyRegion region) {
+		if (region == null) {
+			clear();
+			return;
+		}
+		for (final Level entry : cache.getLevels(this)) {
+			final Interval bounds = region.getPlaneBounds(entry.position, -1);
+			if (bounds == null) continue;
+			final int level = entry.level;
+			entry.addDirty(bounds.min(0) >> level, bounds.min(1) >> level, bounds
+				.max(0) >> level, bounds.max(1) >> level);
+		}
+	}
+
+	/** Discards all cached levels of this pyramid. */
+	public synchronized void clear() {
+		cache.remove(this);
+	}
+
+	// -- Helper methods --
+
+	private static long scale(final long size, final int level) {
+		return (size + (1L << level) - 1) >> level;
+	}
+
+	private long getPlaneIndex(final long[] position) {
+		long index = 0, stride = 1;
+		for (int d = 2; d < position.length; d++) {
+			index += position[d] * stride;
+			stride *= source.dimension(d);
+		}
+		return index;
+	}
+
+	/** Rebuilds the stale part of the given level from the level below. */
+	private void build(final Level entry, final int level) {
+		final long[] dirty = entry.dirty;
+		final int x0 = (int) Math.max(dirty[0], 0);
+		final int y0 = (int) Math.max(dirty[1], 0);
+		final int x1 = (int) Math.min(dirty[2], entry.width - 1);
+		final int y1 = (int) Math.min(dirty[3], entry.height - 1);
+		final long srcWidth = level == 1 ? width : getWidth(level - 1);
+		final long srcHeight = level == 1 ? height : getHeight(level - 1);
+		final float[] lower =
+			level == 1 ? null : getPlane(entry.position, level - 1);
+		final RandomAccess<? extends RealType<?>> access;
+		if (level == 1) {
+			access = source.randomAccess();
+			access.setPosition(entry.position);
+		}
+		else access = null;
+
+		for (int y = y0; y <= y1; y++) {
+			final long sy0 = 2L * y, sy1 = Math.min(sy0 + 1, srcHeight - 1);
+			for (int x = x0; x <= x1; x++) {
+				final long sx0 = 2L * x, sx1 = Math.min(sx0 + 1, srcWidth - 1);
+				double sum = 0, max = Double.NEGATIVE_INFINITY;
+				int count = 0;
+				for (long sy = sy0; sy <= sy1; sy++) {
+					for (long sx = sx0; sx <= sx1; sx++) {
+						final double value;
+						if (lower != null) value = lower[(int) (sy * srcWidth + sx)];
+						else {
+							access.setPosition(sx, 0);
+							access.setPosition(sy, 1);
+							value = access.get().getRealDouble();
+						}
+						sum += value;
+						if (value > max) max = value;
+						count++;
+					}
+				}
+				entry.data[y * entry.width + x] =
+					(float) (useMax ? max : sum / count);
+			}
+		}
+	}
+
+	// -- Helper classes --
+
+	/** One downsampled plane, along with the part of it which is stale. */
+	static class Level {
+
+		private final long[] position;
+		private final int level;
+		private final int width, height;
+		private final float[] data;
+
+		/** Stale bounds (inclusive), or null if the level is up to date. */
+		private long[] dirty;
+
+		public Level(final long[] position, final int level, final int width,
+			final int height)
+		{
+			this.position = position.clone();
+			this.level = level;
+			this.width = width;
+			this.height = height;
+			data = new float[width * height];
+			dirty = new long[] { 0, 0, width - 1, height - 1 };
+		}
+
+		public long getBytes() {
+			return 4L * data.length;
+		}
+
+		public void addDirty(final long minX, final long minY, final long maxX,
+			final long maxY)
+		{
+			if (dirty == null) {
+				dirty = new long[] { minX, minY, maxX, maxY };
+				return;
+			}
+			dirty[0] = Math.min(dirty[0], minX);
+			dirty[1] = Math.min(dirty[1], minY);
+			dirty[2] = Math.max(dirty[2], maxX);
+			dirty[3] = Math.max(dirty[3], maxY);
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import net.imglib2.display.ARGBScreenImage;
+
+/**
+ * A plane rendered ahead of time by a {@link DatasetView}, e.g. while an
+ * animation plays, so that it can later be shown without projecting it again.
+ * 
+ * @see DatasetView#project(long[], ProjectedFrame)
+ * @see DatasetView#present(ProjectedFrame)
+ */
+public class ProjectedFrame {
+
+	private long[] position;
+	private ARGBScreenImage image;
+	private int level;
+	private long[] bounds;
+	private long stamp;
+
+	// -- ProjectedFrame methods --
+
+	/** Gets the position of the rendered plane. */
+	public long[] getPosition() {
+		return position;
+	}
+
+	/** Gets the rendered pixels. */
+	public ARGBScreenImage getImage() {
+		return image;
+	}
+
+	// -- Helper methods --
+
+	void setPosition(final long[] position) {
+		this.position = position;
+	}
+
+	void setImage(final ARGBScreenImage image) {
+		this.image = image;
+	}
+
+	/** Gets the pyramid level the frame was rendered at. */
+	int getLevel() {
+		return level;
+	}
+
+	void setLevel(final int level) {
+		this.level = level;
+	}
+
+	/** Gets the (inclusive) bounds of the image which were rendered. */
+	long[] getBounds() {
+		return bounds;
+	}
+
+	void setBounds(final long[] bounds) {
+		this.bounds = bounds;
+	}
+
+	/** Gets the state of the view's display settings when rendered. */
+	long getStamp() {
+		return stamp;
+	}
+
+	void setStamp(final long stamp) {
+		this.stamp = stamp;
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import imagej.data.memory.Evictable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A memory-bounded, least-recently-used cache of the downsampled planes built
+ * by {@link PlanePyramid}s. A single cache is shared by all dataset views, so
+ * that the pyramids of all open images stay within one budget.
+ * 
+ * @see ImageDisplayService#getPyramidCache()
+ */
+public class PyramidCache implements Evictable {
+
+	private final LinkedHashMap<Key, PlanePyramid.Level> entries =
+		new LinkedHashMap<Key, PlanePyramid.Level>(16, 0.75f, true);
+
+	private long maxBytes;
+	private long bytes;
+
+	private long hits, misses, evictions;
+
+	/** Creates a cache holding at most the given number of bytes of levels. */
+	public PyramidCache(final long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	// -- PyramidCache methods --
+
+	public synchronized long getMaximumBytes() {
+		return maxBytes;
+	}
+
+	public synchronized void setMaximumBytes(final long maxBytes) {
+		this.maxBytes = maxBytes;
+		trim(maxBytes);
+	}
+
+	/**
+	 * Evicts least recently used levels until at most the given number of bytes
+	 * remain cached. Returns the number of bytes released.
+	 */
+	public synchronized long trim(final long targetBytes) {
+		final long before = bytes;
+		final Iterator<PlanePyramid.Level> iter = entries.values().iterator();
+		while (bytes > targetBytes && iter.hasNext()) {
+			bytes -= iter.next().getBytes();
+			iter.remove();
+			evictions++;
+		}
+		return before - bytes;
+	}
+
+	/** Gets the number of levels currently held by the cache. */
+	public synchronized int getLevelCount() {
+		return entries.size();
+	}
+
+	/** Gets the number of requests served from the cache. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Gets the number of requests which required building a level. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Gets the number of levels evicted so far. */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	// -- Evictable methods --
+
+	/** Gets the number of bytes of level data currently held by the cache. */
+	@Override
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public synchronized long evict(final long count) {
+		return trim(Math.max(0, bytes - count));
+	}
+
+	// -- Helper methods --
+
+	synchronized PlanePyramid.Level get(final PlanePyramid pyramid,
+		final long plane, final int level)
+	{
+		final PlanePyramid.Level entry =
+			entries.get(new Key(pyramid, plane, level));
+		if (entry == null) misses++;
+		else hits++;
+		return entry;
+	}
+
+	synchronized void put(final PlanePyramid pyramid, final long plane,
+		final int level, final PlanePyramid.Level entry)
+	{
+		final PlanePyramid.Level old =
+			entries.put(new Key(pyramid, plane, level), entry);
+		if (old != null) bytes -= old.getBytes();
+		bytes += entry.getBytes();
+		// NB: always keep the most recently built level
+		if (entries.size() > 1) trim(Math.max(maxBytes, entry.getBytes()));
+	}
+
+	/** Gets the cached levels of the given pyramid. */
+	synchronized List<PlanePyramid.Level> getLevels(final PlanePyramid pyramid) {
+		final List<PlanePyramid.Level> levels =
+			new ArrayList<PlanePyramid.Level>();
+		// NB: iterate over entries, since get() would reorder the map
+		for (final Map.Entry<Key, PlanePyramid.Level> entry : entries.entrySet()) {
+			if (entry.getKey().pyramid == pyramid) levels.add(entry.getValue());
+		}
+		return levels;
+	}
+
+	/** Discards all levels of the given pyramid. */
+	synchronized void remove(final PlanePyramid pyramid) {
+		final Iterator<Map.Entry<Key, PlanePyramid.Level>> iter =
+			entries.entrySet().iterator();
+		while (iter.hasNext()) {
+			final Map.Entry<Key, PlanePyramid.Level> entry = iter.next();
+			if (entry.getKey().pyramid != pyramid) continue;
+			bytes -= entry.getValue().getBytes();
+			iter.remove();
+		}
+	}
+
+	// -- Helper classes --
+
+	private static class Key {
+
+		private final PlanePyramid pyramid;
+		private final long plane;
+		private final int level;
+
+		public Key(final PlanePyramid pyramid, final long plane, final int level) {
+			this.pyramid = pyramid;
+			this.plane = plane;
+			this.level = level;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) return false;
+			final Key other = (Key) o;
+			return pyramid == other.pyramid && plane == other.plane &&
+				level == other.level;
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * System.identityHashCode(pyramid) + (int) plane) * 31 +
+				level;
+		}
+	}
+
+}
@@ -0,0 +1,258 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import net.imglib2.Interval;
+
+import org.scijava.thread.ThreadService;
+
+/**
+ * Schedules the projection work of a {@link DatasetView}. Requests made while
+ * a frame is being rendered are merged into a single pending request, so that
+ * a burst of updates (e.g., from an animation or a command updating many times
+ * per second) results in one render of the latest state, rather than one
+ * render per update. Frames are rendered synchronously by default; when
+ * {@link #setAsynchronous(boolean) asynchronous} and a {@link ThreadService}
+ * is available, they are rendered on a background thread instead, and
+ * {@link Renderer#rendered()} is called on that thread.
+ */
+public class RenderScheduler {
+
+	/** Callback doing the actual rendering work. */
+	public interface Renderer {
+
+		/**
+		 * Renders the given (inclusive) XY bounds of the current plane, or the
+		 * whole plane if the bounds are null.
+		 */
+		void render(long[] bounds);
+
+		/** Called after each frame has been rendered. */
+		void rendered();
+	}
+
+	private final Renderer renderer;
+	private final ThreadService threadService;
+
+	/** Whether a render of the whole plane is pending. */
+	private boolean pendingAll;
+
+	/** Pending XY bounds (inclusive), or null if none. */
+	private long[] pendingBounds;
+
+	/** Whether a frame is currently being rendered. */
+	private boolean rendering;
+
+	/** Whether frames should be rendered on a background thread. */
+	private volatile boolean asynchronous;
+
+	private long requests, frames, dropped;
+	private long lastFrameTime, totalFrameTime;
+
+	/**
+	 * Creates a scheduler.
+	 * 
+	 * @param renderer The callback doing the rendering.
+	 * @param threadService The service on whose threads frames are rendered
+	 *          when asynchronous, or null to always render synchronously.
+	 */
+	public RenderScheduler(final Renderer renderer,
+		final ThreadService threadService)
+	{
+		this.renderer = renderer;
+		this.threadService = threadService;
+	}
+
+	// -- RenderScheduler methods --
+
+	/** Requests a render of the whole plane. */
+	public void request() {
+		request((long[]) null);
+	}
+
+	/** Requests a render of the XY bounds of the given interval. */
+	public void request(final Interval region) {
+		request(new long[] { region.min(0), region.min(1), region.max(0),
+			region.max(1) });
+	}
+
+	/**
+	 * Requests a render of the given (inclusive) XY bounds, or of the whole plane
+	 * if the bounds are null.
+	 */
+	public void request(final long[] bounds) {
+		synchronized (this) {
+			requests++;
+			if (pendingAll || pendingBounds != null) dropped++;
+			if (bounds == null) {
+				pendingAll = true;
+				pendingBounds = null;
+			}
+			else if (!pendingAll) pendingBounds = union(pendingBounds, bounds);
+			if (rendering) return;
+			rendering = true;
+		}
+		if (!isAsynchronous()) {
+			drain();
+			return;
+		}
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				drain();
+			}
+		});
+	}
+
+	/**
+	 * Renders any pending request on the calling thread, then waits for any
+	 * frame being rendered elsewhere to complete.
+	 */
+	public void flush() {
+		synchronized (this) {
+			if (!rendering && (pendingAll || pendingBounds != null)) {
+				rendering = true;
+			}
+			else {
+				while (rendering) {
+					try {
+						wait();
+					}
+					catch (final InterruptedException exc) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				return;
+			}
+		}
+		drain();
+	}
+
+	/**
+	 * Sets whether frames are rendered on a background thread, so that requests
+	 * return before the frame is rendered. This has no effect without a
+	 * {@link ThreadService}.
+	 */
+	public void setAsynchronous(final boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
+	/** Gets whether frames are rendered on a background thread. */
+	public boolean isAsynchronous() {
+		return asynchronous && threadService != null;
+	}
+
+	/** Gets whether a frame is pending or being rendered. */
+	public synchronized boolean isBusy() {
+		return rendering;
+	}
+
+	/** Gets the number of render requests made so far. */
+	public synchronized long getRequestCount() {
+		return requests;
+	}
+
+	/** Gets the number of frames rendered so far. */
+	public synchronized long getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 * Gets the number of requests which were merged into a later request, rather
+	 * than rendered on their own.
+	 */
+	public synchronized long getDroppedFrameCount() {
+		return dropped;
+	}
+
+	/** Gets the time taken to render the last frame, in nanoseconds. */
+	public synchronized long getLastFrameTime() {
+		return lastFrameTime;
+	}
+
+	/** Gets the mean time taken to render a frame, in nanoseconds. */
+	public synchronized double getMeanFrameTime() {
+		return frames == 0 ? 0 : (double) totalFrameTime / frames;
+	}
+
+	// -- Helper methods --
+
+	/** Renders pending requests until there are none left. */
+	private void drain() {
+		try {
+			while (true) {
+				final boolean all;
+				final long[] bounds;
+				synchronized (this) {
+					if (!pendingAll && pendingBounds == null) {
+						rendering = false;
+						notifyAll();
+						return;
+					}
+					all = pendingAll;
+					bounds = pendingBounds;
+					pendingAll = false;
+					pendingBounds = null;
+				}
+				final long start = System.nanoTime();
+				renderer.render(all ? null : bounds);
+				final long time = System.nanoTime() - start;
+				synchronized (this) {
+					frames++;
+					lastFrameTime = time;
+					totalFrameTime += time;
+				}
+				renderer.rendered();
+			}
+		}
+		catch (final RuntimeException exc) {
+			synchronized (this) {
+				rendering = false;
+				notifyAll();
+			}
+			throw exc;
+		}
+	}
+
+	private static long[] union(final long[] a, final long[] b) {
+		if (a == null) return b.clone();
+		return new long[] { Math.min(a[0], b[0]), Math.min(a[1], b[1]),
+			Math.max(a[2], b[2]), Math.max(a[3], b[3]) };
+	}
+
+}
@@ -36,6 +36,7 @@
 package imagej.data.event;
 
 import imagej.data.Dataset;
+import imagej.data.DirtyRegion;
 
 /**
  * An event indicating a {@link Dataset}'s data has been updated. This means
@@ -43,6 +44,9 @@
  * same as before.
  * <p>
  * This event is typically fired as part of a call to {@link Dataset#update()}.
+ * If only part of the data changed, the event carries a {@link DirtyRegion}
+ * describing what changed; otherwise the whole Dataset should be considered
+ * changed.
  * </p>
  * 
  * @author Curtis Rueden
@@ -51,11 +55,23 @@ public class DatasetUpdatedEvent extends DataUpdatedEvent {
 
 	private final Dataset dataset;
 	private final boolean metadataOnly;
+	private final DirtyRegion region;
 
 	public DatasetUpdatedEvent(final Dataset dataset, boolean metadataOnly) {
+		this(dataset, metadataOnly, null);
+	}
+
+	public DatasetUpdatedEvent(final Dataset dataset, final DirtyRegion region) {
+		this(dataset, false, region);
+	}
+
+	public DatasetUpdatedEvent(final Dataset dataset,
+		final boolean metadataOnly, final DirtyRegion region)
+	{
 		super(dataset);
 		this.dataset = dataset;
 		this.metadataOnly = metadataOnly;
+		this.region = region;
 	}
 
 	// -- ObjectEvent methods --
@@ -68,4 +84,12 @@ public Dataset getObject() {
 	public boolean isMetaDataOnly() {
 		return metadataOnly;
 	}
+
+	/**
+	 * Gets the region of the Dataset whose sample values changed, or null if the
+	 * entire Dataset may have changed.
+	 */
+	public DirtyRegion getRegion() {
+		return region;
+	}
 }
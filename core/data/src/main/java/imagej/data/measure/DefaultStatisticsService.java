@@ -36,31 +36,16 @@
 package imagej.data.measure;
 
 import imagej.data.Dataset;
+import imagej.data.ParallelLoop;
 import net.imglib2.img.Img;
 import net.imglib2.ops.function.Function;
 import net.imglib2.ops.function.real.RealAlphaTrimmedMeanFunction;
-import net.imglib2.ops.function.real.RealArithmeticMeanFunction;
 import net.imglib2.ops.function.real.RealContraharmonicMeanFunction;
 import net.imglib2.ops.function.real.RealGeometricMeanFunction;
 import net.imglib2.ops.function.real.RealHarmonicMeanFunction;
 import net.imglib2.ops.function.real.RealImageFunction;
-import net.imglib2.ops.function.real.RealMaxFunction;
 import net.imglib2.ops.function.real.RealMedianFunction;
-import net.imglib2.ops.function.real.RealMidpointFunction;
-import net.imglib2.ops.function.real.RealMinFunction;
-import net.imglib2.ops.function.real.RealPopulationKurtosisExcessFunction;
-import net.imglib2.ops.function.real.RealPopulationKurtosisFunction;
-import net.imglib2.ops.function.real.RealPopulationSkewFunction;
-import net.imglib2.ops.function.real.RealPopulationStdDevFunction;
-import net.imglib2.ops.function.real.RealPopulationVarianceFunction;
 import net.imglib2.ops.function.real.RealProductFunction;
-import net.imglib2.ops.function.real.RealSampleKurtosisExcessFunction;
-import net.imglib2.ops.function.real.RealSampleKurtosisFunction;
-import net.imglib2.ops.function.real.RealSampleSkewFunction;
-import net.imglib2.ops.function.real.RealSampleStdDevFunction;
-import net.imglib2.ops.function.real.RealSampleVarianceFunction;
-import net.imglib2.ops.function.real.RealSumFunction;
-import net.imglib2.ops.function.real.RealSumOfSquaredDeviationsFunction;
 import net.imglib2.ops.function.real.RealTrimmedMeanFunction;
 import net.imglib2.ops.function.real.RealWeightedAverageFunction;
 import net.imglib2.ops.function.real.RealWeightedSumFunction;
@@ -73,10 +58,6 @@
 import org.scijava.service.AbstractService;
 import org.scijava.service.Service;
 
-// TODO - make MeasurementService smarter. Compute values without always
-// revisiting the pixels. This current impl goes over pixels once for each
-// measurement. I will mock something up soon. BDZ
-
 // TODO - this service is limited to only the kinds of stats it knows. It can't
 // measure a user provided statistic. This can be done by calling the
 // MeasurementService more directly.
@@ -91,6 +72,14 @@
 
 /**
  * A service for computing some statistics upon regions of {@link Dataset}s.
+ * <p>
+ * The statistics derived from {@link Moments} (means, extrema, sums, variances,
+ * skews and kurtoses) are computed by a parallel {@link RegionReducer}, as are
+ * the median and trimmed means of integer data (from an
+ * {@link IntegerHistogram}) and, on request, approximations of them for other
+ * data (from a {@link QuantileSketch}). The others are measured serially by the
+ * corresponding OPS functions.
+ * </p>
  * 
  * @author Barry DeZonia
  */
@@ -105,12 +94,66 @@ public class DefaultStatisticsService extends AbstractService implements
 	// @Parameter
 	// private MeasurementService mSrv;
 
+	// -- Fields --
+
+	private RegionReducer reducer;
+
 	// -- StatisticsService methods --
 
+	@Override
+	public Moments moments(final Dataset ds, final PointSet region) {
+		return moments(ds, region, reducer());
+	}
+
+	@Override
+	public Moments moments(final Dataset ds) {
+		return moments(ds, allOf(ds));
+	}
+
+	@Override
+	public Moments moments(final Dataset ds, final PointSet region,
+		final RegionReducer regionReducer)
+	{
+		return regionReducer.moments(ds.getImgPlus(), region);
+	}
+
+	@Override
+	public OrderStatistics orderStatistics(final Dataset ds,
+		final PointSet region, final QuantileMethod method)
+	{
+		return orderStatistics(ds, region, method, reducer());
+	}
+
+	@Override
+	public OrderStatistics orderStatistics(final Dataset ds,
+		final PointSet region, final QuantileMethod method,
+		final RegionReducer regionReducer)
+	{
+		final IntegerHistogram histogram =
+			createHistogram(ds, region, regionReducer);
+		if (histogram != null) {
+			return regionReducer.reduce(ds.getImgPlus(), region, histogram);
+		}
+		if (method == QuantileMethod.APPROXIMATE) {
+			return regionReducer.reduce(ds.getImgPlus(), region,
+				new QuantileSketch());
+		}
+		return null;
+	}
+
 	@Override
 	public double alphaTrimmedMean(final Dataset ds, final PointSet region,
 		final double alpha)
 	{
+		return alphaTrimmedMean(ds, region, alpha, QuantileMethod.EXACT);
+	}
+
+	@Override
+	public double alphaTrimmedMean(final Dataset ds, final PointSet region,
+		final double alpha, final QuantileMethod method)
+	{
+		final OrderStatistics stats = orderStatistics(ds, region, method);
+		if (stats != null) return stats.getAlphaTrimmedMean(alpha);
 		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
 		final Function<PointSet, DoubleType> func =
 			new RealAlphaTrimmedMeanFunction<DoubleType>(imgFunc, alpha);
@@ -124,10 +167,7 @@ public double alphaTrimmedMean(final Dataset ds, final double alpha) {
 
 	@Override
 	public double arithmeticMean(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealArithmeticMeanFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.ARITHMETIC_MEAN);
 	}
 
 	@Override
@@ -178,10 +218,7 @@ public double harmonicMean(final Dataset ds) {
 
 	@Override
 	public double maximum(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealMaxFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.MAX);
 	}
 
 	@Override
@@ -191,6 +228,15 @@ public double maximum(final Dataset ds) {
 
 	@Override
 	public double median(final Dataset ds, final PointSet region) {
+		return median(ds, region, QuantileMethod.EXACT);
+	}
+
+	@Override
+	public double median(final Dataset ds, final PointSet region,
+		final QuantileMethod method)
+	{
+		final OrderStatistics stats = orderStatistics(ds, region, method);
+		if (stats != null) return stats.getMedian();
 		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
 		final Function<PointSet, DoubleType> func =
 			new RealMedianFunction<DoubleType>(imgFunc);
@@ -204,10 +250,7 @@ public double median(final Dataset ds) {
 
 	@Override
 	public double midpoint(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealMidpointFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.MIDPOINT);
 	}
 
 	@Override
@@ -217,10 +260,7 @@ public double midpoint(final Dataset ds) {
 
 	@Override
 	public double minimum(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealMinFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.MIN);
 	}
 
 	@Override
@@ -230,10 +270,7 @@ public double minimum(final Dataset ds) {
 
 	@Override
 	public double populationKurtosis(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealPopulationKurtosisFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.POPULATION_KURTOSIS);
 	}
 
 	@Override
@@ -245,10 +282,7 @@ public double populationKurtosis(final Dataset ds) {
 	public double
 		populationKurtosisExcess(final Dataset ds, final PointSet region)
 	{
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealPopulationKurtosisExcessFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.POPULATION_KURTOSIS_EXCESS);
 	}
 
 	@Override
@@ -258,10 +292,7 @@ public double populationKurtosisExcess(final Dataset ds) {
 
 	@Override
 	public double populationSkew(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealPopulationSkewFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.POPULATION_SKEW);
 	}
 
 	@Override
@@ -271,10 +302,7 @@ public double populationSkew(final Dataset ds) {
 
 	@Override
 	public double populationStdDev(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealPopulationStdDevFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.POPULATION_STD_DEV);
 	}
 
 	@Override
@@ -284,10 +312,7 @@ public double populationStdDev(final Dataset ds) {
 
 	@Override
 	public double populationVariance(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealPopulationVarianceFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.POPULATION_VARIANCE);
 	}
 
 	@Override
@@ -310,10 +335,7 @@ public double product(final Dataset ds) {
 
 	@Override
 	public double sampleKurtosis(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealSampleKurtosisFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.SAMPLE_KURTOSIS);
 	}
 
 	@Override
@@ -323,10 +345,7 @@ public double sampleKurtosis(final Dataset ds) {
 
 	@Override
 	public double sampleKurtosisExcess(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealSampleKurtosisExcessFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.SAMPLE_KURTOSIS_EXCESS);
 	}
 
 	@Override
@@ -336,10 +355,7 @@ public double sampleKurtosisExcess(final Dataset ds) {
 
 	@Override
 	public double sampleSkew(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealSampleSkewFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.SAMPLE_SKEW);
 	}
 
 	@Override
@@ -349,10 +365,7 @@ public double sampleSkew(final Dataset ds) {
 
 	@Override
 	public double sampleStdDev(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealSampleStdDevFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.SAMPLE_STD_DEV);
 	}
 
 	@Override
@@ -362,10 +375,7 @@ public double sampleStdDev(final Dataset ds) {
 
 	@Override
 	public double sampleVariance(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealSampleVarianceFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.SAMPLE_VARIANCE);
 	}
 
 	@Override
@@ -375,10 +385,7 @@ public double sampleVariance(final Dataset ds) {
 
 	@Override
 	public double sum(final Dataset ds, final PointSet region) {
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealSumFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.SUM);
 	}
 
 	@Override
@@ -389,10 +396,7 @@ public double sum(final Dataset ds) {
 	@Override
 	public double sumOfSquaredDeviations(final Dataset ds, final PointSet region)
 	{
-		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
-		final Function<PointSet, DoubleType> func =
-			new RealSumOfSquaredDeviationsFunction<DoubleType>(imgFunc);
-		return measure(func, region);
+		return reduce(ds, region, Statistic.SUM_OF_SQUARED_DEVIATIONS);
 	}
 
 	@Override
@@ -402,6 +406,15 @@ public double sumOfSquaredDeviations(final Dataset ds) {
 
 	@Override
 	public double trimmedMean(Dataset ds, PointSet region, int halfTrimSize) {
+		return trimmedMean(ds, region, halfTrimSize, QuantileMethod.EXACT);
+	}
+
+	@Override
+	public double trimmedMean(final Dataset ds, final PointSet region,
+		final int halfTrimSize, final QuantileMethod method)
+	{
+		final OrderStatistics stats = orderStatistics(ds, region, method);
+		if (stats != null) return stats.getTrimmedMean(halfTrimSize);
 		final Function<long[], DoubleType> imgFunc = imgFunc(ds);
 		final Function<PointSet, DoubleType> func =
 			new RealTrimmedMeanFunction<DoubleType>(imgFunc, halfTrimSize);
@@ -446,6 +459,41 @@ private RealImageFunction<?, DoubleType> imgFunc(final Dataset ds) {
 		return new RealImageFunction(imgPlus, new DoubleType());
 	}
 
+	private double reduce(final Dataset ds, final PointSet region,
+		final Statistic statistic)
+	{
+		return statistic.value(moments(ds, region));
+	}
+
+	/**
+	 * Creates an empty histogram spanning the values of an integer Dataset
+	 * within the given region, or returns null if the Dataset is not integer or
+	 * its values span too wide a range. The range of types wider than 16 bits
+	 * takes an extra pass over the region to find.
+	 */
+	private IntegerHistogram createHistogram(final Dataset ds,
+		final PointSet region, final RegionReducer regionReducer)
+	{
+		if (!ds.isInteger()) return null;
+		double min = ds.getType().getMinValue();
+		double max = ds.getType().getMaxValue();
+		if (max - min >= IntegerHistogram.MAX_BINS) {
+			final Moments m = moments(ds, region, regionReducer);
+			if (m.getCount() == 0) return null;
+			min = m.getMin();
+			max = m.getMax();
+			if (max - min >= IntegerHistogram.MAX_BINS) return null;
+		}
+		return new IntegerHistogram((long) min, (long) max);
+	}
+
+	private synchronized RegionReducer reducer() {
+		if (reducer == null) {
+			reducer = new RegionReducer(new ParallelLoop(getContext()));
+		}
+		return reducer;
+	}
+
 	private double measure(final Function<PointSet, DoubleType> func,
 		final PointSet region)
 	{
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+/**
+ * {@link OrderStatistics} of integer samples, computed exactly from a histogram
+ * with one bin per integer value. This takes one pass and constant memory,
+ * instead of gathering and sorting every sample, as long as the samples lie
+ * within a range of at most {@link #MAX_BINS} values.
+ */
+public class IntegerHistogram extends OrderStatistics implements
+	Accumulator<IntegerHistogram>
+{
+
+	/** Maximum number of values a histogram may span. */
+	public static final int MAX_BINS = 1 << 20;
+
+	private final long min;
+	private final long[] counts;
+	private long n;
+
+	/**
+	 * Creates a histogram of integer values ranging from min to max (both
+	 * inclusive).
+	 */
+	public IntegerHistogram(final long min, final long max) {
+		if (max < min || max - min >= MAX_BINS) {
+			throw new IllegalArgumentException("Invalid histogram range: [" + min +
+				", " + max + "]");
+		}
+		this.min = min;
+		counts = new long[(int) (max - min + 1)];
+	}
+
+	// -- IntegerHistogram methods --
+
+	public long getMin() {
+		return min;
+	}
+
+	public long getMax() {
+		return min + counts.length - 1;
+	}
+
+	/** Gets the number of samples equal to the given value. */
+	public long getCount(final long value) {
+		return counts[(int) (value - min)];
+	}
+
+	// -- Accumulator methods --
+
+	/**
+	 * Adds a sample value, which must be an integer within the range of the
+	 * histogram.
+	 */
+	@Override
+	public void add(final double value) {
+		counts[(int) ((long) value - min)]++;
+		n++;
+	}
+
+	@Override
+	public void add(final IntegerHistogram histogram) {
+		if (histogram.min != min || histogram.counts.length != counts.length) {
+			throw new IllegalArgumentException("Incompatible histogram ranges");
+		}
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += histogram.counts[i];
+		}
+		n += histogram.n;
+	}
+
+	@Override
+	public IntegerHistogram create() {
+		return new IntegerHistogram(getMin(), getMax());
+	}
+
+	// -- OrderStatistics methods --
+
+	@Override
+	public long getCount() {
+		return n;
+	}
+
+	@Override
+	public double getValue(final long rank) {
+		if (rank < 0 || rank >= n) {
+			throw new IndexOutOfBoundsException("Invalid rank: " + rank);
+		}
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen > rank) return min + i;
+		}
+		throw new IllegalStateException("Inconsistent histogram");
+	}
+
+	@Override
+	public double getSum(final long from, final long to) {
+		double sum = 0;
+		long seen = 0;
+		for (int i = 0; i < counts.length && seen < to; i++) {
+			final long start = Math.max(seen, from);
+			seen += counts[i];
+			final long end = Math.min(seen, to);
+			if (end > start) sum += (double) (min + i) * (end - start);
+		}
+		return sum;
+	}
+
+}
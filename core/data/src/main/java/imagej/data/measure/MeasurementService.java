@@ -74,6 +74,8 @@ public interface MeasurementService extends Service {
 	/**
 	 * Measures the values of a list of {@link Function}s given an input region
 	 * {@link PointSet} and places the computed values in the given output list.
+	 * {@link StatisticFunction}s on the same data are measured together in a
+	 * single pass over the region.
 	 * 
 	 * @param funcs The list of functions to measure.
 	 * @param region The set of points over which to evaluate the functions.
@@ -108,4 +110,33 @@ <T extends RealType<T>> RealImageFunction<?, T> imgFunction(
 	<T extends RealType<T>> RealImageFunction<?, T> imgFunction(Dataset ds,
 		T outputType);
 
+	/**
+	 * Creates a {@link StatisticFunction} that measures a {@link Statistic} of
+	 * the data of an {@link Img}. StatisticFunctions on the same Img that are
+	 * measured together share a single pass over the region, reading the Img
+	 * directly.
+	 * 
+	 * @param statistic The statistic to measure.
+	 * @param img The Img containing the data values to measure.
+	 * @param outputType The type of output that the Function will fill during
+	 *          computation.
+	 * @return A Function measuring the statistic.
+	 */
+	<T extends RealType<T>> StatisticFunction<T> statFunction(
+		Statistic statistic, Img<? extends RealType<?>> img, T outputType);
+
+	/**
+	 * Creates a {@link StatisticFunction} that measures a {@link Statistic} of
+	 * the data of a {@link Dataset}. StatisticFunctions on the same Dataset that
+	 * are measured together share a single pass over the region.
+	 * 
+	 * @param statistic The statistic to measure.
+	 * @param ds The Dataset containing the data values to measure.
+	 * @param outputType The type of output that the Function will fill during
+	 *          computation.
+	 * @return A Function measuring the statistic.
+	 */
+	<T extends RealType<T>> StatisticFunction<T> statFunction(
+		Statistic statistic, Dataset ds, T outputType);
+
 }
@@ -37,12 +37,18 @@
 
 import net.imglib2.ops.function.Function;
 import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.type.numeric.RealType;
 
 /**
  * MeasurementSetFunction is used by the {@link MeasurementService} to measure
  * multiple {@link Function}s at one time. It is a {@link Function} that changes
  * the output values in a {@link MeasurementSet} when its output value is
  * computed.
+ * <p>
+ * {@link StatisticFunction}s of the same data are fused: the region is walked
+ * once for all of them, accumulating {@link Moments} from which each of their
+ * statistics is derived. Other Functions are computed one at a time.
+ * </p>
  * 
  * @author Barry DeZonia
  * @param <T> The type of output data calculated by functions in the
@@ -75,9 +81,27 @@ public MeasurementSetFunction(final MeasurementSet<T> set) {
 	 */
 	@Override
 	public void compute(final PointSet input, final MeasurementSet<T> output) {
-		for (int i = 0; i < output.getNumMeasurements(); i++) {
-			final T variable = output.getVariable(i);
-			output.getFunction(i).compute(input, variable);
+		final int count = output.getNumMeasurements();
+		final boolean[] done = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			if (done[i]) continue;
+			final Function<PointSet, T> func = output.getFunction(i);
+			if (!(func instanceof StatisticFunction)) {
+				func.compute(input, output.getVariable(i));
+				continue;
+			}
+			final StatisticFunction<?> statFunc = (StatisticFunction<?>) func;
+			final Moments moments = new Moments();
+			statFunc.accumulate(input, moments);
+			for (int j = i; j < count; j++) {
+				final Function<PointSet, T> other = output.getFunction(j);
+				if (!(other instanceof StatisticFunction)) continue;
+				final StatisticFunction<?> otherStat = (StatisticFunction<?>) other;
+				if (!statFunc.hasSameData(otherStat)) continue;
+				final RealType<?> variable = (RealType<?>) output.getVariable(j);
+				variable.setReal(otherStat.getStatistic().value(moments));
+				done[j] = true;
+			}
 		}
 	}
 
@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+/**
+ * Accumulates the count, extrema, sum and central moments (up to the fourth) of
+ * a set of sample values in a single pass. The moments are updated
+ * incrementally, which stays numerically stable where the textbook sums of
+ * powers do not. Moments of disjoint sets of samples (e.g., of different
+ * chunks of a region) can be combined with {@link #add(Moments)}.
+ * <p>
+ * The derived statistics follow the definitions of the corresponding OPS
+ * functions (e.g., {@code RealSampleSkewFunction}).
+ * </p>
+ */
+public class Moments implements Accumulator<Moments> {
+
+	private long n;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double sum;
+	private double mean;
+
+	/** Sums of the 2nd, 3rd and 4th powers of the deviations from the mean. */
+	private double m2, m3, m4;
+
+	// -- Accumulator methods --
+
+	@Override
+	public void add(final double value) {
+		final long n1 = n++;
+		if (value < min) min = value;
+		if (value > max) max = value;
+		sum += value;
+		final double delta = value - mean;
+		final double deltaN = delta / n;
+		final double deltaN2 = deltaN * deltaN;
+		final double term1 = delta * deltaN * n1;
+		mean += deltaN;
+		m4 +=
+			term1 * deltaN2 * ((double) n * n - 3 * n + 3) + 6 * deltaN2 * m2 - 4 *
+				deltaN * m3;
+		m3 += term1 * deltaN * (n - 2) - 3 * deltaN * m2;
+		m2 += term1;
+	}
+
+	@Override
+	public void add(final Moments moments) {
+		if (moments.n == 0) return;
+		if (n == 0) {
+			set(moments);
+			return;
+		}
+		final double na = n, nb = moments.n, nn = na + nb;
+		final double delta = moments.mean - mean;
+		final double delta2 = delta * delta;
+		final double newM2 = m2 + moments.m2 + delta2 * na * nb / nn;
+		final double newM3 =
+			m3 + moments.m3 + delta * delta2 * na * nb * (na - nb) / (nn * nn) + 3 *
+				delta * (na * moments.m2 - nb * m2) / nn;
+		final double newM4 =
+			m4 + moments.m4 + delta2 * delta2 * na * nb * (na * na - na * nb + nb * nb) /
+				(nn * nn * nn) + 6 * delta2 *
+				(na * na * moments.m2 + nb * nb * m2) / (nn * nn) + 4 * delta *
+				(na * moments.m3 - nb * m3) / nn;
+		n += moments.n;
+		if (moments.min < min) min = moments.min;
+		if (moments.max > max) max = moments.max;
+		sum += moments.sum;
+		mean += delta * nb / nn;
+		m2 = newM2;
+		m3 = newM3;
+		m4 = newM4;
+	}
+
+	@Override
+	public Moments create() {
+		return new Moments();
+	}
+
+	// -- Moments methods --
+
+	/** Forgets all samples added so far. */
+	public void reset() {
+		set(new Moments());
+	}
+
+	/** Gets the number of samples. */
+	public long getCount() {
+		return n;
+	}
+
+	/** Gets the smallest sample, or NaN if there are none. */
+	public double getMin() {
+		return n == 0 ? Double.NaN : min;
+	}
+
+	/** Gets the largest sample, or NaN if there are none. */
+	public double getMax() {
+		return n == 0 ? Double.NaN : max;
+	}
+
+	/** Gets the value halfway between the smallest and largest samples. */
+	public double getMidpoint() {
+		return (getMin() + getMax()) / 2;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	/** Gets the arithmetic mean of the samples, or NaN if there are none. */
+	public double getMean() {
+		return n == 0 ? Double.NaN : mean;
+	}
+
+	public double getSumOfSquaredDeviations() {
+		return m2;
+	}
+
+	/** Gets the (biased) variance, i.e. the squared deviations over N. */
+	public double getPopulationVariance() {
+		return m2 / n;
+	}
+
+	/** Gets the (unbiased) variance, i.e. the squared deviations over N-1. */
+	public double getSampleVariance() {
+		return m2 / (n - 1);
+	}
+
+	public double getPopulationStdDev() {
+		return Math.sqrt(getPopulationVariance());
+	}
+
+	public double getSampleStdDev() {
+		return Math.sqrt(getSampleVariance());
+	}
+
+	public double getPopulationSkew() {
+		final double var = m2 / n;
+		return (m3 / n) / Math.pow(var, 1.5);
+	}
+
+	/** Gets the adjusted skew, or NaN for fewer than three samples. */
+	public double getSampleSkew() {
+		if (n < 3) return Double.NaN;
+		final double nd = n;
+		return getPopulationSkew() * Math.sqrt(nd * (nd - 1)) / (nd - 2);
+	}
+
+	public double getPopulationKurtosis() {
+		final double var = m2 / n;
+		return (m4 / n) / (var * var);
+	}
+
+	public double getPopulationKurtosisExcess() {
+		return getPopulationKurtosis() - 3;
+	}
+
+	/** Gets the adjusted kurtosis, or NaN for fewer than four samples. */
+	public double getSampleKurtosis() {
+		return getSampleKurtosisExcess() + 3;
+	}
+
+	/** Gets the adjusted kurtosis excess, or NaN for fewer than four samples. */
+	public double getSampleKurtosisExcess() {
+		if (n < 4) return Double.NaN;
+		final double nd = n;
+		final double biased = getPopulationKurtosisExcess();
+		return ((nd + 1) * biased + 6) * (nd - 1) / ((nd - 2) * (nd - 3));
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return "count=" + n + ", min=" + getMin() + ", max=" + getMax() +
+			", mean=" + getMean() + ", variance=" + getSampleVariance();
+	}
+
+	// -- Helper methods --
+
+	private void set(final Moments moments) {
+		n = moments.n;
+		min = moments.min;
+		max = moments.max;
+		sum = moments.sum;
+		mean = moments.mean;
+		m2 = moments.m2;
+		m3 = moments.m3;
+		m4 = moments.m4;
+	}
+
+}
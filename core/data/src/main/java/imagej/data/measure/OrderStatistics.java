@@ -0,0 +1,94 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+/**
+ * Answers rank queries about a set of sample values: the value of a given rank
+ * and the sum of the values within a range of ranks. From these the median and
+ * the trimmed means are derived, following the definitions of the
+ * corresponding OPS functions. Implementations may be exact (e.g.,
+ * {@link IntegerHistogram}) or approximate (e.g., {@link QuantileSketch}).
+ */
+public abstract class OrderStatistics {
+
+	// -- OrderStatistics methods --
+
+	/** Gets the number of samples. */
+	public abstract long getCount();
+
+	/**
+	 * Gets the sample of the given rank, where rank 0 is the smallest sample and
+	 * rank {@code getCount() - 1} the largest.
+	 */
+	public abstract double getValue(long rank);
+
+	/**
+	 * Gets the sum of the samples whose ranks lie between from (inclusive) and
+	 * to (exclusive).
+	 */
+	public abstract double getSum(long from, long to);
+
+	/**
+	 * Gets the median of the samples: the middle sample, or the average of the
+	 * two middle samples if their number is even. Returns NaN if there are no
+	 * samples.
+	 */
+	public double getMedian() {
+		final long n = getCount();
+		if (n == 0) return Double.NaN;
+		if (n % 2 == 1) return getValue(n / 2);
+		return (getValue(n / 2 - 1) + getValue(n / 2)) / 2;
+	}
+
+	/**
+	 * Gets the mean of the samples left after removing the given number of
+	 * samples from each end. Returns NaN if no samples would be left.
+	 */
+	public double getTrimmedMean(final long halfTrimSize) {
+		final long n = getCount();
+		if (2 * halfTrimSize >= n) return Double.NaN;
+		return getSum(halfTrimSize, n - halfTrimSize) / (n - 2 * halfTrimSize);
+	}
+
+	/**
+	 * Gets the mean of the samples left after removing the given proportion of
+	 * samples from each end.
+	 */
+	public double getAlphaTrimmedMean(final double alpha) {
+		return getTrimmedMean((long) (alpha * getCount()));
+	}
+
+}
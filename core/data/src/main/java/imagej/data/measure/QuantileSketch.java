@@ -0,0 +1,250 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Approximate {@link OrderStatistics} of arbitrary samples in bounded memory: a
+ * KLL quantile sketch (Karnin, Lang and Liberty, 2016).
+ * <p>
+ * Samples are kept in a stack of compactors. The samples of level h each stand
+ * for 2<sup>h</sup> samples of the input; when a level is full it is sorted and
+ * every other sample (starting at a random offset) is promoted to the next
+ * level, the rest discarded. Capacities shrink geometrically by 2/3 towards the
+ * lower levels, so a sketch holds fewer than 3k samples regardless of the
+ * number of inputs, and sketches of disjoint samples merge level by level.
+ * </p>
+ * <p>
+ * The error of a rank query is on the order of n/k samples. With the default k
+ * of {@value #DEFAULT_K}, ranks are accurate to within 1% of the sample count
+ * (see {@code QuantileSketchTest}); values derived from ranks, such as the
+ * median, are off by at most the spread of the samples within that band.
+ * </p>
+ */
+public class QuantileSketch extends OrderStatistics implements
+	Accumulator<QuantileSketch>
+{
+
+	/** Default capacity of the highest level. */
+	public static final int DEFAULT_K = 512;
+
+	private static final long SEED = 0x6b6c6c;
+
+	private final int k;
+	private final Random random = new Random(SEED);
+
+	private double[][] levels = new double[0][];
+	private int[] sizes = new int[0];
+	private long n;
+
+	/** Sorted samples and their cumulative weights, for answering queries. */
+	private double[] sortedValues;
+	private long[] cumulativeWeights;
+
+	public QuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * Creates a sketch whose highest level holds k samples. The memory used, and
+	 * the accuracy, grow linearly with k.
+	 */
+	public QuantileSketch(final int k) {
+		if (k < 8) throw new IllegalArgumentException("Invalid capacity: " + k);
+		this.k = k;
+	}
+
+	// -- QuantileSketch methods --
+
+	public int getK() {
+		return k;
+	}
+
+	/** Gets the number of samples retained by the sketch. */
+	public int getRetainedCount() {
+		int retained = 0;
+		for (final int size : sizes) {
+			retained += size;
+		}
+		return retained;
+	}
+
+	// -- Accumulator methods --
+
+	@Override
+	public void add(final double value) {
+		if (levels.length == 0) addLevel();
+		append(0, value);
+		n++;
+		sortedValues = null;
+		if (sizes[0] >= capacity(0)) compact(0);
+	}
+
+	@Override
+	public void add(final QuantileSketch sketch) {
+		while (levels.length < sketch.levels.length) {
+			addLevel();
+		}
+		for (int h = 0; h < sketch.levels.length; h++) {
+			for (int i = 0; i < sketch.sizes[h]; i++) {
+				append(h, sketch.levels[h][i]);
+			}
+		}
+		n += sketch.n;
+		sortedValues = null;
+		for (int h = 0; h < levels.length; h++) {
+			if (sizes[h] >= capacity(h)) compact(h);
+		}
+	}
+
+	@Override
+	public QuantileSketch create() {
+		return new QuantileSketch(k);
+	}
+
+	// -- OrderStatistics methods --
+
+	@Override
+	public long getCount() {
+		return n;
+	}
+
+	@Override
+	public double getValue(final long rank) {
+		if (rank < 0 || rank >= n) {
+			throw new IndexOutOfBoundsException("Invalid rank: " + rank);
+		}
+		sort();
+		int index = Arrays.binarySearch(cumulativeWeights, rank + 1);
+		if (index < 0) index = -index - 1;
+		return sortedValues[index];
+	}
+
+	@Override
+	public double getSum(final long from, final long to) {
+		sort();
+		double sum = 0;
+		long seen = 0;
+		for (int i = 0; i < sortedValues.length && seen < to; i++) {
+			final long start = Math.max(seen, from);
+			seen = cumulativeWeights[i];
+			final long end = Math.min(seen, to);
+			if (end > start) sum += sortedValues[i] * (end - start);
+		}
+		return sum;
+	}
+
+	// -- Helper methods --
+
+	/** Gets the capacity of the given level, in the current stack of levels. */
+	private int capacity(final int level) {
+		final int depth = levels.length - 1 - level;
+		return Math.max(2, (int) Math.ceil(k * Math.pow(2.0 / 3, depth)));
+	}
+
+	private void addLevel() {
+		final int count = levels.length;
+		levels = Arrays.copyOf(levels, count + 1);
+		sizes = Arrays.copyOf(sizes, count + 1);
+		levels[count] = new double[8];
+	}
+
+	private void append(final int level, final double value) {
+		if (sizes[level] == levels[level].length) {
+			levels[level] = Arrays.copyOf(levels[level], 2 * sizes[level]);
+		}
+		levels[level][sizes[level]++] = value;
+	}
+
+	/**
+	 * Promotes every other sample of a level to the next one. If the level holds
+	 * an odd number of samples, its largest stays behind so that the total
+	 * weight of the sketch is preserved.
+	 */
+	private void compact(final int level) {
+		if (level == levels.length - 1) addLevel();
+		final double[] items = levels[level];
+		final int size = sizes[level];
+		Arrays.sort(items, 0, size);
+		final int even = size - size % 2;
+		for (int i = random.nextBoolean() ? 1 : 0; i < even; i += 2) {
+			append(level + 1, items[i]);
+		}
+		if (size % 2 == 1) {
+			items[0] = items[size - 1];
+			sizes[level] = 1;
+		}
+		else sizes[level] = 0;
+		if (sizes[level + 1] >= capacity(level + 1)) compact(level + 1);
+	}
+
+	/** Sorts the retained samples by value, along with their weights. */
+	private void sort() {
+		if (sortedValues != null) return;
+		final int retained = getRetainedCount();
+		final double[] values = new double[retained];
+		final long[] weights = new long[retained];
+		final Integer[] order = new Integer[retained];
+		int i = 0;
+		for (int h = 0; h < levels.length; h++) {
+			for (int j = 0; j < sizes[h]; j++) {
+				values[i] = levels[h][j];
+				weights[i] = 1L << h;
+				order[i] = i;
+				i++;
+			}
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(final Integer a, final Integer b) {
+				return Double.compare(values[a], values[b]);
+			}
+		});
+		sortedValues = new double[retained];
+		cumulativeWeights = new long[retained];
+		long total = 0;
+		for (i = 0; i < retained; i++) {
+			sortedValues[i] = values[order[i]];
+			total += weights[order[i]];
+			cumulativeWeights[i] = total;
+		}
+	}
+
+}
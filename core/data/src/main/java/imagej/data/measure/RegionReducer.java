@@ -0,0 +1,233 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+import imagej.data.ParallelLoop;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.ops.pointset.ConditionalPointSet;
+import net.imglib2.ops.pointset.HyperVolumePointSet;
+import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.ops.pointset.PointSetIterator;
+import net.imglib2.ops.pointset.RoiPointSet;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Accumulates the samples within a region in parallel, e.g. into their
+ * {@link Moments}. The bounding box of the region is cut into slabs along its
+ * outermost dimension; the slabs are handed out in chunks to a
+ * {@link ParallelLoop}, each chunk fills its own partial {@link Accumulator},
+ * and the partials are then merged in slab order so that the result does not
+ * depend on thread scheduling.
+ * <p>
+ * A {@link HyperVolumePointSet} is walked with a cursor over each slab. ROI and
+ * conditional regions are walked by testing each point of a slab for
+ * membership, using a copy of the region per chunk. Any other kind of
+ * {@link PointSet} can only be iterated as a whole and is measured serially,
+ * as are regions whose bounding box is smaller than
+ * {@link #MIN_PARALLEL_SIZE} and {@link SelfIteratingPointSet}s able to walk
+ * just their members, whose iteration is proportional to their size.
+ * </p>
+ */
+public class RegionReducer {
+
+	/** Minimum number of points a region must have to be split into chunks. */
+	public static final int MIN_PARALLEL_SIZE = 1 << 16;
+
+	private final ParallelLoop loop;
+
+	/**
+	 * Creates a reducer that splits its work via the given loop, or computes
+	 * everything on the calling thread if the loop is null.
+	 */
+	public RegionReducer(final ParallelLoop loop) {
+		this.loop = loop;
+	}
+
+	// -- RegionReducer methods --
+
+	public ParallelLoop getParallelLoop() {
+		return loop;
+	}
+
+	/** Computes the moments of the data within the given region. */
+	public Moments moments(final RandomAccessible<? extends RealType<?>> data,
+		final PointSet region)
+	{
+		return reduce(data, region, new Moments());
+	}
+
+	/**
+	 * Accumulates the data within the given region.
+	 * 
+	 * @param data The samples to accumulate.
+	 * @param region The region whose samples are accumulated.
+	 * @param prototype An accumulator from which the partial accumulators (and
+	 *          the result) are created. It is not modified.
+	 * @return A new accumulator holding all the samples of the region.
+	 */
+	public <A extends Accumulator<A>> A reduce(
+		final RandomAccessible<? extends RealType<?>> data, final PointSet region,
+		final A prototype)
+	{
+		final int splitDim = splitDimension(region);
+		if (splitDim < 0) {
+			final A result = prototype.create();
+			accumulate(data, region, result);
+			return result;
+		}
+
+		final int numDims = region.numDimensions();
+		final long[] min = new long[numDims];
+		final long[] max = new long[numDims];
+		region.min(min);
+		region.max(max);
+		final long origin = min[splitDim];
+		final boolean box = region instanceof HyperVolumePointSet;
+
+		final Map<Long, A> partials = new ConcurrentSkipListMap<Long, A>();
+		loop.run(max[splitDim] - origin + 1, new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				final long[] slabMin = min.clone();
+				final long[] slabMax = max.clone();
+				slabMin[splitDim] = origin + start;
+				slabMax[splitDim] = origin + end - 1;
+				final A partial = prototype.create();
+				if (box) accumulate(data, slabMin, slabMax, partial);
+				else accumulate(data, region.copy(), slabMin, slabMax, partial);
+				partials.put(start, partial);
+			}
+		});
+
+		final A result = prototype.create();
+		for (final A partial : partials.values()) {
+			result.add(partial);
+		}
+		return result;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Chooses the dimension along which to split the region, or returns -1 if it
+	 * should be measured serially.
+	 */
+	private int splitDimension(final PointSet region) {
+		if (loop == null || loop.getThreadCount() < 2) return -1;
+		// NB: iterating only the members beats testing every point of the
+		// bounding box
+		if (region instanceof SelfIteratingPointSet &&
+			((SelfIteratingPointSet) region).isSelfIterating())
+		{
+			return -1;
+		}
+		if (!(region instanceof HyperVolumePointSet) &&
+			!(region instanceof RoiPointSet) &&
+			!(region instanceof ConditionalPointSet))
+		{
+			return -1;
+		}
+		final long[] min = new long[region.numDimensions()];
+		final long[] max = new long[region.numDimensions()];
+		region.min(min);
+		region.max(max);
+		// NB: the size of a conditional region is only known after a full pass,
+		// so the size of its bounding box has to do
+		long volume = 1;
+		for (int d = 0; d < min.length; d++) {
+			volume *= max[d] - min[d] + 1;
+		}
+		if (volume < MIN_PARALLEL_SIZE) return -1;
+		for (int d = min.length - 1; d >= 0; d--) {
+			if (max[d] > min[d]) return d;
+		}
+		return -1;
+	}
+
+	private static void accumulate(
+		final RandomAccessible<? extends RealType<?>> data, final PointSet region,
+		final Accumulator<?> acc)
+	{
+		if (region instanceof HyperVolumePointSet) {
+			final long[] min = new long[region.numDimensions()];
+			final long[] max = new long[region.numDimensions()];
+			region.min(min);
+			region.max(max);
+			accumulate(data, min, max, acc);
+			return;
+		}
+		final RandomAccess<? extends RealType<?>> accessor = data.randomAccess();
+		final PointSetIterator iter = region.iterator();
+		while (iter.hasNext()) {
+			accessor.setPosition(iter.next());
+			acc.add(accessor.get().getRealDouble());
+		}
+	}
+
+	private static void accumulate(
+		final RandomAccessible<? extends RealType<?>> data, final long[] min,
+		final long[] max, final Accumulator<?> acc)
+	{
+		final Cursor<? extends RealType<?>> cursor =
+			Views.interval(data, min, max).cursor();
+		while (cursor.hasNext()) {
+			acc.add(cursor.next().getRealDouble());
+		}
+	}
+
+	private static void accumulate(
+		final RandomAccessible<? extends RealType<?>> data, final PointSet region,
+		final long[] min, final long[] max, final Accumulator<?> acc)
+	{
+		final RandomAccess<? extends RealType<?>> accessor = data.randomAccess();
+		final PointSetIterator iter = new HyperVolumePointSet(min, max).iterator();
+		while (iter.hasNext()) {
+			final long[] pos = iter.next();
+			if (!region.includes(pos)) continue;
+			accessor.setPosition(pos);
+			acc.add(accessor.get().getRealDouble());
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+/**
+ * The statistics that can be derived from the {@link Moments} of a region, and
+ * hence measured together in a single pass over that region by a
+ * {@link StatisticFunction}.
+ */
+public enum Statistic {
+
+	COUNT {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getCount();
+		}
+	},
+	MIN {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getMin();
+		}
+	},
+	MAX {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getMax();
+		}
+	},
+	MIDPOINT {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getMidpoint();
+		}
+	},
+	SUM {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getSum();
+		}
+	},
+	ARITHMETIC_MEAN {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getMean();
+		}
+	},
+	SUM_OF_SQUARED_DEVIATIONS {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getSumOfSquaredDeviations();
+		}
+	},
+	POPULATION_VARIANCE {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getPopulationVariance();
+		}
+	},
+	SAMPLE_VARIANCE {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getSampleVariance();
+		}
+	},
+	POPULATION_STD_DEV {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getPopulationStdDev();
+		}
+	},
+	SAMPLE_STD_DEV {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getSampleStdDev();
+		}
+	},
+	POPULATION_SKEW {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getPopulationSkew();
+		}
+	},
+	SAMPLE_SKEW {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getSampleSkew();
+		}
+	},
+	POPULATION_KURTOSIS {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getPopulationKurtosis();
+		}
+	},
+	POPULATION_KURTOSIS_EXCESS {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getPopulationKurtosisExcess();
+		}
+	},
+	SAMPLE_KURTOSIS {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getSampleKurtosis();
+		}
+	},
+	SAMPLE_KURTOSIS_EXCESS {
+
+		@Override
+		public double value(final Moments m) {
+			return m.getSampleKurtosisExcess();
+		}
+	};
+
+	/** Derives this statistic from the accumulated moments of a region. */
+	public abstract double value(Moments m);
+
+}
@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.ops.function.Function;
+import net.imglib2.ops.pointset.HyperVolumePointSet;
+import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.ops.pointset.PointSetIterator;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * A {@link Function} that measures a {@link Statistic} of some data over a
+ * region {@link PointSet}.
+ * <p>
+ * Unlike the OPS functions, a StatisticFunction can share its pass over the
+ * region with others: when several StatisticFunctions on the same data are
+ * measured together via a {@link MeasurementSet}, their {@link Moments} are
+ * accumulated once and each statistic is derived from them. When the data is
+ * given as a {@link RandomAccessible} (e.g., an {@link net.imglib2.img.Img})
+ * rather than as a Function, samples are read directly; a
+ * {@link HyperVolumePointSet} is then walked with a cursor over the
+ * corresponding interval.
+ * </p>
+ * 
+ * @param <T> The output type of the Function.
+ */
+public class StatisticFunction<T extends RealType<T>> implements
+	Function<PointSet, T>
+{
+
+	// -- instance variables --
+
+	private final Statistic statistic;
+	private final Function<long[], T> otherFunc;
+	private final RandomAccessible<? extends RealType<?>> data;
+	private final T tmp;
+	private RandomAccess<? extends RealType<?>> accessor;
+
+	// -- constructors --
+
+	/**
+	 * Creates a StatisticFunction on another {@link Function}, which is evaluated
+	 * at each point of the measured region.
+	 */
+	public StatisticFunction(final Statistic statistic,
+		final Function<long[], T> func)
+	{
+		this.statistic = statistic;
+		this.otherFunc = func;
+		this.data = null;
+		this.tmp = func.createOutput();
+	}
+
+	/**
+	 * Creates a StatisticFunction on the samples of a {@link RandomAccessible}.
+	 * 
+	 * @param statistic The statistic to measure.
+	 * @param data The samples to measure the statistic of.
+	 * @param outputType A variable of the output type of this Function.
+	 */
+	public StatisticFunction(final Statistic statistic,
+		final RandomAccessible<? extends RealType<?>> data, final T outputType)
+	{
+		this.statistic = statistic;
+		this.otherFunc = null;
+		this.data = data;
+		this.tmp = outputType.createVariable();
+	}
+
+	// -- StatisticFunction methods --
+
+	/** Gets the {@link Statistic} measured by this Function. */
+	public Statistic getStatistic() {
+		return statistic;
+	}
+
+	/**
+	 * Returns true if this Function measures the same data as the given one, so
+	 * that both can be measured in one pass.
+	 */
+	public boolean hasSameData(final StatisticFunction<?> other) {
+		return data == null ? otherFunc == other.otherFunc : data == other.data;
+	}
+
+	/** Adds the samples of the data within the given region to some moments. */
+	public void accumulate(final PointSet region, final Moments moments) {
+		if (data == null) {
+			final PointSetIterator iter = region.iterator();
+			while (iter.hasNext()) {
+				otherFunc.compute(iter.next(), tmp);
+				moments.add(tmp.getRealDouble());
+			}
+		}
+		else if (region instanceof HyperVolumePointSet) {
+			final long[] min = new long[region.numDimensions()];
+			final long[] max = new long[region.numDimensions()];
+			region.min(min);
+			region.max(max);
+			final Cursor<? extends RealType<?>> cursor =
+				Views.interval(data, min, max).cursor();
+			while (cursor.hasNext()) {
+				moments.add(cursor.next().getRealDouble());
+			}
+		}
+		else {
+			if (accessor == null) accessor = data.randomAccess();
+			final PointSetIterator iter = region.iterator();
+			while (iter.hasNext()) {
+				accessor.setPosition(iter.next());
+				moments.add(accessor.get().getRealDouble());
+			}
+		}
+	}
+
+	// -- Function methods --
+
+	@Override
+	public void compute(final PointSet input, final T output) {
+		final Moments moments = new Moments();
+		accumulate(input, moments);
+		output.setReal(statistic.value(moments));
+	}
+
+	@Override
+	public T createOutput() {
+		return tmp.createVariable();
+	}
+
+	@Override
+	public StatisticFunction<T> copy() {
+		if (data == null) {
+			return new StatisticFunction<T>(statistic, otherFunc.copy());
+		}
+		return new StatisticFunction<T>(statistic, data, tmp);
+	}
+
+}
@@ -36,14 +36,11 @@
 package imagej.data.measure;
 
 import imagej.data.Dataset;
+import imagej.data.ParallelLoop;
 import net.imglib2.ops.pointset.PointSet;
 
 import org.scijava.service.Service;
 
-// TODO - make MeasurementService smarter. Compute values without always
-// revisiting the pixels. This current impl goes over pixels once for each
-// measurement. I will mock something up soon. BDZ
-
 // TODO - this service is limited to only the kinds of stats it knows. It can't
 // measure a user provided statistic. This can be done by calling the
 // MeasurementService more directly.
@@ -65,6 +62,68 @@ public interface StatisticsService extends Service {
 
 	// -- StatisticsService methods --
 
+	/**
+	 * Returns the {@link Moments} of the values within a {@link PointSet} region
+	 * of a {@link Dataset}. All the statistics derivable from them are thus
+	 * measured in a single pass.
+	 * 
+	 * @param ds The Dataset to measure
+	 * @param region The PointSet region upon which to calculate
+	 * @return The accumulated moments
+	 */
+	Moments moments(Dataset ds, PointSet region);
+
+	/**
+	 * Returns the {@link Moments} of all the values of a {@link Dataset}.
+	 * 
+	 * @param ds The Dataset to measure
+	 * @return The accumulated moments
+	 */
+	Moments moments(Dataset ds);
+
+	/**
+	 * Returns the {@link Moments} of the values within a {@link PointSet} region
+	 * of a {@link Dataset}, accumulated by the given {@link RegionReducer}. This
+	 * lets callers choose how the work is split across threads, e.g. with a
+	 * reducer over their own {@link ParallelLoop}, without affecting other users
+	 * of the service.
+	 * 
+	 * @param ds The Dataset to measure
+	 * @param region The PointSet region upon which to calculate
+	 * @param reducer The reducer which accumulates the samples
+	 * @return The accumulated moments
+	 */
+	Moments moments(Dataset ds, PointSet region, RegionReducer reducer);
+
+	/**
+	 * Returns the {@link OrderStatistics} of the values within a
+	 * {@link PointSet} region of a {@link Dataset}, from which the median and
+	 * the trimmed means can all be derived.
+	 * 
+	 * @param ds The Dataset to measure
+	 * @param region The PointSet region upon which to calculate
+	 * @param method Whether exact statistics are required
+	 * @return The order statistics, or null if the exact statistics of
+	 *         non-integer data are requested
+	 */
+	OrderStatistics orderStatistics(Dataset ds, PointSet region,
+		QuantileMethod method);
+
+	/**
+	 * Returns the {@link OrderStatistics} of the values within a
+	 * {@link PointSet} region of a {@link Dataset}, accumulated by the given
+	 * {@link RegionReducer}.
+	 * 
+	 * @param ds The Dataset to measure
+	 * @param region The PointSet region upon which to calculate
+	 * @param method Whether exact statistics are required
+	 * @param reducer The reducer which accumulates the samples
+	 * @return The order statistics, or null if the exact statistics of
+	 *         non-integer data are requested
+	 */
+	OrderStatistics orderStatistics(Dataset ds, PointSet region,
+		QuantileMethod method, RegionReducer reducer);
+
 	/**
 	 * Returns an estimate of the alpha trimmed mean of the values within a
 	 * {@link PointSet} region of a {@link Dataset}. Alpha must range be >= 0 and
@@ -78,6 +137,21 @@ public interface StatisticsService extends Service {
 	 */
 	double alphaTrimmedMean(Dataset ds, PointSet region, double alpha);
 
+	/**
+	 * Returns the alpha trimmed mean of the values within a {@link PointSet}
+	 * region of a {@link Dataset}, computed by the given method. Alpha must range
+	 * be >= 0 and < 0.5.
+	 * 
+	 * @param ds The Dataset to measure
+	 * @param region The PointSet region upon which to calculate
+	 * @param alpha The proportion of values to trim from each end of the set of
+	 *          samples collected
+	 * @param method Whether to compute the value exactly or approximately
+	 * @return The measured value
+	 */
+	double alphaTrimmedMean(Dataset ds, PointSet region, double alpha,
+		QuantileMethod method);
+
 	/**
 	 * Returns an estimate of the alpha trimmed mean of the values of a
 	 * {@link Dataset}. Alpha must range be >= 0 and < 0.5.
@@ -195,6 +269,17 @@ public interface StatisticsService extends Service {
 	 */
 	double median(Dataset ds, PointSet region);
 
+	/**
+	 * Returns the median value from the set of values within a {@link PointSet}
+	 * region of a {@link Dataset}, computed by the given method.
+	 * 
+	 * @param ds The Dataset to measure
+	 * @param region The PointSet region upon which to calculate
+	 * @param method Whether to compute the value exactly or approximately
+	 * @return The measured value
+	 */
+	double median(Dataset ds, PointSet region, QuantileMethod method);
+
 	/**
 	 * Returns the median value from the set of values within a {@link Dataset}
 	 * 
@@ -502,6 +587,20 @@ public interface StatisticsService extends Service {
 	 */
 	double trimmedMean(Dataset ds, PointSet region, int halfTrimSize);
 
+	/**
+	 * Returns the trimmed mean of the values within a {@link PointSet} region of
+	 * a {@link Dataset}, computed by the given method.
+	 * 
+	 * @param ds The Dataset to measure
+	 * @param region The PointSet region upon which to calculate
+	 * @param halfTrimSize The number of values to trim from each end of the set
+	 *          of samples collected
+	 * @param method Whether to compute the value exactly or approximately
+	 * @return The measured value
+	 */
+	double trimmedMean(Dataset ds, PointSet region, int halfTrimSize,
+		QuantileMethod method);
+
 	/**
 	 * Returns an estimate of the trimmed mean of the values of a {@link Dataset}.
 	 * 
@@ -0,0 +1,355 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.memory;
+
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.cache.CachedPlanarImg;
+import imagej.data.event.DatasetCreatedEvent;
+import imagej.data.event.DatasetDeletedEvent;
+import imagej.data.event.DatasetRestructuredEvent;
+import imagej.data.event.DatasetTypeChangedEvent;
+import imagej.data.memory.event.MemoryUsageEvent;
+import imagej.data.nio.BufferPlanarImg;
+import imagej.data.options.OptionsCaching;
+import imagej.options.OptionsService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.imglib2.img.Img;
+
+import org.scijava.event.EventHandler;
+import org.scijava.event.EventService;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Default service for keeping account of the memory used by image data.
+ * <p>
+ * Besides enforcing the budget whenever usage is recorded, the service watches
+ * the largest heap pool of the virtual machine (through the {@link HeapMonitor}
+ * shared by all services): when the memory which survives a garbage collection
+ * exceeds the budget, the registered caches are asked to shrink before an
+ * {@link OutOfMemoryError} can occur.
+ * </p>
+ */
+@Plugin(type = Service.class)
+public final class DefaultMemoryService extends AbstractService implements
+	MemoryService
+{
+
+	private static final int DEFAULT_MEMORY_BUDGET = 75;
+
+	@Parameter
+	private EventService eventService;
+
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter
+	private LogService log;
+
+	/** Memory recorded per owner and category. Owners are weakly referenced. */
+	private final Map<Object, Map<String, Long>> usage =
+		new WeakHashMap<Object, Map<String, Long>>();
+
+	private final List<Evictable> evictables =
+		new CopyOnWriteArrayList<Evictable>();
+
+	// -- MemoryService methods --
+
+	@Override
+	public void setUsage(final Object owner, final String category,
+		final long bytes)
+	{
+		final long previous;
+		synchronized (usage) {
+			Map<String, Long> owned = usage.get(owner);
+			if (owned == null) {
+				owned = new HashMap<String, Long>();
+				usage.put(owner, owned);
+			}
+			final Long old = owned.put(category, bytes);
+			previous = old == null ? 0 : old;
+		}
+		if (bytes > previous && !OFF_HEAP.equals(category)) enforceBudget(0);
+		usageChanged();
+	}
+
+	@Override
+	public void release(final Object owner) {
+		final Map<String, Long> owned;
+		synchronized (usage) {
+			owned = usage.remove(owner);
+		}
+		if (owned != null) usageChanged();
+	}
+
+	@Override
+	public long getUsage() {
+		long total = 0;
+		for (final Map.Entry<String, Long> entry : getUsageByCategory()
+			.entrySet())
+		{
+			if (!OFF_HEAP.equals(entry.getKey())) total += entry.getValue();
+		}
+		return total;
+	}
+
+	@Override
+	public long getUsage(final String category) {
+		final Long bytes = getUsageByCategory().get(category);
+		return bytes == null ? 0 : bytes;
+	}
+
+	@Override
+	public Map<String, Long> getUsageByCategory() {
+		final Map<String, Long> totals = new LinkedHashMap<String, Long>();
+		totals.put(DATASETS, 0L);
+		totals.put(SCREEN_IMAGES, 0L);
+		totals.put(PREVIEWS, 0L);
+		totals.put(CACHES, 0L);
+		totals.put(OFF_HEAP, 0L);
+		synchronized (usage) {
+			for (final Map<String, Long> owned : usage.values()) {
+				for (final Map.Entry<String, Long> entry : owned.entrySet()) {
+					add(totals, entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		// NB: datasets are recorded at their full size, but planes shared
+		// copy-on-write between duplicates are only held once
+		final long shared = getSharedBytes();
+		totals.put(DATASETS, Math.max(0, totals.get(DATASETS) - shared));
+		for (final Evictable cache : evictables) {
+			add(totals, CACHES, cache.getBytes());
+		}
+		return totals;
+	}
+
+	@Override
+	public long getBudget() {
+		return Runtime.getRuntime().maxMemory() / 100 * getBudgetPercent();
+	}
+
+	@Override
+	public void addEvictable(final Evictable cache) {
+		if (!evictables.contains(cache)) evictables.add(cache);
+	}
+
+	@Override
+	public void removeEvictable(final Evictable cache) {
+		evictables.remove(cache);
+	}
+
+	@Override
+	public boolean reserve(final long bytes) {
+		return enforceBudget(bytes);
+	}
+
+	@Override
+	public long reclaim(final long bytes) {
+		// ask the largest caches first, so the fewest caches are disturbed
+		final List<Evictable> caches = new ArrayList<Evictable>(evictables);
+		Collections.sort(caches, new Comparator<Evictable>() {
+
+			@Override
+			public int compare(final Evictable c1, final Evictable c2) {
+				final long b1 = c1.getBytes(), b2 = c2.getBytes();
+				return b1 < b2 ? 1 : b1 > b2 ? -1 : 0;
+			}
+		});
+		long freed = 0;
+		for (final Evictable cache : caches) {
+			if (freed >= bytes) break;
+			freed += cache.evict(bytes - freed);
+		}
+		if (freed > 0) {
+			log.info("Reclaimed " + freed + " of " + bytes +
+				" requested bytes from image caches");
+			usageChanged();
+		}
+		return freed;
+	}
+
+	@Override
+	public MemoryGauge getGauge() {
+		final Map<String, Long> totals = getUsageByCategory();
+		long total = 0;
+		for (final Map.Entry<String, Long> entry : totals.entrySet()) {
+			if (!OFF_HEAP.equals(entry.getKey())) total += entry.getValue();
+		}
+		return new MemoryGauge(totals, total, getBudget());
+	}
+
+	// -- Service methods --
+
+	@Override
+	public void initialize() {
+		HeapMonitor.add(this);
+	}
+
+	@Override
+	public void dispose() {
+		HeapMonitor.remove(this);
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final DatasetCreatedEvent event) {
+		account(event.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetRestructuredEvent event) {
+		account(event.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetTypeChangedEvent event) {
+		account(event.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetDeletedEvent event) {
+		release(event.getObject());
+	}
+
+	// -- Internal methods --
+
+	/**
+	 * Gets the collection usage threshold at which this service wants to
+	 * reclaim memory: the same fraction of the heap pool as the budget is of
+	 * the heap.
+	 */
+	long getPoolThreshold(final long poolMax) {
+		return poolMax > 0 ? poolMax / 100 * getBudgetPercent() : getBudget();
+	}
+
+	/**
+	 * Called by the {@link HeapMonitor} when the memory surviving a garbage
+	 * collection in the heap pool exceeded its threshold. Reclaims the excess
+	 * over this service's own threshold, if any.
+	 */
+	void heapThresholdExceeded(final String poolName, final long used,
+		final long poolMax)
+	{
+		final long excess = used - getPoolThreshold(poolMax);
+		if (excess <= 0) return;
+		log.debug("Heap pool " + poolName + " exceeded the budget by " + excess +
+			" bytes");
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				reclaim(excess);
+			}
+		});
+	}
+
+	// -- Helper methods --
+
+	/** Records the memory held by the given dataset's pixels. */
+	private void account(final Dataset dataset) {
+		final Img<?> img = dataset.getImgPlus().getImg();
+		// NB: planes of disk cached images are counted by their plane cache
+		if (img instanceof CachedPlanarImg) release(dataset);
+		else if (img instanceof BufferPlanarImg) {
+			setUsage(dataset, OFF_HEAP, (long) dataset.getBytesOfInfo());
+		}
+		else setUsage(dataset, DATASETS, (long) dataset.getBytesOfInfo());
+	}
+
+	/**
+	 * Reclaims memory from the caches if the recorded usage plus the given
+	 * number of bytes exceeds the budget.
+	 * 
+	 * @return true if the given number of bytes fits within the budget.
+	 */
+	private boolean enforceBudget(final long bytes) {
+		final long excess = getUsage() + bytes - getBudget();
+		if (excess <= 0) return true;
+		return reclaim(excess) >= excess;
+	}
+
+	private void usageChanged() {
+		final MemoryGauge gauge = getGauge();
+		if (log.isDebug()) log.debug(gauge.getSummary());
+		if (eventService == null) return;
+		eventService.publishLater(new MemoryUsageEvent(gauge));
+	}
+
+	/** Gets the bytes of dataset planes which are shared with another. */
+	private long getSharedBytes() {
+		final DatasetService datasetService =
+			getContext().getService(DatasetService.class);
+		if (datasetService == null) return 0;
+		return datasetService.getCopyOnWriteStats().getSharedBytes();
+	}
+
+	private int getBudgetPercent() {
+		final OptionsCaching options = getOptions();
+		return options == null ? DEFAULT_MEMORY_BUDGET : options.getMemoryBudget();
+	}
+
+	private OptionsCaching getOptions() {
+		final OptionsService optionsService =
+			getContext().getService(OptionsService.class);
+		if (optionsService == null) return null;
+		return optionsService.getOptions(OptionsCaching.class);
+	}
+
+	private static void add(final Map<String, Long> totals,
+		final String category, final long bytes)
+	{
+		final Long total = totals.get(category);
+		totals.put(category, total == null ? bytes : total + bytes);
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.memory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Watches the largest heap pool of the virtual machine on behalf of all live
+ * {@link DefaultMemoryService}s. The collection usage threshold of the pool and
+ * the listeners of the memory MXBean are global to the virtual machine, so
+ * there is a single registration while any service is alive, which fans out
+ * to each service. The threshold is set for the service with the smallest
+ * budget, and the previous threshold is restored once the last service is
+ * gone.
+ */
+final class HeapMonitor {
+
+	private static final List<DefaultMemoryService> services =
+		new ArrayList<DefaultMemoryService>();
+
+	private static MemoryPoolMXBean pool;
+	private static long previousThreshold;
+	private static NotificationEmitter emitter;
+	private static NotificationListener listener;
+
+	private HeapMonitor() {
+		// prevent instantiation of utility class
+	}
+
+	/** Starts watching the heap for the given service. */
+	public static synchronized void add(final DefaultMemoryService service) {
+		if (services.contains(service)) return;
+		if (services.isEmpty() && !register()) return;
+		services.add(service);
+		updateThreshold();
+	}
+
+	/** Stops watching the heap for the given service. */
+	public static synchronized void remove(final DefaultMemoryService service) {
+		if (!services.remove(service)) return;
+		if (services.isEmpty()) unregister();
+		else updateThreshold();
+	}
+
+	// -- Helper methods --
+
+	private static boolean register() {
+		pool = findHeapPool();
+		if (pool == null) return false;
+		previousThreshold = pool.getCollectionUsageThreshold();
+		emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+		listener = new NotificationListener() {
+
+			@Override
+			public void handleNotification(final Notification notification,
+				final Object handback)
+			{
+				if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED
+					.equals(notification.getType())) return;
+				final MemoryNotificationInfo info =
+					MemoryNotificationInfo.from((CompositeData) notification
+						.getUserData());
+				notifyServices(info.getPoolName(), info.getUsage().getUsed(), info
+					.getUsage().getMax());
+			}
+		};
+		emitter.addNotificationListener(listener, null, null);
+		return true;
+	}
+
+	private static void unregister() {
+		try {
+			emitter.removeNotificationListener(listener);
+		}
+		catch (final ListenerNotFoundException exc) {
+			// NB: nothing left to remove
+		}
+		pool.setCollectionUsageThreshold(previousThreshold);
+		pool = null;
+		emitter = null;
+		listener = null;
+	}
+
+	/** Lets each service compare the pool's usage against its own budget. */
+	private static void notifyServices(final String poolName, final long used,
+		final long max)
+	{
+		final List<DefaultMemoryService> targets;
+		synchronized (HeapMonitor.class) {
+			targets = new ArrayList<DefaultMemoryService>(services);
+			// NB: budgets may have changed since the threshold was set
+			if (pool != null) updateThreshold();
+		}
+		for (final DefaultMemoryService service : targets) {
+			service.heapThresholdExceeded(poolName, used, max);
+		}
+	}
+
+	/** Sets the threshold of the pool to the smallest of the services' shares. */
+	private static void updateThreshold() {
+		final long max = pool.getUsage().getMax();
+		long threshold = Long.MAX_VALUE;
+		for (final DefaultMemoryService service : services) {
+			threshold = Math.min(threshold, service.getPoolThreshold(max));
+		}
+		pool.setCollectionUsageThreshold(threshold);
+	}
+
+	/** Finds the largest heap pool which can monitor its collection usage. */
+	private static MemoryPoolMXBean findHeapPool() {
+		MemoryPoolMXBean largest = null;
+		for (final MemoryPoolMXBean candidate : ManagementFactory
+			.getMemoryPoolMXBeans())
+		{
+			if (candidate.getType() != MemoryType.HEAP) continue;
+			if (!candidate.isCollectionUsageThresholdSupported()) continue;
+			if (largest == null ||
+				candidate.getUsage().getMax() > largest.getUsage().getMax())
+			{
+				largest = candidate;
+			}
+		}
+		return largest;
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.memory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the memory usage recorded by the
+ * {@link MemoryService}, alongside the state of the Java heap.
+ */
+public class MemoryGauge {
+
+	private static final long MB = 1024 * 1024;
+
+	private final Map<String, Long> usage;
+	private final long total;
+	private final long budget;
+	private final long heapUsed;
+	private final long heapMax;
+
+	public MemoryGauge(final Map<String, Long> usage, final long total,
+		final long budget)
+	{
+		this.usage =
+			Collections.unmodifiableMap(new LinkedHashMap<String, Long>(usage));
+		this.total = total;
+		this.budget = budget;
+		final Runtime runtime = Runtime.getRuntime();
+		heapUsed = runtime.totalMemory() - runtime.freeMemory();
+		heapMax = runtime.maxMemory();
+	}
+
+	// -- MemoryGauge methods --
+
+	/** Gets the memory recorded in each category. */
+	public Map<String, Long> getUsageByCategory() {
+		return usage;
+	}
+
+	/** Gets the memory recorded in the given category. */
+	public long getUsage(final String category) {
+		final Long bytes = usage.get(category);
+		return bytes == null ? 0 : bytes;
+	}
+
+	/** Gets the total memory recorded against the budget. */
+	public long getUsage() {
+		return total;
+	}
+
+	/** Gets the memory budget, in bytes. */
+	public long getBudget() {
+		return budget;
+	}
+
+	/** Gets the recorded usage as a percentage of the budget. */
+	public int getPercent() {
+		return budget <= 0 ? 0 : (int) (100 * total / budget);
+	}
+
+	/** Gets whether the recorded usage exceeds the budget. */
+	public boolean isOverBudget() {
+		return total > budget;
+	}
+
+	/** Gets the memory in use on the Java heap, in bytes. */
+	public long getHeapUsed() {
+		return heapUsed;
+	}
+
+	/** Gets the maximum size of the Java heap, in bytes. */
+	public long getHeapMax() {
+		return heapMax;
+	}
+
+	/** Gets a one line summary, suitable for a status bar. */
+	public String getSummary() {
+		return mb(total) + " of " + mb(budget) + " (" + getPercent() +
+			"%) image memory; heap " + mb(heapUsed) + " of " + mb(heapMax);
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder(getSummary());
+		for (final Map.Entry<String, Long> entry : usage.entrySet()) {
+			sb.append("\n\t");
+			sb.append(entry.getKey());
+			sb.append(": ");
+			sb.append(mb(entry.getValue()));
+		}
+		return sb.toString();
+	}
+
+	// -- Helper methods --
+
+	private String mb(final long bytes) {
+		return (bytes + MB / 2) / MB + "MB";
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.memory;
+
+import imagej.data.Dataset;
+
+import java.util.Map;
+
+import org.scijava.service.Service;
+
+/**
+ * Interface for the service which keeps account of the memory used by image
+ * data ({@link Dataset}s, screen images, preview backups, caches) and enforces
+ * a memory budget by asking registered {@link Evictable} caches to shrink.
+ * <p>
+ * Memory is recorded per owner object and category. Owners are held weakly, so
+ * forgetting to release an owner does not leak it.
+ * </p>
+ */
+public interface MemoryService extends Service {
+
+	/** Category for the pixel data of {@link Dataset}s held on the heap. */
+	String DATASETS = "Datasets";
+
+	/** Category for pixel data held outside the heap. */
+	String OFF_HEAP = "Off-heap";
+
+	/** Category for the screen images of displayed data. */
+	String SCREEN_IMAGES = "Screen images";
+
+	/** Category for backups made by previewing commands. */
+	String PREVIEWS = "Previews";
+
+	/** Category for the memory held by {@link Evictable} caches. */
+	String CACHES = "Caches";
+
+	/**
+	 * Records the memory held by the given owner in the given category,
+	 * replacing any previous amount. If the budget is then exceeded, caches are
+	 * asked to shrink.
+	 */
+	void setUsage(Object owner, String category, long bytes);
+
+	/** Forgets all memory recorded for the given owner. */
+	void release(Object owner);
+
+	/** Gets the total memory recorded, including caches but not off-heap data. */
+	long getUsage();
+
+	/** Gets the memory recorded in the given category. */
+	long getUsage(String category);
+
+	/** Gets the memory recorded in each category. */
+	Map<String, Long> getUsageByCategory();
+
+	/** Gets the memory budget, in bytes. */
+	long getBudget();
+
+	/** Registers a cache which may be asked to shrink. */
+	void addEvictable(Evictable cache);
+
+	/** Unregisters a cache. */
+	void removeEvictable(Evictable cache);
+
+	/**
+	 * Makes room for an allocation of the given size, asking caches to shrink if
+	 * it would exceed the budget.
+	 * 
+	 * @return true if the allocation fits within the budget.
+	 */
+	boolean reserve(long bytes);
+
+	/**
+	 * Asks the registered caches, largest first, to free the given amount of
+	 * memory.
+	 * 
+	 * @return The number of bytes actually freed.
+	 */
+	long reclaim(long bytes);
+
+	/** Gets a snapshot of the current memory usage. */
+	MemoryGauge getGauge();
+
+}
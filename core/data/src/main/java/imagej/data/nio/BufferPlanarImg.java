@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.NativeType;
+
+/**
+ * A {@link PlanarImg} whose planes are held outside the Java heap, either in
+ * direct {@link ByteBuffer}s or in a memory-mapped temporary file. Since the
+ * garbage collector never has to scan or move the pixel data, very large images
+ * do not slow down collections. The planes are {@link BufferAccess}es, so
+ * {@link #getPlane(int)} hands out the buffers themselves without copying.
+ * 
+ * @param <T> The pixel type.
+ * @param <A> The type of buffer access used for each plane.
+ */
+public class BufferPlanarImg<T extends NativeType<T>, A extends ArrayDataAccess<A>>
+	extends PlanarImg<T, A>
+{
+
+	private final boolean mapped;
+	private File file;
+	private RandomAccessFile raf;
+
+	/**
+	 * Creates an image whose planes are allocated from the given creator.
+	 * 
+	 * @param mapped If true, planes are mapped from a temporary file; otherwise
+	 *          they are allocated as direct buffers.
+	 */
+	public BufferPlanarImg(final long[] dim, final int entitiesPerPixel,
+		final BufferAccess<A> creator, final boolean mapped) throws IOException
+	{
+		super(dim, entitiesPerPixel);
+		this.mapped = mapped;
+		final long planeBytes =
+			(long) creator.getBytesPerEntity() * entitiesPerPixel * dim[0] *
+				(dim.length > 1 ? dim[1] : 1);
+		if (planeBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Can't create a plane of " +
+				planeBytes + " bytes (MAX = " + Integer.MAX_VALUE + ")");
+		}
+		final int planeCount = numSlices();
+		if (mapped) {
+			file = File.createTempFile("imagej-planes-", ".map");
+			file.deleteOnExit();
+			raf = new RandomAccessFile(file, "rw");
+			raf.setLength(planeBytes * planeCount);
+			final FileChannel channel = raf.getChannel();
+			for (int no = 0; no < planeCount; no++) {
+				final ByteBuffer bytes =
+					channel.map(FileChannel.MapMode.READ_WRITE, no * planeBytes,
+						planeBytes);
+				setPlane(no, creator.wrap(bytes));
+			}
+		}
+		else {
+			for (int no = 0; no < planeCount; no++) {
+				final ByteBuffer bytes = ByteBuffer.allocateDirect((int) planeBytes);
+				setPlane(no, creator.wrap(bytes));
+			}
+		}
+	}
+
+	// -- BufferPlanarImg methods --
+
+	/** Returns true if the planes are mapped from a file. */
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	/**
+	 * Closes the backing file, if any. Mapped planes remain valid until they are
+	 * garbage collected, after which the file can be removed.
+	 */
+	public void dispose() {
+		if (raf == null) return;
+		try {
+			raf.close();
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+		raf = null;
+		// NB - fails on some platforms while planes are still mapped; the file is
+		// deleted on exit in that case
+		file.delete();
+	}
+
+	// -- Img methods --
+
+	@Override
+	public BufferPlanarImgFactory<T> factory() {
+		return new BufferPlanarImgFactory<T>(mapped);
+	}
+
+}
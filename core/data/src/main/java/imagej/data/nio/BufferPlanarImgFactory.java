@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.nio;
+
+import java.io.IOException;
+
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+
+/**
+ * Factory for {@link BufferPlanarImg}s. Byte, short, int, long, float and
+ * double based types are stored off-heap; bit and char based types fall back
+ * to regular {@link PlanarImg}s.
+ * <p>
+ * NB: {@link PlanarImgFactory} declares its methods as returning images of
+ * primitive array accesses (e.g., {@link ShortArray}). The images created here
+ * hold {@link BufferAccess}es instead, which pixel types only ever use through
+ * the generic access interfaces (e.g.,
+ * {@link net.imglib2.img.basictypeaccess.ShortAccess}).
+ * </p>
+ * 
+ * @param <T> The pixel type of the created images.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class BufferPlanarImgFactory<T extends NativeType<T>> extends
+	PlanarImgFactory<T>
+{
+
+	private final boolean mapped;
+
+	/** Creates a factory allocating planes as direct buffers. */
+	public BufferPlanarImgFactory() {
+		this(false);
+	}
+
+	/**
+	 * Creates a factory allocating planes either as direct buffers or mapped
+	 * from temporary files.
+	 */
+	public BufferPlanarImgFactory(final boolean mapped) {
+		this.mapped = mapped;
+	}
+
+	// -- BufferPlanarImgFactory methods --
+
+	/** Returns true if created images map their planes from files. */
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	// -- NativeImgFactory methods --
+
+	@Override
+	public PlanarImg<T, ByteArray> createByteInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return (PlanarImg) create(new ByteBufferAccess(0), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, ShortArray> createShortInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return (PlanarImg) create(new ShortBufferAccess(0), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, IntArray> createIntInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return (PlanarImg) create(new IntBufferAccess(0), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, LongArray> createLongInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return (PlanarImg) create(new LongBufferAccess(0), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, FloatArray> createFloatInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return (PlanarImg) create(new FloatBufferAccess(0), dimensions,
+			entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, DoubleArray> createDoubleInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return (PlanarImg) create(new DoubleBufferAccess(0), dimensions,
+			entitiesPerPixel);
+	}
+
+	// -- ImgFactory methods --
+
+	@Override
+	public <S> ImgFactory<S> imgFactory(final S type)
+		throws IncompatibleTypeException
+	{
+		if (NativeType.class.isInstance(type)) {
+			return new BufferPlanarImgFactory(mapped);
+		}
+		throw new IncompatibleTypeException(this, type.getClass()
+			.getCanonicalName() +
+			" does not implement NativeType.");
+	}
+
+	// -- Helper methods --
+
+	private <A extends ArrayDataAccess<A>> BufferPlanarImg<T, A> create(
+		final BufferAccess<A> creator, final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		try {
+			return new BufferPlanarImg<T, A>(dimensions, entitiesPerPixel, creator,
+				mapped);
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Cannot map image planes", e);
+		}
+	}
+
+}
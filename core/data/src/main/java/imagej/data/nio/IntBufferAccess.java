@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * A {@link IntAccess} backed by a {@link ByteBuffer}.
+ */
+public class IntBufferAccess implements IntAccess,
+	ArrayDataAccess<IntBufferAccess>, BufferAccess<IntBufferAccess>
+{
+
+	private final ByteBuffer bytes;
+	private final IntBuffer data;
+
+	/** Creates an access over a newly allocated direct buffer. */
+	public IntBufferAccess(final int numEntities) {
+		this(ByteBuffer.allocateDirect(4 * numEntities));
+	}
+
+	/** Creates an access over the given bytes, in native byte order. */
+	public IntBufferAccess(final ByteBuffer bytes) {
+		this.bytes = bytes.order(ByteOrder.nativeOrder());
+		data = this.bytes.asIntBuffer();
+	}
+
+	// -- IntAccess methods --
+
+	@Override
+	public int getValue(final int index) {
+		return data.get(index);
+	}
+
+	@Override
+	public void setValue(final int index, final int value) {
+		data.put(index, value);
+	}
+
+	// -- ArrayDataAccess methods --
+
+	@Override
+	public IntBufferAccess createArray(final int numEntities) {
+		return new IntBufferAccess(numEntities);
+	}
+
+	@Override
+	public IntBuffer getCurrentStorageArray() {
+		return data;
+	}
+
+	// -- BufferAccess methods --
+
+	@Override
+	public ByteBuffer getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public int getBytesPerEntity() {
+		return 4;
+	}
+
+	@Override
+	public IntBufferAccess wrap(final ByteBuffer b) {
+		return new IntBufferAccess(b);
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.options;
+
+import imagej.menu.MenuConstants;
+import imagej.options.OptionsPlugin;
+
+import org.scijava.plugin.Menu;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Runs the Edit::Options::Image Caching dialog.
+ */
+@Plugin(type = OptionsPlugin.class, menu = {
+	@Menu(label = MenuConstants.EDIT_LABEL, weight = MenuConstants.EDIT_WEIGHT,
+		mnemonic = MenuConstants.EDIT_MNEMONIC),
+	@Menu(label = "Options", mnemonic = 'o'),
+	@Menu(label = "Image Caching...", weight = 12.5) })
+public class OptionsCaching extends OptionsPlugin {
+
+	public static final String PYRAMID_MEAN = "Mean";
+	public static final String PYRAMID_MAX = "Max";
+
+	// -- instance variables that are Parameters --
+
+	@Parameter(label = "Page new images to disk above (% of max memory)",
+		min = "1", max = "1000")
+	private int diskCacheThreshold = 50;
+
+	@Parameter(label = "Plane cache size (% of max memory)", min = "1",
+		max = "90")
+	private int planeCacheSize = 25;
+
+	@Parameter(label = "Image memory budget (% of max memory)", min = "10",
+		max = "95")
+	private int memoryBudget = 75;
+
+	@Parameter(label = "Undo history size (% of max memory)", min = "0",
+		max = "50")
+	private int undoMemory = 10;
+
+	@Parameter(label = "Display pyramid cache size (% of max memory)",
+		min = "0", max = "50")
+	private int pyramidMemory = 5;
+
+	@Parameter(label = "Display pyramid downsampling", choices = {
+		PYRAMID_MEAN, PYRAMID_MAX })
+	private String pyramidMode = PYRAMID_MEAN;
+
+	// -- OptionsCaching methods --
+
+	/**
+	 * Returns the size, as a percentage of the maximum heap, above which newly
+	 * created images are backed by a disk cache instead of memory.
+	 */
+	public int getDiskCacheThreshold() {
+		return diskCacheThreshold;
+	}
+
+	/**
+	 * Returns the percentage of the maximum heap which may be used to hold
+	 * planes of disk cached images in memory.
+	 */
+	public int getPlaneCacheSize() {
+		return planeCacheSize;
+	}
+
+	/**
+	 * Returns the percentage of the maximum heap which image data, screen
+	 * images, previews and caches may occupy before caches are asked to shrink.
+	 */
+	public int getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Returns the percentage of the maximum heap which the undo histories of all
+	 * images may occupy.
+	 */
+	public int getUndoMemory() {
+		return undoMemory;
+	}
+
+	public int getPyramidMemory() {
+		return pyramidMemory;
+	}
+
+	public String getPyramidMode() {
+		return pyramidMode;
+	}
+
+	/**
+	 * Sets the size, as a percentage of the maximum heap, above which newly
+	 * created images are backed by a disk cache instead of memory.
+	 */
+	public void setDiskCacheThreshold(final int diskCacheThreshold) {
+		this.diskCacheThreshold = diskCacheThreshold;
+	}
+
+	/**
+	 * Sets the percentage of the maximum heap which may be used to hold planes
+	 * of disk cached images in memory.
+	 */
+	public void setPlaneCacheSize(final int planeCacheSize) {
+		this.planeCacheSize = planeCacheSize;
+	}
+
+	/**
+	 * Sets the percentage of the maximum heap which image data, screen images,
+	 * previews and caches may occupy before caches are asked to shrink.
+	 */
+	public void setMemoryBudget(final int memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Sets the percentage of the maximum heap which the undo histories of all
+	 * images may occupy.
+	 */
+	public void setUndoMemory(final int undoMemory) {
+		this.undoMemory = undoMemory;
+	}
+
+	public void setPyramidMemory(final int pyramidMemory) {
+		this.pyramidMemory = pyramidMemory;
+	}
+
+	public void setPyramidMode(final String pyramidMode) {
+		this.pyramidMode = pyramidMode;
+	}
+
+}
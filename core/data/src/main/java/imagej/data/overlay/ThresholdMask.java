@@ -0,0 +1,791 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.overlay;
+
+import imagej.data.Dataset;
+import imagej.data.ParallelLoop;
+import imagej.data.memory.Evictable;
+
+import java.util.NoSuchElementException;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.ops.condition.Condition;
+import net.imglib2.ops.pointset.PointSetIterator;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * A materialized classification of the samples of a {@link Dataset} against a
+ * threshold range. Each XY plane is stored as three packed bitsets, marking the
+ * samples less than, within and greater than the range; NaN samples are in
+ * none of them.
+ * <p>
+ * Planes are classified lazily: a single point query classifies just the plane
+ * containing the point, while counting or iterating classifies the missing
+ * planes of the queried bounds in parallel. Changing the range discards every
+ * plane. The mask also remembers the {@link Dataset#getModificationCount()
+ * modification count} it is consistent with and starts over if the dataset was
+ * modified since.
+ * </p>
+ * <p>
+ * Iteration walks the set bits word by word, so its cost depends on the number
+ * of matching samples rather than on the size of the dataset. Classified
+ * planes can be evicted at any time to free memory; they are classified again
+ * when next needed.
+ * </p>
+ */
+public class ThresholdMask implements Evictable {
+
+	/** Classification of the samples less than the range. */
+	public static final int LESS = 1;
+
+	/** Classification of the samples within the range. */
+	public static final int WITHIN = 2;
+
+	/** Classification of the samples greater than the range. */
+	public static final int GREATER = 4;
+
+	/** Classification of the samples outside the range. */
+	public static final int OUTSIDE = LESS | GREATER;
+
+	private final Dataset dataset;
+	private final ParallelLoop loop;
+
+	private double min;
+	private double max;
+
+	private long modificationCount;
+	private long[] dims;
+	private int planeCount;
+
+	/**
+	 * Per plane, the bitsets of the LESS, WITHIN and GREATER samples, or null if
+	 * the plane is not classified.
+	 */
+	private volatile long[][][] planes;
+
+	public ThresholdMask(final Dataset dataset, final ParallelLoop loop,
+		final double min, final double max)
+	{
+		this.dataset = dataset;
+		this.loop = loop;
+		this.min = min;
+		this.max = max;
+		reset();
+	}
+
+	// -- ThresholdMask methods --
+
+	public Dataset getDataset() {
+		return dataset;
+	}
+
+	public synchronized double getRangeMin() {
+		return min;
+	}
+
+	public synchronized double getRangeMax() {
+		return max;
+	}
+
+	/**
+	 * Sets the range the samples are classified against, discarding the mask if
+	 * the range changed.
+	 */
+	public synchronized void setRange(final double min, final double max) {
+		if (min == this.min && max == this.max) return;
+		this.min = min;
+		this.max = max;
+		reset();
+	}
+
+	/**
+	 * Classifies the sample at the given point as in
+	 * {@link ThresholdOverlay#classify(long[])}: -1 if it is less than the
+	 * range, 0 if it is within, 1 if it is greater and Integer.MAX_VALUE if it
+	 * is NaN.
+	 */
+	public synchronized int classify(final long[] point) {
+		validate();
+		final long[][] bits = plane(point);
+		final int index = index(point);
+		if (isSet(bits[1], index)) return 0;
+		if (isSet(bits[0], index)) return -1;
+		if (isSet(bits[2], index)) return 1;
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Tells whether the sample at the given point has one of the given
+	 * classifications (a combination of {@link #LESS}, {@link #WITHIN} and
+	 * {@link #GREATER}). Points outside the dataset have none.
+	 */
+	public boolean contains(final long[] point, final int classes) {
+		return snapshot().contains(point, classes);
+	}
+
+	/** Counts the samples having one of the given classifications. */
+	public long count(final int classes) {
+		return count(classes, null, null);
+	}
+
+	/**
+	 * Counts the samples within the given (inclusive) bounds having one of the
+	 * given classifications. Only the planes within the bounds are classified.
+	 * 
+	 * @param classes The classifications to count.
+	 * @param boundsMin The minimum of the bounds, or null for the whole dataset.
+	 * @param boundsMax The maximum of the bounds, or null for the whole dataset.
+	 */
+	public synchronized long count(final int classes, final long[] boundsMin,
+		final long[] boundsMax)
+	{
+		validate();
+		final Box box = new Box(boundsMin, boundsMax);
+		final long[][][] snapshot = fill(box);
+		long count = 0;
+		for (int p = 0; p < snapshot.length; p++) {
+			final long[] bits = bits(snapshot[p], classes);
+			for (int s = 0; s < box.segmentsPerPlane; s++) {
+				count += countBits(bits, box.segmentStart(s), box.segmentEnd(s));
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets a {@link Condition} which is true of the points whose sample has one
+	 * of the given classifications.
+	 */
+	public Condition<long[]> getCondition(final int classes) {
+		return new MaskCondition(classes);
+	}
+
+	/**
+	 * Gets an iterator over the points whose sample has one of the given
+	 * classifications, in the order of a flat iteration of the dataset.
+	 */
+	public PointSetIterator iterator(final int classes) {
+		return iterator(classes, null, null);
+	}
+
+	/**
+	 * Gets an iterator over the points within the given (inclusive) bounds whose
+	 * sample has one of the given classifications, in the order of a flat
+	 * iteration of the dataset. Only the planes within the bounds are
+	 * classified.
+	 * 
+	 * @param classes The classifications of the points to visit.
+	 * @param boundsMin The minimum of the bounds, or null for the whole dataset.
+	 * @param boundsMax The maximum of the bounds, or null for the whole dataset.
+	 */
+	public synchronized PointSetIterator iterator(final int classes,
+		final long[] boundsMin, final long[] boundsMax)
+	{
+		validate();
+		final Box box = new Box(boundsMin, boundsMax);
+		return new MaskIterator(classes, box, fill(box));
+	}
+
+	/** Discards the mask, e.g. after the dataset was restructured. */
+	public synchronized void reset() {
+		modificationCount = dataset.getModificationCount();
+		dims = dataset.getDims();
+		long count = 1;
+		for (int d = 2; d < dims.length; d++) {
+			count *= dims[d];
+		}
+		planeCount = (int) count;
+		planes = new long[planeCount][][];
+	}
+
+	// -- Evictable methods --
+
+	// NB: These methods are not synchronized, so that memory can be reclaimed
+	// while planes are being classified, e.g. by a thread loading the planes of
+	// a disk-cached dataset. Queries hold on to the planes they work with.
+
+	@Override
+	public long getBytes() {
+		long bytes = 0;
+		for (final long[][] plane : planes) {
+			if (plane != null) bytes += planeBytes(plane);
+		}
+		return bytes;
+	}
+
+	@Override
+	public long evict(final long bytes) {
+		final long[][][] target = planes;
+		long freed = 0;
+		for (int p = 0; p < target.length && freed < bytes; p++) {
+			final long[][] plane = target[p];
+			if (plane == null) continue;
+			target[p] = null;
+			freed += planeBytes(plane);
+		}
+		return freed;
+	}
+
+	// -- Helper methods --
+
+	/** Discards everything if the dataset changed since it was classified. */
+	private void validate() {
+		if (modificationCount != dataset.getModificationCount()) reset();
+	}
+
+	/** Validates the mask, and captures its current planes. */
+	private synchronized Snapshot snapshot() {
+		validate();
+		return new Snapshot(planes, dims, min, max, modificationCount);
+	}
+
+	/**
+	 * Gets the planes within the given bounds, in flat order, classifying those
+	 * which are not classified yet.
+	 */
+	private long[][][] fill(final Box box) {
+		final long[][][] target = planes;
+		final long[][][] result = new long[box.planeNumbers.length][][];
+		int count = 0;
+		final int[] missing = new int[result.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = target[box.planeNumbers[i]];
+			if (result[i] == null) missing[count++] = i;
+		}
+		loop.run(count, new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				for (int i = (int) start; i < end; i++) {
+					final int p = box.planeNumbers[missing[i]];
+					result[missing[i]] = classify(p);
+					target[p] = result[missing[i]];
+				}
+			}
+		});
+		return result;
+	}
+
+	/** Gets the bitsets of the plane containing the given point. */
+	private long[][] plane(final long[] point) {
+		final int plane = planeNumber(point, dims);
+		final long[][] target = planes;
+		long[][] bits = target[plane];
+		if (bits == null) {
+			bits = classify(plane);
+			target[plane] = bits;
+		}
+		return bits;
+	}
+
+	private long[][] classify(final int plane) {
+		return classify(plane, dims, min, max);
+	}
+
+	/**
+	 * Classifies the given plane of the dataset against the given range,
+	 * assuming the dataset has the given dimensions.
+	 */
+	private long[][] classify(final int plane, final long[] dims,
+		final double min, final double max)
+	{
+		final long[][] bits = new long[3][words(dims)];
+		final Cursor<? extends RealType<?>> cursor = cursor(plane, dims);
+		int index = 0;
+		while (cursor.hasNext()) {
+			final double value = cursor.next().getRealDouble();
+			final long bit = 1L << index;
+			if (value < min) bits[0][index >>> 6] |= bit;
+			else if (value > max) bits[2][index >>> 6] |= bit;
+			else if (!Double.isNaN(value)) bits[1][index >>> 6] |= bit;
+			index++;
+		}
+		return bits;
+	}
+
+	private Cursor<? extends RealType<?>> cursor(final int plane,
+		final long[] dims)
+	{
+		final ImgPlus<? extends RealType<?>> imgPlus = dataset.getImgPlus();
+		if (dims.length <= 2) return Views.flatIterable(imgPlus).cursor();
+		final long[] lo = new long[dims.length];
+		final long[] hi = new long[dims.length];
+		hi[0] = dims[0] - 1;
+		hi[1] = dims[1] - 1;
+		long r = plane;
+		for (int d = 2; d < dims.length; d++) {
+			lo[d] = hi[d] = r % dims[d];
+			r /= dims[d];
+		}
+		// NB: flat iteration order is what maps samples to bit indices
+		return Views.flatIterable(Views.interval(imgPlus, lo, hi)).cursor();
+	}
+
+	/** Combines the bitsets of the given classifications. */
+	private static long[] bits(final long[][] plane, final int classes) {
+		switch (classes) {
+			case LESS:
+				return plane[0];
+			case WITHIN:
+				return plane[1];
+			case GREATER:
+				return plane[2];
+		}
+		final long[] bits = new long[plane[0].length];
+		for (int c = 0; c < 3; c++) {
+			if ((classes & (1 << c)) == 0) continue;
+			for (int i = 0; i < bits.length; i++) {
+				bits[i] |= plane[c][i];
+			}
+		}
+		return bits;
+	}
+
+	/** Counts the set bits from start (inclusive) to end (exclusive). */
+	private static long countBits(final long[] bits, final long start,
+		final long end)
+	{
+		if (start >= end) return 0;
+		final int first = (int) (start >>> 6);
+		final int last = (int) ((end - 1) >>> 6);
+		long count = 0;
+		for (int w = first; w <= last; w++) {
+			long word = bits[w];
+			if (w == first) word &= -1L << start;
+			if (w == last) word &= -1L >>> (63 - (int) ((end - 1) & 63));
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	private static boolean isSet(final long[] bits, final int index) {
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	private static long planeBytes(final long[][] plane) {
+		return 8L * (plane[0].length + plane[1].length + plane[2].length);
+	}
+
+	private long width() {
+		return dims.length > 0 ? dims[0] : 1;
+	}
+
+	private static int words(final long[] dims) {
+		final long width = dims.length > 0 ? dims[0] : 1;
+		final long height = dims.length > 1 ? dims[1] : 1;
+		return (int) ((width * height + 63) >>> 6);
+	}
+
+	/** Gets the bit index of the given point within its plane. */
+	private int index(final long[] point) {
+		return index(point, dims);
+	}
+
+	private static int index(final long[] point, final long[] dims) {
+		return (int) (dims.length > 1 ? point[1] * dims[0] + point[0] : point[0]);
+	}
+
+	/** Gets the number of the plane containing the given point. */
+	private static int planeNumber(final long[] point, final long[] dims) {
+		long index = 0;
+		long stride = 1;
+		for (int d = 2; d < dims.length; d++) {
+			index += point[d] * stride;
+			stride *= dims[d];
+		}
+		return (int) index;
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * Bounds of a query, clipped to the dataset. Within each plane, the bounds
+	 * cover one contiguous range of bits per row, or a single range if they span
+	 * whole rows.
+	 */
+	private class Box {
+
+		private final long[] min;
+		private final long[] max;
+		private final long width;
+
+		/** The numbers of the planes within the bounds, in flat order. */
+		private final int[] planeNumbers;
+
+		private final int segmentsPerPlane;
+		private final boolean fullRows;
+
+		public Box(final long[] boundsMin, final long[] boundsMax) {
+			if (boundsMin != null && (boundsMin.length != dims.length ||
+				boundsMax.length != dims.length))
+			{
+				throw new IllegalArgumentException("bounds do not match the dataset");
+			}
+			min = new long[dims.length];
+			max = new long[dims.length];
+			boolean empty = false;
+			long count = 1;
+			for (int d = 0; d < dims.length; d++) {
+				min[d] = boundsMin == null ? 0 : Math.max(boundsMin[d], 0);
+				max[d] = boundsMax == null ? dims[d] - 1 : Math.min(boundsMax[d],
+					dims[d] - 1);
+				if (min[d] > max[d]) empty = true;
+				else if (d >= 2) count *= max[d] - min[d] + 1;
+			}
+			width = width();
+			planeNumbers = new int[empty ? 0 : (int) count];
+			for (int i = 0; i < planeNumbers.length; i++) {
+				long r = i, plane = 0, stride = 1;
+				for (int d = 2; d < dims.length; d++) {
+					final long size = max[d] - min[d] + 1;
+					plane += (min[d] + r % size) * stride;
+					r /= size;
+					stride *= dims[d];
+				}
+				planeNumbers[i] = (int) plane;
+			}
+			fullRows = dims.length < 2 || min[0] == 0 && max[0] == width - 1;
+			segmentsPerPlane = fullRows ? 1 : (int) (max[1] - min[1] + 1);
+		}
+
+		/** Gets the first bit of the given segment of a plane. */
+		public long segmentStart(final int segment) {
+			if (dims.length < 2) return min[0];
+			return (min[1] + segment) * width + min[0];
+		}
+
+		/** Gets the bit following the given segment of a plane. */
+		public long segmentEnd(final int segment) {
+			if (dims.length < 2) return max[0] + 1;
+			final long row = fullRows ? max[1] : min[1] + segment;
+			return row * width + max[0] + 1;
+		}
+
+		/** Gets the position of the given plane along the non-XY dimensions. */
+		public void localizePlane(final int plane, final long[] position) {
+			long r = plane;
+			for (int d = 2; d < position.length; d++) {
+				final long size = max[d] - min[d] + 1;
+				position[d] = min[d] + r % size;
+				r /= size;
+			}
+		}
+	}
+
+	/**
+	 * The planes of the mask as of a validation, along with the dimensions and
+	 * range they are classified with. Point queries against a snapshot need no
+	 * lock; missing planes are classified into the snapshot, and thus into the
+	 * mask, unless it was discarded since.
+	 */
+	private class Snapshot {
+
+		private final long[][][] target;
+		private final long[] dims;
+		private final double min;
+		private final double max;
+		private final long modificationCount;
+
+		public Snapshot(final long[][][] target, final long[] dims,
+			final double min, final double max, final long modificationCount)
+		{
+			this.target = target;
+			this.dims = dims;
+			this.min = min;
+			this.max = max;
+			this.modificationCount = modificationCount;
+		}
+
+		/** Tells whether neither the mask nor the dataset changed since. */
+		public boolean isCurrent() {
+			return target == planes &&
+				modificationCount == dataset.getModificationCount();
+		}
+
+		public boolean contains(final long[] point, final int classes) {
+			if (!isInside(point)) return false;
+			final int plane = planeNumber(point, dims);
+			long[][] bits = target[plane];
+			if (bits == null) {
+				// NB: threads racing here classify the plane identically
+				bits = classify(plane, dims, min, max);
+				target[plane] = bits;
+			}
+			final int index = index(point, dims);
+			for (int c = 0; c < 3; c++) {
+				if ((classes & (1 << c)) != 0 && isSet(bits[c], index)) return true;
+			}
+			return false;
+		}
+
+		private boolean isInside(final long[] point) {
+			if (point.length != dims.length) return false;
+			for (int d = 0; d < dims.length; d++) {
+				if (point[d] < 0 || point[d] >= dims[d]) return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Tests points against a {@link Snapshot} of the mask, which is only taken
+	 * again, under the mask's lock, once the mask or the dataset changed. Each
+	 * copy takes its own snapshot, so copies can be tested in parallel.
+	 */
+	private class MaskCondition implements Condition<long[]> {
+
+		private final int classes;
+		private volatile Snapshot snapshot;
+
+		public MaskCondition(final int classes) {
+			this.classes = classes;
+		}
+
+		@Override
+		public boolean isTrue(final long[] point) {
+			Snapshot s = snapshot;
+			if (s == null || !s.isCurrent()) {
+				s = snapshot();
+				snapshot = s;
+			}
+			return s.contains(point, classes);
+		}
+
+		@Override
+		public MaskCondition copy() {
+			return new MaskCondition(classes);
+		}
+	}
+
+	/**
+	 * Walks the set bits of the planes within some bounds, as classified when the
+	 * iterator is created; later changes of the range or the dataset are not
+	 * seen.
+	 */
+	private class MaskIterator implements PointSetIterator {
+
+		private final int classes;
+		private final Box box;
+		private final long[][][] snapshot;
+		private final long[] position;
+
+		/** The current segment, counted across the planes. */
+		private int segment;
+
+		/** The words of the current segment, and the one being scanned. */
+		private long[] bits;
+		private int word;
+		private int lastWord;
+		private long lastMask;
+		private long remaining;
+
+		public MaskIterator(final int classes, final Box box,
+			final long[][][] snapshot)
+		{
+			this.classes = classes;
+			this.box = box;
+			this.snapshot = snapshot;
+			position = new long[box.min.length];
+			reset();
+		}
+
+		private MaskIterator(final MaskIterator other) {
+			classes = other.classes;
+			box = other.box;
+			snapshot = other.snapshot;
+			position = other.position.clone();
+			segment = other.segment;
+			bits = other.bits;
+			word = other.word;
+			lastWord = other.lastWord;
+			lastMask = other.lastMask;
+			remaining = other.remaining;
+		}
+
+		// -- Iterator methods --
+
+		@Override
+		public void reset() {
+			segment = -1;
+			bits = null;
+			word = lastWord = 0;
+			remaining = 0;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (remaining == 0) {
+				if (bits != null && word < lastWord) {
+					word++;
+					remaining = bits[word];
+					if (word == lastWord) remaining &= lastMask;
+				}
+				else if (!nextSegment()) return false;
+			}
+			return true;
+		}
+
+		@Override
+		public void fwd() {
+			if (!hasNext()) throw new NoSuchElementException();
+			final long index =
+				((long) word << 6) + Long.numberOfTrailingZeros(remaining);
+			remaining &= remaining - 1;
+			position[0] = index % box.width;
+			if (position.length > 1) position[1] = index / box.width;
+		}
+
+		@Override
+		public void jumpFwd(final long steps) {
+			for (long i = 0; i < steps; i++) {
+				fwd();
+			}
+		}
+
+		@Override
+		public long[] next() {
+			fwd();
+			return position;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		// -- Sampler methods --
+
+		@Override
+		public long[] get() {
+			return position;
+		}
+
+		@Override
+		public MaskIterator copy() {
+			return new MaskIterator(this);
+		}
+
+		// -- Cursor methods --
+
+		@Override
+		public MaskIterator copyCursor() {
+			return copy();
+		}
+
+		// -- Localizable methods --
+
+		@Override
+		public int numDimensions() {
+			return position.length;
+		}
+
+		@Override
+		public void localize(final int[] pos) {
+			for (int d = 0; d < position.length; d++) {
+				pos[d] = (int) position[d];
+			}
+		}
+
+		@Override
+		public void localize(final long[] pos) {
+			System.arraycopy(position, 0, pos, 0, position.length);
+		}
+
+		@Override
+		public void localize(final float[] pos) {
+			for (int d = 0; d < position.length; d++) {
+				pos[d] = position[d];
+			}
+		}
+
+		@Override
+		public void localize(final double[] pos) {
+			for (int d = 0; d < position.length; d++) {
+				pos[d] = position[d];
+			}
+		}
+
+		@Override
+		public int getIntPosition(final int d) {
+			return (int) position[d];
+		}
+
+		@Override
+		public long getLongPosition(final int d) {
+			return position[d];
+		}
+
+		@Override
+		public float getFloatPosition(final int d) {
+			return position[d];
+		}
+
+		@Override
+		public double getDoublePosition(final int d) {
+			return position[d];
+		}
+
+		// -- Helper methods --
+
+		/** Moves on to the next non-empty segment, if any. */
+		private boolean nextSegment() {
+			final int segments = snapshot.length * box.segmentsPerPlane;
+			while (segment + 1 < segments) {
+				segment++;
+				final int plane = segment / box.segmentsPerPlane;
+				final int s = segment % box.segmentsPerPlane;
+				if (s == 0) {
+					bits = bits(snapshot[plane], classes);
+					box.localizePlane(plane, position);
+				}
+				final long start = box.segmentStart(s);
+				final long end = box.segmentEnd(s);
+				if (start >= end) continue;
+				word = (int) (start >>> 6);
+				lastWord = (int) ((end - 1) >>> 6);
+				lastMask = -1L >>> (63 - (int) ((end - 1) & 63));
+				remaining = bits[word] & (-1L << start);
+				if (word == lastWord) remaining &= lastMask;
+				return true;
+			}
+			bits = null;
+			return false;
+		}
+	}
+
+}
@@ -36,8 +36,10 @@
 package imagej.data.overlay;
 
 import imagej.data.Dataset;
+import imagej.data.ParallelLoop;
 import imagej.data.event.DatasetRestructuredEvent;
 import imagej.data.event.OverlayUpdatedEvent;
+import imagej.data.memory.MemoryService;
 import imagej.display.Displayable;
 import imagej.util.ColorRGB;
 import imagej.util.Colors;
@@ -50,7 +52,6 @@
 import net.imglib2.ops.condition.WithinRangeCondition;
 import net.imglib2.ops.function.Function;
 import net.imglib2.ops.function.real.RealImageFunction;
-import net.imglib2.ops.pointset.ConditionalPointSet;
 import net.imglib2.ops.pointset.HyperVolumePointSet;
 import net.imglib2.ops.pointset.PointSet;
 import net.imglib2.ops.pointset.PointSetRegionOfInterest;
@@ -64,6 +65,13 @@
 /**
  * A {@link ThresholdOverlay} is an {@link Overlay} that represents the set of
  * points whose data values are in a range prescribed by API user.
+ * <p>
+ * By default every query evaluates the data at the queried points. A
+ * materialized overlay (see {@link #setMaterialized(boolean)}) instead keeps
+ * the classification of the data in a {@link ThresholdMask}, so that
+ * classifying points is a bit lookup and iterating its point sets only visits
+ * their members.
+ * </p>
  * 
  * @author Barry DeZonia
  */
@@ -76,10 +84,11 @@ public class ThresholdOverlay extends AbstractOverlay
 	private Function<long[], RealType<?>> function;
 	private RealType<?> variable;
 	private Displayable figure;
-	private ConditionalPointSet pointsLess;
-	private ConditionalPointSet pointsGreater;
-	private ConditionalPointSet pointsWithin;
-	private ConditionalPointSet pointsOutside;
+	private ThresholdPointSet pointsLess;
+	private ThresholdPointSet pointsGreater;
+	private ThresholdPointSet pointsWithin;
+	private ThresholdPointSet pointsOutside;
+	private ThresholdMask mask;
 	private FunctionLessCondition<? extends RealType<?>> conditionLess;
 	private FunctionGreaterCondition<? extends RealType<?>> conditionGreater;
 	private WithinRangeCondition<? extends RealType<?>> conditionWithin;
@@ -146,6 +155,7 @@ public void setRange(double min, double max) {
 		conditionWithin.setMax(max);
 		conditionLess.setValue(min);
 		conditionGreater.setValue(max);
+		if (mask != null) mask.setRange(min, max);
 		// make sure all pointsets know they've changed
 		pointsGreater.setCondition(conditionGreater);
 		pointsLess.setCondition(conditionLess);
@@ -182,6 +192,39 @@ public void resetThreshold() {
 		setRange(min, max / 2);
 	}
 
+	/**
+	 * Sets whether this overlay materializes the classification of its data in a
+	 * {@link ThresholdMask}. The mask is rebuilt (in parallel) only when the
+	 * range or the data changes, at the cost of three bits of memory per sample.
+	 * The mask is registered with the {@link MemoryService}, which may evict its
+	 * planes when memory runs low.
+	 */
+	public void setMaterialized(boolean materialized) {
+		if (materialized == isMaterialized()) return;
+		final MemoryService memoryService =
+			getContext().getService(MemoryService.class);
+		if (mask != null && memoryService != null) {
+			memoryService.removeEvictable(mask);
+		}
+		mask =
+			materialized ? new ThresholdMask(dataset, new ParallelLoop(
+				getContext()), getRangeMin(), getRangeMax()) : null;
+		if (mask != null && memoryService != null) {
+			memoryService.addEvictable(mask);
+		}
+		pointsLess.setMask(mask);
+		pointsGreater.setMask(mask);
+		pointsWithin.setMask(mask);
+		pointsOutside.setMask(mask);
+	}
+
+	/**
+	 * Returns whether this overlay materializes the classification of its data.
+	 */
+	public boolean isMaterialized() {
+		return mask != null;
+	}
+
 	/**
 	 * Returns the set of points whose data values are within the range of
 	 * interest.
@@ -323,6 +366,7 @@ public void setColorWithin(ColorRGB c) {
 	 * @return -1, 0, or 1
 	 */
 	public int classify(long[] point) {
+		if (mask != null) return mask.classify(point);
 		function.compute(point, variable);
 		double val = variable.getRealDouble();
 		if (Double.isNaN(val)) return Integer.MAX_VALUE;
@@ -431,6 +475,7 @@ public ThresholdOverlay duplicate() {
 		overlay.setColorWithin(getColorWithin());
 		overlay.setColorLess(getColorLess());
 		overlay.setColorGreater(getColorGreater());
+		overlay.setMaterialized(isMaterialized());
 		return overlay;
 	}
 
@@ -439,6 +484,13 @@ public void move(double[] deltas) {
 		// do nothing - thresholds don't move though space
 	}
 
+	@Override
+	public void delete() {
+		// NB: the memory service would otherwise keep the mask alive
+		setMaterialized(false);
+		super.delete();
+	}
+
 	@Override
 	public String getName() {
 		String name = super.getName();
@@ -470,10 +522,14 @@ private void init(double min, double max) {
 		long[] dims = new long[imgPlus.numDimensions()];
 		imgPlus.dimensions(dims);
 		HyperVolumePointSet volume = new HyperVolumePointSet(dims);
-		pointsLess = new ConditionalPointSet(volume, conditionLess);
-		pointsGreater = new ConditionalPointSet(volume, conditionGreater);
-		pointsWithin = new ConditionalPointSet(volume, conditionWithin);
-		pointsOutside = new ConditionalPointSet(volume, conditionOutside);
+		pointsLess =
+			new ThresholdPointSet(volume, conditionLess, ThresholdMask.LESS);
+		pointsGreater =
+			new ThresholdPointSet(volume, conditionGreater, ThresholdMask.GREATER);
+		pointsWithin =
+			new ThresholdPointSet(volume, conditionWithin, ThresholdMask.WITHIN);
+		pointsOutside =
+			new ThresholdPointSet(volume, conditionOutside, ThresholdMask.OUTSIDE);
 		regionAdapter = new PointSetRegionOfInterest(pointsWithin);
 		setDefaultName(false);
 	}
@@ -496,6 +552,8 @@ private void reinit() {
 		pointsWithin.setPointSet(volume);
 		pointsLess.setPointSet(volume);
 		pointsGreater.setPointSet(volume);
+		pointsOutside.setPointSet(volume);
+		if (mask != null) mask.reset();
 		// let ConditionalPointSets know they need bounds recalc via setCondition()
 		pointsWithin.setCondition(conditionWithin);
 		pointsLess.setCondition(conditionLess);
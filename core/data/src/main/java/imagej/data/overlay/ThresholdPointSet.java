@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.overlay;
+
+import imagej.data.measure.SelfIteratingPointSet;
+
+import net.imglib2.ops.condition.Condition;
+import net.imglib2.ops.pointset.ConditionalPointSet;
+import net.imglib2.ops.pointset.HyperVolumePointSet;
+import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.ops.pointset.PointSetIterator;
+
+/**
+ * One of the point sets of a {@link ThresholdOverlay}. Without a
+ * {@link ThresholdMask} it behaves like any {@link ConditionalPointSet},
+ * evaluating its condition on the data at each point of its volume. With a
+ * mask, membership is looked up in the mask; if the volume is a
+ * {@link HyperVolumePointSet}, iteration and counting also only visit the
+ * points in the set, within the bounds of the volume.
+ */
+public class ThresholdPointSet extends ConditionalPointSet implements
+	SelfIteratingPointSet
+{
+
+	private final int classes;
+	private PointSet volume;
+	private Condition<long[]> condition;
+	private ThresholdMask mask;
+
+	/**
+	 * @param volume The points to choose from.
+	 * @param condition The condition chosen points satisfy when there is no
+	 *          mask.
+	 * @param classes The {@link ThresholdMask} classifications of the chosen
+	 *          points when there is a mask.
+	 */
+	public ThresholdPointSet(final PointSet volume,
+		final Condition<long[]> condition, final int classes)
+	{
+		super(volume, condition);
+		this.classes = classes;
+		this.volume = volume;
+		this.condition = condition;
+	}
+
+	// -- ThresholdPointSet methods --
+
+	/** Gets the mask backing this point set, or null if there is none. */
+	public ThresholdMask getMask() {
+		return mask;
+	}
+
+	/** Sets the mask backing this point set, or null to evaluate the data. */
+	public void setMask(final ThresholdMask mask) {
+		this.mask = mask;
+		setCondition(condition);
+	}
+
+	// -- SelfIteratingPointSet methods --
+
+	@Override
+	public boolean isSelfIterating() {
+		return isBoxMasked();
+	}
+
+	// -- ConditionalPointSet methods --
+
+	@Override
+	public void setCondition(final Condition<long[]> condition) {
+		this.condition = condition;
+		super.setCondition(mask == null ? condition : mask.getCondition(classes));
+	}
+
+	@Override
+	public void setPointSet(final PointSet volume) {
+		this.volume = volume;
+		super.setPointSet(volume);
+	}
+
+	// -- PointSet methods --
+
+	@Override
+	public PointSetIterator iterator() {
+		if (!isBoxMasked()) return super.iterator();
+		return mask.iterator(classes, boundsMin(), boundsMax());
+	}
+
+	@Override
+	public long size() {
+		if (!isBoxMasked()) return super.size();
+		return mask.count(classes, boundsMin(), boundsMax());
+	}
+
+	@Override
+	public ThresholdPointSet copy() {
+		final ThresholdPointSet copy =
+			new ThresholdPointSet(volume.copy(), condition.copy(), classes);
+		copy.setMask(mask);
+		return copy;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Tells whether the mask can answer for the whole volume. Other volumes are
+	 * walked point by point, looking each point up in the mask.
+	 */
+	private boolean isBoxMasked() {
+		return mask != null && volume instanceof HyperVolumePointSet &&
+			volume.numDimensions() == mask.getDataset().numDimensions();
+	}
+
+	private long[] boundsMin() {
+		final long[] min = new long[volume.numDimensions()];
+		volume.min(min);
+		return min;
+	}
+
+	private long[] boundsMax() {
+		final long[] max = new long[volume.numDimensions()];
+		volume.max(max);
+		return max;
+	}
+
+}
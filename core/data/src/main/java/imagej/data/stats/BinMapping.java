@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.stats;
+
+/**
+ * Maps sample values to histogram bins of equal width. A value v falls into
+ * bin floor((v - origin) / binWidth); values outside the histogram are clamped
+ * into the first or last bin, and NaN values are not counted.
+ * <p>
+ * Mappings are compared by value, so that histograms cached for one mapping can
+ * be reused by any client asking for an equal mapping.
+ * </p>
+ */
+public class BinMapping {
+
+	private final double origin;
+	private final double binWidth;
+	private final int bins;
+
+	public BinMapping(final double origin, final double binWidth,
+		final int bins)
+	{
+		if (bins < 1) throw new IllegalArgumentException("Invalid bin count: " +
+			bins);
+		this.origin = origin;
+		this.binWidth = binWidth;
+		this.bins = bins;
+	}
+
+	/**
+	 * Creates a mapping with the given number of bins evenly dividing the range
+	 * [min, max].
+	 */
+	public static BinMapping fromRange(final double min, final double max,
+		final int bins)
+	{
+		return new BinMapping(min, (max - min) / bins, bins);
+	}
+
+	// -- BinMapping methods --
+
+	public double getOrigin() {
+		return origin;
+	}
+
+	public double getBinWidth() {
+		return binWidth;
+	}
+
+	public int getBinCount() {
+		return bins;
+	}
+
+	/** Gets the bin of the given value, or -1 if the value is NaN. */
+	public int getBin(final double value) {
+		if (Double.isNaN(value)) return -1;
+		if (!(binWidth > 0)) return 0;
+		final double bin = Math.floor((value - origin) / binWidth);
+		if (bin < 0) return 0;
+		if (bin >= bins) return bins - 1;
+		return (int) bin;
+	}
+
+	/**
+	 * Gets the bin of the given coarser mapping into which each bin of this
+	 * mapping falls, or null if this mapping is not a refinement of it. That is
+	 * the case when every coarse bin is made up of a whole number of these bins,
+	 * and these bins cover all the coarse ones; a histogram of this mapping can
+	 * then be converted into one of the coarser mapping without revisiting the
+	 * samples.
+	 */
+	public int[] getCoarseBins(final BinMapping coarse) {
+		if (!(binWidth > 0) || !(coarse.binWidth > 0)) return null;
+		final long factor = Math.round(coarse.binWidth / binWidth);
+		if (factor < 1 || !isWhole(coarse.binWidth / binWidth, factor)) {
+			return null;
+		}
+		final double offset = (coarse.origin - origin) / binWidth;
+		final long first = Math.round(offset);
+		if (first < 0 || !isWhole(offset, first)) return null;
+		if (first + factor * coarse.bins > bins) return null;
+		final int[] coarseBins = new int[bins];
+		for (int i = 0; i < bins; i++) {
+			final long bin = i < first ? -1 : (i - first) / factor;
+			coarseBins[i] = (int) Math.max(0, Math.min(coarse.bins - 1, bin));
+		}
+		return coarseBins;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof BinMapping)) return false;
+		final BinMapping other = (BinMapping) o;
+		return Double.compare(origin, other.origin) == 0 &&
+			Double.compare(binWidth, other.binWidth) == 0 && bins == other.bins;
+	}
+
+	@Override
+	public int hashCode() {
+		final long o = Double.doubleToLongBits(origin);
+		final long w = Double.doubleToLongBits(binWidth);
+		return (int) (o ^ (o >>> 32)) * 31 + (int) (w ^ (w >>> 32)) * 17 + bins;
+	}
+
+	@Override
+	public String toString() {
+		return "origin=" + origin + ", binWidth=" + binWidth + ", bins=" + bins;
+	}
+
+	// -- Helper methods --
+
+	/** Tells whether a ratio of bin sizes or offsets is the given integer. */
+	private static boolean isWhole(final double value, final long whole) {
+		return Math.abs(value - whole) <= 1e-9 * Math.max(1, Math.abs(value));
+	}
+
+}
@@ -0,0 +1,539 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.stats;
+
+import imagej.data.Dataset;
+import imagej.data.DirtyRegion;
+import imagej.data.ParallelLoop;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.meta.Axes;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * A cache of the statistics and histograms of the planes of a {@link Dataset}.
+ * <p>
+ * Values are computed lazily, one plane at a time, with the missing planes of
+ * a request processed in parallel. Per-channel and whole-image results are
+ * merged from the per-plane values, so invalidating a plane (see
+ * {@link #invalidate(DirtyRegion)}) only forces that plane to be recomputed.
+ * The cache also remembers the {@link Dataset#getModificationCount()
+ * modification count} it is consistent with; if the dataset was modified in
+ * some way the cache was not told about, everything is recomputed.
+ * </p>
+ * <p>
+ * Planes are the XY planes of the dataset, numbered as by
+ * {@link Dataset#getPlane(int)}.
+ * </p>
+ * <p>
+ * Histograms are cached per {@link BinMapping}. A histogram whose mapping is
+ * coarser than that of a cached one (see {@link BinMapping#getCoarseBins}) is
+ * derived from the cached one rather than from the samples.
+ * </p>
+ */
+public class DatasetStatistics {
+
+	/** Number of bin mappings whose histograms are kept. */
+	private static final int MAX_MAPPINGS = 4;
+
+	private final Dataset dataset;
+	private final ParallelLoop loop;
+
+	private long modificationCount;
+	private long[] dims;
+	private int planeCount;
+	private PixelStatistics[] planeStats;
+
+	/** Statistics and histograms of the channel averages of each pixel. */
+	private PixelStatistics compositeStats;
+	private final Map<BinMapping, long[]> compositeHistograms =
+		new LinkedHashMap<BinMapping, long[]>();
+
+	@SuppressWarnings("serial")
+	private final Map<BinMapping, long[][]> planeHistograms =
+		new LinkedHashMap<BinMapping, long[][]>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(
+				final Map.Entry<BinMapping, long[][]> eldest)
+			{
+				return size() > MAX_MAPPINGS;
+			}
+		};
+
+	public DatasetStatistics(final Dataset dataset, final ParallelLoop loop) {
+		this.dataset = dataset;
+		this.loop = loop;
+		reset();
+	}
+
+	// -- DatasetStatistics methods --
+
+	public Dataset getDataset() {
+		return dataset;
+	}
+
+	/** Gets the number of planes of the dataset. */
+	public synchronized int getPlaneCount() {
+		validate();
+		return planeCount;
+	}
+
+	/** Gets the statistics of the given plane. */
+	public synchronized PixelStatistics getPlaneStatistics(final int plane) {
+		validate();
+		return merge(new int[] { plane });
+	}
+
+	/** Gets the statistics of all the planes of the given channel. */
+	public synchronized PixelStatistics getChannelStatistics(final int channel)
+	{
+		validate();
+		return merge(channelPlanes(channel));
+	}
+
+	/**
+	 * Gets the statistics of every channel. The missing planes of all channels
+	 * are computed in a single parallel pass, rather than one pass per channel.
+	 */
+	public synchronized PixelStatistics[] getChannelStatistics() {
+		validate();
+		fill(allPlanes());
+		final PixelStatistics[] stats = new PixelStatistics[getChannelCount()];
+		for (int c = 0; c < stats.length; c++) {
+			stats[c] = merge(channelPlanes(c));
+		}
+		return stats;
+	}
+
+	/** Gets the statistics of the whole dataset. */
+	public synchronized PixelStatistics getStatistics() {
+		validate();
+		return merge(allPlanes());
+	}
+
+	/** Gets the histogram of the given plane. */
+	public synchronized long[] getPlaneHistogram(final int plane,
+		final BinMapping mapping)
+	{
+		validate();
+		return merge(new int[] { plane }, mapping);
+	}
+
+	/** Gets the histogram of all the planes of the given channel. */
+	public synchronized long[] getChannelHistogram(final int channel,
+		final BinMapping mapping)
+	{
+		validate();
+		return merge(channelPlanes(channel), mapping);
+	}
+
+	/** Gets the histogram of the whole dataset. */
+	public synchronized long[] getHistogram(final BinMapping mapping) {
+		validate();
+		return merge(allPlanes(), mapping);
+	}
+
+	/**
+	 * Gets the statistics of the composite image, whose pixels are the averages
+	 * of the channels of the dataset's pixels.
+	 */
+	public synchronized PixelStatistics getCompositeStatistics() {
+		validate();
+		if (getChannelCount() == 1) return merge(allPlanes());
+		if (compositeStats == null) composite(null);
+		return compositeStats.copy();
+	}
+
+	/**
+	 * Gets the histogram of the composite image, whose pixels are the averages
+	 * of the channels of the dataset's pixels.
+	 */
+	public synchronized long[] getCompositeHistogram(final BinMapping mapping) {
+		validate();
+		if (getChannelCount() == 1) return merge(allPlanes(), mapping);
+		long[] histogram = compositeHistograms.get(mapping);
+		if (histogram == null) {
+			histogram = composite(mapping);
+			if (compositeHistograms.size() >= MAX_MAPPINGS) {
+				compositeHistograms.remove(compositeHistograms.keySet().iterator()
+					.next());
+			}
+			compositeHistograms.put(mapping, histogram);
+		}
+		return histogram.clone();
+	}
+
+	/**
+	 * Discards the cached values of the planes overlapping the given region, or
+	 * of all planes if the region is null. An empty region acknowledges a
+	 * modification which did not change any sample values.
+	 */
+	public synchronized void invalidate(final DirtyRegion region) {
+		final long count = dataset.getModificationCount();
+		// NB: each update event follows at most one modification; a larger jump
+		// means modifications were missed
+		if (region == null || count < modificationCount ||
+			count > modificationCount + 1 || !Arrays.equals(dims, dataset.getDims()))
+		{
+			reset();
+			return;
+		}
+		for (final Interval interval : region.getIntervals()) {
+			invalidate(interval);
+		}
+		if (!region.isEmpty()) clearComposite();
+		modificationCount = count;
+	}
+
+	/** Gets the number of bytes held by the cached histograms. */
+	public synchronized long getHistogramBytes() {
+		long bytes = 0;
+		for (final long[] histogram : compositeHistograms.values()) {
+			bytes += 8L * histogram.length;
+		}
+		for (final long[][] histograms : planeHistograms.values()) {
+			for (final long[] histogram : histograms) {
+				if (histogram != null) bytes += 8L * histogram.length;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Discards the cached histograms, keeping the (much smaller) statistics.
+	 * 
+	 * @return The number of bytes freed.
+	 */
+	public synchronized long clearHistograms() {
+		final long bytes = getHistogramBytes();
+		planeHistograms.clear();
+		compositeHistograms.clear();
+		return bytes;
+	}
+
+	/** Discards all cached values. */
+	public synchronized void reset() {
+		modificationCount = dataset.getModificationCount();
+		dims = dataset.getDims();
+		long count = 1;
+		for (int d = 2; d < dims.length; d++) {
+			count *= dims[d];
+		}
+		planeCount = (int) count;
+		planeStats = new PixelStatistics[planeCount];
+		planeHistograms.clear();
+		clearComposite();
+	}
+
+	// -- Helper methods --
+
+	/** Discards everything if the dataset changed behind our back. */
+	private void validate() {
+		if (modificationCount != dataset.getModificationCount() ||
+			!Arrays.equals(dims, dataset.getDims()))
+		{
+			reset();
+		}
+	}
+
+	private void invalidate(final Interval interval) {
+		if (interval.numDimensions() != dims.length) {
+			reset();
+			return;
+		}
+		final int n = Math.max(0, dims.length - 2);
+		final long[] lo = new long[n];
+		final long[] hi = new long[n];
+		for (int i = 0; i < n; i++) {
+			lo[i] = Math.max(0, interval.min(i + 2));
+			hi[i] = Math.min(dims[i + 2] - 1, interval.max(i + 2));
+			if (lo[i] > hi[i]) return;
+		}
+		final long[] pos = lo.clone();
+		while (true) {
+			final int plane = planeIndex(pos);
+			planeStats[plane] = null;
+			for (final long[][] histograms : planeHistograms.values()) {
+				histograms[plane] = null;
+			}
+			int i = 0;
+			while (i < n && pos[i] == hi[i]) {
+				pos[i] = lo[i];
+				i++;
+			}
+			if (i == n) break;
+			pos[i]++;
+		}
+	}
+
+	private PixelStatistics merge(final int[] planes) {
+		fill(planes);
+		final PixelStatistics result = new PixelStatistics();
+		for (final int plane : planes) {
+			result.add(planeStats[plane]);
+		}
+		return result;
+	}
+
+	/** Computes the statistics of those planes which are not cached. */
+	private void fill(final int[] planes) {
+		final int[] missing = missing(planes, planeStats);
+		loop.run(missing.length, new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				for (int i = (int) start; i < end; i++) {
+					final PixelStatistics stats = new PixelStatistics();
+					final Cursor<? extends RealType<?>> cursor = cursor(missing[i]);
+					while (cursor.hasNext()) {
+						stats.add(cursor.next().getRealDouble());
+					}
+					planeStats[missing[i]] = stats;
+				}
+			}
+		});
+	}
+
+	private long[] merge(final int[] planes, final BinMapping mapping) {
+		long[][] histograms = planeHistograms.get(mapping);
+		if (histograms == null) {
+			histograms = new long[planeCount][];
+			planeHistograms.put(mapping, histograms);
+		}
+		final long[][] cached = histograms;
+		final int[] missing = coarsen(missing(planes, cached), mapping, cached);
+		loop.run(missing.length, new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				for (int i = (int) start; i < end; i++) {
+					final long[] histogram = new long[mapping.getBinCount()];
+					final Cursor<? extends RealType<?>> cursor = cursor(missing[i]);
+					while (cursor.hasNext()) {
+						final int bin = mapping.getBin(cursor.next().getRealDouble());
+						if (bin >= 0) histogram[bin]++;
+					}
+					cached[missing[i]] = histogram;
+				}
+			}
+		});
+		final long[] result = new long[mapping.getBinCount()];
+		for (final int plane : planes) {
+			final long[] histogram = cached[plane];
+			for (int b = 0; b < result.length; b++) {
+				result[b] += histogram[b];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Derives the missing histograms of the given planes from those cached for
+	 * finer mappings, and returns the planes which are still missing.
+	 */
+	private int[] coarsen(final int[] planes, final BinMapping mapping,
+		final long[][] cache)
+	{
+		if (planes.length == 0) return planes;
+		for (final Map.Entry<BinMapping, long[][]> entry : planeHistograms
+			.entrySet())
+		{
+			final long[][] finer = entry.getValue();
+			if (finer == cache) continue;
+			final int[] coarseBins = entry.getKey().getCoarseBins(mapping);
+			if (coarseBins == null) continue;
+			for (final int plane : planes) {
+				if (cache[plane] != null || finer[plane] == null) continue;
+				final long[] histogram = new long[mapping.getBinCount()];
+				for (int b = 0; b < coarseBins.length; b++) {
+					histogram[coarseBins[b]] += finer[plane][b];
+				}
+				cache[plane] = histogram;
+			}
+		}
+		return missing(planes, cache);
+	}
+
+	/**
+	 * Computes the statistics of the composite image, and its histogram if a
+	 * mapping is given. Each chunk of the loop walks the planes of all channels
+	 * at a set of positions in lockstep.
+	 */
+	private long[] composite(final BinMapping mapping) {
+		final int channels = getChannelCount();
+		final long stride = channelStride();
+		final int[] positions = channelPlanes(0);
+		final PixelStatistics[] stats = new PixelStatistics[positions.length];
+		final long[][] histograms = new long[positions.length][];
+		loop.run(positions.length, new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				@SuppressWarnings("unchecked")
+				final Cursor<? extends RealType<?>>[] cursors = new Cursor[channels];
+				for (int i = (int) start; i < end; i++) {
+					for (int c = 0; c < channels; c++) {
+						cursors[c] = cursor((int) (positions[i] + c * stride));
+					}
+					final PixelStatistics s = new PixelStatistics();
+					final long[] histogram =
+						mapping == null ? null : new long[mapping.getBinCount()];
+					while (cursors[0].hasNext()) {
+						double sum = 0;
+						for (int c = 0; c < channels; c++) {
+							sum += cursors[c].next().getRealDouble();
+						}
+						final double value = sum / channels;
+						s.add(value);
+						if (histogram == null) continue;
+						final int bin = mapping.getBin(value);
+						if (bin >= 0) histogram[bin]++;
+					}
+					stats[i] = s;
+					histograms[i] = histogram;
+				}
+			}
+		});
+		compositeStats = new PixelStatistics();
+		for (final PixelStatistics s : stats) {
+			compositeStats.add(s);
+		}
+		if (mapping == null) return null;
+		final long[] result = new long[mapping.getBinCount()];
+		for (final long[] histogram : histograms) {
+			for (int b = 0; b < result.length; b++) {
+				result[b] += histogram[b];
+			}
+		}
+		return result;
+	}
+
+	private void clearComposite() {
+		compositeStats = null;
+		compositeHistograms.clear();
+	}
+
+	/** Gets the planes whose cached values are missing. */
+	private int[] missing(final int[] planes, final Object[] cache) {
+		int count = 0;
+		final int[] missing = new int[planes.length];
+		for (final int plane : planes) {
+			if (plane < 0 || plane >= planeCount) {
+				throw new IllegalArgumentException("Invalid plane: " + plane);
+			}
+			if (cache[plane] == null) missing[count++] = plane;
+		}
+		return Arrays.copyOf(missing, count);
+	}
+
+	private int[] allPlanes() {
+		final int[] planes = new int[planeCount];
+		for (int p = 0; p < planes.length; p++) {
+			planes[p] = p;
+		}
+		return planes;
+	}
+
+	private int getChannelCount() {
+		final int chIndex = dataset.getAxisIndex(Axes.CHANNEL);
+		return chIndex < 2 ? 1 : (int) dims[chIndex];
+	}
+
+	private int[] channelPlanes(final int channel) {
+		final int chIndex = dataset.getAxisIndex(Axes.CHANNEL);
+		if (chIndex < 2) {
+			if (channel != 0) {
+				throw new IllegalArgumentException("Invalid channel: " + channel);
+			}
+			return allPlanes();
+		}
+		final long channels = dims[chIndex];
+		if (channel < 0 || channel >= channels) {
+			throw new IllegalArgumentException("Invalid channel: " + channel);
+		}
+		final long stride = channelStride();
+		final int[] planes = new int[(int) (planeCount / channels)];
+		int count = 0;
+		for (int p = 0; p < planeCount; p++) {
+			if ((p / stride) % channels == channel) planes[count++] = p;
+		}
+		return planes;
+	}
+
+	/** Gets the difference in plane number between adjacent channels. */
+	private long channelStride() {
+		final int chIndex = dataset.getAxisIndex(Axes.CHANNEL);
+		long stride = 1;
+		for (int d = 2; d < chIndex; d++) {
+			stride *= dims[d];
+		}
+		return stride;
+	}
+
+	private int planeIndex(final long[] pos) {
+		long index = 0;
+		long stride = 1;
+		for (int i = 0; i < pos.length; i++) {
+			index += pos[i] * stride;
+			stride *= dims[i + 2];
+		}
+		return (int) index;
+	}
+
+	private Cursor<? extends RealType<?>> cursor(final int plane) {
+		final ImgPlus<? extends RealType<?>> imgPlus = dataset.getImgPlus();
+		if (dims.length <= 2) return imgPlus.cursor();
+		final long[] min = new long[dims.length];
+		final long[] max = new long[dims.length];
+		max[0] = dims[0] - 1;
+		max[1] = dims[1] - 1;
+		long r = plane;
+		for (int d = 2; d < dims.length; d++) {
+			min[d] = max[d] = r % dims[d];
+			r /= dims[d];
+		}
+		return Views.iterable(Views.interval(imgPlus, min, max)).cursor();
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.stats;
+
+import imagej.data.Dataset;
+import imagej.data.DirtyRegion;
+import imagej.data.ParallelLoop;
+import imagej.data.event.DatasetDeletedEvent;
+import imagej.data.event.DatasetRestructuredEvent;
+import imagej.data.event.DatasetUpdatedEvent;
+import imagej.data.memory.Evictable;
+import imagej.data.memory.MemoryService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.scijava.event.EventHandler;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default service for caching the statistics of {@link Dataset}s.
+ */
+@Plugin(type = Service.class)
+public final class DefaultDatasetStatisticsService extends AbstractService
+	implements DatasetStatisticsService
+{
+
+	private final Map<Dataset, DatasetStatistics> statistics =
+		new WeakHashMap<Dataset, DatasetStatistics>();
+
+	/** Lets the memory service discard histograms when memory is short. */
+	private final Evictable evictable = new Evictable() {
+
+		@Override
+		public long getBytes() {
+			long bytes = 0;
+			for (final DatasetStatistics stats : getAll()) {
+				bytes += stats.getHistogramBytes();
+			}
+			return bytes;
+		}
+
+		@Override
+		public long evict(final long bytes) {
+			long freed = 0;
+			for (final DatasetStatistics stats : getAll()) {
+				if (freed >= bytes) break;
+				freed += stats.clearHistograms();
+			}
+			return freed;
+		}
+	};
+
+	// -- DatasetStatisticsService methods --
+
+	@Override
+	public synchronized DatasetStatistics getStatistics(final Dataset dataset) {
+		DatasetStatistics stats = statistics.get(dataset);
+		if (stats == null) {
+			stats = new DatasetStatistics(dataset, new ParallelLoop(getContext()));
+			statistics.put(dataset, stats);
+		}
+		return stats;
+	}
+
+	// -- Service methods --
+
+	@Override
+	public void initialize() {
+		final MemoryService memoryService =
+			getContext().getService(MemoryService.class);
+		if (memoryService != null) memoryService.addEvictable(evictable);
+	}
+
+	@Override
+	public void dispose() {
+		final MemoryService memoryService =
+			getContext().getService(MemoryService.class);
+		if (memoryService != null) memoryService.removeEvictable(evictable);
+	}
+
+	// -- Event handlers --
+
+	/** Discards the cached values of the planes which were updated. */
+	@EventHandler
+	protected void onEvent(final DatasetUpdatedEvent event) {
+		final DatasetStatistics stats = get(event.getObject());
+		if (stats == null) return;
+		if (event.isMetaDataOnly()) stats.invalidate(new DirtyRegion());
+		else stats.invalidate(event.getRegion());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetRestructuredEvent event) {
+		final DatasetStatistics stats = get(event.getObject());
+		if (stats != null) stats.reset();
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetDeletedEvent event) {
+		synchronized (this) {
+			statistics.remove(event.getObject());
+		}
+	}
+
+	// -- Helper methods --
+
+	private synchronized DatasetStatistics get(final Dataset dataset) {
+		return statistics.get(dataset);
+	}
+
+	private synchronized List<DatasetStatistics> getAll() {
+		return new ArrayList<DatasetStatistics>(statistics.values());
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.stats;
+
+/**
+ * Accumulates the count, minimum, maximum, sum and sum of squares of a set of
+ * sample values. NaN values are ignored. Statistics of disjoint sets of samples
+ * (e.g., of different planes) can be combined with
+ * {@link #add(PixelStatistics)}.
+ */
+public class PixelStatistics {
+
+	private long count;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double sum;
+	private double sumSq;
+
+	// -- PixelStatistics methods --
+
+	/** Adds a sample value. */
+	public void add(final double value) {
+		if (Double.isNaN(value)) return;
+		count++;
+		if (value < min) min = value;
+		if (value > max) max = value;
+		sum += value;
+		sumSq += value * value;
+	}
+
+	/** Adds all the samples accumulated by another instance. */
+	public void add(final PixelStatistics stats) {
+		count += stats.count;
+		if (stats.min < min) min = stats.min;
+		if (stats.max > max) max = stats.max;
+		sum += stats.sum;
+		sumSq += stats.sumSq;
+	}
+
+	/** Gets the number of (non-NaN) samples. */
+	public long getCount() {
+		return count;
+	}
+
+	/** Gets the smallest sample, or NaN if there are none. */
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	/** Gets the largest sample, or NaN if there are none. */
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	public double getSumOfSquares() {
+		return sumSq;
+	}
+
+	/** Gets the mean of the samples, or NaN if there are none. */
+	public double getMean() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+	/** Gets the sample standard deviation, or 0 for fewer than two samples. */
+	public double getStdDev() {
+		if (count < 2) return 0;
+		return Math.sqrt((sumSq - sum * sum / count) / (count - 1));
+	}
+
+	/** Creates an independent copy of these statistics. */
+	public PixelStatistics copy() {
+		final PixelStatistics copy = new PixelStatistics();
+		copy.add(this);
+		return copy;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return "count=" + count + ", min=" + getMin() + ", max=" + getMax() +
+			", mean=" + getMean() + ", stdDev=" + getStdDev();
+	}
+
+}
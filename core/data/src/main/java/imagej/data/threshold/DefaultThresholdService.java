@@ -114,6 +114,8 @@ public ThresholdOverlay getThreshold(ImageDisplay display) {
 				throw new IllegalArgumentException(
 					"expected ImageDisplay to have active dataset");
 			}
+			// NB: not materialized; callers making repeated bulk queries of the
+			// threshold can opt in with ThresholdOverlay.setMaterialized(true)
 			overlay = new ThresholdOverlay(getContext(), dataset);
 			map.put(display, overlay);
 			display.display(overlay);
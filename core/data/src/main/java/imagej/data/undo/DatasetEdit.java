@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.undo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A recorded modification of a {@link imagej.data.Dataset}: the deltas of the
+ * planes it changed.
+ */
+public class DatasetEdit {
+
+	private final String name;
+	private final List<PlaneDelta> deltas;
+	private final long bytes;
+
+	public DatasetEdit(final String name, final List<PlaneDelta> deltas) {
+		this.name = name;
+		this.deltas = Collections.unmodifiableList(deltas);
+		long total = 0;
+		for (final PlaneDelta delta : deltas) {
+			total += delta.getBytes();
+		}
+		bytes = total;
+	}
+
+	// -- DatasetEdit methods --
+
+	/** Gets the name of the operation which made the edit. */
+	public String getName() {
+		return name;
+	}
+
+	/** Gets the deltas of the modified planes. */
+	public List<PlaneDelta> getDeltas() {
+		return deltas;
+	}
+
+	/** Gets the number of bytes used to store the edit. */
+	public long getBytes() {
+		return bytes;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return name + " (" + deltas.size() + " planes, " + bytes + " bytes)";
+	}
+
+}
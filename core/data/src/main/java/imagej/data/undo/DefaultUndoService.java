@@ -0,0 +1,486 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.undo;
+
+import imagej.command.CommandService;
+import imagej.data.Dataset;
+import imagej.data.DirtyRegion;
+import imagej.data.ParallelLoop;
+import imagej.data.cow.CopyOnWriteAccess;
+import imagej.data.cow.CopyOnWriteStats;
+import imagej.data.cow.PlaneSharer;
+import imagej.data.event.DatasetDeletedEvent;
+import imagej.data.event.DatasetRestructuredEvent;
+import imagej.data.event.DatasetTypeChangedEvent;
+import imagej.data.memory.Evictable;
+import imagej.data.memory.MemoryService;
+import imagej.data.options.OptionsCaching;
+import imagej.module.event.ModuleCanceledEvent;
+import imagej.options.OptionsService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+
+import org.scijava.event.EventHandler;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default service for keeping the undo history of {@link Dataset}s.
+ */
+@Plugin(type = Service.class)
+public final class DefaultUndoService extends AbstractService implements
+	UndoService
+{
+
+	private static final int DEFAULT_UNDO_MEMORY = 10;
+
+	private static final String MEMORY_AND_THREADS =
+		"imagej.core.options.OptionsMemoryAndThreads";
+
+	@Parameter
+	private LogService log;
+
+	/** Operations being recorded. */
+	private final Map<Object, List<Snapshot>> pending =
+		new WeakHashMap<Object, List<Snapshot>>();
+
+	private final Map<Dataset, UndoHistory> histories =
+		new WeakHashMap<Dataset, UndoHistory>();
+
+	/**
+	 * Sharing counters of the snapshots, kept apart from those of the datasets
+	 * since a snapshot sharing a plane does not hold any extra memory.
+	 */
+	private final CopyOnWriteStats snapshotStats = new CopyOnWriteStats();
+
+	/** Lets the memory service shrink the histories when memory is short. */
+	private final Evictable evictable = new Evictable() {
+
+		@Override
+		public long getBytes() {
+			return DefaultUndoService.this.getBytes();
+		}
+
+		@Override
+		public long evict(final long bytes) {
+			return trim(Math.max(0, getBytes() - bytes));
+		}
+	};
+
+	// -- UndoService methods --
+
+	@Override
+	public void begin(final Object key, final Dataset dataset) {
+		final Img<?> img = dataset.getImgPlus().getImg();
+		final PlaneSharer sharer = new PlaneSharer(snapshotStats);
+		synchronized (this) {
+			final UndoHistory history = histories.get(dataset);
+			if (history != null &&
+				history.getModificationCount() != dataset.getModificationCount())
+			{
+				discard(dataset, history);
+			}
+			List<Snapshot> snapshots = pending.get(key);
+			if (snapshots == null) {
+				snapshots = new ArrayList<Snapshot>();
+				pending.put(key, snapshots);
+			}
+			for (final Snapshot snapshot : snapshots) {
+				if (snapshot.dataset == dataset) return;
+			}
+			// NB: an unsupported image gets an empty snapshot, so that end() can
+			// tell whether it was modified
+			PlanarImg<?, ?> copy = null;
+			if (sharer.isSupported(img)) {
+				@SuppressWarnings({ "rawtypes", "unchecked" })
+				final PlanarImg<?, ?> planarCopy = sharer.duplicate((PlanarImg) img);
+				copy = planarCopy;
+			}
+			snapshots.add(new Snapshot(dataset, img, copy));
+		}
+	}
+
+	@Override
+	public boolean end(final Object key, final String name) {
+		final List<Snapshot> snapshots;
+		synchronized (this) {
+			snapshots = pending.remove(key);
+		}
+		if (snapshots == null) return true;
+		boolean recorded = true;
+		for (final Snapshot snapshot : snapshots) {
+			if (!record(snapshot, name)) recorded = false;
+		}
+		return recorded;
+	}
+
+	@Override
+	public void abort(final Object key) {
+		final List<Snapshot> snapshots;
+		synchronized (this) {
+			snapshots = pending.remove(key);
+		}
+		if (snapshots == null) return;
+		for (final Snapshot snapshot : snapshots) {
+			snapshot.detach();
+		}
+	}
+
+	@Override
+	public synchronized boolean canUndo(final Dataset dataset) {
+		return getUndoName(dataset) != null;
+	}
+
+	@Override
+	public synchronized boolean canRedo(final Dataset dataset) {
+		return getRedoName(dataset) != null;
+	}
+
+	@Override
+	public synchronized String getUndoName(final Dataset dataset) {
+		final UndoHistory history = getHistory(dataset);
+		if (history == null || history.peekUndo() == null) return null;
+		return history.peekUndo().getName();
+	}
+
+	@Override
+	public synchronized String getRedoName(final Dataset dataset) {
+		final UndoHistory history = getHistory(dataset);
+		if (history == null || history.peekRedo() == null) return null;
+		return history.peekRedo().getName();
+	}
+
+	@Override
+	public synchronized boolean undo(final Dataset dataset) {
+		final UndoHistory history = getHistory(dataset);
+		if (history == null || history.peekUndo() == null) return false;
+		apply(dataset, history.undo());
+		history.setModificationCount(dataset.getModificationCount());
+		return true;
+	}
+
+	@Override
+	public synchronized boolean redo(final Dataset dataset) {
+		final UndoHistory history = getHistory(dataset);
+		if (history == null || history.peekRedo() == null) return false;
+		apply(dataset, history.redo());
+		history.setModificationCount(dataset.getModificationCount());
+		return true;
+	}
+
+	@Override
+	public synchronized void clear(final Dataset dataset) {
+		final UndoHistory history = histories.remove(dataset);
+		if (history != null) history.clear();
+	}
+
+	@Override
+	public synchronized long getBytes() {
+		long bytes = 0;
+		for (final UndoHistory history : histories.values()) {
+			bytes += history.getBytes();
+		}
+		return bytes;
+	}
+
+	// -- Service methods --
+
+	@Override
+	public void initialize() {
+		final MemoryService memoryService =
+			getContext().getService(MemoryService.class);
+		if (memoryService != null) memoryService.addEvictable(evictable);
+	}
+
+	@Override
+	public void dispose() {
+		final MemoryService memoryService =
+			getContext().getService(MemoryService.class);
+		if (memoryService != null) memoryService.removeEvictable(evictable);
+	}
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final ModuleCanceledEvent event) {
+		abort(event.getModule());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetRestructuredEvent event) {
+		clear(event.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetTypeChangedEvent event) {
+		clear(event.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetDeletedEvent event) {
+		clear(event.getObject());
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Adds the planes modified since the snapshot to the undo history.
+	 * 
+	 * @return false if the dataset was modified but its changes could not be
+	 *         captured.
+	 */
+	private boolean record(final Snapshot snapshot, final String name) {
+		final Dataset dataset = snapshot.dataset;
+		final String reason;
+		if (snapshot.copy == null) reason = "unsupported image type";
+		else if (dataset.getImgPlus().getImg() != snapshot.img) {
+			reason = "the image was replaced";
+		}
+		else reason = null;
+		if (reason != null) {
+			snapshot.detach();
+			if (dataset.getModificationCount() == snapshot.modificationCount) {
+				// nothing happened, so there was nothing to capture
+				return true;
+			}
+			log.warn("Cannot undo " + name + " on " + dataset.getName() + ": " +
+				reason);
+			clear(dataset);
+			return false;
+		}
+		final PlaneDelta[] deltas = snapshot.diff();
+		snapshot.detach();
+
+		final List<PlaneDelta> changed = new ArrayList<PlaneDelta>();
+		for (final PlaneDelta delta : deltas) {
+			if (delta != null) changed.add(delta);
+		}
+		synchronized (this) {
+			UndoHistory history = histories.get(dataset);
+			if (changed.isEmpty()) {
+				if (dataset.getModificationCount() != snapshot.modificationCount) {
+					// NB: the dataset reports changes the snapshot cannot see, e.g.
+					// writes into a plane array obtained before the snapshot
+					log.warn("Cannot undo " + name + " on " + dataset.getName() +
+						": its changes were not captured");
+					clear(dataset);
+					return false;
+				}
+				// NB: nothing changed, so an existing history is still valid
+				if (history != null) {
+					history.setModificationCount(dataset.getModificationCount());
+				}
+				return true;
+			}
+			if (history == null) {
+				history = new UndoHistory(dataset.getModificationCount());
+				histories.put(dataset, history);
+			}
+			final DatasetEdit edit = new DatasetEdit(name, changed);
+			history.add(edit, getMaxEdits());
+			history.setModificationCount(dataset.getModificationCount());
+			log.debug("Recorded undo of " + dataset.getName() + ": " + edit);
+			trim(getMaxBytes());
+		}
+		return true;
+	}
+
+	/** Gets the history of the dataset, provided it is still valid. */
+	private UndoHistory getHistory(final Dataset dataset) {
+		final UndoHistory history = histories.get(dataset);
+		if (history == null) return null;
+		if (history.getModificationCount() != dataset.getModificationCount()) {
+			discard(dataset, history);
+			return null;
+		}
+		return history;
+	}
+
+	private void discard(final Dataset dataset, final UndoHistory history) {
+		if (!history.isEmpty()) {
+			log.info("Discarding undo history of " + dataset.getName() +
+				": modified by an operation which was not recorded");
+		}
+		history.clear();
+		histories.remove(dataset);
+	}
+
+	/** Applies the deltas of the edit to the dataset and announces them. */
+	private void apply(final Dataset dataset, final DatasetEdit edit) {
+		final DirtyRegion region = new DirtyRegion();
+		for (final PlaneDelta delta : edit.getDeltas()) {
+			delta.apply(dataset.getPlane(delta.getPlane()));
+			addPlane(region, dataset, delta.getPlane());
+		}
+		dataset.update(region);
+	}
+
+	/** Drops the oldest edits until at most the given number of bytes remain. */
+	private synchronized long trim(final long targetBytes) {
+		final long before = getBytes();
+		long bytes = before;
+		while (bytes > targetBytes) {
+			// drop from the largest history, which has the most to give
+			UndoHistory largest = null;
+			for (final UndoHistory history : histories.values()) {
+				if (largest == null || history.getBytes() > largest.getBytes()) {
+					largest = history;
+				}
+			}
+			if (largest == null || largest.getBytes() == 0) break;
+			bytes -= largest.dropOldest();
+		}
+		return before - bytes;
+	}
+
+	private long getMaxBytes() {
+		final OptionsCaching options = getOptions();
+		final int percent =
+			options == null ? DEFAULT_UNDO_MEMORY : options.getUndoMemory();
+		return Runtime.getRuntime().maxMemory() / 100 * percent;
+	}
+
+	/**
+	 * Gets the number of edits kept per dataset: one, unless the "Keep multiple
+	 * undo buffers" setting of the Memory &amp; Threads options is enabled.
+	 * NB: that options class lives in a module ImageJ's data model does not
+	 * depend on, so it is looked up by name.
+	 */
+	private int getMaxEdits() {
+		final CommandService commandService =
+			getContext().getService(CommandService.class);
+		final OptionsService optionsService =
+			getContext().getService(OptionsService.class);
+		if (commandService == null || optionsService == null) return 1;
+		if (commandService.getCommand(MEMORY_AND_THREADS) == null) return 1;
+		final Object multiple =
+			optionsService.getOption(MEMORY_AND_THREADS, "multipleBuffers");
+		return Boolean.TRUE.equals(multiple) ? Integer.MAX_VALUE : 1;
+	}
+
+	private OptionsCaching getOptions() {
+		final OptionsService optionsService =
+			getContext().getService(OptionsService.class);
+		if (optionsService == null) return null;
+		return optionsService.getOptions(OptionsCaching.class);
+	}
+
+	private static void addPlane(final DirtyRegion region,
+		final Dataset dataset, final int planeNum)
+	{
+		final long[] min = new long[dataset.numDimensions()];
+		final long[] max = new long[dataset.numDimensions()];
+		long r = planeNum;
+		for (int d = 0; d < min.length; d++) {
+			if (d < 2) max[d] = dataset.dimension(d) - 1;
+			else {
+				min[d] = max[d] = r % dataset.dimension(d);
+				r /= dataset.dimension(d);
+			}
+		}
+		region.add(min, max);
+	}
+
+	// -- Helper classes --
+
+	/** The state of a dataset's planes before an operation. */
+	private class Snapshot {
+
+		private final Dataset dataset;
+		private final Img<?> img;
+		private final long modificationCount;
+
+		/** The copy of the planes, or null if they could not be copied. */
+		private final PlanarImg<?, ?> copy;
+
+		public Snapshot(final Dataset dataset, final Img<?> img,
+			final PlanarImg<?, ?> copy)
+		{
+			this.dataset = dataset;
+			this.img = img;
+			this.copy = copy;
+			modificationCount = dataset.getModificationCount();
+		}
+
+		/**
+		 * Computes the deltas of the modified planes. A plane whose array is still
+		 * shared with the snapshot was not written, and needs no comparison.
+		 */
+		public PlaneDelta[] diff() {
+			final PlanarImg<?, ?> planar = (PlanarImg<?, ?>) img;
+			final PlaneDelta[] deltas = new PlaneDelta[copy.numSlices()];
+			new ParallelLoop(getContext()).run(deltas.length,
+				new ParallelLoop.Chunk() {
+
+					@Override
+					public void process(final long start, final long end) {
+						for (int i = (int) start; i < end; i++) {
+							final Object before = storage(copy.getPlane(i));
+							final Object after = storage(planar.getPlane(i));
+							if (before == after) continue;
+							deltas[i] = PlaneDelta.create(i, before, after);
+						}
+					}
+				});
+			return deltas;
+		}
+
+		public void detach() {
+			if (copy == null) return;
+			for (int i = 0; i < copy.numSlices(); i++) {
+				((CopyOnWriteAccess) copy.getPlane(i)).detach();
+			}
+		}
+
+		private Object storage(final Object plane) {
+			if (plane instanceof CopyOnWriteAccess) {
+				return ((CopyOnWriteAccess) plane).peekStorageArray();
+			}
+			return ((ArrayDataAccess<?>) plane).getCurrentStorageArray();
+		}
+	}
+
+}
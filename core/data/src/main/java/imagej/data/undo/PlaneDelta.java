@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.undo;
+
+import imagej.data.cache.PlaneBuffers;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The difference between two versions of an image plane, stored as the
+ * compressed exclusive or (XOR) of their bytes. Unchanged samples XOR to zero,
+ * so the delta of a partially modified plane compresses very well.
+ * <p>
+ * Since XOR is its own inverse, applying the delta to either version of the
+ * plane yields the other one: the same delta serves for both undo and redo.
+ * </p>
+ */
+public class PlaneDelta {
+
+	private final int plane;
+	private final int length;
+	private final byte[] data;
+
+	private PlaneDelta(final int plane, final int length, final byte[] data) {
+		this.plane = plane;
+		this.length = length;
+		this.data = data;
+	}
+
+	/**
+	 * Computes the delta between two versions of a plane, given as primitive
+	 * arrays of the same type and length.
+	 * 
+	 * @return The delta, or null if the versions are equal.
+	 */
+	public static PlaneDelta create(final int plane, final Object before,
+		final Object after)
+	{
+		final byte[] xor = bytes(before);
+		final byte[] other = bytes(after);
+		if (xor.length != other.length) {
+			throw new IllegalArgumentException("Incompatible planes");
+		}
+		boolean changed = false;
+		for (int i = 0; i < xor.length; i++) {
+			xor[i] ^= other[i];
+			if (xor[i] != 0) changed = true;
+		}
+		if (!changed) return null;
+		return new PlaneDelta(plane, xor.length, deflate(xor));
+	}
+
+	// -- PlaneDelta methods --
+
+	/** Gets the number of the plane this delta applies to. */
+	public int getPlane() {
+		return plane;
+	}
+
+	/** Gets the number of bytes used to store the delta. */
+	public long getBytes() {
+		return data.length;
+	}
+
+	/** Gets the size in bytes of the plane this delta applies to. */
+	public long getPlaneBytes() {
+		return length;
+	}
+
+	/**
+	 * Converts the given version of the plane into the other version, in place.
+	 */
+	public void apply(final Object array) {
+		final byte[] xor = inflate(data, length);
+		final byte[] bytes = bytes(array);
+		if (bytes.length != length) {
+			throw new IllegalArgumentException("Incompatible plane");
+		}
+		for (int i = 0; i < length; i++) {
+			bytes[i] ^= xor[i];
+		}
+		PlaneBuffers.get(ByteBuffer.wrap(bytes), array);
+	}
+
+	// -- Helper methods --
+
+	private static byte[] bytes(final Object array) {
+		final byte[] bytes = new byte[(int) PlaneBuffers.sizeOf(array)];
+		PlaneBuffers.put(ByteBuffer.wrap(bytes), array);
+		return bytes;
+	}
+
+	private static byte[] deflate(final byte[] bytes) {
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			final ByteArrayOutputStream out =
+				new ByteArrayOutputStream(Math.max(64, bytes.length / 16));
+			final byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return out.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(final byte[] data, final int length) {
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			final byte[] bytes = new byte[length];
+			int offset = 0;
+			while (offset < length) {
+				final int n = inflater.inflate(bytes, offset, length - offset);
+				if (n == 0 && (inflater.finished() || inflater.needsInput())) break;
+				offset += n;
+			}
+			if (offset < length) throw new DataFormatException("Truncated data");
+			return bytes;
+		}
+		catch (final DataFormatException exc) {
+			throw new IllegalStateException("Corrupt plane delta", exc);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+}
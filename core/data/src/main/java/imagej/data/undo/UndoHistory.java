@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.undo;
+
+import java.util.LinkedList;
+
+/**
+ * The undo and redo stacks of one {@link imagej.data.Dataset}.
+ */
+class UndoHistory {
+
+	private final LinkedList<DatasetEdit> undoable =
+		new LinkedList<DatasetEdit>();
+	private final LinkedList<DatasetEdit> redoable =
+		new LinkedList<DatasetEdit>();
+	private long bytes;
+
+	/**
+	 * The modification count of the dataset when its state last matched the
+	 * history; any other value means it was changed by an unrecorded operation.
+	 */
+	private long modificationCount;
+
+	public UndoHistory(final long modificationCount) {
+		this.modificationCount = modificationCount;
+	}
+
+	public long getModificationCount() {
+		return modificationCount;
+	}
+
+	public void setModificationCount(final long modificationCount) {
+		this.modificationCount = modificationCount;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public boolean isEmpty() {
+		return undoable.isEmpty() && redoable.isEmpty();
+	}
+
+	/** Records a new edit, which makes the redoable edits obsolete. */
+	public void add(final DatasetEdit edit, final int maxEdits) {
+		for (final DatasetEdit obsolete : redoable) {
+			bytes -= obsolete.getBytes();
+		}
+		redoable.clear();
+		undoable.addLast(edit);
+		bytes += edit.getBytes();
+		while (undoable.size() > maxEdits) {
+			bytes -= undoable.removeFirst().getBytes();
+		}
+	}
+
+	public DatasetEdit peekUndo() {
+		return undoable.peekLast();
+	}
+
+	public DatasetEdit peekRedo() {
+		return redoable.peekLast();
+	}
+
+	/** Moves the most recent edit to the redo stack, and returns it. */
+	public DatasetEdit undo() {
+		final DatasetEdit edit = undoable.removeLast();
+		redoable.addLast(edit);
+		return edit;
+	}
+
+	/** Moves the most recently undone edit back to the undo stack. */
+	public DatasetEdit redo() {
+		final DatasetEdit edit = redoable.removeLast();
+		undoable.addLast(edit);
+		return edit;
+	}
+
+	/**
+	 * Drops the oldest edit: the oldest undoable one, or failing that the
+	 * furthest redoable one.
+	 * 
+	 * @return The number of bytes freed.
+	 */
+	public long dropOldest() {
+		final DatasetEdit edit;
+		if (!undoable.isEmpty()) edit = undoable.removeFirst();
+		else if (!redoable.isEmpty()) edit = redoable.removeFirst();
+		else return 0;
+		bytes -= edit.getBytes();
+		return edit.getBytes();
+	}
+
+	public void clear() {
+		undoable.clear();
+		redoable.clear();
+		bytes = 0;
+	}
+
+}
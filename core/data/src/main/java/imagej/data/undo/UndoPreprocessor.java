@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.undo;
+
+import imagej.data.Data;
+import imagej.data.Dataset;
+import imagej.data.display.DataView;
+import imagej.data.display.ImageDisplay;
+import imagej.module.Module;
+import imagej.module.ModuleItem;
+import imagej.plugin.AbstractPreprocessorPlugin;
+import imagej.plugin.PreprocessorPlugin;
+
+import org.scijava.Priority;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Starts recording the undo history of the {@link Dataset}s an
+ * {@link Undoable} module is about to operate on: its {@link Dataset} inputs,
+ * and the datasets shown by its {@link ImageDisplay} and {@link DataView}
+ * inputs.
+ * <p>
+ * This runs before the input harvester, so that the recorded state precedes
+ * any changes made by previews.
+ * </p>
+ * 
+ * @see UndoPostprocessor
+ */
+@Plugin(type = PreprocessorPlugin.class, priority = Priority.LOW_PRIORITY)
+public class UndoPreprocessor extends AbstractPreprocessorPlugin {
+
+	// -- ModuleProcessor methods --
+
+	@Override
+	public void process(final Module module) {
+		if (!(module.getDelegateObject() instanceof Undoable)) return;
+		final UndoService undoService =
+			getContext().getService(UndoService.class);
+		if (undoService == null) return;
+
+		for (final ModuleItem<?> item : module.getInfo().inputs()) {
+			final Object value = module.getInput(item.getName());
+			if (value instanceof Dataset) {
+				undoService.begin(module, (Dataset) value);
+			}
+			else if (value instanceof DataView) {
+				begin(undoService, module, ((DataView) value).getData());
+			}
+			else if (value instanceof ImageDisplay) {
+				for (final DataView view : (ImageDisplay) value) {
+					begin(undoService, module, view.getData());
+				}
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	private void begin(final UndoService undoService, final Module module,
+		final Data data)
+	{
+		if (data instanceof Dataset) undoService.begin(module, (Dataset) data);
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.undo;
+
+import imagej.data.Dataset;
+
+import org.scijava.service.Service;
+
+/**
+ * Interface for the service which keeps the undo history of {@link Dataset}s.
+ * <p>
+ * An operation is recorded by calling {@link #begin} before it modifies a
+ * dataset and {@link #end} afterwards. In between, the dataset's planes are
+ * shared copy-on-write with a snapshot, so only the planes the operation
+ * actually writes are copied; when it ends, each modified plane is stored as
+ * a compressed delta. Commands are recorded this way automatically by the
+ * {@link UndoPreprocessor} and {@link UndoPostprocessor}, provided they
+ * implement {@link Undoable}.
+ * </p>
+ * <p>
+ * The history of each dataset is bounded by the "Undo history size" memory
+ * budget, and holds a single edit unless multiple undo buffers are enabled.
+ * It is discarded when the sample data of the dataset is modified by an
+ * operation which was not recorded (or could not be), or restructured; updates
+ * of the metadata only leave it intact.
+ * </p>
+ */
+public interface UndoService extends Service {
+
+	/**
+	 * Starts recording an operation on the given dataset.
+	 * 
+	 * @param key The object identifying the operation, such as its module.
+	 */
+	void begin(Object key, Dataset dataset);
+
+	/**
+	 * Finishes recording the given operation, adding the planes it modified to
+	 * the undo history of its datasets.
+	 * 
+	 * @return false if the operation modified a dataset whose changes could not
+	 *         be captured (e.g., unsupported storage, or an image replaced as a
+	 *         whole), in which case the history of that dataset is discarded.
+	 */
+	boolean end(Object key, String name);
+
+	/** Stops recording the given operation without adding it to the history. */
+	void abort(Object key);
+
+	boolean canUndo(Dataset dataset);
+
+	boolean canRedo(Dataset dataset);
+
+	/** Gets the name of the edit which would be undone, or null if none. */
+	String getUndoName(Dataset dataset);
+
+	/** Gets the name of the edit which would be redone, or null if none. */
+	String getRedoName(Dataset dataset);
+
+	/**
+	 * Reverts the most recent edit of the given dataset.
+	 * 
+	 * @return true if an edit was undone.
+	 */
+	boolean undo(Dataset dataset);
+
+	/**
+	 * Reapplies the most recently undone edit of the given dataset.
+	 * 
+	 * @return true if an edit was redone.
+	 */
+	boolean redo(Dataset dataset);
+
+	/** Discards the undo history of the given dataset. */
+	void clear(Dataset dataset);
+
+	/** Gets the number of bytes used by all undo histories. */
+	long getBytes();
+
+}
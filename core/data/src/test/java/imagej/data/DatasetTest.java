@@ -38,12 +38,15 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import imagej.data.cow.CopyOnWriteStats;
 import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.ImgPlus;
 import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.IntType;
 
@@ -176,4 +179,45 @@ public void testGetPlane() {
 		testPlanarCase();
 		testNonplanarCase();
 	}
+
+	@Test
+	public void testDuplicateAfterGetPlane() {
+		final Context context = new Context(DatasetService.class);
+		final DatasetService datasetService =
+			context.getService(DatasetService.class);
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+		final Dataset ds =
+			datasetService.create(new long[] { 4, 4, 3 }, "test", axes, 32, true,
+				false);
+		final CopyOnWriteStats stats = datasetService.getCopyOnWriteStats();
+
+		// the raw array handed out here may be written after duplicating
+		final int[] plane = (int[]) ds.getPlane(0, false);
+		final Dataset copy = ds.duplicate();
+		assertEquals(2, stats.getSharedPlanes());
+		plane[0] = 42;
+		assertEquals(42, value(ds, 0));
+		assertEquals(0, value(copy, 0));
+
+		// planes which were never handed out are still shared copy-on-write
+		setValue(ds, 1, 7);
+		assertEquals(7, value(ds, 1));
+		assertEquals(0, value(copy, 1));
+
+		context.dispose();
+	}
+
+	private int value(final Dataset ds, final long z) {
+		final RandomAccess<? extends RealType<?>> accessor =
+			ds.getImgPlus().randomAccess();
+		accessor.setPosition(new long[] { 0, 0, z });
+		return (int) accessor.get().getRealDouble();
+	}
+
+	private void setValue(final Dataset ds, final long z, final int value) {
+		final RandomAccess<? extends RealType<?>> accessor =
+			ds.getImgPlus().randomAccess();
+		accessor.setPosition(new long[] { 0, 0, z });
+		accessor.get().setReal(value);
+	}
 }
@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link DirtyRegion}.
+ */
+public class DirtyRegionTest {
+
+	@Test
+	public void testMergeSamePlane() {
+		final DirtyRegion region = new DirtyRegion();
+		assertTrue(region.isEmpty());
+		region.add(interval(new long[] { 5, 5, 2 }, new long[] { 6, 6, 2 }));
+		region.add(interval(new long[] { 10, 1, 2 }, new long[] { 12, 3, 2 }));
+		assertFalse(region.isEmpty());
+		assertEquals(1, region.getIntervals().size());
+
+		final Interval bounds = region.getPlaneBounds(new long[] { 0, 0, 2 }, -1);
+		assertEquals(5, bounds.min(0));
+		assertEquals(1, bounds.min(1));
+		assertEquals(12, bounds.max(0));
+		assertEquals(6, bounds.max(1));
+	}
+
+	@Test
+	public void testOtherPlanes() {
+		final DirtyRegion region = new DirtyRegion();
+		region.add(interval(new long[] { 0, 0, 1, 3 }, new long[] { 3, 3, 1, 3 }));
+		region.add(interval(new long[] { 8, 8, 0, 3 }, new long[] { 9, 9, 2, 3 }));
+		assertEquals(2, region.getIntervals().size());
+
+		assertNull(region.getPlaneBounds(new long[] { 0, 0, 1, 2 }, -1));
+		assertNull(region.getPlaneBounds(new long[] { 0, 0, 3, 3 }, -1));
+
+		Interval bounds = region.getPlaneBounds(new long[] { 0, 0, 0, 3 }, -1);
+		assertEquals(8, bounds.min(0));
+		assertEquals(9, bounds.max(0));
+
+		bounds = region.getPlaneBounds(new long[] { 0, 0, 1, 3 }, -1);
+		assertEquals(0, bounds.min(0));
+		assertEquals(9, bounds.max(0));
+
+		// ignoring dimension 2 (e.g., composited channels) matches everything
+		bounds = region.getPlaneBounds(new long[] { 0, 0, 7, 3 }, 2);
+		assertEquals(0, bounds.min(0));
+		assertEquals(9, bounds.max(1));
+	}
+
+	@Test
+	public void testCollapse() {
+		final DirtyRegion region = new DirtyRegion();
+		for (int z = 0; z < 100; z++) {
+			region.add(interval(new long[] { z, 0, z }, new long[] { z, 0, z }));
+		}
+		assertTrue(region.getIntervals().size() < 100);
+		for (int z = 0; z < 100; z++) {
+			final Interval bounds =
+				region.getPlaneBounds(new long[] { 0, 0, z }, -1);
+			assertTrue(bounds.min(0) <= z && bounds.max(0) >= z);
+		}
+	}
+
+	// -- Helper methods --
+
+	private Interval interval(final long[] min, final long[] max) {
+		return new FinalInterval(min, max);
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Unit tests for {@link ImageGrabber}.
+ */
+public class ImageGrabberTest {
+
+	private static final int WIDTH = 37, HEIGHT = 29;
+
+	private Context context;
+	private DatasetService datasetService;
+
+	@Before
+	public void setUp() {
+		context = new Context(DatasetService.class);
+		datasetService = context.getService(DatasetService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testGrab() {
+		final int[] argb = createPixels();
+		final Dataset dataset =
+			new ImageGrabber(datasetService).grab(argb, WIDTH, HEIGHT, "grab");
+		assertEquals(true, dataset.isRGBMerged());
+		assertPixels(argb, dataset, 0);
+	}
+
+	@Test
+	public void testUnpackIntoFrame() {
+		final int[] argb = createPixels();
+		final Dataset dataset =
+			datasetService.create(new UnsignedByteType(), new long[] { WIDTH,
+				HEIGHT, 3, 4 }, "movie", new AxisType[] { Axes.X, Axes.Y,
+				Axes.CHANNEL, Axes.TIME });
+		new ImageGrabber(datasetService).unpack(argb, WIDTH, HEIGHT, dataset, 2);
+		assertPixels(argb, dataset, 2);
+	}
+
+	@Test
+	public void testUnpackNonPlanar() {
+		final int[] argb = createPixels();
+		final Dataset dataset =
+			datasetService.create(new ArrayImgFactory<UnsignedByteType>(),
+				new UnsignedByteType(), new long[] { WIDTH, HEIGHT, 3 }, "array",
+				new AxisType[] { Axes.X, Axes.Y, Axes.CHANNEL });
+		new ImageGrabber(datasetService).unpack(argb, WIDTH, HEIGHT, dataset);
+		assertPixels(argb, dataset, 0);
+	}
+
+	@Test
+	public void testUnpackInvalidPosition() {
+		final int[] argb = createPixels();
+		final Dataset dataset =
+			datasetService.create(new UnsignedByteType(), new long[] { WIDTH,
+				HEIGHT, 3, 4 }, "movie", new AxisType[] { Axes.X, Axes.Y,
+				Axes.CHANNEL, Axes.TIME });
+		final ImageGrabber grabber = new ImageGrabber(datasetService);
+		final long[][] positions = { {}, { 1, 2 }, { 4 }, { -1 } };
+		for (final long[] position : positions) {
+			try {
+				grabber.unpack(argb, WIDTH, HEIGHT, dataset, position);
+				fail();
+			}
+			catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	private int[] createPixels() {
+		final int[] argb = new int[WIDTH * HEIGHT];
+		for (int i = 0; i < argb.length; i++) {
+			argb[i] = 0xff000000 | (i * 7919 & 0xffffff);
+		}
+		return argb;
+	}
+
+	private void assertPixels(final int[] argb, final Dataset dataset,
+		final long frame)
+	{
+		final RandomAccess<? extends RealType<?>> access =
+			dataset.getImgPlus().randomAccess();
+		if (dataset.numDimensions() > 3) access.setPosition(frame, 3);
+		for (int y = 0; y < HEIGHT; y++) {
+			access.setPosition(y, 1);
+			for (int x = 0; x < WIDTH; x++) {
+				access.setPosition(x, 0);
+				final int pixel = argb[y * WIDTH + x];
+				for (int c = 0; c < 3; c++) {
+					access.setPosition(c, 2);
+					assertEquals((pixel >> 8 * (2 - c)) & 0xff, (int) access.get()
+						.getRealDouble());
+				}
+			}
+		}
+	}
+
+}
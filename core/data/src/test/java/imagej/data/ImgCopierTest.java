@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.IntType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Unit tests for {@link ImgCopier}.
+ */
+public class ImgCopierTest {
+
+	private static final long[] DIMENSIONS = { 23, 17, 3, 4 };
+
+	private Context context;
+	private ImgCopier copier;
+
+	@Before
+	public void setUp() {
+		context = new Context(ThreadService.class);
+		copier = new ImgCopier(context);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testPlanarCopy() {
+		assertCopy(new PlanarImgFactory<IntType>(), new PlanarImgFactory<IntType>());
+	}
+
+	@Test
+	public void testArrayCopy() {
+		assertCopy(new ArrayImgFactory<IntType>(), new ArrayImgFactory<IntType>());
+	}
+
+	@Test
+	public void testMixedCopy() {
+		assertCopy(new PlanarImgFactory<IntType>(), new CellImgFactory<IntType>());
+		assertCopy(new CellImgFactory<IntType>(), new ArrayImgFactory<IntType>());
+	}
+
+	@Test
+	public void testCopyPlane() {
+		final ImgFactory<?>[] factories =
+			{ new PlanarImgFactory<IntType>(), new ArrayImgFactory<IntType>(),
+				new CellImgFactory<IntType>() };
+		for (final ImgFactory<?> factory : factories) {
+			@SuppressWarnings("unchecked")
+			final Img<IntType> img =
+				fill(((ImgFactory<IntType>) factory).create(DIMENSIONS, new IntType()));
+			final int planeSize = (int) (DIMENSIONS[0] * DIMENSIONS[1]);
+			for (int p = 0; p < DIMENSIONS[2] * DIMENSIONS[3]; p++) {
+				final int[] plane = (int[]) copier.copyPlane(img, p);
+				assertEquals(planeSize, plane.length);
+				for (int i = 0; i < planeSize; i++) {
+					assertEquals(p * planeSize + i, plane[i]);
+				}
+				assertNotSame(plane, copier.copyPlane(img, p));
+			}
+		}
+	}
+
+	// -- helpers --
+
+	private void assertCopy(final ImgFactory<IntType> inFactory,
+		final ImgFactory<IntType> outFactory)
+	{
+		final Img<IntType> input = fill(inFactory.create(DIMENSIONS, new IntType()));
+		final Img<IntType> output = outFactory.create(DIMENSIONS, new IntType());
+		copier.copy(input, output);
+		final RandomAccess<IntType> in = input.randomAccess();
+		final Cursor<IntType> out = output.localizingCursor();
+		while (out.hasNext()) {
+			out.fwd();
+			in.setPosition(out);
+			assertEquals(in.get().get(), out.get().get());
+		}
+	}
+
+	private <T extends RealType<?>> Img<T> fill(final Img<T> img) {
+		final Cursor<T> cursor = img.localizingCursor();
+		final long[] pos = new long[img.numDimensions()];
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.localize(pos);
+			long index = 0;
+			for (int d = pos.length - 1; d >= 0; d--) {
+				index = index * img.dimension(d) + pos[d];
+			}
+			cursor.get().setReal(index % 100000);
+		}
+		return img;
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Unit tests for {@link ParallelLoop}.
+ */
+public class ParallelLoopTest {
+
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = new Context(ThreadService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testRun() {
+		final ParallelLoop loop =
+			new ParallelLoop(context.getService(ThreadService.class), 4);
+		assertEquals(4, loop.getThreadCount());
+		final AtomicIntegerArray visits = new AtomicIntegerArray(103);
+		loop.run(visits.length(), new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				for (long i = start; i < end; i++) {
+					visits.incrementAndGet((int) i);
+				}
+			}
+		});
+		for (int i = 0; i < visits.length(); i++) {
+			assertEquals(1, visits.get(i));
+		}
+	}
+
+	@Test
+	public void testSerial() {
+		final ParallelLoop loop = new ParallelLoop(null, 4);
+		assertEquals(1, loop.getThreadCount());
+		final Thread caller = Thread.currentThread();
+		loop.run(10, new ParallelLoop.Chunk() {
+
+			@Override
+			public void process(final long start, final long end) {
+				assertSame(caller, Thread.currentThread());
+				assertEquals(0, start);
+				assertEquals(10, end);
+			}
+		});
+	}
+
+	@Test
+	public void testException() {
+		final ParallelLoop loop =
+			new ParallelLoop(context.getService(ThreadService.class), 3);
+		try {
+			loop.run(9, new ParallelLoop.Chunk() {
+
+				@Override
+				public void process(final long start, final long end) {
+					if (start == 0) throw new IllegalArgumentException("chunk");
+				}
+			});
+			fail("expected the chunk's exception");
+		}
+		catch (final IllegalArgumentException e) {
+			assertEquals("chunk", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testDefaultThreadCount() {
+		// without the Memory & Threads options, the processors decide
+		final int processors = Runtime.getRuntime().availableProcessors();
+		assertEquals(processors, ParallelLoop.defaultThreadCount(null));
+		assertEquals(processors, ParallelLoop.defaultThreadCount(context));
+		assertEquals(processors, new ParallelLoop(context).getThreadCount());
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Benchmarks the bulk copy of {@link ImgCopier} against the per-pixel copy
+ * loop it replaced.
+ */
+public class TestImgCopierSpeeds {
+
+	static final long[] DIMENSIONS = { 512, 512, 40 };
+
+	@Test
+	public void testCopySpeeds() {
+		final Context context = new Context(ThreadService.class);
+		try {
+			final ImgCopier copier = new ImgCopier(context);
+			speedTest(copier, new UnsignedByteType());
+			speedTest(copier, new ByteType());
+			speedTest(copier, new UnsignedShortType());
+			speedTest(copier, new IntType());
+			speedTest(copier, new FloatType());
+			speedTest(copier, new DoubleType());
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	// -- helpers --
+
+	private <T extends RealType<T> & NativeType<T>> void speedTest(
+		final ImgCopier copier, final T type)
+	{
+		final Img<T> input = new PlanarImgFactory<T>().create(DIMENSIONS, type);
+		final Img<T> output = new PlanarImgFactory<T>().create(DIMENSIONS, type);
+		final Cursor<T> cursor = input.cursor();
+		long i = 0;
+		while (cursor.hasNext()) {
+			cursor.next().setReal(i++ % 100);
+		}
+
+		// NB - warm up both code paths before timing them
+		for (int n = 0; n < 3; n++) {
+			copyPerPixel(input, output);
+			copier.copy(input, output);
+		}
+
+		final long start = System.currentTimeMillis();
+		copyPerPixel(input, output);
+		final long mid = System.currentTimeMillis();
+		copier.copy(input, output);
+		final long stop = System.currentTimeMillis();
+
+		final double megapixels = input.size() / 1e6;
+		System.out.println(type.getClass().getSimpleName() +
+			" : per-pixel copy = " + rate(megapixels, mid - start) +
+			" Mpx/s, bulk copy = " + rate(megapixels, stop - mid) + " Mpx/s");
+	}
+
+	private String rate(final double megapixels, final long millis) {
+		return String.format("%.1f", megapixels * 1000 / Math.max(1, millis));
+	}
+
+	/** The copy loop formerly used by {@link DefaultDataset}. */
+	private void copyPerPixel(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output)
+	{
+		final long[] position = new long[output.numDimensions()];
+		final Cursor<? extends RealType<?>> outputCursor =
+			output.localizingCursor();
+		final RandomAccess<? extends RealType<?>> inputAccessor =
+			input.randomAccess();
+		while (outputCursor.hasNext()) {
+			outputCursor.next();
+			outputCursor.localize(position);
+			inputAccessor.setPosition(position);
+			final double value = inputAccessor.get().getRealDouble();
+			outputCursor.get().setReal(value);
+		}
+	}
+
+}
@@ -0,0 +1,212 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.lang.ref.WeakReference;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CachedPlanarImg} and {@link PlaneCache}.
+ */
+public class CachedPlanarImgTest {
+
+	private static final long[] DIMENSIONS = { 32, 16, 10 };
+
+	/** Bytes needed to hold two planes of {@link #DIMENSIONS} in memory. */
+	private static final long TWO_PLANES = 2 * 2 * 32 * 16;
+
+	@Test
+	public void testWriteBack() {
+		final PlaneCache cache = new PlaneCache(TWO_PLANES);
+		final Img<UnsignedShortType> img =
+			new CachedPlanarImgFactory<UnsignedShortType>(cache).create(
+				DIMENSIONS, new UnsignedShortType());
+		assertTrue(img instanceof CachedPlanarImg);
+
+		int i = 0;
+		for (final UnsignedShortType t : img) {
+			t.set(i++ % 65536);
+		}
+		// NB: evicted planes count until their access objects are collected
+		for (int gc = 0; gc < 100 && cache.getPinnedPlaneCount() > 0; gc++) {
+			System.gc();
+		}
+		assertTrue(cache.getBytes() <= TWO_PLANES);
+		assertTrue(cache.getEvictions() > 0);
+
+		i = 0;
+		for (final UnsignedShortType t : img) {
+			assertEquals(i++ % 65536, t.get());
+		}
+		((CachedPlanarImg<?, ?>) img).dispose();
+	}
+
+	@Test
+	public void testCleanPlanesAreNotWritten() {
+		final PlaneCache cache = new PlaneCache(TWO_PLANES);
+		final Img<UnsignedShortType> img =
+			new CachedPlanarImgFactory<UnsignedShortType>(cache).create(
+				DIMENSIONS, new UnsignedShortType());
+		final Cursor<UnsignedShortType> cursor = img.cursor();
+		long sum = 0;
+		while (cursor.hasNext()) {
+			sum += cursor.next().get();
+		}
+		assertEquals(0, sum);
+		assertEquals(0, cache.getWrites());
+		((CachedPlanarImg<?, ?>) img).dispose();
+	}
+
+	@Test
+	public void testSetPlane() {
+		final PlaneCache cache = new PlaneCache(TWO_PLANES);
+		@SuppressWarnings("unchecked")
+		final CachedPlanarImg<UnsignedShortType, ShortArray> img =
+			(CachedPlanarImg<UnsignedShortType, ShortArray>) new CachedPlanarImgFactory<UnsignedShortType>(
+				cache).create(DIMENSIONS, new UnsignedShortType());
+		final int planeSize = (int) (DIMENSIONS[0] * DIMENSIONS[1]);
+		for (int p = 0; p < DIMENSIONS[2]; p++) {
+			final short[] data = new short[planeSize];
+			for (int i = 0; i < planeSize; i++)
+				data[i] = (short) (p + i);
+			img.setPlane(p, new ShortArray(data));
+		}
+		for (int p = 0; p < DIMENSIONS[2]; p++) {
+			final short[] data = img.getPlane(p).getCurrentStorageArray();
+			for (int i = 0; i < planeSize; i++)
+				assertEquals((short) (p + i), data[i]);
+		}
+		img.dispose();
+	}
+
+	@Test
+	public void testWritesToHeldPlaneSurviveTrim() {
+		final PlaneCache cache = new PlaneCache(TWO_PLANES);
+		@SuppressWarnings("unchecked")
+		final CachedPlanarImg<UnsignedShortType, ShortArray> img =
+			(CachedPlanarImg<UnsignedShortType, ShortArray>) new CachedPlanarImgFactory<UnsignedShortType>(
+				cache).create(DIMENSIONS, new UnsignedShortType());
+		ShortArray held = img.getPlane(0);
+		held.setValue(0, (short) 1);
+		cache.trim(0);
+		assertEquals(0, cache.getPlaneCount());
+		assertEquals(1, cache.getPinnedPlaneCount());
+
+		// NB: modify the plane after it was evicted, then let go of it
+		held.setValue(1, (short) 2);
+		final WeakReference<ShortArray> ref = new WeakReference<ShortArray>(held);
+		held = null;
+		for (int i = 0; i < 100 && ref.get() != null; i++) {
+			System.gc();
+		}
+		assertNull("plane was not garbage collected", ref.get());
+
+		final ShortArray plane = img.getPlane(0);
+		assertEquals(1, plane.getValue(0));
+		assertEquals(2, plane.getValue(1));
+		img.dispose();
+	}
+
+	@Test
+	public void testPinnedPlanesCount() {
+		final PlaneCache cache = new PlaneCache(TWO_PLANES);
+		@SuppressWarnings("unchecked")
+		final CachedPlanarImg<UnsignedShortType, ShortArray> img =
+			(CachedPlanarImg<UnsignedShortType, ShortArray>) new CachedPlanarImgFactory<UnsignedShortType>(
+				cache).create(DIMENSIONS, new UnsignedShortType());
+		ShortArray held = img.getPlane(0);
+		assertEquals(TWO_PLANES / 2, cache.getBytes());
+		cache.trim(0);
+		assertEquals(0, cache.getPlaneCount());
+		assertEquals(TWO_PLANES / 2, cache.getBytes());
+
+		// NB: the pinned plane leaves room for just one more
+		img.getPlane(1);
+		img.getPlane(2);
+		assertEquals(1, cache.getPlaneCount());
+
+		final WeakReference<ShortArray> ref = new WeakReference<ShortArray>(held);
+		held = null;
+		for (int i = 0; i < 100 && ref.get() != null; i++) {
+			System.gc();
+		}
+		assertNull("plane was not garbage collected", ref.get());
+		for (int i = 0; i < 100 && cache.getPinnedPlaneCount() > 0; i++) {
+			System.gc();
+		}
+		assertEquals(TWO_PLANES / 2, cache.getBytes());
+		img.dispose();
+	}
+
+	@Test
+	public void testWriteTracking() {
+		final PlaneCache cache = new PlaneCache(TWO_PLANES);
+		@SuppressWarnings("unchecked")
+		final CachedPlanarImg<UnsignedShortType, ShortArray> img =
+			(CachedPlanarImg<UnsignedShortType, ShortArray>) new CachedPlanarImgFactory<UnsignedShortType>(
+				cache).create(DIMENSIONS, new UnsignedShortType());
+		final ShortArray plane = img.getPlane(0);
+		assertTrue(plane instanceof TrackedAccess);
+		plane.setValue(0, (short) 0);
+		cache.trim(0);
+		assertEquals(1, cache.getWrites());
+
+		// reading a written plane does not make it dirty again
+		assertEquals(0, img.getPlane(0).getValue(0));
+		cache.trim(0);
+		assertEquals(1, cache.getWrites());
+
+		// a plane whose array was handed out is always written back
+		img.getPlane(1).getCurrentStorageArray();
+		cache.trim(0);
+		assertEquals(2, cache.getWrites());
+		img.getPlane(1);
+		cache.trim(0);
+		assertEquals(3, cache.getWrites());
+		img.dispose();
+	}
+
+}
@@ -0,0 +1,259 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.cow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.lang.ref.WeakReference;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PlaneSharer} and the copy-on-write plane accesses.
+ */
+public class PlaneSharerTest {
+
+	private static final long[] DIMENSIONS = { 8, 4, 3 };
+
+	/** Bytes in one plane of {@link #DIMENSIONS}. */
+	private static final long PLANE_BYTES = 2 * 8 * 4;
+
+	@Test
+	public void testDuplicate() {
+		final CopyOnWriteStats stats = new CopyOnWriteStats();
+		final PlaneSharer sharer = new PlaneSharer(stats);
+		final PlanarImg<UnsignedShortType, ?> img = createImg();
+		assertTrue(sharer.isSupported(img));
+
+		final PlanarImg<UnsignedShortType, ?> copy = sharer.duplicate(img);
+		assertEquals(3, stats.getSharedPlanes());
+		assertEquals(3 * PLANE_BYTES, stats.getSharedBytes());
+		assertEquals(0, stats.getMaterializedBytes());
+		assertSameValues(img, copy);
+
+		// writing to the copy unshares only the written plane
+		set(copy, 1, 1, 1, 999);
+		assertEquals(2, stats.getSharedPlanes());
+		assertEquals(PLANE_BYTES, stats.getMaterializedBytes());
+		assertEquals(999, get(copy, 1, 1, 1));
+		assertFalse(get(img, 1, 1, 1) == 999);
+
+		// the source is now the only owner of its plane; no copy needed
+		set(img, 1, 1, 1, 555);
+		assertEquals(PLANE_BYTES, stats.getMaterializedBytes());
+		assertEquals(999, get(copy, 1, 1, 1));
+
+		// writing to the source unshares its plane as well
+		set(img, 0, 0, 2, 777);
+		assertEquals(1, stats.getSharedPlanes());
+		assertEquals(2 * PLANE_BYTES, stats.getMaterializedBytes());
+		assertFalse(get(copy, 0, 0, 2) == 777);
+	}
+
+	@Test
+	public void testPlainPlanesAreCopied() {
+		final CopyOnWriteStats stats = new CopyOnWriteStats();
+		final PlaneSharer sharer = new PlaneSharer(stats);
+		final Img<UnsignedShortType> created =
+			new PlanarImgFactory<UnsignedShortType>().create(DIMENSIONS,
+				new UnsignedShortType());
+		final PlanarImg<UnsignedShortType, ?> img =
+			(PlanarImg<UnsignedShortType, ?>) created;
+		final Cursor<UnsignedShortType> cursor = img.cursor();
+		cursor.next().set(1);
+
+		// the cursor still writes to the plain plane, which must not be shared
+		final PlanarImg<UnsignedShortType, ?> copy = sharer.duplicate(img);
+		assertEquals(0, stats.getSharedPlanes());
+		cursor.next().set(2);
+		assertEquals(1, get(copy, 0, 0, 0));
+		assertEquals(0, get(copy, 1, 0, 0));
+		assertEquals(2, get(img, 1, 0, 0));
+	}
+
+	@Test
+	public void testExposedPlanesAreCopied() {
+		final CopyOnWriteStats stats = new CopyOnWriteStats();
+		final PlaneSharer sharer = new PlaneSharer(stats);
+		final PlanarImg<UnsignedShortType, ?> img = createImg();
+		final short[] raw =
+			(short[]) ((ArrayDataAccess<?>) img.getPlane(0))
+				.getCurrentStorageArray();
+
+		final PlanarImg<UnsignedShortType, ?> copy = sharer.duplicate(img);
+		assertEquals(2, stats.getSharedPlanes());
+		raw[0] = 999;
+		assertEquals(999, get(img, 0, 0, 0));
+		assertEquals(0, get(copy, 0, 0, 0));
+	}
+
+	@Test
+	public void testDiscardedCopy() {
+		final CopyOnWriteStats stats = new CopyOnWriteStats();
+		final PlaneSharer sharer = new PlaneSharer(stats);
+		final PlanarImg<UnsignedShortType, ?> img = createImg();
+		final WeakReference<Object> ref =
+			new WeakReference<Object>(sharer.duplicate(img));
+		assertEquals(3, stats.getSharedPlanes());
+		while (ref.get() != null) {
+			System.gc();
+		}
+
+		// the collected copy no longer counts as an owner
+		set(img, 0, 0, 0, 999);
+		assertEquals(0, stats.getMaterializedBytes());
+		assertEquals(2, stats.getSharedPlanes());
+	}
+
+	@Test
+	public void testCreateBlank() {
+		final CopyOnWriteStats stats = new CopyOnWriteStats();
+		final PlaneSharer sharer = new PlaneSharer(stats);
+		final PlanarImg<UnsignedShortType, ?> img = createImg();
+
+		final PlanarImg<UnsignedShortType, ?> blank = sharer.createBlank(img);
+		assertEquals(2 * PLANE_BYTES, stats.getSharedBytes());
+		for (final UnsignedShortType t : blank) {
+			assertEquals(0, t.get());
+		}
+
+		set(blank, 3, 2, 0, 42);
+		assertEquals(42, get(blank, 3, 2, 0));
+		assertEquals(0, get(blank, 3, 2, 1));
+		assertEquals(0, get(blank, 3, 2, 2));
+		assertEquals(PLANE_BYTES, stats.getSharedBytes());
+	}
+
+	@Test
+	public void testUnsupported() {
+		final PlaneSharer sharer = new PlaneSharer(new CopyOnWriteStats());
+		final Img<UnsignedShortType> img =
+			new ArrayImgFactory<UnsignedShortType>().create(DIMENSIONS,
+				new UnsignedShortType());
+		assertFalse(sharer.isSupported(img));
+	}
+
+	@Test
+	public void testAccessSharing() {
+		final CopyOnWriteStats stats = new CopyOnWriteStats();
+		final CopyOnWriteShortArray original =
+			new CopyOnWriteShortArray(new short[] { 1, 2, 3 });
+		final CopyOnWriteShortArray copy = original.share(stats);
+		assertTrue(original.isShared());
+		assertTrue(copy.isShared());
+		assertSame(original.peekStorageArray(), copy.peekStorageArray());
+
+		// the first writer copies the array, the last owner keeps it
+		copy.setValue(0, (short) 7);
+		assertFalse(copy.isShared());
+		assertEquals(1, original.getValue(0));
+		assertEquals(7, copy.getValue(0));
+		original.setValue(1, (short) 8);
+		assertEquals(2, copy.getValue(1));
+		assertEquals(0, stats.getSharedPlanes());
+
+		// an exposed array is never shared again
+		final short[] raw = original.getCurrentStorageArray();
+		assertTrue(original.isExposed());
+		final CopyOnWriteShortArray other = original.share(stats);
+		assertFalse(other.isShared());
+		raw[2] = 9;
+		assertEquals(3, other.getValue(2));
+
+		// a detached owner gives up its share without copying
+		final CopyOnWriteShortArray second = copy.share(stats);
+		second.detach();
+		assertFalse(second.isShared());
+		assertEquals(0, stats.getSharedPlanes());
+	}
+
+	// -- Helper methods --
+
+	private PlanarImg<UnsignedShortType, ?> createImg() {
+		final Img<UnsignedShortType> created =
+			new PlanarImgFactory<UnsignedShortType>().create(DIMENSIONS,
+				new UnsignedShortType());
+		final PlanarImg<UnsignedShortType, ?> img =
+			(PlanarImg<UnsignedShortType, ?>) created;
+		new PlaneSharer(new CopyOnWriteStats()).adopt(img);
+		int i = 0;
+		for (final UnsignedShortType t : img) {
+			t.set(i++);
+		}
+		return img;
+	}
+
+	private void assertSameValues(final Img<UnsignedShortType> expected,
+		final Img<UnsignedShortType> actual)
+	{
+		final RandomAccess<UnsignedShortType> access = actual.randomAccess();
+		final Cursor<UnsignedShortType> cursor =
+			expected.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			access.setPosition(cursor);
+			assertEquals(cursor.get().get(), access.get().get());
+		}
+	}
+
+	private int get(final Img<UnsignedShortType> img, final long x,
+		final long y, final long z)
+	{
+		final RandomAccess<UnsignedShortType> access = img.randomAccess();
+		access.setPosition(new long[] { x, y, z });
+		return access.get().get();
+	}
+
+	private void set(final Img<UnsignedShortType> img, final long x,
+		final long y, final long z, final int value)
+	{
+		final RandomAccess<UnsignedShortType> access = img.randomAccess();
+		access.setPosition(new long[] { x, y, z });
+		access.get().set(value);
+	}
+
+}
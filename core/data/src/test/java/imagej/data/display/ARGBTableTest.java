@@ -0,0 +1,86 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import net.imglib2.display.RealLUTConverter;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ARGBTable}.
+ */
+public class ARGBTableTest {
+
+	@Test
+	public void testSupported() {
+		assertTrue(ARGBTable.isSupported(new UnsignedShortType()));
+		assertFalse(ARGBTable.isSupported(new FloatType()));
+	}
+
+	@Test
+	public void testMatchesConverter() {
+		final RealLUTConverter<UnsignedShortType> converter =
+			new RealLUTConverter<UnsignedShortType>(1000, 3000, ColorTables.FIRE);
+		final ARGBTable table = new ARGBTable(new UnsignedShortType(), converter);
+		assertEquals(65536, table.size());
+		final UnsignedShortType value = new UnsignedShortType();
+		final ARGBType argb = new ARGBType();
+		for (int v = 0; v < 65536; v += 7) {
+			value.set(v);
+			converter.convert(value, argb);
+			assertEquals(argb.get(), table.lookup(v));
+		}
+	}
+
+	@Test
+	public void testSigned() {
+		final RealLUTConverter<ShortType> converter =
+			new RealLUTConverter<ShortType>(-100, 100, ColorTables.GRAYS);
+		final ARGBTable table = new ARGBTable(new ShortType(), converter);
+		assertEquals(ColorTables.GRAYS.lookupARGB(-100, 100, -100), table
+			.lookup(Short.MIN_VALUE));
+		assertEquals(ColorTables.GRAYS.lookupARGB(-100, 100, 100), table
+			.lookup(Short.MAX_VALUE));
+	}
+
+}
@@ -0,0 +1,303 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import imagej.data.ParallelLoop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.ARGBScreenImage;
+import net.imglib2.display.ColorTable8;
+import net.imglib2.display.CompositeXYProjector;
+import net.imglib2.display.RealLUTConverter;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Unit tests for {@link DatasetProjector}.
+ */
+public class DatasetProjectorTest {
+
+	private static final int SIZE = 1000;
+
+	private static final int WHITE = 0xffffffff;
+
+	private static final int GRAY = 0xff646464;
+
+	@Test
+	public void testUnrestricted() {
+		final ARGBScreenImage screen = new ARGBScreenImage(SIZE, SIZE);
+		final DatasetProjector<UnsignedByteType> projector =
+			createProjector(screen);
+		projector.map();
+		assertEquals(16, projector.getMappedTileCount());
+		assertEquals(WHITE, pixel(screen, SIZE - 1, SIZE - 1));
+	}
+
+	@Test
+	public void testViewport() {
+		final ARGBScreenImage screen = new ARGBScreenImage(SIZE, SIZE);
+		final DatasetProjector<UnsignedByteType> projector =
+			createProjector(screen);
+		projector.setViewport(0, 0, 99, 99);
+		projector.map();
+
+		// only the tile under the viewport (and its margin) is rendered
+		assertEquals(1, projector.getMappedTileCount());
+		assertEquals(WHITE, pixel(screen, 50, 50));
+		assertEquals(0, pixel(screen, SIZE - 1, SIZE - 1));
+
+		// panning renders the newly exposed tiles
+		projector.setViewport(400, 0, 499, 99);
+		projector.mapStale();
+		assertEquals(3, projector.getMappedTileCount());
+		assertEquals(WHITE, pixel(screen, 450, 50));
+
+		// pixels away from the viewport are rendered on demand
+		projector.ensureMapped();
+		assertEquals(16, projector.getMappedTileCount());
+		assertEquals(WHITE, pixel(screen, SIZE - 1, SIZE - 1));
+
+		// changing plane marks everything outside of the viewport stale again
+		projector.map();
+		assertEquals(2, projector.getMappedTileCount());
+	}
+
+	@Test
+	public void testProjectAndPresent() {
+		final ARGBScreenImage screen = new ARGBScreenImage(SIZE, SIZE);
+		final DatasetProjector<UnsignedByteType> projector =
+			createProjector(screen, 2);
+		projector.setViewport(0, 0, 99, 99);
+		projector.map();
+		assertEquals(WHITE, pixel(screen, 50, 50));
+
+		// projecting another plane leaves the screen image alone
+		final ProjectedFrame frame =
+			projector.project(new long[] { 0, 0, 1 }, null);
+		assertEquals(WHITE, pixel(screen, 50, 50));
+		assertEquals(GRAY, pixel(frame.getImage(), 50, 50));
+
+		projector.setPosition(1, 2);
+		assertTrue(projector.present(frame));
+		assertEquals(GRAY, pixel(screen, 50, 50));
+		assertEquals(1, projector.getMappedTileCount());
+
+		// frames no longer matching the viewport are refused
+		projector.setViewport(600, 600, 699, 699);
+		assertFalse(projector.present(frame));
+	}
+
+	@Test
+	public void testFrameLock() throws InterruptedException {
+		final ARGBScreenImage screen = new ARGBScreenImage(SIZE, SIZE);
+		final DatasetProjector<UnsignedByteType> projector =
+			createProjector(screen, 2);
+		projector.setDoubleBuffered(true);
+		projector.map();
+		final Thread renderer = new Thread() {
+
+			@Override
+			public void run() {
+				projector.setPosition(1, 2);
+				projector.map();
+			}
+		};
+		synchronized (projector.getFrameLock()) {
+			final ARGBScreenImage front = projector.getScreenImage();
+			assertEquals(WHITE, pixel(front, 50, 50));
+			renderer.start();
+			// the rendered frame is not swapped in while the lock is held
+			while (renderer.getState() != Thread.State.BLOCKED) {
+				Thread.sleep(1);
+			}
+			assertSame(front, projector.getScreenImage());
+			assertEquals(WHITE, pixel(front, 50, 50));
+		}
+		renderer.join();
+		assertEquals(GRAY, pixel(projector.getScreenImage(), 50, 50));
+	}
+
+	@Test
+	public void testTakeDamage() {
+		final ARGBScreenImage screen = new ARGBScreenImage(SIZE, SIZE);
+		final DatasetProjector<UnsignedByteType> projector =
+			createProjector(screen);
+
+		// a full render damages every row of tiles, clipped to the screen
+		projector.map();
+		List<Interval> damage = projector.takeDamage();
+		assertEquals(4, damage.size());
+		assertInterval(damage.get(0), 0, 0, SIZE - 1, 255);
+		assertInterval(damage.get(3), 0, 768, SIZE - 1, SIZE - 1);
+		assertTrue(projector.takeDamage().isEmpty());
+
+		// a sub-region damages only the tiles it touches, merged along the row
+		projector.map(300, 300, 600, 310);
+		damage = projector.takeDamage();
+		assertEquals(1, damage.size());
+		assertInterval(damage.get(0), 256, 256, 767, 511);
+		assertTrue(projector.takeDamage().isEmpty());
+
+		// separate tiles of the same row are reported separately
+		projector.map(10, 10, 20, 20);
+		projector.map(800, 10, 820, 20);
+		damage = projector.takeDamage();
+		assertEquals(2, damage.size());
+		assertInterval(damage.get(0), 0, 0, 255, 255);
+		assertInterval(damage.get(1), 768, 0, SIZE - 1, 255);
+		assertTrue(projector.takeDamage().isEmpty());
+	}
+
+	@Test
+	public void testParallelComposite() {
+		final Img<UnsignedByteType> img = createComposite(SIZE, SIZE, 7);
+		final ArrayList<Converter<UnsignedByteType, ARGBType>> converters =
+			createConverters(7);
+
+		final ARGBScreenImage expected = new ARGBScreenImage(SIZE, SIZE);
+		final CompositeXYProjector<UnsignedByteType> reference =
+			new CompositeXYProjector<UnsignedByteType>(img, expected, converters, 2);
+		reference.setComposite(true);
+		reference.map();
+
+		final Context context = new Context(ThreadService.class);
+		try {
+			final ARGBScreenImage screen = new ARGBScreenImage(SIZE, SIZE);
+			final DatasetProjector<UnsignedByteType> projector =
+				new DatasetProjector<UnsignedByteType>(img, screen, converters, 2);
+			projector.setComposite(true);
+			projector.setParallelLoop(new ParallelLoop(context
+				.getService(ThreadService.class), 4));
+			projector.map();
+			assertArrayEquals(expected.getData(), screen.getData());
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	// -- Helper methods --
+
+	private DatasetProjector<UnsignedByteType> createProjector(
+		final ARGBScreenImage screen)
+	{
+		return createProjector(screen, 1);
+	}
+
+	/**
+	 * Creates a projector over an image whose first plane is white and whose
+	 * other planes are {@link #GRAY}.
+	 */
+	private DatasetProjector<UnsignedByteType> createProjector(
+		final ARGBScreenImage screen, final int planes)
+	{
+		final Img<UnsignedByteType> img =
+			new ArrayImgFactory<UnsignedByteType>().create(new long[] { SIZE, SIZE,
+				planes }, new UnsignedByteType());
+		final Cursor<UnsignedByteType> cursor = img.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.get().set(cursor.getLongPosition(2) == 0 ? 255 : 100);
+		}
+		final ArrayList<Converter<UnsignedByteType, ARGBType>> converters =
+			new ArrayList<Converter<UnsignedByteType, ARGBType>>();
+		converters.add(new RealLUTConverter<UnsignedByteType>(0, 255,
+			ColorTables.GRAYS));
+		return new DatasetProjector<UnsignedByteType>(img, screen, converters, -1);
+	}
+
+	/** Creates a composite image of random values. */
+	static Img<UnsignedByteType> createComposite(final int width,
+		final int height, final int channels)
+	{
+		final Img<UnsignedByteType> img =
+			new ArrayImgFactory<UnsignedByteType>().create(new long[] { width,
+				height, channels }, new UnsignedByteType());
+		final Random random = new Random(42);
+		for (final UnsignedByteType t : img) {
+			t.set(random.nextInt(256));
+		}
+		return img;
+	}
+
+	/** Creates a converter per channel, cycling through the primary colors. */
+	static ArrayList<Converter<UnsignedByteType, ARGBType>> createConverters(
+		final int channels)
+	{
+		final ColorTable8[] tables =
+			{ ColorTables.RED, ColorTables.GREEN, ColorTables.BLUE,
+				ColorTables.CYAN, ColorTables.MAGENTA, ColorTables.YELLOW,
+				ColorTables.GRAYS };
+		final ArrayList<Converter<UnsignedByteType, ARGBType>> converters =
+			new ArrayList<Converter<UnsignedByteType, ARGBType>>();
+		for (int c = 0; c < channels; c++) {
+			converters.add(new RealLUTConverter<UnsignedByteType>(0, 255,
+				tables[c % tables.length]));
+		}
+		return converters;
+	}
+
+	private void assertInterval(final Interval interval, final long minX,
+		final long minY, final long maxX, final long maxY)
+	{
+		assertEquals(minX, interval.min(0));
+		assertEquals(minY, interval.min(1));
+		assertEquals(maxX, interval.max(0));
+		assertEquals(maxY, interval.max(1));
+	}
+
+	private int pixel(final ARGBScreenImage screen, final int x, final int y) {
+		return screen.getData()[y * SIZE + x];
+	}
+
+}
@@ -0,0 +1,254 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.display;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import imagej.data.Extents;
+import imagej.data.overlay.Overlay;
+import imagej.data.overlay.RectangleOverlay;
+import imagej.util.RealRect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.event.EventService;
+
+/**
+ * Unit tests for {@link OverlayIndex}.
+ */
+public class OverlayIndexTest {
+
+	/** Number of overlays per row and column of the grid. */
+	private static final int GRID = 20;
+
+	private Context context;
+	private ImageDisplay display;
+	private OverlayIndex index;
+
+	@Before
+	public void setUp() {
+		context = new Context(EventService.class);
+		display = new DefaultImageDisplay();
+		display.setContext(context);
+		index = new OverlayIndex(display);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testInsertAndSplit() {
+		fillGrid();
+		assertEquals(GRID * GRID, index.size());
+
+		// enough entries to split the root several times over
+		assertQueries(new Random(1));
+		assertEquals(Arrays.asList(display.get(0).getData()), index.getOverlays(
+			new RealRect(0, 0, 1, 1)));
+	}
+
+	@Test
+	public void testDeleteAndCondense() {
+		fillGrid();
+		index.size();
+
+		// remove every other row, dissolving many of the leaves
+		final List<DataView> views = new ArrayList<DataView>(display);
+		for (int i = 0; i < views.size(); i++) {
+			if (i / GRID % 2 != 0) continue;
+			display.remove(views.get(i));
+			index.remove(views.get(i));
+		}
+		assertEquals(GRID * GRID / 2, index.size());
+		assertQueries(new Random(2));
+		assertTrue(index.getOverlays(0, 0).isEmpty());
+
+		for (final DataView view : new ArrayList<DataView>(display)) {
+			display.remove(view);
+			index.remove(view);
+		}
+		assertEquals(0, index.size());
+		assertNull(index.getNearestOverlay(0, 0));
+		assertTrue(index.getOverlays(new RealRect(0, 0, 1000, 1000)).isEmpty());
+	}
+
+	@Test
+	public void testUpdateAfterMove() {
+		fillGrid();
+		final RectangleOverlay overlay =
+			(RectangleOverlay) display.get(0).getData();
+		assertEquals(Arrays.<Overlay> asList(overlay), index.getOverlays(2, 2));
+
+		overlay.move(new double[] { 1000, 1000 });
+		index.update(overlay);
+		assertTrue(index.getOverlays(2, 2).isEmpty());
+		assertEquals(Arrays.<Overlay> asList(overlay), index.getOverlays(1002,
+			1002));
+		assertSame(overlay, index.getNearestOverlay(2000, 2000));
+		assertQueries(new Random(3));
+	}
+
+	@Test
+	public void testPointAndNearest() {
+		fillGrid();
+
+		// a point inside an overlay, and one shared by two touching overlays
+		assertEquals(Arrays.asList(display.get(GRID + 1).getData()), index
+			.getOverlays(12, 12));
+		final RectangleOverlay wide = addRectangle(3, 3, 10, 0);
+		final List<Overlay> found = index.getOverlays(10, 3);
+		assertEquals(Arrays.asList(display.get(1).getData(), wide), found);
+
+		// points between overlays are nearest to the closest bounds
+		assertSame(display.get(1).getData(), index.getNearestOverlay(10, 7));
+		assertSame(display.get(GRID).getData(), index.getNearestOverlay(2, 7.9));
+		assertSame(display.get(GRID * GRID - 1).getData(), index
+			.getNearestOverlay(1000, 1000));
+
+		// ties go to the overlay first in display order
+		assertSame(display.get(0).getData(), index.getNearestOverlay(3, 3));
+	}
+
+	@Test
+	public void testSelection() {
+		fillGrid();
+		display.get(5).setSelected(true);
+		display.get(3).setSelected(true);
+		assertEquals(Arrays.asList(display.get(3).getData(), display.get(5)
+			.getData()), index.getSelectedOverlays());
+
+		// changes are tracked without rebuilding the index
+		index.setSelected(display.get(5), false);
+		index.setSelected(display.get(7), true);
+		assertEquals(Arrays.asList(display.get(3).getData(), display.get(7)
+			.getData()), index.getSelectedOverlays());
+		assertEquals(2, index.getSelectedViews().size());
+
+		// removed views are no longer selected
+		final DataView view = display.get(3);
+		display.remove(view);
+		index.remove(view);
+		assertEquals(Arrays.asList(display.get(6).getData()), index
+			.getSelectedOverlays());
+	}
+
+	@Test
+	public void testDisplayChanges() {
+		fillGrid();
+		final long count = display.getModificationCount();
+		assertEquals(GRID * GRID, index.size());
+
+		// views added to the display are picked up
+		final RectangleOverlay overlay = addRectangle(2000, 2000, 5, 5);
+		assertTrue(display.getModificationCount() > count);
+		assertEquals(GRID * GRID + 1, index.size());
+		assertSame(overlay, index.getNearestOverlay(3000, 3000));
+
+		// a deleted overlay leaves the index before its views leave the display
+		final DataView view = display.get(0);
+		index.remove((Overlay) view.getData());
+		assertEquals(GRID * GRID, index.size());
+		assertTrue(index.getOverlays(2, 2).isEmpty());
+		display.remove(view);
+		assertEquals(GRID * GRID, index.size());
+		assertTrue(index.getOverlays(2, 2).isEmpty());
+		assertQueries(new Random(4));
+	}
+
+	// -- Helper methods --
+
+	/** Adds a grid of small overlays, 10 pixels apart. */
+	private void fillGrid() {
+		for (int y = 0; y < GRID; y++) {
+			for (int x = 0; x < GRID; x++) {
+				addRectangle(10 * x, 10 * y, 5, 5);
+			}
+		}
+	}
+
+	private RectangleOverlay addRectangle(final double x, final double y,
+		final double width, final double height)
+	{
+		final RectangleOverlay overlay = new RectangleOverlay(context);
+		overlay.setOrigin(x, 0);
+		overlay.setOrigin(y, 1);
+		overlay.setExtent(width, 0);
+		overlay.setExtent(height, 1);
+		final DataView view = new DefaultOverlayView();
+		view.setContext(context);
+		view.initialize(overlay);
+		display.add(view);
+		return overlay;
+	}
+
+	/** Compares random region queries against testing every overlay. */
+	private void assertQueries(final Random random) {
+		for (int i = 0; i < 50; i++) {
+			final RealRect region =
+				new RealRect(random.nextInt(220) - 10, random.nextInt(220) - 10,
+					random.nextInt(60), random.nextInt(60));
+			assertEquals(getOverlays(region), index.getOverlays(region));
+		}
+	}
+
+	/** Finds the overlays intersecting the region the slow way. */
+	private List<Overlay> getOverlays(final RealRect region) {
+		final List<Overlay> overlays = new ArrayList<Overlay>();
+		for (final DataView view : display) {
+			final Extents e = view.getData().getExtents();
+			if (e.realMin(0) <= region.x + region.width &&
+				e.realMax(0) >= region.x && e.realMin(1) <= region.y + region.height &&
+				e.realMax(1) >= region.y)
+			{
+				overlays.add((Overlay) view.getData());
+			}
+		}
+		return overlays;
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import imagej.data.DirtyRegion;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PlanePyramid}.
+ */
+public class PlanePyramidTest {
+
+	@Test
+	public void testLevels() {
+		final PlanePyramid pyramid =
+			new PlanePyramid(createImage(1000, 300, 1), new PyramidCache(1 << 24),
+				false);
+		// 1000, 500, 250, 125 and 63 (below the minimum) pixels wide
+		assertEquals(4, pyramid.getLevelCount());
+		assertEquals(500, pyramid.getWidth(1));
+		assertEquals(38, pyramid.getHeight(3));
+		assertEquals(0, pyramid.getLevel(1));
+		assertEquals(0, pyramid.getLevel(0.75));
+		assertEquals(1, pyramid.getLevel(0.5));
+		assertEquals(2, pyramid.getLevel(0.25));
+		assertEquals(3, pyramid.getLevel(0.01));
+	}
+
+	@Test
+	public void testMeanAndMax() {
+		final Img<FloatType> img = createImage(128, 128, 1);
+		final PlanePyramid mean =
+			new PlanePyramid(img, new PyramidCache(1 << 24), false);
+		final PlanePyramid max =
+			new PlanePyramid(img, new PyramidCache(1 << 24), true);
+		final long[] pos = new long[3];
+		// pixel (x, y) holds x + y: block (0, 0) holds 0, 1, 1 and 2
+		assertEquals(1, mean.getPlane(pos, 1)[0], 0);
+		assertEquals(2, max.getPlane(pos, 1)[0], 0);
+		// level 2 pixel (1, 0) covers x in [4, 7] and y in [0, 3]
+		assertEquals(7, mean.getPlane(pos, 2)[1], 0);
+		assertEquals(10, max.getPlane(pos, 2)[1], 0);
+	}
+
+	@Test
+	public void testInvalidate() {
+		final Img<FloatType> img = createImage(128, 128, 2);
+		final PlanePyramid pyramid =
+			new PlanePyramid(img, new PyramidCache(1 << 24), false);
+		final long[] pos = { 0, 0, 1 };
+		assertEquals(3, pyramid.getPlane(pos, 2)[0], 0);
+
+		// change a block of the second plane
+		final RandomAccess<FloatType> access = img.randomAccess();
+		access.setPosition(pos);
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 4; x++) {
+				access.setPosition(x, 0);
+				access.setPosition(y, 1);
+				access.get().set(100);
+			}
+		}
+		// levels are not rebuilt until invalidated
+		assertEquals(3, pyramid.getPlane(pos, 2)[0], 0);
+		pyramid.invalidate(new DirtyRegion(new FinalInterval(new long[] { 0, 0,
+			1 }, new long[] { 3, 3, 1 })));
+		assertEquals(100, pyramid.getPlane(pos, 2)[0], 0);
+		assertEquals(100, pyramid.getPlane(pos, 1)[0], 0);
+	}
+
+	@Test
+	public void testEviction() {
+		final int levelBytes = 4 * 64 * 64;
+		final PyramidCache cache = new PyramidCache(3 * levelBytes);
+		final PlanePyramid pyramid =
+			new PlanePyramid(createImage(128, 128, 10), cache, false);
+		for (int z = 0; z < 10; z++) {
+			pyramid.getPlane(new long[] { 0, 0, z }, 1);
+		}
+		assertEquals(3, cache.getLevelCount());
+		assertTrue(cache.getBytes() <= 3 * levelBytes);
+		assertEquals(7, cache.getEvictions());
+		pyramid.clear();
+		assertEquals(0, cache.getBytes());
+	}
+
+	// -- Helper methods --
+
+	private Img<FloatType> createImage(final int w, final int h, final int z) {
+		final Img<FloatType> img =
+			new ArrayImgFactory<FloatType>().create(new long[] { w, h, z },
+				new FloatType());
+		final RandomAccess<FloatType> access = img.randomAccess();
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				access.setPosition(x, 0);
+				access.setPosition(y, 1);
+				for (int p = 0; p < z; p++) {
+					access.setPosition(p, 2);
+					access.get().set(x + y);
+				}
+			}
+		}
+		return img;
+	}
+
+}
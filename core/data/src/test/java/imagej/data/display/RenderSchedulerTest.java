@@ -0,0 +1,166 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Unit tests for {@link RenderScheduler}.
+ */
+public class RenderSchedulerTest {
+
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = new Context(ThreadService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testSynchronous() {
+		final TestRenderer renderer = new TestRenderer(null);
+		final RenderScheduler scheduler = new RenderScheduler(renderer, null);
+		scheduler.request();
+		scheduler.request(new long[] { 0, 0, 9, 9 });
+		assertEquals(2, scheduler.getFrameCount());
+		assertEquals(0, scheduler.getDroppedFrameCount());
+		assertEquals(2, renderer.frames.size());
+	}
+
+	@Test
+	public void testSynchronousByDefault() {
+		final TestRenderer renderer = new TestRenderer(null);
+		final RenderScheduler scheduler =
+			new RenderScheduler(renderer, context.getService(ThreadService.class));
+		assertFalse(scheduler.isAsynchronous());
+		scheduler.request();
+		// the frame is rendered by the time the request returns
+		assertEquals(1, scheduler.getFrameCount());
+		assertFalse(scheduler.isBusy());
+	}
+
+	@Test
+	public void testCoalescing() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final TestRenderer renderer = new TestRenderer(new Runnable() {
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				}
+				catch (final InterruptedException exc) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		final RenderScheduler scheduler =
+			new RenderScheduler(renderer, context.getService(ThreadService.class));
+		scheduler.setAsynchronous(true);
+
+		// the first request starts rendering right away
+		scheduler.request(new long[] { 0, 0, 9, 9 });
+		started.await();
+
+		// requests made meanwhile are merged into one
+		scheduler.request(new long[] { 5, 5, 20, 20 });
+		scheduler.request(new long[] { 30, 2, 40, 8 });
+		scheduler.request(new long[] { 1, 1, 1, 1 });
+		release.countDown();
+		scheduler.flush();
+
+		assertFalse(scheduler.isBusy());
+		assertEquals(4, scheduler.getRequestCount());
+		assertEquals(2, scheduler.getFrameCount());
+		assertEquals(2, scheduler.getDroppedFrameCount());
+		assertEquals(2, renderer.frames.size());
+		assertArrayEquals(new long[] { 1, 1, 40, 20 }, renderer.frames.get(1));
+	}
+
+	@Test
+	public void testFullRequest() {
+		final TestRenderer renderer = new TestRenderer(null);
+		final RenderScheduler scheduler = new RenderScheduler(renderer, null);
+		scheduler.request();
+		assertNull(renderer.frames.get(0));
+	}
+
+	// -- Helper classes --
+
+	private static class TestRenderer implements RenderScheduler.Renderer {
+
+		private final Runnable onRender;
+		private final List<long[]> frames =
+			Collections.synchronizedList(new ArrayList<long[]>());
+
+		public TestRenderer(final Runnable onRender) {
+			this.onRender = onRender;
+		}
+
+		@Override
+		public void render(final long[] bounds) {
+			frames.add(bounds);
+			if (onRender != null && frames.size() == 1) onRender.run();
+		}
+
+		@Override
+		public void rendered() {
+			// NB: No action needed.
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import static org.junit.Assert.assertArrayEquals;
+import imagej.data.ParallelLoop;
+
+import java.util.ArrayList;
+
+import net.imglib2.converter.Converter;
+import net.imglib2.display.ARGBScreenImage;
+import net.imglib2.display.CompositeXYProjector;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Compares the speed of composite projection by {@link CompositeXYProjector}
+ * and by {@link DatasetProjector}, single-threaded and in parallel bands.
+ */
+public class TestCompositeProjectionSpeeds {
+
+	static final int X = 2048;
+	static final int Y = 2048;
+	static final int CHANNELS = 7;
+
+	@Test
+	public void testCompositeProjectionSpeeds() {
+		final Img<UnsignedByteType> img =
+			DatasetProjectorTest.createComposite(X, Y, CHANNELS);
+		final ArrayList<Converter<UnsignedByteType, ARGBType>> converters =
+			DatasetProjectorTest.createConverters(CHANNELS);
+
+		final ARGBScreenImage expected = new ARGBScreenImage(X, Y);
+		final CompositeXYProjector<UnsignedByteType> reference =
+			new CompositeXYProjector<UnsignedByteType>(img, expected, converters,
+				2);
+		reference.setComposite(true);
+		speedTest(reference, "CompositeXYProjector");
+
+		final Context context = new Context(ThreadService.class);
+		try {
+			final ARGBScreenImage serialScreen = new ARGBScreenImage(X, Y);
+			final DatasetProjector<UnsignedByteType> serial =
+				new DatasetProjector<UnsignedByteType>(img, serialScreen, converters,
+					2);
+			serial.setComposite(true);
+			speedTest(serial, "DatasetProjector, 1 thread");
+			assertArrayEquals(expected.getData(), serialScreen.getData());
+
+			final int threads = Runtime.getRuntime().availableProcessors();
+			final ARGBScreenImage parallelScreen = new ARGBScreenImage(X, Y);
+			final DatasetProjector<UnsignedByteType> parallel =
+				new DatasetProjector<UnsignedByteType>(img, parallelScreen,
+					converters, 2);
+			parallel.setComposite(true);
+			parallel.setParallelLoop(new ParallelLoop(context
+				.getService(ThreadService.class), threads));
+			speedTest(parallel, "DatasetProjector, " + threads + " threads");
+			assertArrayEquals(expected.getData(), parallelScreen.getData());
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	// -- helpers --
+
+	private void speedTest(final CompositeXYProjector<?> projector,
+		final String testName)
+	{
+		// NB: warm up the JIT first
+		for (int i = 0; i < 3; i++)
+			projector.map();
+		final long start = System.currentTimeMillis();
+		projector.map();
+		final long stop = System.currentTimeMillis();
+		System.out.println(testName + " : elapsed time = " + (stop - start));
+	}
+
+}
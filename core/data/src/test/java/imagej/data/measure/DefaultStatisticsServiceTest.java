@@ -0,0 +1,247 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.ParallelLoop;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.ops.function.Function;
+import net.imglib2.ops.function.real.RealArithmeticMeanFunction;
+import net.imglib2.ops.function.real.RealImageFunction;
+import net.imglib2.ops.function.real.RealMaxFunction;
+import net.imglib2.ops.function.real.RealMedianFunction;
+import net.imglib2.ops.function.real.RealMidpointFunction;
+import net.imglib2.ops.function.real.RealMinFunction;
+import net.imglib2.ops.function.real.RealPopulationKurtosisExcessFunction;
+import net.imglib2.ops.function.real.RealPopulationKurtosisFunction;
+import net.imglib2.ops.function.real.RealPopulationSkewFunction;
+import net.imglib2.ops.function.real.RealPopulationVarianceFunction;
+import net.imglib2.ops.function.real.RealSampleKurtosisExcessFunction;
+import net.imglib2.ops.function.real.RealSampleKurtosisFunction;
+import net.imglib2.ops.function.real.RealSampleSkewFunction;
+import net.imglib2.ops.function.real.RealSampleStdDevFunction;
+import net.imglib2.ops.function.real.RealSumFunction;
+import net.imglib2.ops.function.real.RealSumOfSquaredDeviationsFunction;
+import net.imglib2.ops.function.real.RealTrimmedMeanFunction;
+import net.imglib2.ops.pointset.HyperVolumePointSet;
+import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.ops.pointset.RoiPointSet;
+import net.imglib2.roi.RectangleRegionOfInterest;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Unit tests for the parallel reductions of {@link DefaultStatisticsService}.
+ */
+public class DefaultStatisticsServiceTest {
+
+	private static final double TOL = 1e-9;
+
+	/** Tolerance for the third and fourth moments, which lose more precision. */
+	private static final double HIGHER_TOL = 1e-6;
+
+	private Context context;
+	private StatisticsService statisticsService;
+	private Dataset dataset;
+
+	@Before
+	public void setUp() {
+		context =
+			new Context(DatasetService.class, StatisticsService.class,
+				ThreadService.class);
+		statisticsService = context.getService(StatisticsService.class);
+		dataset =
+			context.getService(DatasetService.class).create(new FloatType(),
+				new long[] { 400, 300 }, "stats", new AxisType[] { Axes.X, Axes.Y });
+		final Random random = new Random(42);
+		final Cursor<? extends RealType<?>> cursor =
+			dataset.getImgPlus().cursor();
+		while (cursor.hasNext()) {
+			cursor.next().setReal(1e4 + 100 * random.nextGaussian());
+		}
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testMatchesOpsFunctions() {
+		final PointSet region = statisticsService.allOf(dataset);
+		final RealImageFunction<?, DoubleType> imgFunc = imgFunc(dataset);
+		assertMatches(new RealArithmeticMeanFunction<DoubleType>(imgFunc),
+			statisticsService.arithmeticMean(dataset, region), region);
+		assertMatches(new RealMinFunction<DoubleType>(imgFunc), statisticsService
+			.minimum(dataset, region), region);
+		assertMatches(new RealMaxFunction<DoubleType>(imgFunc), statisticsService
+			.maximum(dataset, region), region);
+		assertMatches(new RealSumFunction<DoubleType>(imgFunc), statisticsService
+			.sum(dataset, region), region);
+		assertMatches(new RealSumOfSquaredDeviationsFunction<DoubleType>(imgFunc),
+			statisticsService.sumOfSquaredDeviations(dataset, region), region);
+		assertMatches(new RealPopulationVarianceFunction<DoubleType>(imgFunc),
+			statisticsService.populationVariance(dataset, region), region);
+		assertMatches(new RealSampleStdDevFunction<DoubleType>(imgFunc),
+			statisticsService.sampleStdDev(dataset, region), region);
+		assertMatches(new RealMidpointFunction<DoubleType>(imgFunc),
+			statisticsService.midpoint(dataset, region), region);
+		assertMatches(new RealSampleSkewFunction<DoubleType>(imgFunc),
+			statisticsService.sampleSkew(dataset, region), region, HIGHER_TOL);
+		assertMatches(new RealPopulationSkewFunction<DoubleType>(imgFunc),
+			statisticsService.populationSkew(dataset, region), region, HIGHER_TOL);
+		assertMatches(new RealSampleKurtosisFunction<DoubleType>(imgFunc),
+			statisticsService.sampleKurtosis(dataset, region), region, HIGHER_TOL);
+		assertMatches(new RealPopulationKurtosisFunction<DoubleType>(imgFunc),
+			statisticsService.populationKurtosis(dataset, region), region,
+			HIGHER_TOL);
+		assertMatches(new RealSampleKurtosisExcessFunction<DoubleType>(imgFunc),
+			statisticsService.sampleKurtosisExcess(dataset, region), region,
+			HIGHER_TOL);
+		assertMatches(
+			new RealPopulationKurtosisExcessFunction<DoubleType>(imgFunc),
+			statisticsService.populationKurtosisExcess(dataset, region), region,
+			HIGHER_TOL);
+	}
+
+	@Test
+	public void testSerialEqualsParallel() {
+		final PointSet box =
+			new HyperVolumePointSet(new long[] { 5, 7 }, new long[] { 390, 280 });
+		final PointSet roi =
+			new RoiPointSet(new RectangleRegionOfInterest(new double[] { 10, 20 },
+				new double[] { 300, 250 }));
+		for (final PointSet region : new PointSet[] { box, roi }) {
+			final Moments serial =
+				statisticsService.moments(dataset, region, reducer(0));
+			final Moments parallel =
+				statisticsService.moments(dataset, region, reducer(4));
+			assertEquals(serial.getCount(), parallel.getCount());
+			assertEquals(serial.getMin(), parallel.getMin(), 0);
+			assertEquals(serial.getMax(), parallel.getMax(), 0);
+			assertEquals(serial.getMean(), parallel.getMean(), TOL *
+				serial.getMean());
+			assertEquals(serial.getSampleVariance(), parallel.getSampleVariance(),
+				TOL * serial.getSampleVariance());
+			assertEquals(serial.getSampleSkew(), parallel.getSampleSkew(), 1e-6);
+			assertEquals(serial.getSampleKurtosis(), parallel.getSampleKurtosis(),
+				1e-6);
+		}
+		assertEquals(386 * 274, statisticsService.moments(dataset, box).getCount());
+	}
+
+	@Test
+	public void testExactRankStatistics() {
+		final Dataset shorts =
+			context.getService(DatasetService.class).create(
+				new UnsignedShortType(), new long[] { 303, 301 }, "shorts",
+				new AxisType[] { Axes.X, Axes.Y });
+		final Random random = new Random(7);
+		final Cursor<? extends RealType<?>> cursor = shorts.getImgPlus().cursor();
+		while (cursor.hasNext()) {
+			cursor.next().setReal(random.nextInt(5000));
+		}
+		final PointSet region = statisticsService.allOf(shorts);
+		final RealImageFunction<?, DoubleType> imgFunc = imgFunc(shorts);
+		final OrderStatistics stats =
+			statisticsService.orderStatistics(shorts, region,
+				QuantileMethod.EXACT, reducer(4));
+		assertTrue(stats instanceof IntegerHistogram);
+		assertMatches(new RealMedianFunction<DoubleType>(imgFunc),
+			statisticsService.median(shorts, region), region);
+		assertMatches(new RealTrimmedMeanFunction<DoubleType>(imgFunc, 1000),
+			statisticsService.trimmedMean(shorts, region, 1000), region);
+	}
+
+	@Test
+	public void testApproximateRankStatistics() {
+		final PointSet region = statisticsService.allOf(dataset);
+		assertNull(statisticsService.orderStatistics(dataset, region,
+			QuantileMethod.EXACT, reducer(4)));
+		final DoubleType expected = new DoubleType();
+		new RealMedianFunction<DoubleType>(imgFunc(dataset)).compute(region,
+			expected);
+		// within 1% of the ranks of the median, for a standard deviation of 100
+		assertEquals(expected.get(), statisticsService.median(dataset, region,
+			QuantileMethod.APPROXIMATE), 5);
+	}
+
+	// -- Helper methods --
+
+	/** Creates a reducer using the given number of threads (0 for serial). */
+	private RegionReducer reducer(final int threads) {
+		return new RegionReducer(threads == 0 ? null : new ParallelLoop(context
+			.getService(ThreadService.class), threads));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private RealImageFunction<?, DoubleType> imgFunc(final Dataset ds) {
+		return new RealImageFunction(ds.getImgPlus(), new DoubleType());
+	}
+
+	private void assertMatches(final Function<PointSet, DoubleType> func,
+		final double actual, final PointSet region)
+	{
+		assertMatches(func, actual, region, TOL);
+	}
+
+	private void assertMatches(final Function<PointSet, DoubleType> func,
+		final double actual, final PointSet region, final double tolerance)
+	{
+		final DoubleType expected = new DoubleType();
+		func.compute(region, expected);
+		assertEquals(expected.get(), actual, tolerance *
+			Math.max(1, Math.abs(expected.get())));
+	}
+
+}
@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.ops.function.Function;
+import net.imglib2.ops.function.real.RealArithmeticMeanFunction;
+import net.imglib2.ops.function.real.RealImageFunction;
+import net.imglib2.ops.function.real.RealMaxFunction;
+import net.imglib2.ops.function.real.RealMinFunction;
+import net.imglib2.ops.function.real.RealPopulationVarianceFunction;
+import net.imglib2.ops.function.real.RealSampleVarianceFunction;
+import net.imglib2.ops.function.real.RealSumFunction;
+import net.imglib2.ops.pointset.HyperVolumePointSet;
+import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.ops.pointset.PointSetIterator;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for fused measurement of {@link StatisticFunction}s.
+ */
+public class MeasurementSetFunctionTest {
+
+	private static final double TOL = 1e-9;
+
+	@Test
+	public void testMatchesOpsFunctions() {
+		final Img<DoubleType> img = createImg(40, 30);
+		final RealImageFunction<DoubleType, DoubleType> imgFunc =
+			new RealImageFunction<DoubleType, DoubleType>(img, new DoubleType());
+		final PointSet region =
+			new HyperVolumePointSet(new long[] { 3, 4 }, new long[] { 25, 17 });
+
+		final List<Function<PointSet, DoubleType>> expected =
+			new ArrayList<Function<PointSet, DoubleType>>();
+		expected.add(new RealArithmeticMeanFunction<DoubleType>(imgFunc));
+		expected.add(new RealMinFunction<DoubleType>(imgFunc));
+		expected.add(new RealMaxFunction<DoubleType>(imgFunc));
+		expected.add(new RealSumFunction<DoubleType>(imgFunc));
+		expected.add(new RealPopulationVarianceFunction<DoubleType>(imgFunc));
+		expected.add(new RealSampleVarianceFunction<DoubleType>(imgFunc));
+		final Statistic[] stats =
+			{ Statistic.ARITHMETIC_MEAN, Statistic.MIN, Statistic.MAX,
+				Statistic.SUM, Statistic.POPULATION_VARIANCE,
+				Statistic.SAMPLE_VARIANCE };
+
+		final MeasurementSet<DoubleType> direct = new MeasurementSet<DoubleType>();
+		final MeasurementSet<DoubleType> viaFunc =
+			new MeasurementSet<DoubleType>();
+		for (final Statistic stat : stats) {
+			direct.add(new StatisticFunction<DoubleType>(stat, img,
+				new DoubleType()), new DoubleType());
+			viaFunc.add(new StatisticFunction<DoubleType>(stat, imgFunc),
+				new DoubleType());
+		}
+		new MeasurementSetFunction<DoubleType>(direct).compute(region, direct);
+		new MeasurementSetFunction<DoubleType>(viaFunc).compute(region, viaFunc);
+
+		final DoubleType value = new DoubleType();
+		for (int i = 0; i < stats.length; i++) {
+			expected.get(i).compute(region, value);
+			final double tol = TOL * Math.max(1, Math.abs(value.get()));
+			assertEquals(stats[i].name(), value.get(), direct.getVariable(i).get(),
+				tol);
+			assertEquals(stats[i].name(), value.get(),
+				viaFunc.getVariable(i).get(), tol);
+		}
+	}
+
+	@Test
+	public void testHigherMoments() {
+		final Img<DoubleType> img = createImg(17, 23);
+		final PointSet region = new HyperVolumePointSet(new long[] { 17, 23 });
+
+		// two-pass reference values
+		final List<Double> values = new ArrayList<Double>();
+		final Cursor<DoubleType> cursor = img.cursor();
+		double sum = 0;
+		while (cursor.hasNext()) {
+			final double v = cursor.next().get();
+			values.add(v);
+			sum += v;
+		}
+		final double n = values.size();
+		final double mean = sum / n;
+		double s2 = 0, s3 = 0, s4 = 0;
+		for (final double v : values) {
+			final double d = v - mean;
+			s2 += d * d;
+			s3 += d * d * d;
+			s4 += d * d * d * d;
+		}
+		final double skew = (s3 / n) / Math.pow(s2 / n, 1.5);
+		final double kurtosis = (s4 / n) / ((s2 / n) * (s2 / n));
+
+		final Moments moments = new Moments();
+		new StatisticFunction<DoubleType>(Statistic.SUM, img, new DoubleType())
+			.accumulate(region, moments);
+		assertEquals(n, moments.getCount(), 0);
+		assertEquals(s2, moments.getSumOfSquaredDeviations(), TOL * s2);
+		assertEquals(skew, moments.getPopulationSkew(), TOL);
+		assertEquals(kurtosis, moments.getPopulationKurtosis(), TOL);
+		assertEquals(kurtosis - 3, moments.getPopulationKurtosisExcess(), TOL);
+	}
+
+	@Test
+	public void testMerge() {
+		final Img<DoubleType> img = createImg(32, 32);
+		final StatisticFunction<DoubleType> func =
+			new StatisticFunction<DoubleType>(Statistic.SUM, img, new DoubleType());
+		final Moments whole = new Moments();
+		func.accumulate(new HyperVolumePointSet(new long[] { 32, 32 }), whole);
+		final Moments merged = new Moments();
+		for (int y = 0; y < 32; y += 8) {
+			final Moments part = new Moments();
+			func.accumulate(new HyperVolumePointSet(new long[] { 0, y }, new long[] {
+				31, y + 7 }), part);
+			merged.add(part);
+		}
+		assertEquals(whole.getCount(), merged.getCount());
+		assertEquals(whole.getMin(), merged.getMin(), 0);
+		assertEquals(whole.getMax(), merged.getMax(), 0);
+		assertEquals(whole.getMean(), merged.getMean(), TOL);
+		assertEquals(whole.getSampleVariance(), merged.getSampleVariance(), TOL);
+		assertEquals(whole.getSampleSkew(), merged.getSampleSkew(), TOL);
+		assertEquals(whole.getSampleKurtosis(), merged.getSampleKurtosis(), TOL);
+	}
+
+	@Test
+	public void testFunctionSource() {
+		final Img<DoubleType> img = createImg(10, 10);
+		final PointSet region =
+			new HyperVolumePointSet(new long[] { 2, 2 }, new long[] { 6, 8 });
+		final PointSetIterator iter = region.iterator();
+		final RealImageFunction<DoubleType, DoubleType> imgFunc =
+			new RealImageFunction<DoubleType, DoubleType>(img, new DoubleType());
+		final DoubleType value = new DoubleType();
+		final Moments expected = new Moments();
+		while (iter.hasNext()) {
+			imgFunc.compute(iter.next(), value);
+			expected.add(value.get());
+		}
+		final StatisticFunction<DoubleType> func =
+			new StatisticFunction<DoubleType>(Statistic.ARITHMETIC_MEAN, imgFunc);
+		func.compute(region, value);
+		assertEquals(expected.getMean(), value.get(), TOL);
+		assertEquals(35, expected.getCount());
+	}
+
+	// -- Helper methods --
+
+	private Img<DoubleType> createImg(final long width, final long height) {
+		final Img<DoubleType> img =
+			new ArrayImgFactory<DoubleType>().create(new long[] { width, height },
+				new DoubleType());
+		final Random random = new Random(width * height);
+		for (final DoubleType t : img) {
+			t.set(1000 + 50 * random.nextGaussian() + random.nextDouble() *
+				random.nextDouble() * 400);
+		}
+		return img;
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link QuantileSketch}. These document its error bound: with
+ * the default k, every rank query is accurate to within 1% of the number of
+ * samples, also after merging sketches.
+ */
+public class QuantileSketchTest {
+
+	private static final int N = 1000000;
+
+	private static final double MAX_RANK_ERROR = 0.01;
+
+	@Test
+	public void testRankError() {
+		final double[] values = createValues();
+		final QuantileSketch sketch = new QuantileSketch();
+		for (final double v : values) {
+			sketch.add(v);
+		}
+		assertEquals(N, sketch.getCount());
+		assertTrue(sketch.getRetainedCount() < 3 * QuantileSketch.DEFAULT_K);
+		assertRankError(sketch, values);
+	}
+
+	@Test
+	public void testMergedRankError() {
+		final double[] values = createValues();
+		final QuantileSketch[] parts = new QuantileSketch[7];
+		for (int p = 0; p < parts.length; p++) {
+			parts[p] = new QuantileSketch();
+		}
+		for (int i = 0; i < N; i++) {
+			parts[i % parts.length].add(values[i]);
+		}
+		final QuantileSketch merged = new QuantileSketch();
+		for (final QuantileSketch part : parts) {
+			merged.add(part);
+		}
+		assertEquals(N, merged.getCount());
+		assertRankError(merged, values);
+	}
+
+	@Test
+	public void testTrimmedMean() {
+		final double[] values = createValues();
+		final QuantileSketch sketch = new QuantileSketch();
+		for (final double v : values) {
+			sketch.add(v);
+		}
+		final double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		final int trim = N / 10;
+		double sum = 0;
+		for (int i = trim; i < N - trim; i++) {
+			sum += sorted[i];
+		}
+		final double expected = sum / (N - 2 * trim);
+		assertEquals(expected, sketch.getTrimmedMean(trim), 0.01 * expected);
+	}
+
+	@Test
+	public void testSmall() {
+		// a sketch that never compacts is exact
+		final QuantileSketch sketch = new QuantileSketch();
+		for (int i = 9; i >= 1; i--) {
+			sketch.add(i);
+		}
+		assertEquals(5, sketch.getMedian(), 0);
+		assertEquals(1, sketch.getValue(0), 0);
+		assertEquals(9, sketch.getValue(8), 0);
+		assertEquals(5, sketch.getTrimmedMean(2), 0);
+		assertEquals(5, sketch.getAlphaTrimmedMean(0.25), 0);
+	}
+
+	// -- Helper methods --
+
+	/** Creates skewed values, whose quantiles are not evenly spaced. */
+	private double[] createValues() {
+		final Random random = new Random(17);
+		final double[] values = new double[N];
+		for (int i = 0; i < N; i++) {
+			values[i] = Math.exp(random.nextGaussian());
+		}
+		return values;
+	}
+
+	private void assertRankError(final QuantileSketch sketch,
+		final double[] values)
+	{
+		final double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		for (int q = 1; q < 100; q++) {
+			final long rank = (long) q * N / 100;
+			final double value = sketch.getValue(rank);
+			final int actualRank = Arrays.binarySearch(sorted, value);
+			assertEquals("quantile " + q + "%", rank, actualRank, MAX_RANK_ERROR *
+				N);
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+import static org.junit.Assert.assertEquals;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.ParallelLoop;
+import net.imglib2.Cursor;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.ops.function.real.RealImageFunction;
+import net.imglib2.ops.function.real.RealSampleVarianceFunction;
+import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Benchmarks the statistics of {@link DefaultStatisticsService} against the
+ * serial OPS functions it used to delegate to.
+ */
+public class TestStatisticsSpeeds {
+
+	static final int X = 1024;
+	static final int Y = 1024;
+	static final int Z = 32;
+
+	@Test
+	public void testStatisticsSpeeds() {
+		final Context context =
+			new Context(DatasetService.class, StatisticsService.class,
+				ThreadService.class);
+		try {
+			final Dataset ds =
+				context.getService(DatasetService.class).create(
+					new UnsignedShortType(), new long[] { X, Y, Z }, "speeds",
+					new AxisType[] { Axes.X, Axes.Y, Axes.Z });
+			final Cursor<? extends RealType<?>> cursor = ds.getImgPlus().cursor();
+			int i = 0;
+			while (cursor.hasNext()) {
+				cursor.next().setReal((i++ * 7919) % 4096);
+			}
+			final StatisticsService statisticsService =
+				context.getService(StatisticsService.class);
+			final PointSet region = statisticsService.allOf(ds);
+
+			final double expected = opsSpeedTest(ds, region);
+
+			final double serial =
+				speedTest(statisticsService, ds, region, new RegionReducer(null),
+					"Moments, 1 thread");
+			assertEquals(expected, serial, 1e-9 * expected);
+
+			final int threads = Runtime.getRuntime().availableProcessors();
+			final RegionReducer reducer =
+				new RegionReducer(new ParallelLoop(context
+					.getService(ThreadService.class), threads));
+			final double parallel =
+				speedTest(statisticsService, ds, region, reducer, "Moments, " +
+					threads + " threads");
+			assertEquals(expected, parallel, 1e-9 * expected);
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	// -- helpers --
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private double opsSpeedTest(final Dataset ds, final PointSet region) {
+		final RealImageFunction<?, DoubleType> imgFunc =
+			new RealImageFunction(ds.getImgPlus(), new DoubleType());
+		final RealSampleVarianceFunction<DoubleType> func =
+			new RealSampleVarianceFunction<DoubleType>(imgFunc);
+		final DoubleType output = new DoubleType();
+		final long start = System.currentTimeMillis();
+		func.compute(region, output);
+		final long stop = System.currentTimeMillis();
+		System.out.println("RealSampleVarianceFunction : elapsed time = " +
+			(stop - start));
+		return output.get();
+	}
+
+	private double speedTest(final StatisticsService statisticsService,
+		final Dataset ds, final PointSet region, final RegionReducer reducer,
+		final String testName)
+	{
+		// NB: warm up the JIT first
+		for (int i = 0; i < 3; i++)
+			statisticsService.moments(ds, region, reducer);
+		final long start = System.currentTimeMillis();
+		final double result =
+			statisticsService.moments(ds, region, reducer).getSampleVariance();
+		final long stop = System.currentTimeMillis();
+		System.out.println(testName + " : elapsed time = " + (stop - start));
+		return result;
+	}
+
+}
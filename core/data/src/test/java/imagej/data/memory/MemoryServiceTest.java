@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Unit tests for {@link DefaultMemoryService}.
+ */
+public class MemoryServiceTest {
+
+	private Context context;
+	private MemoryService memoryService;
+
+	@Before
+	public void setUp() {
+		context = new Context(MemoryService.class);
+		memoryService = context.getService(MemoryService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testAccounting() {
+		final Object a = new Object(), b = new Object();
+		memoryService.setUsage(a, MemoryService.DATASETS, 1000);
+		memoryService.setUsage(b, MemoryService.PREVIEWS, 200);
+		memoryService.setUsage(b, MemoryService.OFF_HEAP, 5000);
+		assertEquals(1000, memoryService.getUsage(MemoryService.DATASETS));
+		assertEquals(200, memoryService.getUsage(MemoryService.PREVIEWS));
+		assertEquals(5000, memoryService.getUsage(MemoryService.OFF_HEAP));
+		// off-heap memory does not count against the budget
+		assertEquals(1200, memoryService.getUsage());
+
+		memoryService.setUsage(a, MemoryService.DATASETS, 300);
+		assertEquals(500, memoryService.getUsage());
+		memoryService.release(b);
+		assertEquals(300, memoryService.getUsage());
+		assertEquals(300, memoryService.getGauge().getUsage());
+	}
+
+	@Test
+	public void testEviction() {
+		final TestCache small = new TestCache(100);
+		final TestCache large = new TestCache(1000);
+		memoryService.addEvictable(small);
+		memoryService.addEvictable(large);
+		assertEquals(1100, memoryService.getUsage(MemoryService.CACHES));
+
+		// filling the budget forces the caches to make room, largest first
+		final Object owner = new Object();
+		memoryService.setUsage(owner, MemoryService.DATASETS, memoryService
+			.getBudget() - 500);
+		assertEquals(100, small.getBytes());
+		assertEquals(400, large.getBytes());
+		assertTrue(memoryService.getUsage() <= memoryService.getBudget());
+
+		// a reservation beyond what the caches hold cannot be satisfied
+		assertTrue(memoryService.reserve(0));
+		assertFalse(memoryService.reserve(1000));
+		assertEquals(0, memoryService.getUsage(MemoryService.CACHES));
+
+		memoryService.removeEvictable(small);
+		memoryService.removeEvictable(large);
+	}
+
+	@Test
+	public void testSharedPlanesCountOnce() {
+		final Context ctx = new Context(MemoryService.class, DatasetService.class);
+		final MemoryService memory = ctx.getService(MemoryService.class);
+		final DatasetService datasetService = ctx.getService(DatasetService.class);
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+		final Dataset dataset =
+			datasetService.create(new long[] { 16, 16, 4 }, "test", axes, 8, false,
+				false);
+		dataset.incrementReferences();
+		assertEquals(1024, memory.getUsage(MemoryService.DATASETS));
+
+		// a duplicate holds no planes of its own until it is written
+		final Dataset copy = dataset.duplicate();
+		copy.incrementReferences();
+		assertEquals(1024, memory.getUsage(MemoryService.DATASETS));
+		copy.getPlane(1);
+		assertEquals(1024 + 256, memory.getUsage(MemoryService.DATASETS));
+		ctx.dispose();
+	}
+
+	@Test
+	public void testHeapThresholdRestored() {
+		final List<Long> thresholds = getHeapThresholds();
+		final Context ctx = new Context(MemoryService.class);
+		ctx.dispose();
+		// the threshold of the outer context remains in place
+		assertEquals(thresholds, getHeapThresholds());
+	}
+
+	// -- Helper methods --
+
+	private List<Long> getHeapThresholds() {
+		final List<Long> thresholds = new ArrayList<Long>();
+		for (final MemoryPoolMXBean pool : ManagementFactory
+			.getMemoryPoolMXBeans())
+		{
+			if (!pool.isCollectionUsageThresholdSupported()) continue;
+			thresholds.add(pool.getCollectionUsageThreshold());
+		}
+		return thresholds;
+	}
+
+	// -- Helper classes --
+
+	private static class TestCache implements Evictable {
+
+		private long bytes;
+
+		public TestCache(final long bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public long getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public long evict(final long count) {
+			final long freed = Math.min(count, bytes);
+			bytes -= freed;
+			return freed;
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import imagej.data.ImgCopier;
+
+import java.nio.ShortBuffer;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Unit tests for {@link BufferPlanarImg}.
+ */
+public class BufferPlanarImgTest {
+
+	private static final long[] DIMENSIONS = { 16, 8, 5 };
+
+	@Test
+	public void testDirect() {
+		assertValues(false);
+	}
+
+	@Test
+	public void testMapped() {
+		assertValues(true);
+	}
+
+	@Test
+	public void testPlaneIsBuffer() {
+		final Img<UnsignedShortType> img =
+			new BufferPlanarImgFactory<UnsignedShortType>().create(DIMENSIONS,
+				new UnsignedShortType());
+		fill(img);
+		final BufferPlanarImg<?, ?> bufferImg = (BufferPlanarImg<?, ?>) img;
+		final Object storage =
+			((ShortBufferAccess) bufferImg.getPlane(2)).getCurrentStorageArray();
+		assertTrue(storage instanceof ShortBuffer);
+		final ShortBuffer plane = (ShortBuffer) storage;
+		assertEquals(16 * 8, plane.capacity());
+		assertEquals(2 * 16 * 8 + 3, plane.get(3));
+
+		// writes through the buffer are visible through the image
+		plane.put(5, (short) 12345);
+		final RandomAccess<UnsignedShortType> access = img.randomAccess();
+		access.setPosition(new long[] { 5, 0, 2 });
+		assertEquals(12345, access.get().get());
+	}
+
+	@Test
+	public void testCopy() {
+		final Img<UnsignedShortType> heap =
+			fill(new PlanarImgFactory<UnsignedShortType>().create(DIMENSIONS,
+				new UnsignedShortType()));
+		final Img<UnsignedShortType> offHeap =
+			new BufferPlanarImgFactory<UnsignedShortType>().create(DIMENSIONS,
+				new UnsignedShortType());
+		final Context context = new Context(ThreadService.class);
+		final ImgCopier copier = new ImgCopier(context);
+		copier.copy(heap, offHeap);
+		assertSameValues(heap, offHeap);
+
+		final Img<UnsignedShortType> back =
+			new PlanarImgFactory<UnsignedShortType>().create(DIMENSIONS,
+				new UnsignedShortType());
+		copier.copy(offHeap, back);
+		assertSameValues(offHeap, back);
+		context.dispose();
+	}
+
+	// -- Helper methods --
+
+	private void assertValues(final boolean mapped) {
+		final Img<UnsignedShortType> img =
+			new BufferPlanarImgFactory<UnsignedShortType>(mapped).create(
+				DIMENSIONS, new UnsignedShortType());
+		assertTrue(img instanceof BufferPlanarImg);
+		assertEquals(mapped, ((BufferPlanarImg<?, ?>) img).isMapped());
+		fill(img);
+		int i = 0;
+		for (final UnsignedShortType t : img) {
+			assertEquals(i++, t.get());
+		}
+		assertTrue(img.factory() instanceof BufferPlanarImgFactory);
+		((BufferPlanarImg<?, ?>) img).dispose();
+	}
+
+	private Img<UnsignedShortType> fill(final Img<UnsignedShortType> img) {
+		int i = 0;
+		for (final UnsignedShortType t : img) {
+			t.set(i++);
+		}
+		return img;
+	}
+
+	private void assertSameValues(final Img<UnsignedShortType> expected,
+		final Img<UnsignedShortType> actual)
+	{
+		final RandomAccess<UnsignedShortType> access = actual.randomAccess();
+		final Cursor<UnsignedShortType> cursor = expected.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			access.setPosition(cursor);
+			assertEquals(cursor.get().get(), access.get().get());
+		}
+	}
+
+}
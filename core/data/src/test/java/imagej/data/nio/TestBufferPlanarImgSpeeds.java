@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.nio;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+
+/**
+ * Benchmarks garbage collection pauses with on-heap and off-heap
+ * ({@link BufferPlanarImg}) pixel data.
+ */
+public class TestBufferPlanarImgSpeeds {
+
+	/**
+	 * Size of the synthetic stack used by {@link #testGCPauses()}, in megabytes.
+	 * Pass e.g. {@code -Dimagej.benchmark.mb=10240} (with a large enough -Xmx)
+	 * to reproduce the 10 GB comparison.
+	 */
+	private static final long BENCHMARK_MB =
+		Long.getLong("imagej.benchmark.mb", 64);
+
+	/**
+	 * Compares the time spent in garbage collection while allocating short-lived
+	 * objects, with a large stack held on the heap versus off-heap.
+	 */
+	@Test
+	public void testGCPauses() {
+		// one megabyte per plane
+		final long[] dims = { 1024, 1024, BENCHMARK_MB };
+
+		Img<UnsignedByteType> img =
+			new PlanarImgFactory<UnsignedByteType>().create(dims,
+				new UnsignedByteType());
+		final String heapReport = measureGC("on-heap", img);
+		img = null;
+		System.gc();
+
+		img =
+			new BufferPlanarImgFactory<UnsignedByteType>(true).create(dims,
+				new UnsignedByteType());
+		final String mappedReport = measureGC("mapped", img);
+		((BufferPlanarImg<?, ?>) img).dispose();
+		img = null;
+
+		System.out.println("GC pauses with a " + BENCHMARK_MB + " MB stack:");
+		System.out.println("  " + heapReport);
+		System.out.println("  " + mappedReport);
+	}
+
+	// -- Helper methods --
+
+	private String measureGC(final String label, final Img<UnsignedByteType> img)
+	{
+		// touch every plane so the memory is really committed
+		final RandomAccess<UnsignedByteType> access = img.randomAccess();
+		for (long z = 0; z < img.dimension(2); z++) {
+			access.setPosition(z, 2);
+			access.get().set((int) z);
+		}
+
+		final long gcTime = totalGCTime();
+		final long gcCount = totalGCCount();
+
+		final long start = System.currentTimeMillis();
+		System.gc();
+		final long fullGC = System.currentTimeMillis() - start;
+
+		// churn through short-lived garbage, as a busy application would
+		long checksum = 0;
+		for (int i = 0; i < 4000; i++) {
+			final byte[] garbage = new byte[256 * 1024];
+			garbage[i % garbage.length] = (byte) i;
+			checksum += garbage[0];
+		}
+
+		return label + ": full GC = " + fullGC + " ms, " +
+			(totalGCCount() - gcCount) + " collections taking " +
+			(totalGCTime() - gcTime) + " ms in total (" + checksum + ")";
+	}
+
+	private long totalGCTime() {
+		long time = 0;
+		for (final GarbageCollectorMXBean gc : ManagementFactory
+			.getGarbageCollectorMXBeans())
+		{
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	private long totalGCCount() {
+		long count = 0;
+		for (final GarbageCollectorMXBean gc : ManagementFactory
+			.getGarbageCollectorMXBeans())
+		{
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,284 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.overlay;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.ParallelLoop;
+import imagej.data.memory.MemoryService;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.ops.condition.Condition;
+import net.imglib2.ops.pointset.HyperVolumePointSet;
+import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.ops.pointset.PointSetIterator;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.event.EventService;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Unit tests for {@link ThresholdMask} and materialized
+ * {@link ThresholdOverlay}s.
+ */
+public class ThresholdMaskTest {
+
+	/** X, Y and Z dimensions; 70 samples per plane span two bitset words. */
+	private static final long[] DIMENSIONS = { 10, 7, 3 };
+
+	/** Bytes of the three bitsets of a classified plane. */
+	private static final long PLANE_BYTES = 3 * 2 * 8;
+
+	private Context context;
+	private Dataset dataset;
+
+	@Before
+	public void setUp() {
+		context =
+			new Context(DatasetService.class, EventService.class,
+				ThreadService.class, MemoryService.class);
+		dataset =
+			context.getService(DatasetService.class).create(new FloatType(),
+				DIMENSIONS, "threshold", new AxisType[] { Axes.X, Axes.Y, Axes.Z });
+		// each sample is a hundred times its Z coordinate plus its index within
+		// its plane, except for one NaN
+		final Cursor<? extends RealType<?>> cursor =
+			dataset.getImgPlus().localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.get().setReal(
+				100 * cursor.getLongPosition(2) + 10 * cursor.getLongPosition(1) +
+					cursor.getLongPosition(0));
+		}
+		set(new long[] { 5, 5, 1 }, Double.NaN);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testClassify() {
+		final ThresholdOverlay plain =
+			new ThresholdOverlay(context, dataset, 60, 165);
+		final ThresholdOverlay materialized =
+			new ThresholdOverlay(context, dataset, 60, 165);
+		materialized.setMaterialized(true);
+		assertTrue(materialized.isMaterialized());
+		final PointSetIterator iter =
+			new HyperVolumePointSet(DIMENSIONS).iterator();
+		while (iter.hasNext()) {
+			final long[] pos = iter.next();
+			assertEquals(plain.classify(pos), materialized.classify(pos));
+			assertEquals(plain.getPointsOutside().includes(pos), materialized
+				.getPointsOutside().includes(pos));
+		}
+		assertEquals(Integer.MAX_VALUE, materialized.classify(new long[] { 5, 5,
+			1 }));
+	}
+
+	@Test
+	public void testIteration() {
+		final ThresholdOverlay overlay =
+			new ThresholdOverlay(context, dataset, 60, 165);
+		overlay.setMaterialized(true);
+		final PointSet within = overlay.getPointsWithin();
+		// 60..69 in plane 0 and 100..165 in plane 1, less the NaN
+		assertEquals(75, within.size());
+		assertEquals(60, overlay.getPointsLess().size());
+		assertEquals(74, overlay.getPointsGreater().size());
+		assertEquals(134, overlay.getPointsOutside().size());
+
+		final RandomAccess<? extends RealType<?>> access =
+			dataset.getImgPlus().randomAccess();
+		final PointSetIterator iter = within.iterator();
+		double last = Double.NEGATIVE_INFINITY;
+		long count = 0;
+		while (iter.hasNext()) {
+			access.setPosition(iter.next());
+			final double value = access.get().getRealDouble();
+			assertTrue(value >= 60 && value <= 165);
+			assertTrue(value > last);
+			last = value;
+			count++;
+		}
+		assertEquals(75, count);
+		iter.reset();
+		assertTrue(iter.hasNext());
+		assertArrayEquals(new long[] { 0, 6, 0 }, iter.next());
+	}
+
+	@Test
+	public void testUpdates() {
+		final ThresholdOverlay overlay =
+			new ThresholdOverlay(context, dataset, 60, 165);
+		overlay.setMaterialized(true);
+		final long[] pos = { 3, 0, 2 };
+		assertFalse(overlay.getPointsWithin().includes(pos));
+
+		overlay.setRange(200, 210);
+		assertTrue(overlay.getPointsWithin().includes(pos));
+		assertEquals(11, overlay.getPointsWithin().size());
+
+		set(pos, 0);
+		dataset.setDirty(true);
+		assertEquals(-1, overlay.classify(pos));
+		assertEquals(10, overlay.getPointsWithin().size());
+
+		overlay.setMaterialized(false);
+		assertEquals(-1, overlay.classify(pos));
+		assertEquals(10, overlay.getPointsWithin().size());
+	}
+
+	@Test
+	public void testCondition() {
+		final ThresholdMask mask =
+			new ThresholdMask(dataset, new ParallelLoop(context), 60, 165);
+		final Condition<long[]> condition =
+			mask.getCondition(ThresholdMask.WITHIN);
+		final long[] pos = { 3, 0, 2 };
+		assertFalse(condition.isTrue(pos));
+		assertFalse(condition.isTrue(new long[] { 3, 0, 3 }));
+
+		// the condition follows changes of the range and of the dataset
+		mask.setRange(200, 210);
+		assertTrue(condition.isTrue(pos));
+		final Condition<long[]> copy = condition.copy();
+		assertTrue(copy.isTrue(pos));
+		set(pos, 0);
+		dataset.setDirty(true);
+		assertFalse(condition.isTrue(pos));
+		assertFalse(copy.isTrue(pos));
+		assertTrue(condition.isTrue(new long[] { 4, 0, 2 }));
+	}
+
+	@Test
+	public void testVolume() {
+		final ThresholdOverlay plain =
+			new ThresholdOverlay(context, dataset, 60, 165);
+		final ThresholdOverlay materialized =
+			new ThresholdOverlay(context, dataset, 60, 165);
+		materialized.setMaterialized(true);
+		final long[] min = { 2, 1, 1 };
+		final long[] max = { 8, 6, 2 };
+		final ThresholdPointSet[] plainSets = pointSets(plain);
+		final ThresholdPointSet[] maskedSets = pointSets(materialized);
+		for (int i = 0; i < plainSets.length; i++) {
+			plainSets[i].setPointSet(new HyperVolumePointSet(min, max));
+			maskedSets[i].setPointSet(new HyperVolumePointSet(min, max));
+			assertEquals(plainSets[i].size(), maskedSets[i].size());
+			assertEquals(points(plainSets[i]), points(maskedSets[i]));
+			final ThresholdPointSet copy = maskedSets[i].copy();
+			assertEquals(plainSets[i].size(), copy.size());
+			assertEquals(points(plainSets[i]), points(copy));
+		}
+		// 100..165 in plane 1 within the box, less the NaN
+		assertEquals(38, materialized.getPointsWithin().size());
+		// only the planes within the box are classified
+		assertEquals(2 * PLANE_BYTES, maskedSets[1].getMask().getBytes());
+	}
+
+	@Test
+	public void testEviction() {
+		final MemoryService memoryService =
+			context.getService(MemoryService.class);
+		final ThresholdOverlay overlay =
+			new ThresholdOverlay(context, dataset, 60, 165);
+		overlay.setMaterialized(true);
+		final ThresholdMask mask = pointSets(overlay)[1].getMask();
+		assertEquals(0, mask.getBytes());
+		assertEquals(75, overlay.getPointsWithin().size());
+		assertEquals(3 * PLANE_BYTES, mask.getBytes());
+
+		assertEquals(3 * PLANE_BYTES, memoryService.reclaim(Long.MAX_VALUE));
+		assertEquals(0, mask.getBytes());
+		assertEquals(75, overlay.getPointsWithin().size());
+		assertEquals(0, overlay.classify(new long[] { 0, 6, 0 }));
+
+		// a deleted overlay no longer holds on to its mask
+		overlay.delete();
+		assertFalse(overlay.isMaterialized());
+		assertEquals(0, memoryService.reclaim(Long.MAX_VALUE));
+	}
+
+	// -- Helper methods --
+
+	/** Gets the less, within, greater and outside point sets of an overlay. */
+	private static ThresholdPointSet[] pointSets(final ThresholdOverlay overlay)
+	{
+		return new ThresholdPointSet[] {
+			(ThresholdPointSet) overlay.getPointsLess(),
+			(ThresholdPointSet) overlay.getPointsWithin(),
+			(ThresholdPointSet) overlay.getPointsGreater(),
+			(ThresholdPointSet) overlay.getPointsOutside() };
+	}
+
+	private static List<List<Long>> points(final PointSet points) {
+		final List<List<Long>> list = new ArrayList<List<Long>>();
+		final PointSetIterator iter = points.iterator();
+		while (iter.hasNext()) {
+			final List<Long> point = new ArrayList<Long>();
+			for (final long p : iter.next()) {
+				point.add(p);
+			}
+			list.add(point);
+		}
+		return list;
+	}
+
+	private void set(final long[] pos, final double value) {
+		final RandomAccess<? extends RealType<?>> access =
+			dataset.getImgPlus().randomAccess();
+		access.setPosition(pos);
+		access.get().setReal(value);
+	}
+
+}
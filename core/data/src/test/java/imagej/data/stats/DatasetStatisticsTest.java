@@ -0,0 +1,303 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import imagej.data.ChannelCollection;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.DrawingTool;
+import imagej.render.RenderingService;
+import imagej.render.TextRenderer;
+
+import java.util.Arrays;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.stats.ComputeMinMax;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.view.Views;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.service.AbstractService;
+
+/**
+ * Unit tests for {@link DatasetStatistics}.
+ */
+public class DatasetStatisticsTest {
+
+	/** X, Y, channel and Z dimensions. */
+	private static final long[] DIMENSIONS = { 4, 3, 2, 3 };
+
+	private Context context;
+	private Dataset dataset;
+	private DatasetStatistics stats;
+
+	@Before
+	public void setUp() {
+		context =
+			new Context(DatasetService.class, DatasetStatisticsService.class);
+		final DatasetService datasetService =
+			context.getService(DatasetService.class);
+		dataset =
+			datasetService.create(new UnsignedByteType(), DIMENSIONS, "stats",
+				new AxisType[] { Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z });
+		// each sample is ten times its plane number plus its X coordinate
+		final Cursor<? extends RealType<?>> cursor =
+			dataset.getImgPlus().localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			final long plane =
+				cursor.getLongPosition(2) + 2 * cursor.getLongPosition(3);
+			cursor.get().setReal(10 * plane + cursor.getLongPosition(0));
+		}
+		stats =
+			context.getService(DatasetStatisticsService.class).getStatistics(dataset);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testStatistics() {
+		assertSame(stats, context.getService(DatasetStatisticsService.class)
+			.getStatistics(dataset));
+		assertEquals(6, stats.getPlaneCount());
+
+		final PixelStatistics plane3 = stats.getPlaneStatistics(3);
+		assertEquals(12, plane3.getCount());
+		assertEquals(30, plane3.getMin(), 0);
+		assertEquals(33, plane3.getMax(), 0);
+		assertEquals(31.5, plane3.getMean(), 1e-9);
+
+		// channel 1 consists of planes 1, 3 and 5
+		final PixelStatistics channel1 = stats.getChannelStatistics(1);
+		assertEquals(36, channel1.getCount());
+		assertEquals(10, channel1.getMin(), 0);
+		assertEquals(53, channel1.getMax(), 0);
+
+		final PixelStatistics all = stats.getStatistics();
+		assertEquals(72, all.getCount());
+		assertEquals(0, all.getMin(), 0);
+		assertEquals(53, all.getMax(), 0);
+	}
+
+	@Test
+	public void testAllChannels() {
+		final PixelStatistics[] channels = stats.getChannelStatistics();
+		assertEquals(2, channels.length);
+		assertEquals(0, channels[0].getMin(), 0);
+		assertEquals(43, channels[0].getMax(), 0);
+		assertEquals(10, channels[1].getMin(), 0);
+		assertEquals(53, channels[1].getMax(), 0);
+	}
+
+	@Test
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void testChannelStatisticsMatchComputeMinMax() {
+		final PixelStatistics[] channels = stats.getChannelStatistics();
+		for (int c = 0; c < channels.length; c++) {
+			final ComputeMinMax<? extends RealType<?>> cmm =
+				new ComputeMinMax(channel(dataset, c));
+			cmm.process();
+			assertEquals(cmm.getMin().getRealDouble(), channels[c].getMin(), 0);
+			assertEquals(cmm.getMax().getRealDouble(), channels[c].getMax(), 0);
+		}
+	}
+
+	@Test
+	public void testHistogram() {
+		// one bin per ten values: one bin per plane
+		final BinMapping mapping = new BinMapping(0, 10, 6);
+		final long[] histogram = stats.getHistogram(mapping);
+		for (final long count : histogram) {
+			assertEquals(12, count);
+		}
+		final long[] channel0 = stats.getChannelHistogram(0, mapping);
+		assertEquals(12, channel0[0]);
+		assertEquals(0, channel0[1]);
+		assertEquals(12, channel0[2]);
+		assertEquals(12, stats.getPlaneHistogram(5, mapping)[5]);
+	}
+
+	@Test
+	public void testClearHistograms() {
+		final BinMapping mapping = new BinMapping(0, 10, 6);
+		stats.getHistogram(mapping);
+		// one cached histogram of six bins per plane
+		assertEquals(6 * 6 * 8, stats.getHistogramBytes());
+		assertEquals(6 * 6 * 8, stats.clearHistograms());
+		assertEquals(0, stats.getHistogramBytes());
+		assertEquals(12, stats.getHistogram(mapping)[3]);
+	}
+
+	@Test
+	public void testCoarseHistogram() {
+		final BinMapping fine = new BinMapping(0, 1, 60);
+		final BinMapping coarse = new BinMapping(0, 10, 6);
+		assertNull(coarse.getCoarseBins(fine));
+		assertNull(fine.getCoarseBins(new BinMapping(0.5, 10, 5)));
+		assertEquals(5, fine.getCoarseBins(coarse)[59]);
+		stats.getHistogram(fine);
+
+		// a change the cache is not told about is not seen by a histogram derived
+		// from the cached finer one
+		set(0, 0, 0, 0, 59);
+		final long[] histogram = stats.getHistogram(coarse);
+		for (final long count : histogram) {
+			assertEquals(12, count);
+		}
+	}
+
+	@Test
+	public void testComposite() {
+		// channel averages are 20 * z + 5 + x
+		final PixelStatistics composite = stats.getCompositeStatistics();
+		assertEquals(36, composite.getCount());
+		assertEquals(5, composite.getMin(), 0);
+		assertEquals(48, composite.getMax(), 0);
+		assertEquals(26.5, composite.getMean(), 1e-9);
+		final long[] histogram =
+			stats.getCompositeHistogram(new BinMapping(0, 20, 3));
+		for (final long count : histogram) {
+			assertEquals(12, count);
+		}
+		assertEquals(3, stats.getCompositeHistogram(new BinMapping(5, 1, 4))[1]);
+	}
+
+	@Test
+	public void testInvalidation() {
+		assertEquals(53, stats.getStatistics().getMax(), 0);
+
+		// change a sample of plane 4 (channel 0, z 2), announcing the change
+		set(1, 1, 0, 2, 200);
+		dataset.update(new FinalInterval(new long[] { 1, 1, 0, 2 }, new long[] {
+			1, 1, 0, 2 }));
+		assertEquals(200, stats.getStatistics().getMax(), 0);
+		assertEquals(200, stats.getChannelStatistics(0).getMax(), 0);
+		assertEquals(53, stats.getChannelStatistics(1).getMax(), 0);
+		assertEquals(1, stats.getHistogram(new BinMapping(0, 100, 3))[2]);
+
+		// a change which is only marked by the modification count is noticed too
+		set(0, 0, 1, 0, 250);
+		dataset.setDirty(true);
+		assertEquals(250, stats.getChannelStatistics(1).getMax(), 0);
+	}
+
+	@Test
+	public void testSetPlaneInvalidation() {
+		assertEquals(53, stats.getStatistics().getMax(), 0);
+
+		// an unannounced change of plane 1 stays unseen while plane 1 is cached
+		set(0, 0, 1, 0, 250);
+		final byte[] plane = new byte[12];
+		Arrays.fill(plane, (byte) 100);
+		assertTrue(dataset.setPlane(4, plane));
+		assertEquals(100, stats.getPlaneStatistics(4).getMax(), 0);
+		assertEquals(13, stats.getPlaneStatistics(1).getMax(), 0);
+	}
+
+	@Test
+	public void testDrawingInvalidation() {
+		assertEquals(53, stats.getStatistics().getMax(), 0);
+
+		// an unannounced change of plane 1 stays unseen while plane 1 is cached
+		set(0, 0, 1, 0, 250);
+		final DrawingTool tool =
+			new DrawingTool(dataset, new NullRenderingService());
+		tool.setPosition(new long[] { 0, 0, 0, 2 });
+		tool.setPreferredChannel(0);
+		tool.setChannels(new ChannelCollection(Arrays.asList(100.0, 100.0)));
+		tool.moveTo(0, 0);
+		tool.lineTo(3, 0);
+		dataset.update(tool.getDirtyRegion());
+		assertEquals(100, stats.getPlaneStatistics(4).getMax(), 0);
+		assertEquals(13, stats.getPlaneStatistics(1).getMax(), 0);
+	}
+
+	// -- Helper methods --
+
+	@SuppressWarnings("rawtypes")
+	private RandomAccessibleInterval<RealType> channel(final Dataset d,
+		final int c)
+	{
+		final long[] min = new long[d.numDimensions()];
+		final long[] max = d.getDims();
+		for (int i = 0; i < max.length; i++) {
+			max[i]--;
+		}
+		min[2] = max[2] = c;
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<RealType> interval =
+			(RandomAccessibleInterval) Views.interval(d.getImgPlus(), min, max);
+		return interval;
+	}
+
+	private void set(final long x, final long y, final long c, final long z,
+		final double value)
+	{
+		final RandomAccess<? extends RealType<?>> access =
+			dataset.getImgPlus().randomAccess();
+		access.setPosition(new long[] { x, y, c, z });
+		access.get().setReal(value);
+	}
+
+	// -- Helper classes --
+
+	private static class NullRenderingService extends AbstractService implements
+		RenderingService
+	{
+
+		@Override
+		public TextRenderer getTextRenderer() {
+			return null;
+		}
+	}
+
+}
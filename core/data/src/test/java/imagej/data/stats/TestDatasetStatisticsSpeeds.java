@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.stats;
+
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.ParallelLoop;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.stats.ComputeMinMax;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Benchmarks the fused parallel channel statistics of
+ * {@link DatasetStatistics} against one min/max pass per channel.
+ */
+public class TestDatasetStatisticsSpeeds {
+
+	/**
+	 * Compares one single-threaded min/max pass per channel, as autoscaling used
+	 * to do, against the fused parallel pass over all channels.
+	 */
+	@Test
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void testChannelStatisticsSpeeds() {
+		final Context context = new Context(DatasetService.class);
+		try {
+			final long[] dims = { 512, 512, 4, 25 };
+			final Dataset big =
+				context.getService(DatasetService.class).create(
+					new UnsignedByteType(), dims, "benchmark",
+					new AxisType[] { Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z });
+			final Cursor<? extends RealType<?>> cursor = big.getImgPlus().cursor();
+			int value = 0;
+			while (cursor.hasNext()) {
+				cursor.next().setReal(value++ % 251);
+			}
+
+			long start = System.currentTimeMillis();
+			for (int c = 0; c < 4; c++) {
+				final ComputeMinMax<? extends RealType<?>> cmm =
+					new ComputeMinMax(channel(big, c));
+				cmm.process();
+			}
+			final long perChannel = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			new DatasetStatistics(big, new ParallelLoop(context))
+				.getChannelStatistics();
+			final long fused = System.currentTimeMillis() - start;
+
+			System.out.println("Min/max of " + dims[2] + " channels: " +
+				perChannel + " ms per channel, " + fused + " ms fused");
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	// -- Helper methods --
+
+	@SuppressWarnings("rawtypes")
+	private RandomAccessibleInterval<RealType> channel(final Dataset d,
+		final int c)
+	{
+		final long[] min = new long[d.numDimensions()];
+		final long[] max = d.getDims();
+		for (int i = 0; i < max.length; i++) {
+			max[i]--;
+		}
+		min[2] = max[2] = c;
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<RealType> interval =
+			(RandomAccessibleInterval) Views.interval(d.getImgPlus(), min, max);
+		return interval;
+	}
+
+}
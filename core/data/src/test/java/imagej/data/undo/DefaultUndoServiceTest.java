@@ -0,0 +1,210 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.data.undo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.memory.MemoryService;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Unit tests for {@link DefaultUndoService}.
+ */
+public class DefaultUndoServiceTest {
+
+	private static final long[] DIMENSIONS = { 8, 8, 2 };
+
+	private Context context;
+	private UndoService undoService;
+	private DatasetService datasetService;
+
+	@Before
+	public void setUp() {
+		context =
+			new Context(UndoService.class, DatasetService.class,
+				MemoryService.class);
+		undoService = context.getService(UndoService.class);
+		datasetService = context.getService(DatasetService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testUndoRedo() {
+		final Dataset dataset = createDataset();
+		final Object key = new Object();
+		undoService.begin(key, dataset);
+		setValue(dataset, 3, 4, 1, 42);
+		dataset.update();
+		assertTrue(undoService.end(key, "Paint"));
+		assertTrue(undoService.canUndo(dataset));
+		assertFalse(undoService.canRedo(dataset));
+		assertEquals("Paint", undoService.getUndoName(dataset));
+		assertTrue(undoService.getBytes() > 0);
+
+		assertTrue(undoService.undo(dataset));
+		assertEquals(0, getValue(dataset, 3, 4, 1), 0);
+		assertFalse(undoService.canUndo(dataset));
+		assertEquals("Paint", undoService.getRedoName(dataset));
+
+		assertTrue(undoService.redo(dataset));
+		assertEquals(42, getValue(dataset, 3, 4, 1), 0);
+		assertTrue(undoService.canUndo(dataset));
+		assertFalse(undoService.canRedo(dataset));
+	}
+
+	@Test
+	public void testNoOpCommand() {
+		final Dataset dataset = createDataset();
+		final Object key = new Object();
+		undoService.begin(key, dataset);
+		assertTrue(undoService.end(key, "Nothing"));
+		assertFalse(undoService.canUndo(dataset));
+		assertNull(undoService.getUndoName(dataset));
+		assertEquals(0, undoService.getBytes());
+	}
+
+	@Test
+	public void testUnrecordedChange() {
+		final Dataset dataset = createDataset();
+		record(dataset, "Paint");
+
+		// a change made outside begin/end invalidates the history
+		setValue(dataset, 0, 0, 0, 7);
+		dataset.update();
+		assertFalse(undoService.canUndo(dataset));
+	}
+
+	@Test
+	public void testMetadataUpdateKeepsHistory() {
+		final Dataset dataset = createDataset();
+		record(dataset, "Paint");
+		dataset.setName("renamed");
+		assertTrue(undoService.canUndo(dataset));
+		assertTrue(undoService.undo(dataset));
+		assertEquals(0, getValue(dataset, 3, 4, 1), 0);
+	}
+
+	@Test
+	public void testUnsupportedImage() {
+		final Img<UnsignedByteType> img =
+			new CellImgFactory<UnsignedByteType>().create(DIMENSIONS,
+				new UnsignedByteType());
+		final Dataset dataset =
+			datasetService.create(new ImgPlus<UnsignedByteType>(img));
+		final Object key = new Object();
+
+		// nothing changed, so nothing was lost
+		undoService.begin(key, dataset);
+		assertTrue(undoService.end(key, "Nothing"));
+
+		// the changes cannot be captured, which the caller must be told
+		undoService.begin(key, dataset);
+		setValue(dataset, 3, 4, 1, 42);
+		dataset.update();
+		assertFalse(undoService.end(key, "Paint"));
+		assertFalse(undoService.canUndo(dataset));
+	}
+
+	@Test
+	public void testEviction() {
+		final Dataset dataset = createDataset();
+		record(dataset, "Paint");
+		final long bytes = undoService.getBytes();
+		assertTrue(bytes > 0);
+
+		final MemoryService memoryService = context.getService(MemoryService.class);
+		assertTrue(memoryService.reclaim(Long.MAX_VALUE) >= bytes);
+		assertEquals(0, undoService.getBytes());
+		assertFalse(undoService.canUndo(dataset));
+		assertEquals(42, getValue(dataset, 3, 4, 1), 0);
+	}
+
+	// -- Helper methods --
+
+	private Dataset createDataset() {
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+		return datasetService.create(DIMENSIONS, "test", axes, 8, false, false);
+	}
+
+	/** Records setting one sample to 42. */
+	private void record(final Dataset dataset, final String name) {
+		final Object key = new Object();
+		undoService.begin(key, dataset);
+		setValue(dataset, 3, 4, 1, 42);
+		dataset.update();
+		assertTrue(undoService.end(key, name));
+	}
+
+	private void setValue(final Dataset dataset, final long x, final long y,
+		final long z, final double value)
+	{
+		final RandomAccess<? extends RealType<?>> access =
+			dataset.getImgPlus().randomAccess();
+		access.setPosition(new long[] { x, y, z });
+		access.get().setReal(value);
+	}
+
+	private double getValue(final Dataset dataset, final long x, final long y,
+		final long z)
+	{
+		final RandomAccess<? extends RealType<?>> access =
+			dataset.getImgPlus().randomAccess();
+		access.setPosition(new long[] { x, y, z });
+		return access.get().getRealDouble();
+	}
+
+}
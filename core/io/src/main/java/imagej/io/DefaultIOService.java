@@ -37,6 +37,7 @@
 
 import imagej.data.Dataset;
 import imagej.data.DatasetService;
+import imagej.data.cache.CachedPlanarImg;
 import imagej.io.event.FileOpenedEvent;
 import imagej.module.ModuleService;
 import imagej.text.TextService;
@@ -44,20 +45,25 @@
 import java.io.File;
 import java.io.IOException;
 
+import loci.formats.FormatException;
 import loci.formats.ImageReader;
 import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.Img;
 import net.imglib2.img.ImgPlus;
 import net.imglib2.io.ImgIOException;
 import net.imglib2.io.ImgOpener;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
 
 import org.scijava.app.StatusService;
 import org.scijava.event.EventService;
+import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.service.AbstractService;
 import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
 
 /**
  * Default service that provides I/O convenience methods.
@@ -87,6 +93,12 @@
 	@Parameter
 	private TextService textService;
 
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter
+	private LogService log;
+
 	// -- IOService methods --
 
 	@Override
@@ -153,8 +165,22 @@ public boolean isImageData(final String source) {
 	@Override
 	public Dataset loadDataset(final String source) throws ImgIOException,
 		IncompatibleTypeException
+	{
+		return loadDataset(source, isLarge(source));
+	}
+
+	@Override
+	public Dataset loadDataset(final String source, final boolean lazy)
+		throws ImgIOException, IncompatibleTypeException
 	{
 		if (source == null) return null;
+		if (lazy) {
+			final Dataset dataset = loadLazily(source);
+			if (dataset != null) {
+				eventService.publish(new FileOpenedEvent(source));
+				return dataset;
+			}
+		}
 		final ImgOpener imageOpener = new ImgOpener();
 		imageOpener.addStatusListener(new StatusDispatcher(statusService));
 		/* Restore this when NativeType can be eliminated from this class decl.
@@ -178,6 +204,36 @@ public void revertDataset(final Dataset dataset) throws ImgIOException,
 		if (source == null) return; // no way to revert
 		final Dataset revertedDataset = loadDataset(source);
 		revertedDataset.copyInto(dataset);
+		// NB: release the file of a lazily loaded copy right away
+		final Img<?> img = revertedDataset.getImgPlus().getImg();
+		if (img instanceof CachedPlanarImg) ((CachedPlanarImg<?, ?>) img).dispose();
+	}
+
+	// -- Helper methods --
+
+	/** Gets whether the given source is too large to comfortably fit in memory. */
+	private boolean isLarge(final String source) {
+		if (source == null) return false;
+		final File file = new File(source);
+		if (!file.isFile()) return false;
+		// NB: estimate the size of the pixel data from the file size
+		return datasetService.isDiskCacheRecommended(new UnsignedByteType(),
+			new long[] { file.length() });
+	}
+
+	private Dataset loadLazily(final String source) throws ImgIOException {
+		final LazyDatasetLoader loader =
+			new LazyDatasetLoader(datasetService, eventService, statusService,
+				threadService, log);
+		try {
+			return loader.load(source);
+		}
+		catch (final FormatException e) {
+			throw new ImgIOException(e);
+		}
+		catch (final IOException e) {
+			throw new ImgIOException(e);
+		}
 	}
 
 }
@@ -88,10 +88,25 @@ public interface IOService extends Service {
 	 */
 	boolean isImageData(String source);
 
-	/** Loads a dataset from a source (such as a file on disk). */
+	/**
+	 * Loads a dataset from a source (such as a file on disk). Sources too large
+	 * to comfortably fit into memory are loaded lazily, as with
+	 * {@link #loadDataset(String, boolean)}.
+	 */
 	Dataset loadDataset(String source) throws ImgIOException,
 		IncompatibleTypeException;
 
+	/**
+	 * Loads a dataset from a source (such as a file on disk).
+	 * 
+	 * @param source The source from which to load the data.
+	 * @param lazy If true, only the metadata is read up front and the returned
+	 *          dataset reads its planes from the source as they are accessed.
+	 *          Sources whose layout does not allow this are loaded fully.
+	 */
+	Dataset loadDataset(String source, boolean lazy) throws ImgIOException,
+		IncompatibleTypeException;
+
 	/** Reverts the given dataset to its original source. */
 	void revertDataset(Dataset dataset) throws ImgIOException,
 		IncompatibleTypeException;
@@ -0,0 +1,337 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.io;
+
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.cache.CachedPlanarImg;
+import imagej.data.cache.CachedPlanarImgFactory;
+import imagej.data.cache.PlaneCache;
+import imagej.data.cache.PlaneStore;
+import imagej.io.event.FileLoadingEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.scijava.app.StatusService;
+import org.scijava.event.EventService;
+import org.scijava.log.LogService;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Opens image files lazily: only the metadata is parsed up front, and the
+ * returned {@link Dataset} reads each plane from the file the first time a
+ * view, command or cursor touches it. Planes are held in the
+ * {@link DatasetService}'s shared {@link PlaneCache}.
+ * <p>
+ * The first plane of each channel is read immediately, to make it available
+ * for display. The remaining planes are then read in the background for as
+ * long as they fit into the cache. The time to first plane is reported via the
+ * {@link StatusService} and as {@link FileLoadingEvent}s.
+ * </p>
+ * <p>
+ * NB: the channel minima and maxima of the dataset are left unset, since they
+ * could only be estimated from the planes read so far; displays compute them
+ * when they are needed.
+ * </p>
+ */
+public class LazyDatasetLoader {
+
+	private final DatasetService datasetService;
+	private final EventService eventService;
+	private final StatusService statusService;
+	private final ThreadService threadService;
+	private final LogService log;
+
+	public LazyDatasetLoader(final DatasetService datasetService,
+		final EventService eventService, final StatusService statusService,
+		final ThreadService threadService, final LogService log)
+	{
+		this.datasetService = datasetService;
+		this.eventService = eventService;
+		this.statusService = statusService;
+		this.threadService = threadService;
+		this.log = log;
+	}
+
+	// -- LazyDatasetLoader methods --
+
+	/**
+	 * Opens the given source lazily. Returns null if the source's layout is not
+	 * supported for lazy loading (e.g., interleaved RGB or indexed color data),
+	 * in which case it should be opened eagerly instead.
+	 */
+	public Dataset load(final String source) throws FormatException,
+		IOException
+	{
+		final long start = System.currentTimeMillis();
+		final ImageReader reader = new ImageReader();
+		// NB: the reader stays open only if it ends up backing the dataset
+		Dataset dataset = null;
+		try {
+			reader.setId(source);
+			dataset = createDataset(reader, source);
+		}
+		finally {
+			if (dataset == null) reader.close();
+		}
+		if (dataset == null) return null;
+		final long planeCount = reader.getImageCount();
+
+		// read the first plane of each channel
+		try {
+			readFirstPlanes(dataset);
+		}
+		catch (final RuntimeException e) {
+			dispose(dataset);
+			throw e;
+		}
+		final long timeToFirstPlane = System.currentTimeMillis() - start;
+		statusService.showStatus("Opened first plane of " + dataset.getName() +
+			" in " + timeToFirstPlane + " ms");
+		eventService.publish(new FileLoadingEvent(source, dataset, 1,
+			(int) planeCount, timeToFirstPlane, false));
+
+		// read further planes in the background
+		final Dataset loading = dataset;
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				prefetch(loading, source, timeToFirstPlane);
+			}
+		});
+		return dataset;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Creates a dataset backed by the given reader, or returns null if the
+	 * reader's layout is not supported.
+	 */
+	private Dataset createDataset(final IFormatReader reader,
+		final String source)
+	{
+		final RealType<?> type = createType(reader.getPixelType());
+		if (type == null || reader.getRGBChannelCount() != 1 || reader.isIndexed())
+		{
+			return null;
+		}
+
+		// determine dimensional axes from the reader's dimension order
+		final List<AxisType> axes = new ArrayList<AxisType>();
+		final List<Long> dims = new ArrayList<Long>();
+		axes.add(Axes.X);
+		dims.add((long) reader.getSizeX());
+		axes.add(Axes.Y);
+		dims.add((long) reader.getSizeY());
+		long planeCount = 1;
+		final String order = reader.getDimensionOrder();
+		for (int i = 2; i < order.length(); i++) {
+			final char c = order.charAt(i);
+			final long size;
+			final AxisType axis;
+			if (c == 'Z') {
+				size = reader.getSizeZ();
+				axis = Axes.Z;
+			}
+			else if (c == 'C') {
+				size = reader.getEffectiveSizeC();
+				axis = Axes.CHANNEL;
+			}
+			else if (c == 'T') {
+				size = reader.getSizeT();
+				axis = Axes.TIME;
+			}
+			else continue;
+			// NB: omitting singleton axes does not change the plane numbering
+			if (size > 1) {
+				axes.add(axis);
+				dims.add(size);
+				planeCount *= size;
+			}
+		}
+		if (planeCount != reader.getImageCount()) return null;
+
+		final long[] dimensions = new long[dims.size()];
+		for (int d = 0; d < dimensions.length; d++)
+			dimensions[d] = dims.get(d);
+		return createDataset(reader, type, dimensions, axes
+			.toArray(new AxisType[axes.size()]), source);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Dataset createDataset(final IFormatReader reader,
+		final RealType<?> type, final long[] dims, final AxisType[] axes,
+		final String source)
+	{
+		final ReaderImgFactory factory =
+			new ReaderImgFactory(datasetService.getPlaneCache(), reader);
+		final Img img = factory.create(dims, (NativeType) type);
+		if (!(img instanceof CachedPlanarImg)) return null;
+		final ImgPlus imgPlus =
+			new ImgPlus(img, new File(source).getName(), axes, null);
+		imgPlus.setSource(source);
+		return datasetService.create(imgPlus);
+	}
+
+	/** Reads the first plane of each channel into the cache. */
+	private void readFirstPlanes(final Dataset dataset) {
+		final CachedPlanarImg<?, ?> img =
+			(CachedPlanarImg<?, ?>) dataset.getImgPlus().getImg();
+		final int chIndex = dataset.getAxisIndex(Axes.CHANNEL);
+		final long channels = chIndex < 0 ? 1 : dataset.dimension(chIndex);
+		long stride = 1;
+		for (int d = 2; d < chIndex; d++) {
+			stride *= dataset.dimension(d);
+		}
+		for (int c = 0; c < channels; c++) {
+			img.getPlane((int) (c * stride));
+		}
+	}
+
+	/** Releases the planes and the file of a dataset which is not returned. */
+	private void dispose(final Dataset dataset) {
+		((CachedPlanarImg<?, ?>) dataset.getImgPlus().getImg()).dispose();
+	}
+
+	/** Reads planes into the cache until all are read or the cache is full. */
+	private void prefetch(final Dataset dataset, final String source,
+		final long timeToFirstPlane)
+	{
+		final CachedPlanarImg<?, ?> img =
+			(CachedPlanarImg<?, ?>) dataset.getImgPlus().getImg();
+		final PlaneCache cache = img.getCache();
+		final ReaderPlaneStore<?> store = (ReaderPlaneStore<?>) img.getStore();
+		final int planeCount = store.getPlaneCount();
+		final String message = "Loading " + dataset.getName();
+		long planeBytes = 0;
+		int loaded = 0;
+		try {
+			for (int no = 0; no < planeCount; no++) {
+				if (store.isDisposed()) break;
+				if (cache.getBytes() + planeBytes > cache.getMaximumBytes()) break;
+				final long before = cache.getBytes();
+				img.getPlane(no);
+				planeBytes = Math.max(planeBytes, cache.getBytes() - before);
+				loaded++;
+				statusService.showStatus(loaded, planeCount, message, false);
+			}
+		}
+		catch (final RuntimeException e) {
+			// NB: if the dataset was disposed while loading, stop quietly
+			if (!store.isDisposed()) log.error("Cannot read " + source, e);
+		}
+		statusService.showStatus(planeCount, planeCount, message, false);
+		statusService.showStatus(dataset.getName() + ": " + loaded + " of " +
+			planeCount + " planes in memory; first plane after " +
+			timeToFirstPlane + " ms");
+		eventService.publish(new FileLoadingEvent(source, dataset, loaded,
+			planeCount, timeToFirstPlane, true));
+	}
+
+	private RealType<?> createType(final int pixelType) {
+		switch (pixelType) {
+			case FormatTools.INT8:
+				return new ByteType();
+			case FormatTools.UINT8:
+				return new UnsignedByteType();
+			case FormatTools.INT16:
+				return new ShortType();
+			case FormatTools.UINT16:
+				return new UnsignedShortType();
+			case FormatTools.INT32:
+				return new IntType();
+			case FormatTools.UINT32:
+				return new UnsignedIntType();
+			case FormatTools.FLOAT:
+				return new FloatType();
+			case FormatTools.DOUBLE:
+				return new DoubleType();
+			default:
+				return null;
+		}
+	}
+
+	// -- Helper classes --
+
+	/** Creates {@link CachedPlanarImg}s whose planes come from a reader. */
+	private static class ReaderImgFactory<T extends NativeType<T>> extends
+		CachedPlanarImgFactory<T>
+	{
+
+		private final IFormatReader reader;
+
+		public ReaderImgFactory(final PlaneCache cache,
+			final IFormatReader reader)
+		{
+			super(cache);
+			this.reader = reader;
+		}
+
+		@Override
+		protected <A extends ArrayDataAccess<A>> PlaneStore<A> createStore(
+			final A creator, final int planeSize, final int planeCount)
+		{
+			return new ReaderPlaneStore<A>(reader, creator, planeSize, planeCount);
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.io;
+
+import imagej.data.cache.FilePlaneStore;
+import imagej.data.cache.PlaneBuffers;
+import imagej.data.cache.PlaneStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * A {@link PlaneStore} which reads planes directly from an image file via its
+ * {@link IFormatReader}. Planes which are modified and later evicted from the
+ * cache are kept in a swap file, so the original file is never written.
+ * 
+ * @param <A> The type of array access used for each plane.
+ */
+public class ReaderPlaneStore<A extends ArrayDataAccess<A>> implements
+	PlaneStore<A>
+{
+
+	private final IFormatReader reader;
+	private final A creator;
+	private final int planeSize;
+	private final int planeCount;
+
+	private FilePlaneStore<A> swap;
+	private volatile boolean disposed;
+
+	/**
+	 * Creates a store reading from the given reader, whose id must already be
+	 * set. The store takes ownership of the reader and closes it on disposal.
+	 */
+	public ReaderPlaneStore(final IFormatReader reader, final A creator,
+		final int planeSize, final int planeCount)
+	{
+		this.reader = reader;
+		this.creator = creator;
+		this.planeSize = planeSize;
+		this.planeCount = planeCount;
+	}
+
+	// -- ReaderPlaneStore methods --
+
+	/** Gets whether this store has been disposed. */
+	public boolean isDisposed() {
+		return disposed;
+	}
+
+	// -- PlaneStore methods --
+
+	@Override
+	public int getPlaneCount() {
+		return planeCount;
+	}
+
+	@Override
+	public A load(final int no) {
+		final FilePlaneStore<A> swapStore = getSwap(false);
+		if (swapStore != null && swapStore.isSaved(no)) return swapStore.load(no);
+		final A plane = creator.createArray(planeSize);
+		final byte[] bytes;
+		final boolean little;
+		synchronized (reader) {
+			if (disposed) {
+				throw new IllegalStateException("Plane store has been disposed");
+			}
+			try {
+				bytes = reader.openBytes(no);
+			}
+			catch (final FormatException e) {
+				throw new IllegalStateException("Cannot read plane " + no, e);
+			}
+			catch (final IOException e) {
+				throw new IllegalStateException("Cannot read plane " + no, e);
+			}
+			little = reader.isLittleEndian();
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		buffer.order(little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		PlaneBuffers.get(buffer, PlaneBuffers.storage(plane));
+		return plane;
+	}
+
+	@Override
+	public void save(final int no, final A plane) {
+		getSwap(true).save(no, plane);
+	}
+
+	@Override
+	public void dispose() {
+		synchronized (reader) {
+			disposed = true;
+			try {
+				reader.close();
+			}
+			catch (final IOException e) {
+				// NB: nothing more can be done
+			}
+		}
+		final FilePlaneStore<A> swapStore = getSwap(false);
+		if (swapStore != null) swapStore.dispose();
+	}
+
+	// -- Helper methods --
+
+	private synchronized FilePlaneStore<A> getSwap(final boolean create) {
+		if (swap == null && create) {
+			try {
+				swap = new FilePlaneStore<A>(creator, planeSize, planeCount);
+			}
+			catch (final IOException e) {
+				throw new IllegalStateException("Cannot create plane swap file", e);
+			}
+		}
+		return swap;
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.io.event;
+
+import imagej.data.Dataset;
+
+/**
+ * An event reporting the progress of a file being opened lazily, i.e., whose
+ * planes are read on demand. It is published once the first plane is available
+ * and again when background loading of the remaining planes stops.
+ */
+public class FileLoadingEvent extends FileEvent {
+
+	private final Dataset dataset;
+	private final int planesLoaded;
+	private final int planeCount;
+	private final long timeToFirstPlane;
+	private final boolean done;
+
+	public FileLoadingEvent(final String path, final Dataset dataset,
+		final int planesLoaded, final int planeCount, final long timeToFirstPlane,
+		final boolean done)
+	{
+		super(path);
+		this.dataset = dataset;
+		this.planesLoaded = planesLoaded;
+		this.planeCount = planeCount;
+		this.timeToFirstPlane = timeToFirstPlane;
+		this.done = done;
+	}
+
+	/** Gets the dataset being loaded. */
+	public Dataset getDataset() {
+		return dataset;
+	}
+
+	/** Gets the number of planes read from the file so far. */
+	public int getPlanesLoaded() {
+		return planesLoaded;
+	}
+
+	/** Gets the total number of planes in the file. */
+	public int getPlaneCount() {
+		return planeCount;
+	}
+
+	/** Gets the time in milliseconds until the first plane was available. */
+	public long getTimeToFirstPlane() {
+		return timeToFirstPlane;
+	}
+
+	/** Gets whether background loading has stopped. */
+	public boolean isDone() {
+		return done;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return super.toString() + "\n\tplanes = " + planesLoaded + "/" +
+			planeCount + "\n\ttimeToFirstPlane = " + timeToFirstPlane +
+			" ms\n\tdone = " + done;
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import imagej.data.Dataset;
+import imagej.data.cache.CachedPlanarImg;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.RealType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Unit tests for the dataset loading of {@link DefaultIOService}.
+ */
+public class DefaultIOServiceTest {
+
+	private Context context;
+	private IOService ioService;
+	private File dir;
+	private String path;
+
+	@Before
+	public void setUp() throws IOException {
+		context = new Context(IOService.class);
+		ioService = context.getService(IOService.class);
+		dir = File.createTempFile("DefaultIOServiceTest", "");
+		dir.delete();
+		dir.mkdir();
+		// NB: Bio-Formats synthesizes the pixels of ".fake" files from their names
+		final File file =
+			new File(dir, "io&pixelType=uint8&sizeX=40&sizeY=30&sizeZ=3&sizeC=2.fake");
+		file.createNewFile();
+		path = file.getAbsolutePath();
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+		for (final File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testLoadDataset() throws Exception {
+		final Dataset lazy = ioService.loadDataset(path, true);
+		final Dataset eager = ioService.loadDataset(path, false);
+		try {
+			assertTrue(isLazy(lazy));
+			assertFalse(isLazy(eager));
+			assertSameValues(eager, lazy);
+		}
+		finally {
+			dispose(lazy);
+		}
+	}
+
+	@Test
+	public void testSmallFilesLoadEagerly() throws Exception {
+		// NB: the file is empty, so it is far from too large for memory
+		final Dataset dataset = ioService.loadDataset(path);
+		assertFalse(isLazy(dataset));
+	}
+
+	@Test
+	public void testRevertDataset() throws Exception {
+		final Dataset lazy = ioService.loadDataset(path, true);
+		try {
+			final Dataset original = ioService.loadDataset(path, false);
+			final RandomAccess<? extends RealType<?>> access =
+				lazy.getImgPlus().randomAccess();
+			access.setPosition(new long[] { 5, 7, 1, 1 });
+			final double value = access.get().getRealDouble();
+			access.get().setReal(value == 0 ? 1 : 0);
+			lazy.update();
+
+			ioService.revertDataset(lazy);
+			assertSameValues(original, lazy);
+		}
+		finally {
+			dispose(lazy);
+		}
+	}
+
+	// -- Helper methods --
+
+	private boolean isLazy(final Dataset dataset) {
+		return dataset.getImgPlus().getImg() instanceof CachedPlanarImg;
+	}
+
+	private void dispose(final Dataset dataset) {
+		final Img<?> img = dataset.getImgPlus().getImg();
+		if (img instanceof CachedPlanarImg) ((CachedPlanarImg<?, ?>) img).dispose();
+	}
+
+	private void assertSameValues(final Dataset expected, final Dataset actual) {
+		assertArrayEquals(expected.getDims(), actual.getDims());
+		final Cursor<? extends RealType<?>> cursor =
+			expected.getImgPlus().localizingCursor();
+		final RandomAccess<? extends RealType<?>> access =
+			actual.getImgPlus().randomAccess();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			access.setPosition(cursor);
+			assertEquals(cursor.get().getRealDouble(), access.get()
+				.getRealDouble(), 0);
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.cache.CachedPlanarImg;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.meta.Axes;
+import net.imglib2.type.numeric.RealType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.app.StatusService;
+import org.scijava.event.EventService;
+import org.scijava.log.LogService;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Unit tests for {@link LazyDatasetLoader}.
+ */
+public class LazyDatasetLoaderTest {
+
+	private Context context;
+	private LazyDatasetLoader loader;
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		context = new Context(IOService.class);
+		loader =
+			new LazyDatasetLoader(context.getService(DatasetService.class), context
+				.getService(EventService.class), context
+				.getService(StatusService.class), context
+				.getService(ThreadService.class), context
+				.getService(LogService.class));
+		dir = File.createTempFile("LazyDatasetLoaderTest", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+		for (final File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testLoad() throws Exception {
+		// NB: Bio-Formats synthesizes the pixels of ".fake" files from their names
+		final String path =
+			fakeFile("lazy&pixelType=uint16&sizeX=40&sizeY=30&sizeZ=3&sizeC=2.fake");
+		final Dataset lazy = loader.load(path);
+		try {
+			assertTrue(lazy.getImgPlus().getImg() instanceof CachedPlanarImg);
+			assertArrayEquals(new long[] { 40, 30, 3, 2 }, lazy.getDims());
+			assertEquals(Axes.CHANNEL, lazy.axis(3));
+			// NB: the range of the first planes must not pass for that of the data
+			assertTrue(Double.isNaN(lazy.getChannelMinimum(0)));
+			assertTrue(Double.isNaN(lazy.getChannelMaximum(1)));
+
+			final Dataset eager =
+				context.getService(IOService.class).loadDataset(path, false);
+			assertSameValues(eager, lazy);
+		}
+		finally {
+			((CachedPlanarImg<?, ?>) lazy.getImgPlus().getImg()).dispose();
+		}
+	}
+
+	@Test
+	public void testUnsupportedLayout() throws Exception {
+		assertNull(loader.load(fakeFile("rgb&sizeC=3&rgb=3.fake")));
+	}
+
+	// -- Helper methods --
+
+	private String fakeFile(final String name) throws IOException {
+		final File file = new File(dir, name);
+		file.createNewFile();
+		return file.getAbsolutePath();
+	}
+
+	private void assertSameValues(final Dataset expected, final Dataset actual) {
+		assertArrayEquals(expected.getDims(), actual.getDims());
+		final Cursor<? extends RealType<?>> cursor =
+			expected.getImgPlus().localizingCursor();
+		final RandomAccess<? extends RealType<?>> access =
+			actual.getImgPlus().randomAccess();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			access.setPosition(cursor);
+			assertEquals(cursor.get().getRealDouble(), access.get()
+				.getRealDouble(), 0);
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import loci.formats.FormatException;
+import loci.formats.ImageReader;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ReaderPlaneStore}.
+ */
+public class ReaderPlaneStoreTest {
+
+	private File dir;
+	private File file;
+	private ReaderPlaneStore<ShortArray> store;
+
+	@Before
+	public void setUp() throws FormatException, IOException {
+		// NB: Bio-Formats synthesizes the pixels of ".fake" files from their names
+		dir = File.createTempFile("ReaderPlaneStoreTest", "");
+		dir.delete();
+		dir.mkdir();
+		file =
+			new File(dir, "store&pixelType=uint16&sizeX=40&sizeY=30&sizeZ=4.fake");
+		file.createNewFile();
+		final ImageReader reader = new ImageReader();
+		reader.setId(file.getAbsolutePath());
+		store =
+			new ReaderPlaneStore<ShortArray>(reader, new ShortArray(1), 40 * 30,
+				reader.getImageCount());
+	}
+
+	@After
+	public void tearDown() {
+		if (!store.isDisposed()) store.dispose();
+		file.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testLoad() {
+		assertEquals(4, store.getPlaneCount());
+		final short[] plane = store.load(2).getCurrentStorageArray();
+		assertEquals(40 * 30, plane.length);
+		assertArrayEquals(plane, store.load(2).getCurrentStorageArray());
+	}
+
+	@Test
+	public void testSaveGoesToSwap() {
+		final short[] original = store.load(1).getCurrentStorageArray();
+		final short[] other = store.load(2).getCurrentStorageArray();
+		final short[] modified = original.clone();
+		modified[0]++;
+		modified[modified.length - 1]--;
+		store.save(1, new ShortArray(modified.clone()));
+		assertArrayEquals(modified, store.load(1).getCurrentStorageArray());
+		assertArrayEquals(other, store.load(2).getCurrentStorageArray());
+	}
+
+	@Test
+	public void testDispose() {
+		assertFalse(store.isDisposed());
+		store.dispose();
+		assertTrue(store.isDisposed());
+		try {
+			store.load(0);
+			fail("expected IllegalStateException");
+		}
+		catch (final IllegalStateException e) {
+			// NB: expected
+		}
+	}
+
+}
@@ -46,6 +46,8 @@
 import imagej.ui.UserInterface;
 import imagej.util.ARGBPlane;
 
+import net.imglib2.FinalInterval;
+
 import org.scijava.app.StatusService;
 import org.scijava.plugin.Menu;
 import org.scijava.plugin.Parameter;
@@ -102,7 +104,6 @@ private ARGBPlane getARGBPixels() {
 		final long[] dims = display.getDims();
 		final int imageWidth = (int) dims[0];
 		final int imageHeight = (int) dims[1];
-		final int[] argbPixels = view.getScreenImage().getData();
 		final int x, y, w, h;
 		if (overlay == null) { // no active overlay
 			x = 0;
@@ -121,12 +122,18 @@ private ARGBPlane getARGBPixels() {
 			w = Math.min(imageWidth, ovrMaxX) - x + 1;
 			h = Math.min(imageHeight, ovrMaxY) - y + 1;
 		}
+		view.ensureProjected(new FinalInterval(new long[] { x, y }, new long[] {
+			x + w - 1, y + h - 1 }));
 		final ARGBPlane plane = new ARGBPlane(w, h);
-		for (int u = 0; u < w; u++) {
-			for (int v = 0; v < h; v++) {
-				final int argbLoc = (y+v)*imageWidth + (x+u);
-				final int argb = argbPixels[argbLoc];
-				plane.setARGB(u, v, argb);
+		synchronized (view.getFrameLock()) {
+			// NB: fetch the pixels only once they are projected
+			final int[] argbPixels = view.getScreenImage().getData();
+			for (int u = 0; u < w; u++) {
+				for (int v = 0; v < h; v++) {
+					final int argbLoc = (y+v)*imageWidth + (x+u);
+					final int argb = argbPixels[argbLoc];
+					plane.setARGB(u, v, argb);
+				}
 			}
 		}
 		return plane;
@@ -43,6 +43,7 @@
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
 import imagej.data.overlay.Overlay;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import net.imglib2.ops.operation.real.unary.RealAbs;
 import net.imglib2.type.numeric.RealType;
@@ -65,7 +66,9 @@
 		mnemonic = MenuConstants.PROCESS_MNEMONIC),
 	@Menu(label = "Math", mnemonic = 'm'), @Menu(label = "Abs...", weight = 19) },
 	headless = true)
-public class AbsDataValues<T extends RealType<T>> extends ContextCommand {
+public class AbsDataValues<T extends RealType<T>>
+	extends ContextCommand implements Undoable
+{
 
 	// -- instance variables that are Parameters --
 
@@ -44,6 +44,7 @@
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
 import imagej.data.overlay.Overlay;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import net.imglib2.type.numeric.RealType;
 
@@ -65,7 +66,7 @@
 	@Menu(label = "Noise", mnemonic = 'n'),
 	@Menu(label = "Add Noise...", weight = 1) }, headless = true)
 public class AddNoiseToDataValues<T extends RealType<T>>
-	extends ContextCommand
+	extends ContextCommand implements Undoable
 {
 
 	// -- instance variables that are Parameters --
@@ -44,6 +44,7 @@
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
 import imagej.data.overlay.Overlay;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import imagej.platform.PlatformService;
 import imagej.widget.Button;
@@ -81,7 +82,9 @@
 	@Menu(label = "Math", mnemonic = 'm'),
 	@Menu(label = "Equation...", weight = 20) },
 	headless = true)
-public class EquationDataValues<T extends RealType<T>> extends ContextCommand {
+public class EquationDataValues<T extends RealType<T>>
+	extends ContextCommand implements Undoable
+{
 
 	// -- instance variables that are Parameters --
 
@@ -43,6 +43,7 @@
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
 import imagej.data.overlay.Overlay;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import net.imglib2.ops.operation.real.unary.RealExp;
 import net.imglib2.type.numeric.RealType;
@@ -64,7 +65,9 @@
 		mnemonic = MenuConstants.PROCESS_MNEMONIC),
 	@Menu(label = "Math", mnemonic = 'm'), @Menu(label = "Exp...", weight = 14) },
 	headless = true)
-public class ExpDataValues<T extends RealType<T>> extends ContextCommand {
+public class ExpDataValues<T extends RealType<T>>
+	extends ContextCommand implements Undoable
+{
 
 	// -- instance variables that are Parameters --
 
@@ -41,6 +41,7 @@
 import imagej.data.display.OverlayService;
 import imagej.data.options.OptionsChannels;
 import imagej.data.overlay.Overlay;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import imagej.options.OptionsService;
 import net.imglib2.type.numeric.RealType;
@@ -61,7 +62,7 @@
 	@Menu(label = "Fill", weight = 28, accelerator = "control F") },
 	headless = true)
 public class FillDataValues<T extends RealType<T>>
-	extends ContextCommand
+	extends ContextCommand implements Undoable
 {
 	// -- Parameters --
 
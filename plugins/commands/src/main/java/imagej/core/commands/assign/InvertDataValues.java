@@ -44,6 +44,7 @@
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
 import imagej.data.overlay.Overlay;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import imagej.options.OptionsService;
 import net.imglib2.Cursor;
@@ -69,7 +70,9 @@
 		mnemonic = MenuConstants.EDIT_MNEMONIC),
 	@Menu(label = "Invert...", weight = 30, accelerator = "shift control I") },
 	headless = true)
-public class InvertDataValues<T extends RealType<T>> extends ContextCommand {
+public class InvertDataValues<T extends RealType<T>>
+	extends ContextCommand implements Undoable
+{
 
 	// -- instance variables that are Parameters --
 
@@ -43,6 +43,7 @@
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
 import imagej.data.overlay.Overlay;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import net.imglib2.ops.operation.real.unary.RealLog;
 import net.imglib2.type.numeric.RealType;
@@ -64,7 +65,9 @@
 		mnemonic = MenuConstants.PROCESS_MNEMONIC),
 	@Menu(label = "Math", mnemonic = 'm'), @Menu(label = "Log...", weight = 13) },
 	headless = true)
-public class LogDataValues<T extends RealType<T>> extends ContextCommand {
+public class LogDataValues<T extends RealType<T>>
+	extends ContextCommand implements Undoable
+{
 
 	// -- instance variables that are Parameters --
 
@@ -43,7 +43,9 @@
 import imagej.data.display.ImageDisplay;
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
+import imagej.data.memory.MemoryService;
 import imagej.data.overlay.Overlay;
+import imagej.data.undo.Undoable;
 import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
@@ -57,6 +59,7 @@
 import net.imglib2.type.numeric.real.DoubleType;
 
 import org.scijava.ItemIO;
+import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
 
 /**
@@ -65,7 +68,7 @@
  * @author Barry DeZonia
  */
 public abstract class MathCommand<I extends ComplexType<I>, O extends ComplexType<O>>
-	extends ContextCommand implements Previewable
+	extends ContextCommand implements Previewable, Undoable
 {
 	// -- instance variables that are Parameters --
 
@@ -75,6 +78,9 @@
 	@Parameter
 	protected OverlayService overlayService;
 
+	@Parameter
+	private LogService log;
+
 	@Parameter(type = ItemIO.BOTH)
 	protected ImageDisplay display;
 
@@ -110,6 +116,7 @@ else if (preview) {
 			restorePreviewRegion();
 		}
 		transformFullRegion();
+		releaseBackup();
 	}
 
 	@Override
@@ -125,6 +132,7 @@ public void preview() {
 	@Override
 	public void cancel() {
 		if (preview) restorePreviewRegion();
+		releaseBackup();
 	}
 
 	public ImageDisplay getDisplay() {
@@ -158,9 +166,18 @@ private void initialize() {
 		PointSet region =
 			determineRegion(dataset, xform.getRegionOrigin(), xform.getRegionSpan());
 		iter = region.iterator();
+		final long backupBytes = region.size() * 8;
+		final MemoryService memoryService = getMemoryService();
+		if (memoryService != null && !memoryService.reserve(backupBytes)) {
+			log.warn("Preview backup of " + backupBytes +
+				" bytes exceeds the memory budget");
+		}
 		ArrayImgFactory<DoubleType> factory = new ArrayImgFactory<DoubleType>();
 		dataBackup = factory.create(new long[] { region.size() }, new DoubleType());
 		backupAccess = dataBackup.randomAccess();
+		if (memoryService != null) {
+			memoryService.setUsage(this, MemoryService.PREVIEWS, backupBytes);
+		}
 		dataAccess = dataset.getImgPlus().randomAccess();
 
 		// check dimensions of Dataset
@@ -220,6 +237,15 @@ private void savePreviewRegion() {
 		}
 	}
 
+	private void releaseBackup() {
+		final MemoryService memoryService = getMemoryService();
+		if (memoryService != null) memoryService.release(this);
+	}
+
+	private MemoryService getMemoryService() {
+		return getContext().getService(MemoryService.class);
+	}
+
 	private void restorePreviewRegion() {
 		iter.reset();
 		long pos = 0;
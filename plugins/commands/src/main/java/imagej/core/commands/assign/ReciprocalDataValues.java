@@ -44,6 +44,7 @@
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
 import imagej.data.overlay.Overlay;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import imagej.options.OptionsService;
 import net.imglib2.ops.operation.real.unary.RealReciprocal;
@@ -68,7 +69,7 @@
 	@Menu(label = "Math", mnemonic = 'm'),
 	@Menu(label = "Reciprocal...", weight = 17) }, headless = true)
 public class ReciprocalDataValues<T extends RealType<T>>
-	extends ContextCommand
+	extends ContextCommand implements Undoable
 {
 	// -- instance variables that are Parameters --
 
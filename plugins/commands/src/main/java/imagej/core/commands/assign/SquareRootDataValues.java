@@ -43,6 +43,7 @@
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
 import imagej.data.overlay.Overlay;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import net.imglib2.ops.operation.real.unary.RealSqrt;
 import net.imglib2.type.numeric.RealType;
@@ -66,7 +67,7 @@
 	@Menu(label = "Math", mnemonic = 'm'),
 	@Menu(label = "Square Root...", weight = 16) }, headless = true)
 public class SquareRootDataValues<T extends RealType<T>>
-	extends ContextCommand
+	extends ContextCommand implements Undoable
 {
 
 	// -- instance variables that are Parameters --
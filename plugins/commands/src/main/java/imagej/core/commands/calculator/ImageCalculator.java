@@ -41,6 +41,7 @@
 import imagej.data.DatasetService;
 import imagej.data.operator.CalculatorOp;
 import imagej.data.operator.CalculatorService;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import imagej.module.DefaultModuleItem;
 
@@ -73,7 +74,7 @@
 		@Menu(label = "Image Calculator...", weight = 22) }, headless = true,
 	initializer = "initCalculator")
 public class ImageCalculator<U extends RealType<U>, V extends RealType<V>>
-	extends DynamicCommand
+	extends DynamicCommand implements Undoable
 {
 
 	// -- instance variables that are Parameters --
@@ -40,6 +40,7 @@
 import imagej.data.display.ImageDisplay;
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
+import imagej.data.undo.Undoable;
 import imagej.util.RealRect;
 
 import org.scijava.ItemIO;
@@ -50,7 +51,9 @@
  * 
  * @author Curtis Rueden
  */
-public abstract class AbstractShadows extends ContextCommand {
+public abstract class AbstractShadows
+	extends ContextCommand implements Undoable
+{
 
 	@Parameter
 	private ImageDisplayService imageDisplayService;
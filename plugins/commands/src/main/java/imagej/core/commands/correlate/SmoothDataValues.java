@@ -41,6 +41,7 @@
 import imagej.data.display.ImageDisplay;
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import imagej.util.RealRect;
 
@@ -60,7 +61,7 @@
 		mnemonic = MenuConstants.PROCESS_MNEMONIC),
 	@Menu(label = "Smooth", weight = 1, accelerator = "shift control S") },
 	headless = true)
-public class SmoothDataValues extends ContextCommand {
+public class SmoothDataValues extends ContextCommand implements Undoable {
 
 	// -- instance variables that are Parameters --
 
@@ -39,10 +39,10 @@
 import imagej.command.ContextCommand;
 import imagej.data.Dataset;
 import imagej.data.display.DatasetView;
+import imagej.data.stats.BinMapping;
+import imagej.data.stats.DatasetStatisticsService;
 import imagej.menu.MenuConstants;
-import net.imglib2.Cursor;
 import net.imglib2.meta.AxisType;
-import net.imglib2.type.numeric.RealType;
 
 import org.scijava.ItemIO;
 import org.scijava.plugin.Menu;
@@ -80,20 +80,23 @@ public class AutoContrast extends ContextCommand {
 	@Parameter(type = ItemIO.BOTH)
 	private DatasetView view;
 
+	@Parameter
+	private DatasetStatisticsService statisticsService;
+
 	@Override
 	public void run() {
 		final Dataset dataset = view.getData();
 
-		final int[] histogram = computeHistogram(dataset);
-		final int pixelCount = countPixels(histogram);
+		final long[] histogram = computeHistogram(dataset);
+		final long pixelCount = countPixels(histogram);
 
 		if (autoThreshold < 10) autoThreshold = AUTO_THRESHOLD;
 		else autoThreshold /= 2;
-		final int threshold = pixelCount / autoThreshold;
-		final int limit = pixelCount / 10;
+		final long threshold = pixelCount / autoThreshold;
+		final long limit = pixelCount / 10;
 		int i = -1;
 		boolean found = false;
-		int count;
+		long count;
 		do {
 			i++;
 			count = histogram[i];
@@ -157,7 +160,7 @@ public DatasetView getDatasetView() {
 
 	// -- Helper methods --
 
-	private int[] computeHistogram(final Dataset dataset) {
+	private long[] computeHistogram(final Dataset dataset) {
 		//
 		// afraser TODO: Not sure how to handle RGB images here
 		//
@@ -166,29 +169,15 @@ private int[] computeHistogram(final Dataset dataset) {
 		final double histMin = dataset.getType().getMinValue();
 		final double histMax = dataset.getType().getMaxValue();
 
-		final Cursor<? extends RealType<?>> c = dataset.getImgPlus().cursor();
-		final int[] histogram = new int[BINS];
-		while (c.hasNext()) {
-			final double value = c.next().getRealDouble();
-			final int bin = computeBin(value, histMin, histMax);
-			histogram[bin]++;
-		}
-		return histogram;
-	}
-
-	private int computeBin(final double value, final double histMin,
-		final double histMax)
-	{
-		double v = value;
-		if (v < histMin) v = histMin;
-		if (v > histMax) v = histMax;
-		final int bin = (int) ((BINS - 1) * (v - histMin) / (histMax - histMin));
-		return bin;
+		// NB - the last bin holds only the type's maximum value
+		final BinMapping mapping =
+			new BinMapping(histMin, (histMax - histMin) / (BINS - 1), BINS);
+		return statisticsService.getStatistics(dataset).getHistogram(mapping);
 	}
 
-	private int countPixels(final int[] histogram) {
-		int sum = 0;
-		for (final int v : histogram) {
+	private long countPixels(final long[] histogram) {
+		long sum = 0;
+		for (final long v : histogram) {
 			sum += v;
 		}
 		return sum;
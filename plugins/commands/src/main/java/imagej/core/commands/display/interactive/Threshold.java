@@ -41,6 +41,10 @@
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.event.AxisPositionEvent;
 import imagej.data.overlay.ThresholdOverlay;
+import imagej.data.stats.BinMapping;
+import imagej.data.stats.DatasetStatistics;
+import imagej.data.stats.DatasetStatisticsService;
+import imagej.data.stats.PixelStatistics;
 import imagej.data.threshold.AutoThresholdMethod;
 import imagej.data.threshold.ThresholdService;
 import imagej.menu.MenuConstants;
@@ -50,17 +54,9 @@
 import imagej.util.Colors;
 import imagej.widget.Button;
 import net.imglib2.Cursor;
-import net.imglib2.IterableInterval;
-import net.imglib2.RandomAccess;
-import net.imglib2.img.Img;
 import net.imglib2.img.ImgPlus;
 import net.imglib2.meta.AxisType;
-import net.imglib2.ops.pointset.HyperVolumePointSet;
-import net.imglib2.ops.pointset.PointSet;
-import net.imglib2.ops.pointset.PointSetIterator;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.view.IntervalView;
-import net.imglib2.view.Views;
 
 import org.scijava.ItemIO;
 import org.scijava.event.EventHandler;
@@ -170,6 +166,9 @@ public class Threshold extends InteractiveCommand {
 	@Parameter
 	private UIService uiSrv;
 
+	@Parameter
+	private DatasetStatisticsService statsSrv;
+
 	// -- instance variables --
 
 	private long[] fullHistogram;
@@ -384,114 +383,39 @@ private void getAutoThresholdMethodNames() {
 
 	private void calcDataRange() {
 		Dataset ds = imgDispSrv.getActiveDataset(display);
-		dataMin = Double.POSITIVE_INFINITY;
-		dataMax = Double.NEGATIVE_INFINITY;
-		ImgPlus<? extends RealType<?>> imgPlus = ds.getImgPlus();
-		Cursor<? extends RealType<?>> cursor = imgPlus.cursor();
-		while (cursor.hasNext()) {
-			cursor.fwd();
-			double value = cursor.get().getRealDouble();
-			if (!Double.isNaN(value)) {
-				if (value < dataMin) dataMin = value;
-				if (value > dataMax) dataMax = value;
-			}
-		}
+		PixelStatistics stats = statsSrv.getStatistics(ds).getStatistics();
+		dataMin = stats.getMin();
+		dataMax = stats.getMax();
 	}
 
 	// builds the histogram from either the whole data range or the currently
-	// viewed plane
+	// viewed plane. the statistics service caches the histogram of each plane,
+	// so switching planes or back to the stack histogram is cheap.
 
 	private long[] buildHistogram(boolean allData, long[] existingHist) {
-		// return buildHistogramFromPointSets(allData, existingHist);
-		return buildHistogramFromViews(allData, existingHist);
-	}
-
-	private long[] buildHistogramFromViews(boolean allData, long[] existingHist) {
 		Dataset ds = imgDispSrv.getActiveDataset(display);
-		long[] min = new long[ds.numDimensions()];
-		long[] max = min.clone();
-		max[0] = ds.dimension(0) - 1;
-		max[1] = ds.dimension(1) - 1;
+		// +1 needed for int but maybe not float
+		int bins =
+			existingHist == null ? histogramSize(dataMax - dataMin + 1)
+				: existingHist.length;
+		// NB - bins are centered on evenly spaced values from dataMin to dataMax
+		double binWidth = (dataMax - dataMin) / (bins - 1);
+		BinMapping mapping =
+			new BinMapping(dataMin - binWidth / 2, binWidth, bins);
+		DatasetStatistics stats = statsSrv.getStatistics(ds);
+		if (allData) return stats.getHistogram(mapping);
+		// viewed data only
+		int plane = 0;
+		long stride = 1;
 		for (int d = 2; d < ds.numDimensions(); d++) {
-			if (allData) {
-				min[d] = 0;
-				max[d] = ds.dimension(d) - 1;
-			}
-			else { // viewed data only
-				AxisType axisType = ds.axis(d);
-				long pos = display.getLongPosition(axisType);
-				min[d] = pos;
-				max[d] = pos;
-			}
-		}
-		Img<? extends RealType<?>> img = ds.getImgPlus();
-		IntervalView<? extends RealType<?>> view = Views.interval(img, min, max);
-		IterableInterval<? extends RealType<?>> data = Views.iterable(view);
-		final long[] histogram;
-		if (existingHist == null) {
-			// +1 needed for int but maybe not float
-			histogram = allocateHistogram(dataMax - dataMin + 1);
+			AxisType axisType = ds.axis(d);
+			plane += display.getLongPosition(axisType) * stride;
+			stride *= ds.dimension(d);
 		}
-		else {
-			zeroOut(existingHist);
-			histogram = existingHist;
-		}
-		Cursor<? extends RealType<?>> cursor = data.cursor();
-		while (cursor.hasNext()) {
-			double value = cursor.next().getRealDouble();
-			double relPos = (value - dataMin) / (dataMax - dataMin);
-			int binNumber = (int) Math.round((histogram.length - 1) * relPos);
-			histogram[binNumber]++;
-		}
-		return histogram;
-	}
-
-	@SuppressWarnings("unused")
-	private long[] buildHistogramFromPointSets(boolean allData,
-		long[] existingHist)
-	{
-		Dataset ds = imgDispSrv.getActiveDataset(display);
-		final long[] histogram;
-		if (existingHist == null) {
-			// +1 needed for int but maybe not float
-			histogram = allocateHistogram(dataMax - dataMin + 1);
-		}
-		else {
-			zeroOut(existingHist);
-			histogram = existingHist;
-		}
-		RandomAccess<? extends RealType<?>> accessor =
-			ds.getImgPlus().randomAccess();
-		PointSet points = allData ? allPlanes(ds) : viewedPlane(ds);
-		PointSetIterator iter = points.iterator();
-		while (iter.hasNext()) {
-			long[] pos = iter.next();
-			accessor.setPosition(pos);
-			double value = accessor.get().getRealDouble();
-			double relPos = (value - dataMin) / (dataMax - dataMin);
-			int binNumber = (int) Math.round((histogram.length - 1) * relPos);
-			histogram[binNumber]++;
-		}
-		return histogram;
+		return stats.getPlaneHistogram(plane, mapping);
 	}
 
-	private PointSet allPlanes(Dataset dataset) {
-		return new HyperVolumePointSet(dataset.getDims());
-	}
-
-	private PointSet viewedPlane(Dataset dataset) {
-		long[] pt1 = new long[dataset.numDimensions()];
-		long[] pt2 = new long[dataset.numDimensions()];
-		for (int i = 2; i < pt1.length; i++) {
-			AxisType axisType = dataset.axis(i);
-			pt1[i] = pt2[i] = display.getLongPosition(axisType);
-		}
-		pt2[0] = dataset.dimension(0) - 1;
-		pt2[1] = dataset.dimension(1) - 1;
-		return new HyperVolumePointSet(pt1, pt2);
-	}
-
-	private long[] allocateHistogram(double dataRange) {
+	private int histogramSize(double dataRange) {
 		// TODO - size of histogram affects speed of all autothresh methods
 		// What is the best way to determine size?
 		// Do we want some power of two as size? For now yes.
@@ -504,12 +428,6 @@ private long[] allocateHistogram(double dataRange) {
 			}
 		}
 		if (histSize == -1) histSize = MAX;
-		return new long[histSize];
-	}
-
-	private void zeroOut(long[] histogram) {
-		for (int i = 0; i < histogram.length; i++) {
-			histogram[i] = 0;
-		}
+		return histSize;
 	}
 }
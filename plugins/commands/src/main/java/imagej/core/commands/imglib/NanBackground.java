@@ -42,6 +42,7 @@
 import imagej.data.display.ImageDisplayService;
 import imagej.data.overlay.ThresholdOverlay;
 import imagej.data.threshold.ThresholdService;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import net.imglib2.RandomAccess;
 import net.imglib2.ops.pointset.PointSet;
@@ -67,7 +68,7 @@
 		mnemonic = MenuConstants.PROCESS_MNEMONIC),
 	@Menu(label = "Math", mnemonic = 'm'),
 	@Menu(label = "NaN Background", weight = 18) }, headless = true)
-public class NanBackground extends ContextCommand {
+public class NanBackground extends ContextCommand implements Undoable {
 
 	// -- Parameters --
 
@@ -43,6 +43,7 @@
 import imagej.data.display.ImageDisplay;
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import imagej.util.RealRect;
 
@@ -71,7 +72,7 @@
 		mnemonic = MenuConstants.PROCESS_MNEMONIC),
 	@Menu(label = "Noise", mnemonic = 'n'),
 	@Menu(label = "Salt and Pepper", weight = 3) }, headless = true)
-public class SaltAndPepper extends ContextCommand {
+public class SaltAndPepper extends ContextCommand implements Undoable {
 
 	// -- instance variables that are Parameters --
 
@@ -41,6 +41,7 @@
 import imagej.data.display.ImageDisplay;
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import imagej.util.RealRect;
 
@@ -59,7 +60,7 @@
 		weight = MenuConstants.PROCESS_WEIGHT,
 		mnemonic = MenuConstants.PROCESS_MNEMONIC),
 	@Menu(label = "Find Edges", weight = 3) }, headless = true)
-public class FindEdges extends ContextCommand {
+public class FindEdges extends ContextCommand implements Undoable {
 
 	// -- instance variables that are Parameters --
 
@@ -43,6 +43,7 @@
 import imagej.data.display.ImageDisplay;
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import imagej.util.RealRect;
 import net.imglib2.RandomAccess;
@@ -66,7 +67,7 @@
 		mnemonic = MenuConstants.IMAGE_MNEMONIC),
 	@Menu(label = "Transform", mnemonic = 't'),
 	@Menu(label = "Flip Horizontally", weight = 1) }, headless = true)
-public class FlipHorizontally extends ContextCommand {
+public class FlipHorizontally extends ContextCommand implements Undoable {
 
 	// -- instance variables that are Parameters --
 
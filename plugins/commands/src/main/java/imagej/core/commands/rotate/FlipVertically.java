@@ -43,6 +43,7 @@
 import imagej.data.display.ImageDisplay;
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.OverlayService;
+import imagej.data.undo.Undoable;
 import imagej.menu.MenuConstants;
 import imagej.util.RealRect;
 import net.imglib2.RandomAccess;
@@ -66,7 +67,7 @@
 		mnemonic = MenuConstants.IMAGE_MNEMONIC),
 	@Menu(label = "Transform", mnemonic = 't'),
 	@Menu(label = "Flip Vertically", weight = 2) }, headless = true)
-public class FlipVertically extends ContextCommand {
+public class FlipVertically extends ContextCommand implements Undoable {
 
 	// -- instance variables that are Parameters --
 
@@ -37,6 +37,7 @@
 
 import imagej.data.ChannelCollection;
 import imagej.data.Dataset;
+import imagej.data.DirtyRegion;
 import imagej.data.DrawingTool;
 import imagej.data.display.ImageCanvas;
 import imagej.data.display.ImageDisplay;
@@ -108,7 +109,8 @@ public void onMouseUp(final MsReleasedEvent evt) {
 		if (drawingTool != null) {
 			Dataset dataset = drawingTool.getDataset();
 			EventService srv = getContext().getService(EventService.class);
-			if (srv != null) srv.publish(new DatasetUpdatedEvent(dataset, false));
+			if (srv != null) srv.publish(new DatasetUpdatedEvent(dataset,
+				drawingTool.getDirtyRegion()));
 			drawingTool = null;
 		}
 		evt.consume();
@@ -126,7 +128,10 @@ public void onMouseDrag(final MsDraggedEvent evt) {
 		long modelX = realCoords.getLongX();
 		long modelY = realCoords.getLongY();
 		drawingTool.lineTo(modelX, modelY);
-		evt.getDisplay().update();
+		// refresh only the pixels drawn since the last drag event
+		final DirtyRegion region = drawingTool.getDirtyRegion();
+		drawingTool.resetDirtyRegion();
+		drawingTool.getDataset().update(region);
 		evt.consume();
 	}
 
@@ -109,7 +109,8 @@ public void onMouseClick(final MsClickedEvent evt) {
 					floodFill(recorder.getCX(), recorder.getCY(), currPos, connectivity, drawingTool);
 					Dataset dataset = drawingTool.getDataset();
 					EventService srv = getContext().getService(EventService.class);
-					if (srv != null) srv.publish(new DatasetUpdatedEvent(dataset, false));
+					if (srv != null) srv.publish(new DatasetUpdatedEvent(dataset,
+						drawingTool.getDirtyRegion()));
 				}
 				recorder.releaseDataset();
 			}
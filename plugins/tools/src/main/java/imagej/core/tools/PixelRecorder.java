@@ -53,6 +53,7 @@
 import java.util.LinkedList;
 import java.util.List;
 
+import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.display.ARGBScreenImage;
 import net.imglib2.img.Img;
@@ -154,10 +155,15 @@ public boolean record(final MsEvent evt) {
 		if (recordColor) {
 			final DatasetView view =
 					imageDisplayService.getActiveDatasetView(imageDisplay);
-			ARGBScreenImage screenImage = view.getScreenImage();
-			int[] argbPixels = view.getScreenImage().getData();
-			int pixelIndex = (int) (cy*screenImage.dimension(0) + cx);
-			int argb = argbPixels[pixelIndex];
+			view.ensureProjected(new FinalInterval(new long[] { cx, cy },
+				new long[] { cx, cy }));
+			int argb;
+			synchronized (view.getFrameLock()) {
+				ARGBScreenImage screenImage = view.getScreenImage();
+				int[] argbPixels = screenImage.getData();
+				int pixelIndex = (int) (cy*screenImage.dimension(0) + cx);
+				argb = argbPixels[pixelIndex];
+			}
 			int r = (argb >> 16) & 0xff;
 			int g = (argb >>  8) & 0xff;
 			int b = (argb >>  0) & 0xff;
@@ -38,6 +38,7 @@
 import imagej.command.CommandService;
 import imagej.data.ChannelCollection;
 import imagej.data.Dataset;
+import imagej.data.DirtyRegion;
 import imagej.data.DrawingTool;
 import imagej.data.display.ImageCanvas;
 import imagej.data.display.ImageDisplay;
@@ -101,7 +102,8 @@ public void onMouseUp(final MsReleasedEvent evt) {
 		if (drawingTool != null) {
 			Dataset dataset = drawingTool.getDataset();
 			EventService srv = getContext().getService(EventService.class);
-			if (srv != null) srv.publish(new DatasetUpdatedEvent(dataset, false));
+			if (srv != null) srv.publish(new DatasetUpdatedEvent(dataset,
+				drawingTool.getDirtyRegion()));
 			drawingTool = null;
 		}
 		evt.consume();
@@ -155,7 +157,9 @@ private void doOneSpray(MsEvent evt) {
 		IntCoords panelCoords = new IntCoords(evt.getX(), evt.getY());
 		RealCoords realCoords = canv.panelToDataCoords(panelCoords);
 		drawPixels(realCoords.getLongX(), realCoords.getLongY());
-		evt.getDisplay().update();
+		final DirtyRegion region = drawingTool.getDirtyRegion();
+		drawingTool.resetDirtyRegion();
+		drawingTool.getDataset().update(region);
 	}
 	
 	// NB: adapted from IJ1's SprayCanTool.txt macro courtesy Wayne Rasband
@@ -36,6 +36,7 @@
 package imagej.ui.swing;
 
 import imagej.core.options.OptionsMemoryAndThreads;
+import imagej.data.memory.MemoryService;
 import imagej.ui.DialogPrompt.MessageType;
 import imagej.ui.StatusBar;
 import imagej.ui.UIService;
@@ -132,7 +133,13 @@ public void mousePressed(final MouseEvent e) {
 		final OptionsMemoryAndThreads options =
 			uiService.getOptionsService().getOptions(OptionsMemoryAndThreads.class);
 		if (options.isRunGcOnClick()) System.gc();
-		uiService.getStatusService().showStatus(uiService.getApp().getInfo(true));
+		String info = uiService.getApp().getInfo(true);
+		final MemoryService memoryService =
+			uiService.getContext().getService(MemoryService.class);
+		if (memoryService != null) {
+			info += "; " + memoryService.getGauge().getSummary();
+		}
+		uiService.getStatusService().showStatus(info);
 	}
 
 	@Override
@@ -40,10 +40,14 @@
 import imagej.data.display.event.DataViewUpdatedEvent;
 import imagej.util.awt.AWTImageTools;
 
-import java.awt.Image;
+import java.awt.Graphics2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.List;
+
+import net.imglib2.Interval;
+import net.imglib2.display.ARGBScreenImage;
 
 import org.jhotdraw.draw.Drawing;
 import org.jhotdraw.draw.ImageFigure;
@@ -54,6 +58,11 @@
 /**
  * A figure view that links an ImageJ {@link DatasetView} to a JHotDraw
  * {@link ImageFigure}.
+ * <p>
+ * The figure always paints the current image of the view. When the view is
+ * updated, only the tiles whose projection changed are invalidated, so that
+ * e.g. a pencil stroke or an overlay edit does not repaint the whole image.
+ * </p>
  * 
  * @author Curtis Rueden
  * @author Lee Kamentsky
@@ -62,16 +71,18 @@ public class DatasetFigureView extends AbstractContextual implements FigureView
 {
 
 	private final DatasetView datasetView;
-	private final ImageFigure figure;
+	private final DatasetFigure figure;
 
 	public DatasetFigureView(final SwingImageDisplayViewer displayViewer,
 		final DatasetView datasetView)
 	{
 		setContext(datasetView.getContext());
 		this.datasetView = datasetView;
+		// NB: Keep the canvas responsive while planes are re-projected.
+		datasetView.setAsyncRendering(true);
 		final JHotDrawImageCanvas canvas = displayViewer.getCanvas();
 		final Drawing drawing = canvas.getDrawing();
-		figure = new ImageFigure();
+		figure = new DatasetFigure(datasetView);
 		figure.setSelectable(false);
 		figure.setTransformable(false);
 		final Dataset dataset = datasetView.getData();
@@ -92,12 +103,29 @@ protected void onDataViewUpdatedEvent(final DataViewUpdatedEvent event) {
 	@Override
 	public void update() {
 		final LogService log = getContext().getService(LogService.class);
-		log.debug("Updating image figure: " + this);
-		final Image image = datasetView.getScreenImage().image();
-		final BufferedImage bufImage = AWTImageTools.makeBuffered(image);
-		figure.setBounds(new Rectangle2D.Double(0, 0, bufImage.getWidth(),
-			bufImage.getHeight()));
-		figure.setBufferedImage(bufImage);
+		final ARGBScreenImage screenImage = datasetView.getScreenImage();
+		final Rectangle2D.Double bounds =
+			new Rectangle2D.Double(0, 0, screenImage.dimension(0), screenImage
+				.dimension(1));
+		final List<Interval> damage = datasetView.takeDamage();
+		if (!bounds.equals(figure.getBounds())) {
+			log.debug("Updating image figure: " + this);
+			figure.willChange();
+			figure.setBounds(bounds);
+			figure.changed();
+			return;
+		}
+		if (damage.isEmpty()) return;
+		long area = 0;
+		for (final Interval region : damage) {
+			figure.invalidate(new Rectangle2D.Double(region.min(0), region.min(1),
+				region.dimension(0), region.dimension(1)));
+			area += region.dimension(0) * region.dimension(1);
+		}
+		if (log.isDebug()) {
+			log.debug("Invalidated " + damage.size() + " tile runs (" + area +
+				" of " + (long) (bounds.width * bounds.height) + " pixels): " + this);
+		}
 	}
 
 	// -- FigureView methods --
@@ -117,4 +145,39 @@ public void dispose() {
 		getFigure().requestRemove();
 	}
 
+	// -- Helper classes --
+
+	/**
+	 * An {@link ImageFigure} which paints the current image of a
+	 * {@link DatasetView}, and which can invalidate part of its area.
+	 */
+	private static class DatasetFigure extends ImageFigure {
+
+		private final DatasetView view;
+
+		public DatasetFigure(final DatasetView view) {
+			this.view = view;
+		}
+
+		/** Invalidates the given area of the drawing, so that it is repainted. */
+		public void invalidate(final Rectangle2D.Double area) {
+			fireAreaInvalidated(area);
+		}
+
+		@Override
+		public void draw(final Graphics2D g) {
+			// NB: A new frame must not be swapped in while it is being painted.
+			synchronized (view.getFrameLock()) {
+				super.draw(g);
+			}
+		}
+
+		@Override
+		public BufferedImage getBufferedImage() {
+			// NB: When zoomed out, the display image may be a downsampled pyramid
+			// level; the figure scales it up to cover the whole plane.
+			return AWTImageTools.makeBuffered(view.getDisplayImage().image());
+		}
+	}
+
 }
@@ -37,6 +37,7 @@
 
 import imagej.data.Dataset;
 import imagej.data.DatasetService;
+import imagej.data.ImageGrabber;
 import imagej.data.display.DataView;
 import imagej.data.display.DatasetView;
 import imagej.data.display.ImageCanvas;
@@ -68,6 +69,7 @@
 import java.awt.BorderLayout;
 import java.awt.Cursor;
 import java.awt.Dimension;
+import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Point;
@@ -77,6 +79,7 @@
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -84,18 +87,17 @@
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 
-import net.imglib2.RandomAccess;
+import net.imglib2.FinalInterval;
 import net.imglib2.display.ARGBScreenImage;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
-import net.imglib2.type.numeric.RealType;
 
-import org.jhotdraw.draw.DefaultDrawing;
 import org.jhotdraw.draw.DefaultDrawingEditor;
 import org.jhotdraw.draw.DefaultDrawingView;
 import org.jhotdraw.draw.Drawing;
 import org.jhotdraw.draw.DrawingEditor;
 import org.jhotdraw.draw.Figure;
+import org.jhotdraw.draw.QuadTreeDrawing;
 import org.jhotdraw.draw.event.FigureSelectionEvent;
 import org.jhotdraw.draw.event.FigureSelectionListener;
 import org.scijava.Context;
@@ -131,11 +133,16 @@ public class JHotDrawImageCanvas extends JPanel implements AdjustmentListener,
 
 	private final List<EventSubscriber<?>> subscribers;
 
+	/** Number of repaints, total repaint time (ns) and total area repainted. */
+	private long repaintCount, repaintTime, repaintArea;
+
 	public JHotDrawImageCanvas(final SwingImageDisplayViewer displayViewer) {
 		this.displayViewer = displayViewer;
 		log = getDisplay().getContext().getService(LogService.class);
 
-		drawing = new DefaultDrawing(); // or QuadTreeDrawing?
+		// NB: A quad tree keeps finding the figure under the mouse fast, even with
+		// many thousands of overlays.
+		drawing = new QuadTreeDrawing();
 
 		drawingView = new DefaultDrawingView() {
 
@@ -157,6 +164,13 @@ public Dimension getPreferredSize() {
 				final int extra = 2;
 				return new Dimension(x + extra, y + extra);
 			}
+
+			@Override
+			public void paintComponent(final Graphics g) {
+				final long start = System.nanoTime();
+				super.paintComponent(g);
+				recordRepaint(g.getClipBounds(), System.nanoTime() - start);
+			}
 		};
 		drawingView.setDrawing(drawing);
 
@@ -206,6 +220,26 @@ public void addEventDispatcher(final AWTDropTargetEventDispatcher dispatcher)
 		dispatcher.register(drawingView);
 	}
 
+	/** Gets the number of times the drawing view has been repainted. */
+	public long getRepaintCount() {
+		return repaintCount;
+	}
+
+	/** Gets the mean time taken to repaint the drawing view, in milliseconds. */
+	public double getMeanRepaintTime() {
+		return repaintCount == 0 ? 0 : repaintTime / 1e6 / repaintCount;
+	}
+
+	/** Gets the mean number of pixels of the drawing view repainted. */
+	public double getMeanRepaintArea() {
+		return repaintCount == 0 ? 0 : (double) repaintArea / repaintCount;
+	}
+
+	/** Forgets the repaint statistics gathered so far. */
+	public void resetRepaintStatistics() {
+		repaintCount = repaintTime = repaintArea = 0;
+	}
+
 	/**
 	 * Captures the current view of data displayed in the canvas, including all
 	 * JHotDraw embellishments.
@@ -219,49 +253,37 @@ public Dataset capture() {
 			imageDisplayService.getActiveDatasetView(display);
 		if (datasetView == null) return null;
 
-		final ARGBScreenImage screenImage = datasetView.getScreenImage();
-		final Image pixels = screenImage.image();
-
-		final int w = pixels.getWidth(null);
-		final int h = pixels.getHeight(null);
-
-		// draw the backdrop image info
-		final BufferedImage outputImage =
-			new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-		final Graphics2D outputGraphics = outputImage.createGraphics();
-		outputGraphics.drawImage(pixels, 0, 0, null);
+		datasetView.ensureProjected(new FinalInterval(new long[] { 0, 0 },
+			new long[] { datasetView.getPreferredWidth() - 1,
+				datasetView.getPreferredHeight() - 1 }));
+		final BufferedImage outputImage;
+		final Graphics2D outputGraphics;
+		synchronized (datasetView.getFrameLock()) {
+			final ARGBScreenImage screenImage = datasetView.getScreenImage();
+			final Image pixels = screenImage.image();
+
+			final int w = pixels.getWidth(null);
+			final int h = pixels.getHeight(null);
+
+			// draw the backdrop image info
+			outputImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			outputGraphics = outputImage.createGraphics();
+			outputGraphics.drawImage(pixels, 0, 0, null);
+		}
 
 		// draw the overlay info
 		for (final FigureView view : figureViews) {
 			view.getFigure().draw(outputGraphics);
 		}
+		outputGraphics.dispose();
 
 		// create a dataset that has view data with overlay info on top
 		final DatasetService datasetService =
 			display.getContext().getService(DatasetService.class);
-		final Dataset dataset =
-			datasetService.create(new long[] { w, h, 3 }, "Captured view",
-				new AxisType[] { Axes.X, Axes.Y, Axes.CHANNEL }, 8, false, false);
-		dataset.setRGBMerged(true);
-		final RandomAccess<? extends RealType<?>> accessor =
-			dataset.getImgPlus().randomAccess();
-		for (int x = 0; x < w; x++) {
-			accessor.setPosition(x, 0);
-			for (int y = 0; y < h; y++) {
-				accessor.setPosition(y, 1);
-				final int rgb = outputImage.getRGB(x, y);
-				final int r = (rgb >> 16) & 0xff;
-				final int g = (rgb >> 8) & 0xff;
-				final int b = (rgb >> 0) & 0xff;
-				accessor.setPosition(0, 2);
-				accessor.get().setReal(r);
-				accessor.setPosition(1, 2);
-				accessor.get().setReal(g);
-				accessor.setPosition(2, 2);
-				accessor.get().setReal(b);
-			}
-		}
-		return dataset;
+		final int[] argb =
+			((DataBufferInt) outputImage.getRaster().getDataBuffer()).getData();
+		return new ImageGrabber(datasetService).grab(argb, outputImage.getWidth(),
+			outputImage.getHeight(), "Captured view");
 	}
 
 	// -- AdjustmentListener methods --
@@ -459,6 +481,24 @@ private FigureView getFigureView(final DataView dataView) {
 		return null;
 	}
 
+	/**
+	 * Records the time taken to repaint the given clip of the drawing view. NB:
+	 * Only called on the event dispatch thread.
+	 */
+	private void recordRepaint(final Rectangle clip, final long time) {
+		final long area =
+			clip == null ? (long) drawingView.getWidth() * drawingView.getHeight()
+				: (long) clip.width * clip.height;
+		repaintCount++;
+		repaintTime += time;
+		repaintArea += area;
+		if (log.isDebug()) {
+			log.debug(String.format("Repainted %d pixels in %.2f ms "
+				+ "(mean %.0f pixels in %.2f ms)", area, time / 1e6,
+				getMeanRepaintArea(), getMeanRepaintTime()));
+		}
+	}
+
 	/** Updates the {@link ImageCanvas} to match the UI. */
 	private void syncCanvas() {
 		sync(true);
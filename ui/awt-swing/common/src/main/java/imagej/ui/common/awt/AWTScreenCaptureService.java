@@ -37,6 +37,7 @@
 
 import imagej.data.Dataset;
 import imagej.data.DatasetService;
+import imagej.data.ImageGrabber;
 import imagej.data.display.ScreenCaptureService;
 
 import java.awt.Dimension;
@@ -150,24 +151,10 @@ private Dataset grayDataset(BufferedImage img, int bitsPerPixel) {
 	private Dataset rgbDataset(BufferedImage img) {
 		int width = img.getWidth();
 		int height = img.getHeight();
-		Dataset dataset = makeDataset(width, height, 24);
-		RandomAccess<? extends RealType<?>> accessor =
-			dataset.getImgPlus().randomAccess();
-		for (int x = 0; x < width; x++) {
-			accessor.setPosition(x, 0);
-			for (int y=0; y < height; y++) {
-				accessor.setPosition(y, 1);
-				int pixel = img.getRGB(x, y);
-				for (int c = 0; c < 3; c++) {
-					int byteNum = 2 - c;
-					int shiftCount = 8 * byteNum;
-					double value = (pixel >> shiftCount) & 0xff;
-					accessor.setPosition(c, 2);
-					accessor.get().setReal(value);
-				}
-			}
-		}
-		return dataset;
+		// NB: read all pixels at once, then unpack them row by row
+		int[] pixels = img.getRGB(0, 0, width, height, null, 0, width);
+		return new ImageGrabber(dataService).grab(pixels, width, height,
+			"Image Capture");
 	}
 	
 	/** 
@@ -43,6 +43,10 @@
 import imagej.data.display.OverlayService;
 import imagej.data.event.DatasetRestructuredEvent;
 import imagej.data.event.DatasetUpdatedEvent;
+import imagej.data.stats.BinMapping;
+import imagej.data.stats.DatasetStatistics;
+import imagej.data.stats.DatasetStatisticsService;
+import imagej.data.stats.PixelStatistics;
 import imagej.ui.UIService;
 
 import java.awt.BasicStroke;
@@ -59,12 +63,7 @@
 import javax.swing.JPanel;
 import javax.swing.JTextArea;
 
-import net.imglib2.Cursor;
-import net.imglib2.RandomAccess;
 import net.imglib2.meta.Axes;
-import net.imglib2.ops.pointset.HyperVolumePointSet;
-import net.imglib2.ops.pointset.PointSetIterator;
-import net.imglib2.type.numeric.RealType;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
@@ -90,9 +89,6 @@
 // range of the image.
 // [++] The modal gray value is displayed
 //
-// TODO This does lots of its own calcs. Rely on the final Histogram
-// implementation when it's settled. Grant's impl used Larry's histogram. It
-// also had a multithreaded stat calc method.
 
 /**
  * Histogram plotter.
@@ -128,6 +124,9 @@ public class HistogramPlot extends ContextCommand implements ActionListener {
 	@Parameter
 	private ImageDisplay display;
 
+	@Parameter
+	private DatasetStatisticsService statsService;
+
 	// -- other instance variables --
 
 	private Dataset dataset;
@@ -426,16 +425,12 @@ private static final void setBackgroundDefault(final JFreeChart chart) {
 	}
 
 	private void calcBinInfo() {
-		// calc the data ranges - 1st pass thru data
-		dataMin = Double.POSITIVE_INFINITY;
-		dataMax = Double.NEGATIVE_INFINITY;
-		Cursor<? extends RealType<?>> cursor = dataset.getImgPlus().cursor();
-		while (cursor.hasNext()) {
-			double val = cursor.next().getRealDouble();
-			if (val < dataMin) dataMin = val;
-			if (val > dataMax) dataMax = val;
-		}
-		if (dataMin > dataMax) {
+		// calc the data ranges - cached by the statistics service
+		PixelStatistics stats =
+			statsService.getStatistics(dataset).getStatistics();
+		dataMin = stats.getMin();
+		dataMax = stats.getMax();
+		if (!(dataMin <= dataMax)) {
 			dataMin = 0;
 			dataMax = 0;
 		}
@@ -476,55 +471,41 @@ private void allocateDataStructures() {
 		}
 	}
 
+	// all values come from the statistics cache, which computes the histograms
+	// of missing planes in parallel and derives the channel and composite
+	// values from them
+
 	private void computeStats() {
-		// calc stats - 2nd pass thru data
-		int chIndex = dataset.getAxisIndex(Axes.CHANNEL);
+		DatasetStatistics cache = statsService.getStatistics(dataset);
+		BinMapping mapping = new BinMapping(dataMin, binWidth, binCount);
 		int composH = histograms.length - 1;
-		RandomAccess<? extends RealType<?>> accessor =
-			dataset.getImgPlus().randomAccess();
-		long[] span = dataset.getDims();
-		if (chIndex >= 0) span[chIndex] = 1; // iterate channels elsewhere
-		HyperVolumePointSet pixelSpace = new HyperVolumePointSet(span);
-		PointSetIterator pixelSpaceIter = pixelSpace.iterator();
 		sampleCount = 0;
-		while (pixelSpaceIter.hasNext()) {
-			long[] pos = pixelSpaceIter.next();
-			accessor.setPosition(pos);
-			// count values by channel. also determine composite pixel value (by
-			// channel averaging)
-			double composVal = 0;
-			for (long chan = 0; chan < channels; chan++) {
-				if (chIndex >= 0) accessor.setPosition(chan, chIndex);
-				double val = accessor.get().getRealDouble();
-				composVal += val;
-				int index = (int) ((val - dataMin) / binWidth);
-				// NB in float case the max data point overflows the index range
-				if (index >= binCount) index = binCount - 1;
-				int c = (int) chan;
-				histograms[c][index]++;
-				sum1s[c] += val;
-				sum2s[c] += val * val;
-				if (val < mins[c]) mins[c] = val;
-				if (val > maxes[c]) maxes[c] = val;
-				sampleCount++;
+		if (channels == 1) {
+			PixelStatistics stats = cache.getStatistics();
+			long[] histogram = cache.getHistogram(mapping);
+			for (int i = 0; i < histograms.length; i++) {
+				setStats(i, histogram.clone(), stats);
 			}
-			composVal /= channels;
-			int index = (int) ((composVal - dataMin) / binWidth);
-			// NB in float case the max data point overflows the index range
-			if (index >= binCount) index = binCount - 1;
-			histograms[composH][index]++;
-			sum1s[composH] += composVal;
-			sum2s[composH] += composVal * composVal;
-			if (composVal < mins[composH]) mins[composH] = composVal;
-			if (composVal > maxes[composH]) maxes[composH] = composVal;
+			sampleCount = stats.getCount();
+			return;
 		}
-		// calc means etc.
-		long pixels = sampleCount / channels;
-		for (int i = 0; i < histograms.length; i++) {
-			means[i] = sum1s[i] / pixels;
-			stdDevs[i] =
-				Math.sqrt((sum2s[i] - ((sum1s[i] * sum1s[i]) / pixels)) / (pixels - 1));
+		PixelStatistics[] channelStats = cache.getChannelStatistics();
+		for (int c = 0; c < composH; c++) {
+			setStats(c, cache.getChannelHistogram(c, mapping), channelStats[c]);
+			sampleCount += channelStats[c].getCount();
 		}
+		setStats(composH, cache.getCompositeHistogram(mapping), cache
+			.getCompositeStatistics());
+	}
+
+	private void setStats(int h, long[] histogram, PixelStatistics stats) {
+		histograms[h] = histogram;
+		sum1s[h] = stats.getSum();
+		sum2s[h] = stats.getSumOfSquares();
+		mins[h] = stats.getMin();
+		maxes[h] = stats.getMax();
+		means[h] = stats.getMean();
+		stdDevs[h] = stats.getStdDev();
 	}
 
 	private void build() {